@@ -7,6 +7,7 @@ import fr.ens.biologie.genomique.eoulsan.Common;
 import fr.ens.biologie.genomique.toullig.actions.GtftogpdAction;
 import org.apache.commons.cli.*;
 
+import fr.ens.biologie.genomique.toullig.actions.DemultiplexAction;
 import fr.ens.biologie.genomique.toullig.actions.Fast5tofastqAction;
 import fr.ens.biologie.genomique.toullig.actions.TrimAction;
 
@@ -140,6 +141,14 @@ public class Main {
 
         break;
 
+      // process demultiplex module
+      case "demultiplex":
+
+        new DemultiplexAction().action(
+            new ArrayList<>(Arrays.asList(args)).subList(1, args.length));
+
+        break;
+
       // process gtftogpd module
         case "gtftogpd":
 
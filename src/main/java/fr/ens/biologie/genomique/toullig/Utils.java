@@ -59,4 +59,102 @@ public class Utils {
     // reverse the sequence
     return reverse(reverseComplement);
   }
+
+  //
+  // UUID read ids
+  //
+
+  /**
+   * Test if a read id is an UUID (e.g. 6a3d8c5e-2b0f-4c7a-9e1d-0f5b6a7c8d9e),
+   * the format of the read ids of the ONT runs.
+   * @param id, a read id
+   * @return true if the read id is an UUID
+   */
+  public static boolean isUUID(final CharSequence id) {
+
+    // test if the id is null or has not the length of an UUID
+    if (id == null || id.length() != 36) {
+      return false;
+    }
+
+    for (int i = 0; i < 36; i++) {
+
+      final char c = id.charAt(i);
+
+      // test if the dashes are at the right place
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return false;
+        }
+      } else if (hexValue(c) < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the 64 most significant bits of an UUID read id. The read id must be
+   * tested with isUUID() before.
+   * @param id, an UUID read id
+   * @return the 64 most significant bits
+   */
+  public static long getUUIDMostSignificantBits(final CharSequence id) {
+    return parseHex(id, 0, 19);
+  }
+
+  /**
+   * Get the 64 least significant bits of an UUID read id. The read id must be
+   * tested with isUUID() before.
+   * @param id, an UUID read id
+   * @return the 64 least significant bits
+   */
+  public static long getUUIDLeastSignificantBits(final CharSequence id) {
+    return parseHex(id, 19, 36);
+  }
+
+  /**
+   * Parse the hexadecimal digits of a part of a string, the dashes are
+   * ignored.
+   * @param s, the string to parse
+   * @param start, the start of the part
+   * @param end, the end of the part
+   * @return the parsed value
+   */
+  private static long parseHex(final CharSequence s, final int start,
+      final int end) {
+
+    long result = 0;
+    for (int i = start; i < end; i++) {
+
+      final int value = hexValue(s.charAt(i));
+      if (value >= 0) {
+        result = (result << 4) | value;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the value of an hexadecimal digit.
+   * @param c, a character
+   * @return the value of the digit or -1 if the character is not an
+   *         hexadecimal digit
+   */
+  private static int hexValue(final char c) {
+
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+
+    return -1;
+  }
 }
\ No newline at end of file
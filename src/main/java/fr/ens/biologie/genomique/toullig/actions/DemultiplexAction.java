@@ -0,0 +1,280 @@
+package fr.ens.biologie.genomique.toullig.actions;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.*;
+
+import fr.ens.biologie.genomique.eoulsan.actions.AbstractAction;
+import fr.ens.biologie.genomique.toullig.Globals;
+import fr.ens.biologie.genomique.toullig.demultiplexing.BarcodeAssigner;
+import fr.ens.biologie.genomique.toullig.demultiplexing.BarcodeIndex;
+import fr.ens.biologie.genomique.toullig.demultiplexing.DemultiplexFastq;
+
+/**
+ * This class define the Local exec Action of the demultiplexing.
+ * @since 1.0
+ * @author Aurélien Birer
+ */
+public class DemultiplexAction extends AbstractAction {
+
+  /** Name of this action. */
+  private static final String ACTION_NAME = "Demultiplex";
+
+  //
+  // Action methods
+  //
+
+  /**
+   * Method of DemultiplexAction class to get the name of the action.
+   * @return , a string
+   */
+  @Override
+  public String getName() {
+    return ACTION_NAME;
+  }
+
+  /**
+   * Method of DemultiplexAction class to get the desription of the action.
+   * @return , a string
+   */
+  @Override
+  public String getDescription() {
+    return "execute Demultiplex module of"
+        + Globals.APP_NAME + " in local mode.";
+  }
+
+  /**
+   * Method of DemultiplexAction class to make the action.
+   */
+  @Override
+  public void action(final List<String> arguments) {
+
+    // options of the command line
+    final Options options = makeOptions();
+
+    // parser of the command line
+    final CommandLineParser parser = new GnuParser();
+
+    String barcodes = "";
+    int threads = 1;
+    int kmer = BarcodeIndex.DEFAULT_KMER_LENGTH;
+    int searchLength = BarcodeAssigner.DEFAULT_SEARCH_LENGTH;
+    double errorRate = BarcodeAssigner.DEFAULT_ERROR_RATE;
+
+    File fastqFile = new File("");
+    File barcodeFile = new File("");
+    File outputDirectory = new File("");
+
+    try {
+      // Display help
+      if (arguments.contains("-help") || arguments.contains("-h")) {
+        help(options);
+      }
+
+      // Parse the command line arguments
+      final CommandLine line = parser.parse(options,
+          arguments.toArray(new String[arguments.size()]), true);
+
+      // Display help if no arguments
+      if (line.getArgs().length == 0) {
+        System.out.println(
+            "ERROR:  No argument! Please enter the three obligatory arguments of the demultiplex module!\n\n");
+        help(options);
+      }
+
+      // Get barcodes
+      if (line.hasOption("barcodes")) {
+        barcodes = line.getOptionValue("barcodes");
+      }
+
+      // Get number of threads
+      if (line.hasOption("threads")) {
+
+        try {
+          threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+
+        // test if the number of threads is valid
+        if (threads < 1) {
+          System.out.println("The number of threads: "
+              + line.getOptionValue("threads")
+              + " is incorrect please entry a positive number");
+          help(options);
+        }
+      }
+
+      // Get the length of the k-mers
+      if (line.hasOption("kmer")) {
+        kmer = Integer.parseInt(line.getOptionValue("kmer"));
+      }
+
+      // Get the length of the ends of the reads
+      if (line.hasOption("searchLength")) {
+        searchLength = Integer.parseInt(line.getOptionValue("searchLength"));
+      }
+
+      // Get errorRate
+      if (line.hasOption("errorRate")) {
+        errorRate = Double.parseDouble(line.getOptionValue("errorRate"));
+      }
+
+      // Get arguments
+      {
+        String[] remainder = line.getArgs();
+        if (remainder.length >= 3) {
+
+          // Get fastq File
+          fastqFile = new File(remainder[0]);
+
+          // Get barcode File
+          barcodeFile = new File(remainder[1]);
+
+          // Get output Directory
+          outputDirectory = new File(remainder[2]);
+
+        } else {
+          System.out.println(
+              "ERROR: Enter the three obligatory arguments of the demultiplex module!\n\n");
+
+          // display help
+          help(options);
+        }
+      }
+
+    } catch (ParseException | NumberFormatException e) {
+      System.out.println(
+          "Error while parsing command line arguments: " + e.getMessage());
+      help(options);
+    }
+    // Execute program in local mode
+    run(barcodes, threads, kmer, searchLength, errorRate, fastqFile,
+        barcodeFile, outputDirectory);
+  }
+
+  //
+  // Command line parsing
+  //
+
+  /**
+   * Create options for command line
+   * @return an Options object
+   */
+  @SuppressWarnings("static-access")
+  private static Options makeOptions() {
+
+    // create Options object
+    final Options options = new Options();
+
+    // add option for help
+    options.addOption(OptionBuilder.withArgName("help").hasArg()
+        .withDescription("display help").create("help"));
+
+    // add option for help
+    options.addOption(OptionBuilder.withArgName("h").hasArg()
+        .withDescription("display help").create("help"));
+
+    // add option for barcodes
+    options.addOption(OptionBuilder.withArgName("barcodes").hasArg()
+        .withDescription(
+            "the names of the barcodes of the run separated by commas (default: all the barcodes of the barcode file)")
+        .create("barcodes"));
+
+    // add option for threads
+    options.addOption(OptionBuilder.withArgName("threads").hasArg()
+        .withDescription("set the number of threads (default: 1)")
+        .create("threads"));
+
+    // add option for the length of the k-mers
+    options.addOption(OptionBuilder.withArgName("kmer").hasArg()
+        .withDescription(
+            "set the length of the k-mers of the index of the barcodes (default: "
+                + BarcodeIndex.DEFAULT_KMER_LENGTH + ")")
+        .create("kmer"));
+
+    // add option for the length of the ends of the reads
+    options.addOption(OptionBuilder.withArgName("searchLength").hasArg()
+        .withDescription(
+            "set the length of the ends of the reads where the barcodes are searched (default: "
+                + BarcodeAssigner.DEFAULT_SEARCH_LENGTH + ")")
+        .create("searchLength"));
+
+    // add option for error rate
+    options.addOption(OptionBuilder.withArgName("errorRate").hasArg()
+        .withDescription("set the maximal error rate of the barcodes (default: "
+            + BarcodeAssigner.DEFAULT_ERROR_RATE + ")")
+        .create("errorRate"));
+
+    // return options
+    return options;
+  }
+
+  /**
+   * Show command line help.
+   * @param options Options of the software
+   */
+  private static void help(final Options options) {
+
+    // Show help message
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.printHelp(
+        Globals.APP_NAME_LOWER_CASE
+            + ".sh " + ACTION_NAME
+            + " [options] FASTQ_FILE BARCODE_FILE OUTPUT_DIRECTORY \n",
+        options);
+
+    System.exit(0);
+  }
+
+  //
+  // Execution
+  //
+
+  /**
+   * Run Toullig Demultiplex
+   * @param barcodes, the names of the barcodes separated by commas or an empty
+   *          string for all the barcodes
+   * @param fastqFile, a fastq file
+   * @param barcodeFile, a fasta file of barcodes
+   * @param outputDirectory, the directory of the fastq files of the barcodes
+   */
+  private static void run(final String barcodes, final int threads,
+      final int kmer, final int searchLength, final double errorRate,
+      final File fastqFile, final File barcodeFile,
+      final File outputDirectory) {
+
+    try {
+
+      // Logger of the action
+      getLogger().info("Fastq File: " + fastqFile);
+      getLogger().info("Barcode File: " + barcodeFile);
+      getLogger().info("Output Directory: " + outputDirectory);
+
+      // Call the constructor with the arguments
+      DemultiplexFastq demultiplex =
+          new DemultiplexFastq(fastqFile, barcodeFile, outputDirectory);
+
+      // set the barcodes of the run
+      if (!barcodes.isEmpty()) {
+        demultiplex.setBarcodeNames(Arrays.asList(barcodes.split(",")));
+      }
+
+      // set the options of the assignment
+      demultiplex.setThreadNumber(threads);
+      demultiplex.setKmerLength(kmer);
+      demultiplex.setSearchLength(searchLength);
+      demultiplex.setErrorRate(errorRate);
+
+      // execute the demultiplexing
+      demultiplex.execution();
+
+    } catch (Exception e3) {
+      e3.printStackTrace();
+    }
+  }
+}
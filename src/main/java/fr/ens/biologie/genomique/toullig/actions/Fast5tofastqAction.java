@@ -64,6 +64,9 @@ public class Fast5tofastqAction extends AbstractAction {
     File dirFast5 = null;
     File dirOutputFastq = null;
     boolean merge = false;
+    boolean deduplicate = false;
+    int threads = 1;
+    int prefetch = 0;
 
     try {
 
@@ -132,13 +135,56 @@ public class Fast5tofastqAction extends AbstractAction {
 
       }
 
+      // Get deduplicate options
+      if (line.hasOption("deduplicate")) {
+        deduplicate =
+            Boolean.parseBoolean(line.getOptionValue("deduplicate"));
+      }
+
+      // Get number of threads
+      if (line.hasOption("threads")) {
+
+        try {
+          threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+
+        // test if the number of threads is valid
+        if (threads < 1) {
+          System.out.println("The number of threads: "
+              + line.getOptionValue("threads")
+              + " is incorrect please entry a positive number");
+          help(options);
+        }
+      }
+
+      // Get number of files read ahead
+      if (line.hasOption("prefetch")) {
+
+        try {
+          prefetch = Integer.parseInt(line.getOptionValue("prefetch"));
+        } catch (NumberFormatException e) {
+          prefetch = -1;
+        }
+
+        // test if the number of files read ahead is valid
+        if (prefetch < 0) {
+          System.out.println("The number of files read ahead: "
+              + line.getOptionValue("prefetch")
+              + " is incorrect please entry a positive number or 0");
+          help(options);
+        }
+      }
+
     } catch (ParseException e) {
       System.out.println(
           "Error while parsing command line arguments: " + e.getMessage());
     }
 
     // Execute program in local mode
-    run(status, type, compress, dirFast5, dirOutputFastq, merge, arguments);
+    run(status, type, compress, dirFast5, dirOutputFastq, merge, deduplicate,
+        threads, prefetch, arguments);
   }
 
   //
@@ -186,6 +232,24 @@ public class Fast5tofastqAction extends AbstractAction {
             "merge the sequence of status choose [true/false];(default: false)")
         .create("merge"));
 
+    // add option for deduplicate
+    options.addOption(OptionBuilder.withArgName("deduplicate").hasArg()
+        .withDescription(
+            "skip the reads already converted (same read id) [true/false];(default: false)")
+        .create("deduplicate"));
+
+    // add option for threads
+    options.addOption(OptionBuilder.withArgName("threads").hasArg()
+        .withDescription(
+            "set the number of threads of the conversion;(default: 1)")
+        .create("threads"));
+
+    // add option for prefetch
+    options.addOption(OptionBuilder.withArgName("prefetch").hasArg()
+        .withDescription(
+            "set the number of fast5 files read ahead of each conversion thread, 0 to disable;(default: 0)")
+        .create("prefetch"));
+
     // return options
     return options;
   }
@@ -218,10 +282,14 @@ public class Fast5tofastqAction extends AbstractAction {
    * @param dirFast5, the root directory of the run fast5
    * @param dirOutputFastq, the output directory for fastq
    * @param merge, boolean for assemble all data
+   * @param deduplicate, boolean for skip the reads already converted
+   * @param threads, the number of threads of the conversion
+   * @param prefetch, the number of fast5 files read ahead
    */
   private static void run(final String status, final String type,
       final String compress, final File dirFast5, final File dirOutputFastq,
-      final boolean merge, List<String> arguments) {
+      final boolean merge, final boolean deduplicate, final int threads,
+      final int prefetch, List<String> arguments) {
 
     // Get the Begin Date of the action
     Date beginDate = new Date();
@@ -234,6 +302,17 @@ public class Fast5tofastqAction extends AbstractAction {
       // output file(ex : .._fail_complement.fastq)
       if5.setMergeAllStatusFast5(merge);
 
+      // set the number of threads of the conversion
+      if5.setThreadNumber(threads);
+
+      // set the number of files read ahead of the conversion
+      if5.setPrefetchDepth(prefetch);
+
+      // set the detection of the reads already converted
+      if (deduplicate) {
+        if5.enableDeduplication();
+      }
+
       // If the Experimental protocol is not barcoded
       if (status.contains("fail")) {
         if5.enableProcessFail();
@@ -294,7 +373,10 @@ public class Fast5tofastqAction extends AbstractAction {
             new Fast5ToFastqReporter(if5, dirOutputFastq);
         logIf5.createLogConversionFastq(beginDate, endDate, arguments);
         logIf5.createLogCorruptFile();
+        logIf5.createLogDuplicateFile();
         logIf5.createLogWorkflow();
+        logIf5.createLogYieldStatistics();
+        logIf5.createLogReadDistributions();
 
       } catch (Exception e1) {
         e1.printStackTrace();
@@ -9,6 +9,7 @@ import org.apache.commons.cli.*;
 
 import fr.ens.biologie.genomique.eoulsan.actions.AbstractAction;
 import fr.ens.biologie.genomique.toullig.Globals;
+import fr.ens.biologie.genomique.toullig.trimming.AdapterKmerFilter;
 import fr.ens.biologie.genomique.toullig.trimming.TrimFastq;
 
 /**
@@ -58,6 +59,13 @@ public class TrimAction extends AbstractAction {
     String trimmer = "";
     String mode = "";
     String stats = "";
+    String offHeapReadStore = "";
+    String externalSort = "";
+    int threads = 1;
+    int cutadaptWorkers = 1;
+    int polyTail = 0;
+    int adaptorKmer = 0;
+    String splitChimeras = "";
     double errorRateCutadapt = 0.0;
     double thresholdSW = 0;
     int lengthWindowsSW = 0;
@@ -104,6 +112,97 @@ public class TrimAction extends AbstractAction {
         stats = line.getOptionValue("stats").toLowerCase();
       }
 
+      // Get offHeapReadStore
+      if (line.hasOption("offHeapReadStore")) {
+        offHeapReadStore =
+            line.getOptionValue("offHeapReadStore").toLowerCase();
+      }
+
+      // Get externalSort
+      if (line.hasOption("externalSort")) {
+        externalSort = line.getOptionValue("externalSort").toLowerCase();
+      }
+
+      // Get splitChimeras
+      if (line.hasOption("splitChimeras")) {
+        splitChimeras = line.getOptionValue("splitChimeras").toLowerCase();
+      }
+
+      // Get number of threads
+      if (line.hasOption("threads")) {
+
+        try {
+          threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+
+        // test if the number of threads is valid
+        if (threads < 1) {
+          System.out.println("The number of threads: "
+              + line.getOptionValue("threads")
+              + " is incorrect please entry a positive number");
+          help(options);
+        }
+      }
+
+      // Get the minimal length of the poly-A/T tails
+      if (line.hasOption("polyTail")) {
+
+        try {
+          polyTail = Integer.parseInt(line.getOptionValue("polyTail"));
+        } catch (NumberFormatException e) {
+          polyTail = -1;
+        }
+
+        // test if the length of the tails is valid
+        if (polyTail < 0) {
+          System.out.println("The length of the poly-A/T tails: "
+              + line.getOptionValue("polyTail")
+              + " is incorrect please entry a positive number");
+          help(options);
+        }
+      }
+
+      // Get the length of the adaptor k-mers of the prefilter
+      if (line.hasOption("adaptorKmer")) {
+
+        try {
+          adaptorKmer = Integer.parseInt(line.getOptionValue("adaptorKmer"));
+        } catch (NumberFormatException e) {
+          adaptorKmer = -1;
+        }
+
+        // test if the length of the k-mers is valid
+        if (adaptorKmer < 0
+            || adaptorKmer > AdapterKmerFilter.MAX_KMER_LENGTH) {
+          System.out.println("The length of the adaptor k-mers: "
+              + line.getOptionValue("adaptorKmer")
+              + " is incorrect please entry a number between 0 and "
+              + AdapterKmerFilter.MAX_KMER_LENGTH);
+          help(options);
+        }
+      }
+
+      // Get number of cutadapt workers
+      if (line.hasOption("cutadaptWorkers")) {
+
+        try {
+          cutadaptWorkers =
+              Integer.parseInt(line.getOptionValue("cutadaptWorkers"));
+        } catch (NumberFormatException e) {
+          cutadaptWorkers = 0;
+        }
+
+        // test if the number of cutadapt workers is valid
+        if (cutadaptWorkers < 1) {
+          System.out.println("The number of cutadapt workers: "
+              + line.getOptionValue("cutadaptWorkers")
+              + " is incorrect please entry a positive number");
+          help(options);
+        }
+      }
+
       // Get addIndexOutlier
       if (line.hasOption("addIndexOutlier")) {
         addIndexOutlier = Integer
@@ -181,10 +280,12 @@ public class TrimAction extends AbstractAction {
           "Error while parsing command line arguments: " + e.getMessage());
     }
     // Execute program in local mode
-    run(trimmer, mode, stats, addIndexOutlier, errorRateCutadapt, thresholdSW,
-        lengthWindowsSW, seedMismatchesTrimmomatic,
-        palindromeClipThresholdTrimmomatic, simpleClipThreshold, samFile,
-        fastqFile, fastqOutputFile, adaptorFile, workDir);
+    run(trimmer, mode, stats, offHeapReadStore, externalSort, threads,
+        cutadaptWorkers, polyTail, adaptorKmer, splitChimeras,
+        addIndexOutlier, errorRateCutadapt, thresholdSW, lengthWindowsSW,
+        seedMismatchesTrimmomatic, palindromeClipThresholdTrimmomatic,
+        simpleClipThreshold, samFile, fastqFile, fastqOutputFile, adaptorFile,
+        workDir);
   }
 
   //
@@ -212,7 +313,7 @@ public class TrimAction extends AbstractAction {
     // add option for trimmer
     options.addOption(OptionBuilder.withArgName("trimmer").hasArg()
         .withDescription(
-            "name of trimmer use [cutadapt | trimmomatic | no] (default : cutadapt)")
+            "name of trimmer use [cutadapt | trimmomatic | aligner | no] (default : cutadapt)")
         .create("trimmer"));
 
     // add option for mode
@@ -226,6 +327,48 @@ public class TrimAction extends AbstractAction {
             "make somes stats on the cutadaptTrimming [true | false] (default : false)")
         .create("stats"));
 
+    // add option for the storage of the reads outside of the heap
+    options.addOption(OptionBuilder.withArgName("offHeapReadStore").hasArg()
+        .withDescription(
+            "store the reads outside of the java heap [true | false] (default : false)")
+        .create("offHeapReadStore"));
+
+    // add option for the sort on disk of the unsorted input files
+    options.addOption(OptionBuilder.withArgName("externalSort").hasArg()
+        .withDescription(
+            "sort the sam and fastq files on disk if they are not in the same order [true | false] (default : false)")
+        .create("externalSort"));
+
+    // add option for threads
+    options.addOption(OptionBuilder.withArgName("threads").hasArg()
+        .withDescription(
+            "set the number of threads of the outlier position finder (default: 1)")
+        .create("threads"));
+
+    // add option for cutadapt workers
+    options.addOption(OptionBuilder.withArgName("cutadaptWorkers").hasArg()
+        .withDescription(
+            "set the number of cutadapt processes for each outlier side (default: 1)")
+        .create("cutadaptWorkers"));
+
+    // add option for the poly-A/T tails
+    options.addOption(OptionBuilder.withArgName("polyTail").hasArg()
+        .withDescription(
+            "set the minimal length of the poly-A/T tails removed of the outliers before the adaptors are searched (default: 0, the tails are kept)")
+        .create("polyTail"));
+
+    // add option for the adaptor k-mers of the prefilter
+    options.addOption(OptionBuilder.withArgName("adaptorKmer").hasArg()
+        .withDescription(
+            "set the length of the adaptor k-mers of the prefilter of the outliers, the outliers without these k-mers are not searched for the adaptors by the aligner or cutadapt (default: 0, no prefilter)")
+        .create("adaptorKmer"));
+
+    // add option for the split of the chimeric reads
+    options.addOption(OptionBuilder.withArgName("splitChimeras").hasArg()
+        .withDescription(
+            "split the reads at the adaptors found inside the trimmed reads [true | false] (default : false)")
+        .create("splitChimeras"));
+
     // add option for add Index to the Outlier during the trim
     options.addOption(OptionBuilder.withArgName("addIndexOutlier").hasArg()
         .withDescription(
@@ -234,7 +377,7 @@ public class TrimAction extends AbstractAction {
 
     // add option for error Rate Cutadapt
     options.addOption(OptionBuilder.withArgName("errorRateCutadapt").hasArg()
-        .withDescription("error rate for cutadapt (default: 0.5")
+        .withDescription("error rate for cutadapt and the adapter aligner (default: 0.5")
         .create("errorRateCutadapt"));
 
     // add option for threshold Side Window
@@ -293,9 +436,13 @@ public class TrimAction extends AbstractAction {
    * @param fastqOutputFile, a fastq trimmed at output
    */
   private static void run(final String trimmer, final String mode,
-      final String stats, final int addIndexOutlier,
-      final double errorRateCutadapt, final double thresholdSW,
-      final int lengthWindowsSW, final int seedMismatchesTrimmomatic,
+      final String stats, final String offHeapReadStore,
+      final String externalSort, final int threads,
+      final int cutadaptWorkers, final int polyTail, final int adaptorKmer,
+      final String splitChimeras, final int addIndexOutlier,
+      final double errorRateCutadapt,
+      final double thresholdSW, final int lengthWindowsSW,
+      final int seedMismatchesTrimmomatic,
       final int palindromeClipThresholdTrimmomatic,
       final int simpleClipThreshold, final File samFile, final File fastqFile,
       final File fastqOutputFile, final File adaptorFile, final File workDir) {
@@ -321,6 +468,33 @@ public class TrimAction extends AbstractAction {
         trim.setProcessStatsCutadapt();
       }
 
+      // if the reads are stored outside of the heap
+      if (offHeapReadStore.contains("true")) {
+        trim.setOffHeapReadStore();
+      }
+
+      // if the unsorted input files are sorted on disk
+      if (externalSort.contains("true")) {
+        trim.setExternalSort();
+      }
+
+      // set the number of threads of the outlier position finder
+      trim.setThreadNumber(threads);
+
+      // set the number of cutadapt processes for each outlier side
+      trim.setCutadaptWorkerNumber(cutadaptWorkers);
+
+      // set the minimal length of the poly-A/T tails removed of the outliers
+      trim.setPolyTailLength(polyTail);
+
+      // set the length of the adaptor k-mers of the prefilter of the outliers
+      trim.setAdaptorKmerLength(adaptorKmer);
+
+      // if the chimeric reads are split at the internal adaptors
+      if (splitChimeras.contains("true")) {
+        trim.setSplitChimeras();
+      }
+
       // set the threshold for Side Window method
       if (thresholdSW != 0) {
         trim.setThresholdSideWindow(thresholdSW);
@@ -360,6 +534,10 @@ public class TrimAction extends AbstractAction {
 
     } catch (Exception e3) {
       e3.printStackTrace();
+
+      // the trimmed fastq file is empty or partial
+      getLogger().severe("The trimming has failed: " + e3.getMessage());
+      System.exit(1);
     }
   }
 }
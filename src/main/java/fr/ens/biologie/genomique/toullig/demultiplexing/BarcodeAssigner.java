@@ -0,0 +1,229 @@
+package fr.ens.biologie.genomique.toullig.demultiplexing;
+
+import java.util.Arrays;
+
+/**
+ * Class of the assignment of the reads to the barcodes. The barcodes are
+ * searched at the ends of a read, the barcode at the start of the read and
+ * the reverse complement of the barcode at its end:
+ * <ul>
+ * <li>the k-mers of the ends of the read are seeded against the index of the
+ * barcodes, each hit gives a diagonal, the position of the start of the
+ * barcode in the read, and the hits of a barcode on the same diagonal, with
+ * the indels in a band, are counted together</li>
+ * <li>the barcodes seeded are verified by the edit distance of the barcode in
+ * the band of bases around its diagonal</li>
+ * </ul>
+ * A read is assigned to the barcode with the fewest errors if there are at
+ * most errorRate * length errors and if no other barcode has as few errors.
+ * The assigner is immutable and can be used by several threads.
+ * @author Aurelien Birer
+ */
+public final class BarcodeAssigner {
+
+  public static final int UNCLASSIFIED = -1;
+  public static final int DEFAULT_SEARCH_LENGTH = 150;
+  public static final double DEFAULT_ERROR_RATE = 0.2;
+
+  private final BarcodeIndex index;
+  private final int searchLength;
+  private final double errorRate;
+
+  // the maximal number of errors of each target
+  private final int[] maxErrors;
+
+  /**
+   * Constructor of the BarcodeAssigner class.
+   * @param index, the index of the barcodes
+   * @param searchLength, the length of the ends of the reads searched
+   * @param errorRate, the maximal error rate of a barcode
+   */
+  public BarcodeAssigner(BarcodeIndex index, int searchLength,
+      double errorRate) {
+
+    // test if the index is null
+    if (index == null) {
+      throw new NullPointerException("The index of the barcodes is null");
+    }
+
+    // test if the options are valid
+    if (searchLength < 1 || errorRate < 0 || errorRate >= 1) {
+      throw new IllegalArgumentException("Invalid options of the assigner: "
+          + searchLength + " " + errorRate);
+    }
+
+    this.index = index;
+    this.searchLength = searchLength;
+    this.errorRate = errorRate;
+    this.maxErrors = new int[index.getTargetNumber()];
+
+    for (int t = 0; t < this.maxErrors.length; t++) {
+      this.maxErrors[t] = (int) (errorRate * index.getTargetLength(t));
+    }
+  }
+
+  /**
+   * Method of the class BarcodeAssigner to get the maximal error rate of a
+   * barcode.
+   * @return the maximal error rate
+   */
+  public double getErrorRate() {
+    return this.errorRate;
+  }
+
+  /**
+   * Method of the class BarcodeAssigner to assign a read to a barcode.
+   * @param sequence, the sequence of the read
+   * @return the index of the barcode or UNCLASSIFIED
+   */
+  public int assign(String sequence) {
+
+    final int length = sequence.length();
+    final int targetNumber = this.index.getTargetNumber();
+
+    final int[] seeds = new int[targetNumber];
+    final int[] diagonals = new int[targetNumber];
+    final int[] barcodeErrors = new int[this.index.getBarcodeNumber()];
+    Arrays.fill(barcodeErrors, Integer.MAX_VALUE);
+
+    // the start of the read
+    searchEnd(sequence, 0, Math.min(this.searchLength, length), seeds,
+        diagonals, barcodeErrors);
+
+    // test if the end of the read is not in the start
+    if (length > this.searchLength) {
+      searchEnd(sequence, Math.max(length - this.searchLength, 0), length,
+          seeds, diagonals, barcodeErrors);
+    }
+
+    int result = UNCLASSIFIED;
+    int bestErrors = Integer.MAX_VALUE;
+    int secondErrors = Integer.MAX_VALUE;
+
+    for (int b = 0; b < barcodeErrors.length; b++) {
+
+      if (barcodeErrors[b] < bestErrors) {
+        secondErrors = bestErrors;
+        bestErrors = barcodeErrors[b];
+        result = b;
+      } else if (barcodeErrors[b] < secondErrors) {
+        secondErrors = barcodeErrors[b];
+      }
+    }
+
+    // test if the best barcode is not unique
+    if (secondErrors == bestErrors) {
+      return UNCLASSIFIED;
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the class BarcodeAssigner to search the barcodes in an end of a
+   * read.
+   * @param sequence, the sequence of the read
+   * @param start, the start of the end of the read
+   * @param end, the end of the end of the read
+   * @param seeds, the number of hits of each target, set by this method
+   * @param diagonals, the diagonal of each target, set by this method
+   * @param barcodeErrors, the fewest errors of each barcode verified, updated
+   *          by this method
+   */
+  private void searchEnd(final String sequence, final int start,
+      final int end, final int[] seeds, final int[] diagonals,
+      final int[] barcodeErrors) {
+
+    final int k = this.index.getKmerLength();
+    final int mask = (1 << (2 * k)) - 1;
+
+    Arrays.fill(seeds, 0);
+
+    //
+    // Seeding
+    //
+
+    int kmer = 0;
+    int validBases = 0;
+
+    for (int i = start; i < end; i++) {
+
+      final int code = BarcodeIndex.encode(sequence.charAt(i));
+
+      // test if the base breaks the k-mers
+      if (code == -1) {
+        validBases = 0;
+        continue;
+      }
+
+      kmer = (kmer << 2 | code) & mask;
+
+      // test if a k-mer ends at this base
+      if (++validBases < k) {
+        continue;
+      }
+
+      final int kmerStart = i - k + 1;
+
+      for (int h = this.index.hitStart(kmer); h < this.index
+          .hitEnd(kmer); h++) {
+
+        final int hit = this.index.hit(h);
+        final int target = hit >>> 16;
+        final int diagonal = kmerStart - (hit & 0xFFFF);
+
+        // test if the hit is on the diagonal of the target, else a single hit
+        // is replaced
+        if (seeds[target] > 0
+            && Math.abs(diagonal - diagonals[target]) <= band(target)) {
+          seeds[target]++;
+        } else if (seeds[target] <= 1) {
+          seeds[target] = 1;
+          diagonals[target] = diagonal;
+        }
+      }
+    }
+
+    //
+    // Banded verification
+    //
+
+    for (int target = 0; target < seeds.length; target++) {
+
+      // test if the target has been seeded
+      if (seeds[target] == 0) {
+        continue;
+      }
+
+      final int targetLength = this.index.getTargetLength(target);
+      final int from = Math.max(start, diagonals[target] - band(target));
+      final int to =
+          Math.min(end, diagonals[target] + targetLength + band(target));
+
+      // test if the band is too short for the target
+      if (to - from < targetLength - this.maxErrors[target]) {
+        continue;
+      }
+
+      final int errors = this.index.getMatcher(target)
+          .bestMatch(sequence.subSequence(from, to)).errors;
+      final int barcode = target / 2;
+
+      // test if the target is found
+      if (errors <= this.maxErrors[target] && errors < barcodeErrors[barcode]) {
+        barcodeErrors[barcode] = errors;
+      }
+    }
+  }
+
+  /**
+   * Method of the class BarcodeAssigner to get the width of the band of a
+   * target, the shift of the diagonal by the indels.
+   * @param target, the target
+   * @return the width of the band
+   */
+  private int band(final int target) {
+    return this.maxErrors[target] + 1;
+  }
+
+}
@@ -0,0 +1,367 @@
+package fr.ens.biologie.genomique.toullig.demultiplexing;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.bio.Alphabets.AMBIGUOUS_DNA_ALPHABET;
+import static fr.ens.biologie.genomique.eoulsan.bio.Sequence.reverseComplement;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.toullig.trimming.BitParallelMatcher;
+
+/**
+ * Class of the k-mer index of the barcodes. The barcodes and their reverse
+ * complements are the targets of the index: the target 2 * i is the barcode i
+ * and the target 2 * i + 1 its reverse complement. The k-mers are encoded with
+ * 2 bits per base and the index is a table of the hits of each k-mer, with the
+ * target and the position of the k-mer in the target. The index is immutable
+ * and can be used by several threads.
+ * @author Aurelien Birer
+ */
+public final class BarcodeIndex {
+
+  public static final int DEFAULT_KMER_LENGTH = 8;
+  private static final int MAX_KMER_LENGTH = 12;
+
+  private final int kmerLength;
+  private final String[] names;
+  private final String[] targets;
+  private final BitParallelMatcher[] matchers;
+
+  // the hits of the k-mer c are hits[offsets[c]] to hits[offsets[c + 1] - 1],
+  // a hit is target << 16 | position
+  private final int[] offsets;
+  private final int[] hits;
+
+  /**
+   * Constructor of the BarcodeIndex class. The barcodes with the same sequence
+   * are indexed once, with the name of the first one.
+   * @param barcodes, the sequences of the barcodes by name
+   * @param kmerLength, the length of the k-mers
+   */
+  public BarcodeIndex(Map<String, String> barcodes, int kmerLength) {
+
+    // test if the length of the k-mers is valid
+    if (kmerLength < 1 || kmerLength > MAX_KMER_LENGTH) {
+      throw new IllegalArgumentException("The length of the k-mers must be "
+          + "between 1 and " + MAX_KMER_LENGTH + ": " + kmerLength);
+    }
+
+    this.kmerLength = kmerLength;
+
+    // the names of the barcodes by sequence
+    final Map<String, String> uniqueBarcodes = new LinkedHashMap<>();
+
+    for (Map.Entry<String, String> e : barcodes.entrySet()) {
+
+      final String sequence = e.getValue().toUpperCase(Locale.ROOT);
+
+      // test if the barcode is long enough to be indexed
+      if (sequence.length() < kmerLength) {
+        throw new IllegalArgumentException("The barcode "
+            + e.getKey() + " is shorter than the k-mers: " + sequence);
+      }
+
+      // test if the sequence of the barcode is already indexed
+      if (uniqueBarcodes.containsKey(sequence)) {
+        getLogger().info("The barcode "
+            + e.getKey() + " has the same sequence as the barcode "
+            + uniqueBarcodes.get(sequence) + ", its reads are assigned to "
+            + uniqueBarcodes.get(sequence));
+        continue;
+      }
+
+      uniqueBarcodes.put(sequence, e.getKey());
+    }
+
+    // test if there is a barcode
+    if (uniqueBarcodes.isEmpty()) {
+      throw new IllegalArgumentException("No barcode to index");
+    }
+
+    final int barcodeNumber = uniqueBarcodes.size();
+    this.names = new String[barcodeNumber];
+    this.targets = new String[2 * barcodeNumber];
+    this.matchers = new BitParallelMatcher[2 * barcodeNumber];
+
+    int barcode = 0;
+    for (Map.Entry<String, String> e : uniqueBarcodes.entrySet()) {
+
+      this.names[barcode] = e.getValue();
+      this.targets[2 * barcode] = e.getKey();
+      this.targets[2 * barcode + 1] =
+          reverseComplement(e.getKey(), AMBIGUOUS_DNA_ALPHABET);
+      barcode++;
+    }
+
+    for (int t = 0; t < this.targets.length; t++) {
+      this.matchers[t] = new BitParallelMatcher(this.targets[t]);
+    }
+
+    //
+    // Build the table of the hits
+    //
+
+    this.offsets = new int[(1 << (2 * kmerLength)) + 1];
+
+    // count the hits of each k-mer
+    for (String target : this.targets) {
+
+      final int[] kmers = kmers(target);
+      for (int kmer : kmers) {
+        if (kmer != -1) {
+          this.offsets[kmer + 1]++;
+        }
+      }
+    }
+
+    for (int c = 1; c < this.offsets.length; c++) {
+      this.offsets[c] += this.offsets[c - 1];
+    }
+
+    this.hits = new int[this.offsets[this.offsets.length - 1]];
+    final int[] next = this.offsets.clone();
+
+    // fill the hits in the order of the targets
+    for (int t = 0; t < this.targets.length; t++) {
+
+      final int[] kmers = kmers(this.targets[t]);
+      for (int position = 0; position < kmers.length; position++) {
+        if (kmers[position] != -1) {
+          this.hits[next[kmers[position]]++] = t << 16 | position;
+        }
+      }
+    }
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the codes of the k-mers of a
+   * target.
+   * @param target, the target
+   * @return the code of the k-mer starting at each position or -1 if the
+   *         k-mer has a base other than A, C, G or T
+   */
+  private int[] kmers(final String target) {
+
+    final int[] result = new int[target.length() - this.kmerLength + 1];
+    final int mask = (1 << (2 * this.kmerLength)) - 1;
+    int kmer = 0;
+    int validBases = 0;
+
+    for (int i = 0; i < target.length(); i++) {
+
+      final int code = encode(target.charAt(i));
+
+      if (code == -1) {
+        validBases = 0;
+      } else {
+        kmer = (kmer << 2 | code) & mask;
+        validBases++;
+      }
+
+      // test if a k-mer ends at this base
+      if (i >= this.kmerLength - 1) {
+        result[i - this.kmerLength + 1] =
+            validBases >= this.kmerLength ? kmer : -1;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the 2 bits code of a base.
+   * @param c, the character of the base
+   * @return the code of the base or -1 if the base is not A, C, G or T
+   */
+  static int encode(final char c) {
+
+    switch (c) {
+    case 'A':
+    case 'a':
+      return 0;
+    case 'C':
+    case 'c':
+      return 1;
+    case 'G':
+    case 'g':
+      return 2;
+    case 'T':
+    case 't':
+      return 3;
+    default:
+      return -1;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Method of the class BarcodeIndex to get the length of the k-mers.
+   * @return the length of the k-mers
+   */
+  public int getKmerLength() {
+    return this.kmerLength;
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the number of barcodes.
+   * @return the number of barcodes
+   */
+  public int getBarcodeNumber() {
+    return this.names.length;
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the name of a barcode.
+   * @param barcode, the index of the barcode
+   * @return the name of the barcode
+   */
+  public String getBarcodeName(int barcode) {
+    return this.names[barcode];
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the number of targets, the
+   * barcodes and their reverse complements.
+   * @return the number of targets
+   */
+  int getTargetNumber() {
+    return this.targets.length;
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the length of a target.
+   * @param target, the target
+   * @return the length of the target
+   */
+  int getTargetLength(int target) {
+    return this.targets[target].length();
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the matcher of a target.
+   * @param target, the target
+   * @return the matcher of the target
+   */
+  BitParallelMatcher getMatcher(int target) {
+    return this.matchers[target];
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the first hit of a k-mer.
+   * @param kmer, the code of the k-mer
+   * @return the index of the first hit
+   */
+  int hitStart(int kmer) {
+    return this.offsets[kmer];
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get the end of the hits of a k-mer.
+   * @param kmer, the code of the k-mer
+   * @return the index after the last hit
+   */
+  int hitEnd(int kmer) {
+    return this.offsets[kmer + 1];
+  }
+
+  /**
+   * Method of the class BarcodeIndex to get a hit.
+   * @param index, the index of the hit
+   * @return the hit, target &lt;&lt; 16 | position in the target
+   */
+  int hit(int index) {
+    return this.hits[index];
+  }
+
+  //
+  // Barcode file
+  //
+
+  /**
+   * Method of the class BarcodeIndex to read a fasta file of barcodes, as
+   * config_files/barcode_sequence.txt. The lines starting with # are
+   * comments.
+   * @param barcodeFile, the file of the barcodes
+   * @param selectedNames, the names of the barcodes to read or null to read
+   *          all the barcodes
+   * @return the sequences of the barcodes by name, in the order of the file
+   * @throws IOException if an IO error occur or if a selected barcode is not
+   *           found
+   */
+  public static Map<String, String> readBarcodes(File barcodeFile,
+      Collection<String> selectedNames) throws IOException {
+
+    final Map<String, String> result = new LinkedHashMap<>();
+    final Map<String, StringBuilder> sequences = new HashMap<>();
+    final List<String> names = new ArrayList<>();
+
+    try (BufferedReader reader =
+        new BufferedReader(new FileReader(barcodeFile))) {
+
+      String line;
+      StringBuilder sequence = null;
+
+      while ((line = reader.readLine()) != null) {
+
+        line = line.trim();
+
+        // test if the line is empty or a comment
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        // test if a barcode starts
+        if (line.startsWith(">")) {
+
+          final String name = line.substring(1).trim();
+
+          // test if the barcode is duplicated
+          if (sequences.containsKey(name)) {
+            throw new IOException(
+                "The barcode " + name + " is duplicated in " + barcodeFile);
+          }
+
+          sequence = new StringBuilder();
+          sequences.put(name, sequence);
+          names.add(name);
+
+        } else if (sequence != null) {
+          sequence.append(line);
+        }
+      }
+    }
+
+    for (String name : names) {
+
+      // test if the barcode is selected
+      if (selectedNames == null || selectedNames.contains(name)) {
+        result.put(name, sequences.get(name).toString());
+      }
+    }
+
+    // test if all the selected barcodes have been found
+    if (selectedNames != null && result.size() != selectedNames.size()) {
+
+      final List<String> missing = new ArrayList<>(selectedNames);
+      missing.removeAll(result.keySet());
+      throw new IOException(
+          "The barcodes " + missing + " are not found in " + barcodeFile);
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,322 @@
+package fr.ens.biologie.genomique.toullig.demultiplexing;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter;
+
+/**
+ * Class to demultiplex a fastq file of ONT with the barcodes of
+ * config_files/barcode_sequence.txt, without the barcode folders of
+ * Metrichor/Albacore. The reads are assigned by batches with several threads
+ * and written in a fastq file for each barcode, in the order of the input
+ * fastq file. The reads without barcode are written in unclassified.fastq.
+ * @author Aurelien Birer
+ */
+public class DemultiplexFastq {
+
+  private static final int BATCH_SIZE = 1000;
+  private static final String UNCLASSIFIED_NAME = "unclassified";
+
+  private final File fastqFile;
+  private final File barcodeFile;
+  private final File outputDirectory;
+
+  private Collection<String> barcodeNames;
+  private int kmerLength = BarcodeIndex.DEFAULT_KMER_LENGTH;
+  private int searchLength = BarcodeAssigner.DEFAULT_SEARCH_LENGTH;
+  private double errorRate = BarcodeAssigner.DEFAULT_ERROR_RATE;
+  private int threadNumber = 1;
+
+  /**
+   * A batch of reads and their barcodes.
+   */
+  private static final class ReadBatch {
+
+    final List<ReadSequence> reads = new ArrayList<>(BATCH_SIZE);
+    int[] barcodes;
+  }
+
+  /**
+   * Constructor of the DemultiplexFastq class.
+   * @param fastqFile, the fastq file to demultiplex
+   * @param barcodeFile, the fasta file of the barcodes
+   * @param outputDirectory, the directory of the fastq files of the barcodes
+   */
+  public DemultiplexFastq(File fastqFile, File barcodeFile,
+      File outputDirectory) {
+
+    // test if the fastq file exists
+    if (!fastqFile.exists()) {
+      throw new IllegalArgumentException(
+          "The fastq File doesn't exist: " + fastqFile);
+    }
+
+    // test if the barcode file exists
+    if (!barcodeFile.exists()) {
+      throw new IllegalArgumentException(
+          "The barcode File doesn't exist: " + barcodeFile);
+    }
+
+    this.fastqFile = fastqFile;
+    this.barcodeFile = barcodeFile;
+    this.outputDirectory = outputDirectory;
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Method of the class DemultiplexFastq to set the barcodes of the run.
+   * @param barcodeNames, the names of the barcodes or null for all the
+   *          barcodes of the barcode file
+   */
+  public void setBarcodeNames(Collection<String> barcodeNames) {
+    this.barcodeNames = barcodeNames;
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to set the length of the k-mers of
+   * the index of the barcodes.
+   * @param kmerLength, the length of the k-mers
+   */
+  public void setKmerLength(int kmerLength) {
+    this.kmerLength = kmerLength;
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to set the length of the ends of the
+   * reads where the barcodes are searched.
+   * @param searchLength, the length of the ends of the reads
+   */
+  public void setSearchLength(int searchLength) {
+    this.searchLength = searchLength;
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to set the maximal error rate of the
+   * barcodes.
+   * @param errorRate, the maximal error rate
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to set the number of threads.
+   * @param threadNumber, the number of threads
+   */
+  public void setThreadNumber(int threadNumber) {
+
+    // test if the number of threads is valid
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be positive: " + threadNumber);
+    }
+    this.threadNumber = threadNumber;
+  }
+
+  //
+  // Main execution
+  //
+
+  /**
+   * Method of the class DemultiplexFastq to execute the demultiplexing.
+   * @throws IOException if an IO error occur
+   */
+  public void execution() throws IOException {
+
+    final Map<String, String> barcodes =
+        BarcodeIndex.readBarcodes(this.barcodeFile, this.barcodeNames);
+    final BarcodeIndex index = new BarcodeIndex(barcodes, this.kmerLength);
+    final BarcodeAssigner assigner =
+        new BarcodeAssigner(index, this.searchLength, this.errorRate);
+
+    getLogger().info("Barcodes indexed: "
+        + index.getBarcodeNumber() + " with " + this.kmerLength + "-mers");
+
+    // test if the output directory can be created
+    if (!this.outputDirectory.isDirectory()
+        && !this.outputDirectory.mkdirs()) {
+      throw new IOException(
+          "Unable to create the output directory: " + this.outputDirectory);
+    }
+
+    // the writer of each barcode, the last one for the unclassified reads
+    final FastqWriter[] writers =
+        new FastqWriter[index.getBarcodeNumber() + 1];
+    final long[] counts = new long[writers.length];
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(this.threadNumber);
+
+    try (FastqReader reader = new FastqReader(this.fastqFile)) {
+
+      // the batches in the order of the fastq file
+      final Deque<Future<ReadBatch>> queue = new ArrayDeque<>();
+      ReadBatch batch = new ReadBatch();
+
+      for (ReadSequence read : reader) {
+
+        batch.reads.add(read);
+
+        // test if the batch is full
+        if (batch.reads.size() == BATCH_SIZE) {
+
+          queue.add(executor.submit(assignBatch(batch, assigner)));
+          batch = new ReadBatch();
+
+          // test if the oldest batch must be written
+          if (queue.size() > 2 * this.threadNumber) {
+            writeBatch(getBatch(queue.poll()), index, writers, counts);
+          }
+        }
+      }
+      reader.throwException();
+
+      queue.add(executor.submit(assignBatch(batch, assigner)));
+
+      while (!queue.isEmpty()) {
+        writeBatch(getBatch(queue.poll()), index, writers, counts);
+      }
+
+    } finally {
+
+      executor.shutdownNow();
+
+      for (FastqWriter writer : writers) {
+
+        // test if the writer is open
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+
+    //
+    // Log the number of reads of each barcode
+    //
+
+    for (int b = 0; b < writers.length; b++) {
+      getLogger().info("Number of reads of "
+          + outputName(index, b) + ": " + counts[b]);
+    }
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to create the task assigning the
+   * reads of a batch.
+   * @param batch, the batch
+   * @param assigner, the assigner of the barcodes
+   * @return the task
+   */
+  private static Callable<ReadBatch> assignBatch(final ReadBatch batch,
+      final BarcodeAssigner assigner) {
+
+    return new Callable<ReadBatch>() {
+
+      @Override
+      public ReadBatch call() {
+
+        batch.barcodes = new int[batch.reads.size()];
+
+        for (int i = 0; i < batch.barcodes.length; i++) {
+          batch.barcodes[i] = assigner.assign(batch.reads.get(i).getSequence());
+        }
+
+        return batch;
+      }
+    };
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to write the reads of a batch in the
+   * fastq files of their barcodes.
+   * @param batch, the assigned batch
+   * @param index, the index of the barcodes
+   * @param writers, the writers of the barcodes, opened by this method
+   * @param counts, the number of reads of each barcode
+   * @throws IOException if an IO error occur
+   */
+  private void writeBatch(final ReadBatch batch, final BarcodeIndex index,
+      final FastqWriter[] writers, final long[] counts) throws IOException {
+
+    for (int i = 0; i < batch.barcodes.length; i++) {
+
+      final int output = batch.barcodes[i] == BarcodeAssigner.UNCLASSIFIED
+          ? writers.length - 1 : batch.barcodes[i];
+
+      // test if the fastq file of the barcode is open
+      if (writers[output] == null) {
+        writers[output] = new FastqWriter(new BufferedWriter(
+            new FileWriter(new File(this.outputDirectory,
+                outputName(index, output) + ".fastq")),
+            1 << 16));
+      }
+
+      writers[output].write(batch.reads.get(i));
+      counts[output]++;
+    }
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to get the name of an output.
+   * @param index, the index of the barcodes
+   * @param output, the barcode or the number of barcodes for the unclassified
+   *          reads
+   * @return the name of the output
+   */
+  private static String outputName(final BarcodeIndex index,
+      final int output) {
+
+    return output == index.getBarcodeNumber()
+        ? UNCLASSIFIED_NAME : index.getBarcodeName(output);
+  }
+
+  /**
+   * Method of the class DemultiplexFastq to get an assigned batch.
+   * @param future, the future of the batch
+   * @return the batch
+   * @throws IOException if the assignment has failed
+   */
+  private static ReadBatch getBatch(final Future<ReadBatch> future)
+      throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("The demultiplexing has been interrupted", e);
+    } catch (ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+}
@@ -1,12 +1,20 @@
 package fr.ens.biologie.genomique.toullig.fast5tofastq;
 
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+import fr.ens.biologie.genomique.toullig.fast5tofastq.Fast5ToFastq.SequenceType;
 import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.GZIPOutputStream;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
@@ -25,8 +33,15 @@ class DirectoryProcessor {
   private final boolean saveCompressGZIP;
   private final boolean saveCompressBZIP2;
   private final File repertoryFastqOutput;
+  private final int threadNumber;
+  private final int prefetchDepth;
 
   private final List<File> listCorruptFast5Files = new ArrayList<>();
+  private final List<File> listDuplicateFast5Files = new ArrayList<>();
+  private final ReadIdDeduplicator deduplicator;
+  private final YieldStatistics yieldStatistics = new YieldStatistics();
+  private final Map<String, ReadStatistics[]> readStatistics =
+      new LinkedHashMap<>();
 
   private final Fast5.Version version;
   private final Fast5.Type type;
@@ -43,6 +58,10 @@ class DirectoryProcessor {
    * @param saveTranscriptSequence save transcript sequence
    * @param saveCompressGZIP use GZIP compression for output file
    * @param saveCompressBZIP2 use BZIP2 compression for output file
+   * @param deduplicateReads skip the reads already converted
+   * @param threadNumber the number of threads of the conversion
+   * @param prefetchDepth the number of files read ahead of each conversion
+   *          thread, 0 to disable the read ahead
    * @param status the status of the ONT run
    * @param basecaller the basecaller of the ONT run
    * @param version the version of the ONT run
@@ -53,8 +72,10 @@ class DirectoryProcessor {
       final boolean saveComplementSequence, final boolean saveTemplateSequence,
       final boolean saveConsensusSequence, final boolean saveTranscriptSequence,
       final boolean saveCompressGZIP, final boolean saveCompressBZIP2,
-      Fast5.Status status, Fast5.Basecaller basecaller, Fast5.Version version,
-      Fast5.Type type, Fast5.ChemistryVersion chemistryVersion) {
+      final boolean deduplicateReads, final int threadNumber,
+      final int prefetchDepth, Fast5.Status status, Fast5.Basecaller basecaller,
+      Fast5.Version version, Fast5.Type type,
+      Fast5.ChemistryVersion chemistryVersion) {
 
     // test if the fastq output repertory is valide
     if (repertoryFastqOutput.isDirectory()) {
@@ -79,6 +100,13 @@ class DirectoryProcessor {
     this.saveCompressGZIP = saveCompressGZIP;
     this.saveCompressBZIP2 = saveCompressBZIP2;
 
+    this.threadNumber = Math.max(1, threadNumber);
+    this.prefetchDepth = Math.max(0, prefetchDepth);
+
+    // the ids of the reads are stored in the fastq output directory
+    this.deduplicator = deduplicateReads
+        ? new ReadIdDeduplicator(this.repertoryFastqOutput) : null;
+
     this.status = status;
     this.basecaller = basecaller;
     this.version = version;
@@ -137,6 +165,113 @@ class DirectoryProcessor {
     }
   }
 
+  /**
+   * This class store the counters and the statistics of a conversion thread,
+   * they are merged at the end of the conversion of a directory.
+   */
+  private static final class ConversionContext {
+
+    private final LocalReporter localReporter = new LocalReporter();
+    private final YieldStatistics yieldStatistics = new YieldStatistics();
+    private final ReadStatistics[] readStatistics =
+        new ReadStatistics[SequenceType.values().length];
+    private final List<File> listCorruptFast5Files = new ArrayList<>();
+    private final List<File> listDuplicateFast5Files = new ArrayList<>();
+    private final Fast5Prefetcher prefetcher;
+
+    /**
+     * Constructor.
+     * @param prefetcher the prefetcher of the files, can be null
+     */
+    private ConversionContext(final Fast5Prefetcher prefetcher) {
+
+      this.prefetcher = prefetcher;
+
+      for (int i = 0; i < this.readStatistics.length; i++) {
+        this.readStatistics[i] = new ReadStatistics();
+      }
+    }
+  }
+
+  /**
+   * This class implement the conversion of a range of the list of fast5 files.
+   * The range is split in two tasks until it contains only one file, so the
+   * idle threads of the pool can steal the largest remaining ranges.
+   */
+  private final class ConversionTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<File> listFast5Files;
+    private final int from;
+    private final int to;
+    private final Writer complementWriter;
+    private final Writer templateWriter;
+    private final Writer consensusWriter;
+    private final Writer transcriptWriter;
+    private final String status;
+    private final ThreadLocal<ConversionContext> contexts;
+
+    /**
+     * Constructor.
+     * @param listFast5Files the list of fast5 files
+     * @param from the index of the first file of the range
+     * @param to the index after the last file of the range
+     * @param complementWriter the writer of the complement sequence
+     * @param templateWriter the writer of the template sequence
+     * @param consensusWriter the writer of the consensus sequence
+     * @param transcriptWriter the writer of the transcript sequence
+     * @param status the status of the fast5 files
+     * @param contexts the contexts of the threads
+     */
+    private ConversionTask(final List<File> listFast5Files, final int from,
+        final int to, final Writer complementWriter,
+        final Writer templateWriter, final Writer consensusWriter,
+        final Writer transcriptWriter, final String status,
+        final ThreadLocal<ConversionContext> contexts) {
+
+      this.listFast5Files = listFast5Files;
+      this.from = from;
+      this.to = to;
+      this.complementWriter = complementWriter;
+      this.templateWriter = templateWriter;
+      this.consensusWriter = consensusWriter;
+      this.transcriptWriter = transcriptWriter;
+      this.status = status;
+      this.contexts = contexts;
+    }
+
+    @Override
+    protected void compute() {
+
+      // test if the range contains only one file
+      if (this.to - this.from == 1) {
+
+        try {
+          readFast5WriteFastq(this.listFast5Files.get(this.from),
+              this.complementWriter, this.templateWriter,
+              this.consensusWriter, this.transcriptWriter, this.status,
+              this.contexts.get());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        return;
+      }
+
+      // the first half contains the largest files
+      final int middle = (this.from + this.to) >>> 1;
+      invokeAll(
+          new ConversionTask(this.listFast5Files, this.from, middle,
+              this.complementWriter, this.templateWriter,
+              this.consensusWriter, this.transcriptWriter, this.status,
+              this.contexts),
+          new ConversionTask(this.listFast5Files, middle, this.to,
+              this.complementWriter, this.templateWriter,
+              this.consensusWriter, this.transcriptWriter, this.status,
+              this.contexts));
+    }
+  }
+
   //
   // Getter
   //
@@ -149,10 +284,46 @@ class DirectoryProcessor {
     return this.listCorruptFast5Files;
   }
 
+  /**
+   * Get the list of the files of the reads already converted.
+   * @return a list with the duplicate files
+   */
+  List<File> getListDuplicateFast5Files() {
+    return this.listDuplicateFast5Files;
+  }
+
+  /**
+   * Get the yield statistics per channel and per time bin.
+   * @return a YieldStatistics object
+   */
+  YieldStatistics getYieldStatistics() {
+    return this.yieldStatistics;
+  }
+
+  /**
+   * Get the length and quality statistics of the reads for each status. The
+   * arrays are indexed by the ordinal of the sequence types.
+   * @return a map with the statistics of each status
+   */
+  Map<String, ReadStatistics[]> getReadStatistics() {
+    return this.readStatistics;
+  }
+
   //
   //
   //
 
+  /**
+   * Release the resources used by the deduplication of the reads.
+   * @throws IOException if the temporary files cannot be removed
+   */
+  void close() throws IOException {
+
+    if (this.deduplicator != null) {
+      this.deduplicator.close();
+    }
+  }
+
   /**
    * This method of the class Fast5ToFastq read fast5 files on a list and write
    * the fastq sequence.
@@ -169,15 +340,190 @@ class DirectoryProcessor {
       Writer transcriptWriter, String status, LocalReporter localReporter)
       throws IOException {
 
+    // the largest files are processed first by the pool of threads to avoid a
+    // long tail of the conversion
+    final List<File> workList = this.threadNumber == 1
+        ? listFast5Files : sortBySizeDescending(listFast5Files);
+
+    // read ahead the files of the work list
+    final Fast5Prefetcher prefetcher = this.prefetchDepth > 0
+        ? new Fast5Prefetcher(workList, this.prefetchDepth) : null;
+
+    try {
+
+      // test if the conversion use only one thread
+      if (this.threadNumber == 1) {
+        convertSequentially(workList, complementWriter, templateWriter,
+            consensusWriter, transcriptWriter, status, localReporter,
+            prefetcher);
+      } else {
+        convertInParallel(workList, complementWriter, templateWriter,
+            consensusWriter, transcriptWriter, status, localReporter,
+            prefetcher);
+      }
+
+    } finally {
+
+      // test if the files have been read ahead
+      if (prefetcher != null) {
+        prefetcher.close();
+        localReporter.incrCounter("prefetch", "prefetchHits",
+            prefetcher.getHits());
+        localReporter.incrCounter("prefetch", "prefetchMisses",
+            prefetcher.getMisses());
+      }
+    }
+  }
+
+  /**
+   * Convert a list of fast5 files with the current thread.
+   * @param listFast5Files is the list of fast5 file
+   * @param complementWriter is the writer of the complement sequence
+   * @param templateWriter is the writer of the template sequence
+   * @param consensusWriter is the writer of the consensus sequence
+   * @param transcriptWriter is the writer of the transcript sequence
+   * @param status is the status of the fast5 file
+   * @param localReporter is the local reporter of the conversion
+   * @param prefetcher is the prefetcher of the files, can be null
+   * @throws IOException, test the read of the file
+   */
+  private void convertSequentially(List<File> listFast5Files,
+      Writer complementWriter, Writer templateWriter, Writer consensusWriter,
+      Writer transcriptWriter, String status, LocalReporter localReporter,
+      Fast5Prefetcher prefetcher) throws IOException {
+
+    final ConversionContext context = new ConversionContext(prefetcher);
+
     // read fast5 files
     for (File fast5File : listFast5Files) {
 
       // process the translation of a fast5 file to the fastq
       readFast5WriteFastq(fast5File, complementWriter, templateWriter,
-          consensusWriter, transcriptWriter, status, localReporter);
+          consensusWriter, transcriptWriter, status, context);
     }
+
+    mergeContext(context, status, localReporter);
   }
 
+  /**
+   * Convert a list of fast5 files with a pool of threads.
+   * @param listFast5Files is the list of fast5 file, sorted by decreasing size
+   * @param complementWriter is the writer of the complement sequence
+   * @param templateWriter is the writer of the template sequence
+   * @param consensusWriter is the writer of the consensus sequence
+   * @param transcriptWriter is the writer of the transcript sequence
+   * @param status is the status of the fast5 file
+   * @param localReporter is the local reporter of the conversion
+   * @param prefetcher is the prefetcher of the files, can be null
+   * @throws IOException, test the read of the file
+   */
+  private void convertInParallel(List<File> listFast5Files,
+      Writer complementWriter, Writer templateWriter, Writer consensusWriter,
+      Writer transcriptWriter, String status, LocalReporter localReporter,
+      final Fast5Prefetcher prefetcher) throws IOException {
+
+    // the writers are shared by the threads: a fastq entry is written with a
+    // single call, synchronized on the writer. Each thread of the pool has its
+    // own counters and statistics
+    final List<ConversionContext> listContexts =
+        Collections.synchronizedList(new ArrayList<ConversionContext>());
+    final ThreadLocal<ConversionContext> contexts =
+        new ThreadLocal<ConversionContext>() {
+
+          @Override
+          protected ConversionContext initialValue() {
+
+            final ConversionContext context =
+                new ConversionContext(prefetcher);
+            listContexts.add(context);
+            return context;
+          }
+        };
+
+    final ForkJoinPool pool = new ForkJoinPool(this.threadNumber);
+    try {
+
+      pool.invoke(new ConversionTask(listFast5Files, 0, listFast5Files.size(),
+          complementWriter, templateWriter, consensusWriter, transcriptWriter,
+          status, contexts));
+
+    } catch (RuntimeException e) {
+
+      // test if the conversion has been stopped by an IO error
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    } finally {
+      pool.shutdown();
+    }
+
+    // merge the contexts of the threads
+    for (ConversionContext context : listContexts) {
+      mergeContext(context, status, localReporter);
+    }
+  }
+
+  /**
+   * Merge the counters and the statistics of a conversion thread.
+   * @param context the context of the thread
+   * @param status the status of the fast5 files
+   * @param localReporter the local reporter of the conversion
+   */
+  private void mergeContext(final ConversionContext context,
+      final String status, final LocalReporter localReporter) {
+
+    for (String group : context.localReporter.getCounterGroups()) {
+      for (String counter : context.localReporter.getCounterNames(group)) {
+        localReporter.incrCounter(group, counter,
+            context.localReporter.getCounterValue(group, counter));
+      }
+    }
+
+    this.yieldStatistics.merge(context.yieldStatistics);
+
+    final ReadStatistics[] statistics = this.readStatistics.get(status);
+    for (int i = 0; i < statistics.length; i++) {
+      statistics[i].merge(context.readStatistics[i]);
+    }
+
+    this.listCorruptFast5Files.addAll(context.listCorruptFast5Files);
+    this.listDuplicateFast5Files.addAll(context.listDuplicateFast5Files);
+  }
+
+  /**
+   * Sort a list of files by decreasing size.
+   * @param listFiles the list of files
+   * @return a new sorted list
+   */
+  private static List<File> sortBySizeDescending(final List<File> listFiles) {
+
+    // get the sizes only once, they are not cached by the File objects
+    final int n = listFiles.size();
+    final long[] sizes = new long[n];
+    final Integer[] indexes = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sizes[i] = listFiles.get(i).length();
+      indexes[i] = i;
+    }
+
+    Arrays.sort(indexes, new Comparator<Integer>() {
+
+      @Override
+      public int compare(final Integer i1, final Integer i2) {
+        return Long.compare(sizes[i2], sizes[i1]);
+      }
+    });
+
+    final List<File> result = new ArrayList<>(n);
+    for (Integer index : indexes) {
+      result.add(listFiles.get(index));
+    }
+
+    return result;
+  }
+
+
   /**
    * This method of the class Fast5ToFastq process the type of sequence and
    * launch the read of fast5 and write of fastq sequence.
@@ -192,6 +538,17 @@ class DirectoryProcessor {
     if (listFast5Files == null || listFast5Files.isEmpty()) {
       return;
     }
+
+    // create the statistics of the reads of this status
+    if (!this.readStatistics.containsKey(status)) {
+
+      ReadStatistics[] statistics =
+          new ReadStatistics[SequenceType.values().length];
+      for (int i = 0; i < statistics.length; i++) {
+        statistics[i] = new ReadStatistics();
+      }
+      this.readStatistics.put(status, statistics);
+    }
     // Create writters
 
     Writer complementWriter = null;
@@ -244,7 +601,8 @@ class DirectoryProcessor {
     // get the time of the end execution of the translation of a fast5 directory
     // into a fastq
     long end1 = System.currentTimeMillis();
-    getLogger().info("Time execution 1 thread:"
+    getLogger().info("Time execution "
+        + this.threadNumber + " thread(s):"
         + (end1 - start1) / 1000 + "s for a " + listFast5Files.size()
         + " number of fast5");
 
@@ -335,13 +693,17 @@ class DirectoryProcessor {
    * Process a sequence.
    * @param sequence sequence to process
    * @param writer Writer to use to write the sequence
-   * @param localReporter local reporter
+   * @param context the context of the conversion thread
    * @param counterName the counter name
+   * @param type the type of the sequence
+   * @param channel the channel number of the read
+   * @param startTime the start time of the read in seconds
    * @throws IOException if an error occurs while writing the sequence
    */
-  private static void processSequence(final String sequence,
-      final Writer writer, final LocalReporter localReporter,
-      final String counterName) throws IOException {
+  private void processSequence(final String sequence, final Writer writer,
+      final ConversionContext context, final String counterName,
+      final SequenceType type, final int channel, final double startTime)
+      throws IOException {
 
     if (sequence == null) {
       return;
@@ -355,15 +717,68 @@ class DirectoryProcessor {
     if (sequence.substring(indexCR1 + 1, indexCR2).equals("")) {
 
       getLogger().info("Sequence Null : "+sequence);
-      localReporter.incrCounter("numberSequenceWrite", counterName + "Null", 1);
+      context.localReporter.incrCounter("numberSequenceWrite",
+          counterName + "Null", 1);
     } else {
 
-      writer.write(sequence);
-      localReporter.incrCounter("numberSequenceWrite", counterName + "Write",
-          1);
+      // the writer is shared by the conversion threads
+      synchronized (writer) {
+        writer.write(sequence);
+      }
+      context.localReporter.incrCounter("numberSequenceWrite",
+          counterName + "Write", 1);
+
+      final int length = indexCR2 - indexCR1 - 1;
+
+      // add the read to the yield of its channel and of its time bin
+      context.yieldStatistics.addRead(type, channel, startTime, length);
+
+      // add the read to the length and quality distributions, the quality
+      // line follows the separator line
+      final int indexCR3 = sequence.indexOf('\n', indexCR2 + 1);
+      context.readStatistics[type.ordinal()].addRead(sequence, indexCR1 + 1,
+          indexCR3 + 1, length);
     }
   }
 
+  /**
+   * Get the channel number of a FAST5 file.
+   * @param f5 FAST5 file
+   * @return the channel number or 0 if the channel number is not available
+   */
+  private static int getChannelNumber(final Fast5 f5) {
+
+    try {
+      return f5.getChannelNumber();
+    } catch (HDF5Exception | NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Get the id of the read of a FAST5 file.
+   * @param f5 FAST5 file
+   * @param fast5File the path of the FAST5 file
+   * @return the read id or the name of the file if the read id is not
+   *         available
+   */
+  private static String getReadId(final Fast5 f5, final File fast5File) {
+
+    try {
+
+      final String readId = f5.getReadId();
+
+      // test if the read id is available
+      if (readId != null && !readId.isEmpty()) {
+        return readId;
+      }
+    } catch (HDF5Exception e) {
+      // the name of the file is used
+    }
+
+    return fast5File.getName();
+  }
+
   /**
    * Fill the counters for a FAST5 file
    * @param f5 FAST5 file
@@ -501,57 +916,82 @@ class DirectoryProcessor {
    * @param consensusWriter, a fastq output file
    * @param transcriptWriter, a fastq output file
    * @param status, the name of the root classification of a minion run
-   * @param localReporter, the object who stores log information
+   * @param context, the object who stores log information of the thread
    * @throws IOException, test the read of the file
    */
   private void readFast5WriteFastq(File fast5File, Writer complementWriter,
       Writer templateWriter, Writer consensusWriter, Writer transcriptWriter,
-      String status, LocalReporter localReporter) throws IOException {
+      String status, ConversionContext context) throws IOException {
+
+    // test if the file has been read ahead
+    if (context.prefetcher != null) {
+      context.prefetcher.consume(fast5File);
+    }
 
     // test if the fast5 is corrupt or readable
     try (Fast5 f5 = new Fast5(fast5File, this.status, this.basecaller,
         this.version, this.type, this.chemistryVersion)) {
 
+      // test if the read has already been converted
+      if (this.deduplicator != null
+          && this.deduplicator.isDuplicate(getReadId(f5, fast5File))) {
+
+        // incremente counter for duplicate files
+        context.localReporter.incrCounter("numberFiles",
+            "numberDuplicateFast5Files", 1);
+        context.listDuplicateFast5Files.add(fast5File);
+        return;
+      }
+
+      // get the position of the read on the flow cell and in the run
+      final int channel = getChannelNumber(f5);
+      final double startTime = f5.getReadStartTime();
+
       // test if the complementWriter is not null and if the complement sequence
       // is not null
       if (complementWriter != null) {
-        processSequence(f5.getComplementFastq(), complementWriter,
-            localReporter, status + "_numberSequenceComplement");
+        processSequence(f5.getComplementFastq(), complementWriter, context,
+            status + "_numberSequenceComplement", SequenceType.COMPLEMENT,
+            channel, startTime);
       }
 
       // test if the templateWriter is not null and if the template sequence is
       // not null
       if (templateWriter != null) {
-        processSequence(f5.getTemplateFastq(), templateWriter, localReporter,
-            status + "_numberSequenceTemplate");
+        processSequence(f5.getTemplateFastq(), templateWriter, context,
+            status + "_numberSequenceTemplate", SequenceType.TEMPLATE,
+            channel, startTime);
       }
 
       // test if the consensusWriter is not null and if the consensus sequence
       // is not null
       if (consensusWriter != null) {
-        processSequence(f5.getConsensusFastq(), consensusWriter, localReporter,
-            status + "_numberSequenceConsensus");
+        processSequence(f5.getConsensusFastq(), consensusWriter, context,
+            status + "_numberSequenceConsensus", SequenceType.CONSENSUS,
+            channel, startTime);
       }
 
       // test if the transcriptWriter is not null and if the transcript sequence
       // is not null
       if (transcriptWriter != null) {
-        processSequence(f5.getTranscriptFastq(), transcriptWriter,
-            localReporter, status + "_numberSequenceTranscript");
+        processSequence(f5.getTranscriptFastq(), transcriptWriter, context,
+            status + "_numberSequenceTranscript", SequenceType.TRANSCRIPT,
+            channel, startTime);
       }
 
       // test if the basecaller is Metrichor
       if (this.basecaller.toString().equals("METRICHOR")) {
 
         // Fill the counters
-        fillCounters(f5, status, localReporter);
+        fillCounters(f5, status, context.localReporter);
       }
 
     } catch (HDF5Exception e) {
 
       // incremente counter for corrupt files
-      localReporter.incrCounter("numberFiles", "numberCorruptFast5Files", 1);
-      this.listCorruptFast5Files.add(fast5File);
+      context.localReporter.incrCounter("numberFiles",
+          "numberCorruptFast5Files", 1);
+      context.listCorruptFast5Files.add(fast5File);
     }
   }
 
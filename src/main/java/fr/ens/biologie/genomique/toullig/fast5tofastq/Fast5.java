@@ -2,10 +2,12 @@ package fr.ens.biologie.genomique.toullig.fast5tofastq;
 
 import java.io.File;
 import java.util.Date;
+import java.util.List;
 
 import ch.systemsx.cisd.hdf5.HDF5FactoryProvider;
 import ch.systemsx.cisd.hdf5.IHDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
 
 /**
  * This class read a Fast5 of a minION (ONT) run. It's a HDF5 format file.
@@ -510,6 +512,89 @@ public class Fast5 implements AutoCloseable {
         .getStringAttribute("/UniqueGlobalKey/channel_id", "channel_number"));
   }
 
+  /**
+   * Method of the class Fast5 to obtain the start time of the read, since the
+   * beginning of the run, in the fast5 file.
+   * @return a double with the start time in seconds or -1 if it is not
+   *         available
+   */
+  public double getReadStartTime() {
+
+    try {
+
+      final String readGroup = getReadGroup();
+
+      // test if the read group contains a start time
+      if (readGroup == null
+          || !reader.hasAttribute(readGroup, "start_time")) {
+        return -1;
+      }
+
+      // test if the sample frequency is available
+      if (!reader.hasAttribute("/UniqueGlobalKey/context_tags",
+          "sample_frequency")) {
+        return -1;
+      }
+
+      final int sampleFrequency = getSampleFrequency();
+
+      // test if the sample frequency is correct
+      if (sampleFrequency <= 0) {
+        return -1;
+      }
+
+      // the start time is given in number of samples
+      return (double) reader.getLongAttribute(readGroup, "start_time")
+          / sampleFrequency;
+
+    } catch (HDF5Exception | NumberFormatException e) {
+
+      // the start time is only used by the statistics, the read is not corrupt
+      return -1;
+    }
+  }
+
+  /**
+   * Method of the class Fast5 to obtain the id of the read in the fast5 file.
+   * @return a string with the read id (an UUID) or null if it is not available
+   */
+  public String getReadId() {
+
+    final String readGroup = getReadGroup();
+
+    // test if the read group contains a read id
+    if (readGroup == null || !reader.hasAttribute(readGroup, "read_id")) {
+      return null;
+    }
+
+    return reader.getStringAttribute(readGroup, "read_id");
+  }
+
+  /**
+   * Method of the class Fast5 to obtain the path of the group of the read in
+   * the fast5 file.
+   * @return a string with the path of the read group or null if the group is
+   *         not found
+   */
+  private String getReadGroup() {
+
+    // test if the fast5 file is R9 or R7.3
+    for (String readsGroup : new String[] {"/Raw/Reads",
+        "/Analyses/EventDetection_000/Reads"}) {
+
+      if (this.reader.exists(readsGroup)) {
+
+        final List<String> members = reader.getAllGroupMembers(readsGroup);
+
+        if (!members.isEmpty()) {
+          return readsGroup + "/" + members.get(0);
+        }
+      }
+    }
+
+    return null;
+  }
+
   //
   //
   // Basecalling information getters
@@ -0,0 +1,229 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * This class read ahead the fast5 files of a work list in a background thread,
+ * so the files are in the page cache of the system when they are opened by the
+ * HDF5 library. As the HDF5 library needs a path to open a file, the files are
+ * not kept in memory: the read only warms the page cache. The read ahead
+ * follows the files actually consumed by the conversion: when a thread
+ * consumes a file, the "depth" next files of the work list are queued, as a
+ * thread of the pool converts the files of its range in the order of the work
+ * list. A range stolen by another thread only misses its first file. The files
+ * already consumed are skipped when the conversion is faster than the disk.
+ * @author Aurelien Birer
+ */
+class Fast5Prefetcher implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final List<File> listFast5Files;
+  private final Map<File, Integer> fileIndexes = new HashMap<>();
+  private final int depth;
+  private final BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+  private final Thread thread;
+
+  // the files queued or consumed, the files consumed and the files read ahead
+  private final BitSet queuedFiles = new BitSet();
+  private final BitSet consumedFiles = new BitSet();
+  private final BitSet prefetchedFiles = new BitSet();
+
+  private long hits;
+  private long misses;
+  private volatile long prefetchedBytes;
+
+  /**
+   * Constructor. The read ahead of the first files starts immediately.
+   * @param listFast5Files the list of fast5 files, in the order of their
+   *          conversion
+   * @param depth the number of files read ahead after a file consumed
+   */
+  Fast5Prefetcher(final List<File> listFast5Files, final int depth) {
+
+    // test if the depth is valid
+    if (depth < 1) {
+      throw new IllegalArgumentException(
+          "The depth of the prefetch must be positive: " + depth);
+    }
+
+    this.listFast5Files = listFast5Files;
+    this.depth = depth;
+
+    for (int i = 0; i < listFast5Files.size(); i++) {
+      this.fileIndexes.put(listFast5Files.get(i), i);
+    }
+
+    // the first files are consumed by the first thread
+    synchronized (this) {
+      enqueue(0, depth);
+    }
+
+    this.thread = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        prefetch();
+      }
+    }, "fast5-prefetcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  //
+  // Prefetch
+  //
+
+  /**
+   * Read ahead the files queued.
+   */
+  private void prefetch() {
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    try {
+
+      while (true) {
+
+        final int index = this.queue.take();
+
+        // test if the file has already been consumed
+        synchronized (this) {
+          if (this.consumedFiles.get(index)) {
+            continue;
+          }
+        }
+
+        warm(this.listFast5Files.get(index), buffer);
+
+        synchronized (this) {
+          this.prefetchedFiles.set(index);
+        }
+      }
+
+    } catch (InterruptedException e) {
+      // the prefetch has been stopped
+    }
+  }
+
+  /**
+   * Queue the files of a range of the work list which are not already queued
+   * or consumed.
+   * @param from the index of the first file of the range
+   * @param to the index after the last file of the range
+   */
+  private void enqueue(final int from, final int to) {
+
+    final int end = Math.min(to, this.listFast5Files.size());
+
+    for (int i = this.queuedFiles.nextClearBit(from); i < end;
+        i = this.queuedFiles.nextClearBit(i + 1)) {
+
+      this.queuedFiles.set(i);
+      this.queue.add(i);
+    }
+  }
+
+  /**
+   * Read a file to load it in the page cache.
+   * @param file the file to read
+   * @param buffer the buffer of the read
+   */
+  private void warm(final File file, final byte[] buffer) {
+
+    long bytes = 0;
+    try (InputStream in = new FileInputStream(file)) {
+
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        bytes += n;
+      }
+
+    } catch (IOException e) {
+      // the error will be reported by the conversion of the file
+    }
+
+    this.prefetchedBytes += bytes;
+  }
+
+  /**
+   * Inform the prefetcher that a file will be opened by the conversion. The
+   * next files of the work list are queued for the read ahead.
+   * @param file the file to open
+   */
+  synchronized void consume(final File file) {
+
+    final Integer index = this.fileIndexes.get(file);
+
+    // test if the file is not in the work list
+    if (index == null) {
+      return;
+    }
+
+    // test if the file has been read ahead
+    if (this.prefetchedFiles.get(index)) {
+      this.hits++;
+    } else {
+      this.misses++;
+    }
+
+    this.queuedFiles.set(index);
+    this.consumedFiles.set(index);
+    enqueue(index + 1, index + 1 + this.depth);
+  }
+
+  //
+  // Metrics
+  //
+
+  /**
+   * Get the number of files read ahead before their conversion.
+   * @return the number of hits
+   */
+  synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get the number of files not read ahead before their conversion.
+   * @return the number of misses
+   */
+  synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Get the number of files read ahead.
+   * @return the number of files read ahead
+   */
+  synchronized int getPrefetchedFileNumber() {
+    return this.prefetchedFiles.cardinality();
+  }
+
+  @Override
+  public void close() {
+
+    this.thread.interrupt();
+
+    final long hits = getHits();
+    final long total = hits + getMisses();
+
+    getLogger().info("Prefetch of the fast5 files: "
+        + hits + " hits on " + total + " files ("
+        + String.format("%.1f", total == 0 ? 0.0 : 100.0 * hits / total)
+        + "%), " + this.prefetchedBytes / (1024 * 1024) + " MB read ahead");
+  }
+
+}
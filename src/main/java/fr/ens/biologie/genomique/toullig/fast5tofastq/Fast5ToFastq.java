@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 
@@ -37,6 +38,11 @@ public class Fast5ToFastq {
   private boolean saveCompressGZIP;
   private boolean saveCompressBZIP2;
 
+  private boolean deduplicateReads;
+
+  private int threadNumber = 1;
+  private int prefetchDepth;
+
   private final LocalReporter localReporter = new LocalReporter();
 
   //
@@ -280,6 +286,65 @@ public class Fast5ToFastq {
     }
   }
 
+  /**
+   * This method of the class Fast5ToFastq get the number of duplicate files.
+   * @param localReporter, a localReporter object
+   * @return a long of the number of duplicate files
+   */
+  public static long getNumberDuplicateFast5Files(
+      LocalReporter localReporter) {
+
+    // test if the LocalReporter object is null
+    if (localReporter != null) {
+
+      // test if the number of duplicate fast5 files is not negatif
+      if (localReporter.getCounterValue("numberFiles",
+          "numberDuplicateFast5Files") <= 0) {
+        return 0;
+      }
+      return localReporter.getCounterValue("numberFiles",
+          "numberDuplicateFast5Files");
+    } else {
+
+      System.exit(0);
+      return 0;
+    }
+  }
+
+  /**
+   * This method of the class Fast5ToFastq get the number of files read ahead
+   * before their conversion.
+   * @param localReporter, a localReporter object
+   * @return a long of the number of files read ahead
+   */
+  public static long getNumberPrefetchHits(LocalReporter localReporter) {
+
+    // test if the LocalReporter object is null
+    if (localReporter == null
+        || localReporter.getCounterValue("prefetch", "prefetchHits") <= 0) {
+      return 0;
+    }
+
+    return localReporter.getCounterValue("prefetch", "prefetchHits");
+  }
+
+  /**
+   * This method of the class Fast5ToFastq get the number of files not read
+   * ahead before their conversion.
+   * @param localReporter, a localReporter object
+   * @return a long of the number of files not read ahead
+   */
+  public static long getNumberPrefetchMisses(LocalReporter localReporter) {
+
+    // test if the LocalReporter object is null
+    if (localReporter == null
+        || localReporter.getCounterValue("prefetch", "prefetchMisses") <= 0) {
+      return 0;
+    }
+
+    return localReporter.getCounterValue("prefetch", "prefetchMisses");
+  }
+
   /**
    * This method of the class Fast5ToFastq get the number of fail files.
    * @param localReporter, a localReporter object
@@ -387,6 +452,48 @@ public class Fast5ToFastq {
     return this.processor.getListCorruptFast5Files();
   }
 
+  /**
+   * This method of the class Fast5ToFastq get the list of the Fast5 of the
+   * reads already converted.
+   * @return a list of duplicate files
+   */
+  public List<File> getListDuplicateFast5Files() {
+
+    if (this.processor == null) {
+      return Collections.emptyList();
+    }
+
+    return this.processor.getListDuplicateFast5Files();
+  }
+
+  /**
+   * This method of the class Fast5ToFastq get the yield statistics per channel
+   * and per time bin of the run.
+   * @return a YieldStatistics object
+   */
+  YieldStatistics getYieldStatistics() {
+
+    if (this.processor == null) {
+      return new YieldStatistics();
+    }
+
+    return this.processor.getYieldStatistics();
+  }
+
+  /**
+   * This method of the class Fast5ToFastq get the length and quality
+   * statistics of the reads for each status.
+   * @return a map with the statistics of each status
+   */
+  Map<String, ReadStatistics[]> getReadStatistics() {
+
+    if (this.processor == null) {
+      return Collections.emptyMap();
+    }
+
+    return this.processor.getReadStatistics();
+  }
+
   //
   //
   // Setter Process
@@ -479,6 +586,55 @@ public class Fast5ToFastq {
     this.saveCompressBZIP2 = true;
   }
 
+  //
+  // Deduplication setter
+  //
+
+  /**
+   * This method of the class Fast5ToFastq set the detection of the reads
+   * already converted (same read id), the Fast5 files of these reads are
+   * skipped.
+   */
+  public void enableDeduplication() {
+    this.deduplicateReads = true;
+  }
+
+  //
+  // Thread number setter
+  //
+
+  /**
+   * This method of the class Fast5ToFastq set the number of threads of the
+   * conversion.
+   * @param threadNumber, the number of threads
+   */
+  public void setThreadNumber(int threadNumber) {
+
+    // test if the number of threads is valid
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be positive: " + threadNumber);
+    }
+    this.threadNumber = threadNumber;
+  }
+
+  /**
+   * This method of the class Fast5ToFastq set the number of fast5 files read
+   * ahead of each conversion thread to load them in the page cache.
+   * @param prefetchDepth, the number of files read ahead, 0 to disable the read
+   *          ahead
+   */
+  public void setPrefetchDepth(int prefetchDepth) {
+
+    // test if the depth of the read ahead is valid
+    if (prefetchDepth < 0) {
+      throw new IllegalArgumentException(
+          "The number of files read ahead must be positive or null: "
+              + prefetchDepth);
+    }
+    this.prefetchDepth = prefetchDepth;
+  }
+
   //
   //
   // Important methods
@@ -823,8 +979,9 @@ public class Fast5ToFastq {
 
       this.processor = new DirectoryProcessor(repertoryFastqOutput,
           saveComplementSequence, saveTemplateSequence, saveConsensusSequence,
-          saveTranscriptSequence, saveCompressGZIP, saveCompressBZIP2, status,
-          basecaller, version, type, chemistryVersion);
+          saveTranscriptSequence, saveCompressGZIP, saveCompressBZIP2,
+          deduplicateReads, threadNumber, prefetchDepth, status, basecaller,
+          version, type, chemistryVersion);
 
       if (basecaller == Fast5.Basecaller.METRICHOR || basecaller == null) {
 
@@ -840,6 +997,12 @@ public class Fast5ToFastq {
 
     } catch (Exception e) {
       e.printStackTrace();
+    } finally {
+
+      // remove the temporary files of the deduplication
+      if (this.processor != null) {
+        this.processor.close();
+      }
     }
 
     System.out.println("Conversion finish !");
@@ -1,6 +1,7 @@
 package fr.ens.biologie.genomique.toullig.fast5tofastq;
 
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+import fr.ens.biologie.genomique.toullig.fast5tofastq.Fast5ToFastq.SequenceType;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -22,7 +23,11 @@ public class Fast5ToFastqReporter {
   private final Fast5ToFastq f5;
   private Writer logWriter;
   private Writer logCorruptWriter;
+  private Writer logDuplicateWriter;
   private Writer logWorkflowWriter;
+  private Writer logYieldTsvWriter;
+  private Writer logYieldJsonWriter;
+  private Writer logReadDistributionsWriter;
 
   /**
    * Constructor of the Fast5ToFastqReporter class.
@@ -45,8 +50,16 @@ public class Fast5ToFastqReporter {
         new FileWriter(new File(fastqDir + "/logConversionFastq.txt"));
     this.logCorruptWriter =
         new FileWriter(new File(fastqDir + "/logCorruptFast5Files.txt"));
+    this.logDuplicateWriter =
+        new FileWriter(new File(fastqDir + "/logDuplicateFast5Files.txt"));
     this.logWorkflowWriter =
         new FileWriter(new File(fastqDir + "/logWorkflow.txt"));
+    this.logYieldTsvWriter =
+        new FileWriter(new File(fastqDir + "/logYieldStatistics.tsv"));
+    this.logYieldJsonWriter =
+        new FileWriter(new File(fastqDir + "/logYieldStatistics.json"));
+    this.logReadDistributionsWriter =
+        new FileWriter(new File(fastqDir + "/logReadDistributions.tsv"));
   }
 
   /**
@@ -120,6 +133,182 @@ public class Fast5ToFastqReporter {
     }
   }
 
+  /**
+   * Method to create a log about the list of fast5 files skipped because their
+   * read has already been converted.
+   * @throws IOException if an IO error occur
+   */
+  public void createLogDuplicateFile() throws IOException {
+    try {
+
+      // write the path of duplicate fast5 file
+      for (File file : this.f5.getListDuplicateFast5Files()) {
+        this.logDuplicateWriter.write(file.toString() + "\n");
+      }
+      this.logDuplicateWriter.close();
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Method to create a log about the number of reads and bases per channel and
+   * per time bin of the run, in TSV and JSON formats. Only the channels and the
+   * time bins with reads are written in the TSV file.
+   * @throws IOException if an IO error occur
+   */
+  public void createLogYieldStatistics() throws IOException {
+    try {
+
+      final YieldStatistics stats = this.f5.getYieldStatistics();
+
+      //
+      // TSV file
+      //
+
+      this.logYieldTsvWriter.write("section\ttype\tindex\treads\tbases\n");
+
+      for (SequenceType type : SequenceType.values()) {
+
+        // write the channels, the channel 0 contains the unknown channels
+        for (int channel = 0; channel <= YieldStatistics.CHANNEL_NUMBER;
+            channel++) {
+
+          final long reads = stats.getReadsPerChannel(type, channel);
+
+          // test if the channel contains reads
+          if (reads != 0) {
+            this.logYieldTsvWriter.write("channel\t"
+                + type.getName() + "\t" + channel + "\t" + reads + "\t"
+                + stats.getBasesPerChannel(type, channel) + "\n");
+          }
+        }
+
+        // write the time bins, the index is the start of the bin in seconds
+        for (int bin = 0; bin < YieldStatistics.TIME_BIN_NUMBER; bin++) {
+
+          final long reads = stats.getReadsPerTimeBin(type, bin);
+
+          // test if the time bin contains reads
+          if (reads != 0) {
+            this.logYieldTsvWriter.write("time\t"
+                + type.getName() + "\t"
+                + bin * YieldStatistics.TIME_BIN_DURATION + "\t" + reads
+                + "\t" + stats.getBasesPerTimeBin(type, bin) + "\n");
+          }
+        }
+      }
+      this.logYieldTsvWriter.close();
+
+      //
+      // JSON file
+      //
+
+      final StringBuilder sb = new StringBuilder();
+      sb.append("{\n  \"channelNumber\": ");
+      sb.append(YieldStatistics.CHANNEL_NUMBER);
+      sb.append(",\n  \"timeBinDuration\": ");
+      sb.append(YieldStatistics.TIME_BIN_DURATION);
+      sb.append(",\n  \"sequenceTypes\": {");
+
+      boolean first = true;
+      for (SequenceType type : SequenceType.values()) {
+
+        // test if the type of sequence has been written
+        if (stats.getReads(type) == 0) {
+          continue;
+        }
+
+        final int lastBin = stats.getLastTimeBin(type);
+        final long[] channelReads = new long[YieldStatistics.CHANNEL_NUMBER];
+        final long[] channelBases = new long[YieldStatistics.CHANNEL_NUMBER];
+        final long[] binReads = new long[lastBin + 1];
+        final long[] binBases = new long[lastBin + 1];
+
+        for (int i = 0; i < channelReads.length; i++) {
+          channelReads[i] = stats.getReadsPerChannel(type, i + 1);
+          channelBases[i] = stats.getBasesPerChannel(type, i + 1);
+        }
+
+        for (int i = 0; i < binReads.length; i++) {
+          binReads[i] = stats.getReadsPerTimeBin(type, i);
+          binBases[i] = stats.getBasesPerTimeBin(type, i);
+        }
+
+        sb.append(first ? "\n" : ",\n");
+        sb.append("    \"").append(type.getName()).append("\": {\n");
+        sb.append("      \"unknownChannelReads\": ")
+            .append(stats.getReadsPerChannel(type, 0)).append(",\n");
+        sb.append("      \"readsWithoutStartTime\": ")
+            .append(stats.getReadsWithoutStartTime(type)).append(",\n");
+        sb.append("      \"channelReads\": ")
+            .append(Arrays.toString(channelReads)).append(",\n");
+        sb.append("      \"channelBases\": ")
+            .append(Arrays.toString(channelBases)).append(",\n");
+        sb.append("      \"timeBinReads\": ")
+            .append(Arrays.toString(binReads)).append(",\n");
+        sb.append("      \"timeBinBases\": ")
+            .append(Arrays.toString(binBases)).append("\n    }");
+        first = false;
+      }
+      sb.append("\n  }\n}\n");
+
+      this.logYieldJsonWriter.write(sb.toString());
+      this.logYieldJsonWriter.close();
+
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Method to create a log with the histograms of the length and of the mean
+   * quality of the reads written for each status and type of sequence.
+   * @throws IOException if an IO error occur
+   */
+  public void createLogReadDistributions() throws IOException {
+    try {
+
+      this.logReadDistributionsWriter.write(
+          "histogram\tstatus\ttype\tlowerBound\tupperBound\treads\tbases\n");
+
+      for (Map.Entry<String, ReadStatistics[]> e : this.f5.getReadStatistics()
+          .entrySet()) {
+
+        for (SequenceType type : SequenceType.values()) {
+
+          final ReadStatistics stats = e.getValue()[type.ordinal()];
+          final String prefix = e.getKey() + "\t" + type.getName() + "\t";
+
+          // write the non empty buckets of the length histogram
+          for (int i = 0; i < ReadStatistics.LENGTH_BUCKET_NUMBER; i++) {
+
+            if (stats.getReadsPerLengthBucket(i) != 0) {
+              this.logReadDistributionsWriter.write("length\t"
+                  + prefix + ReadStatistics.getLengthBucketLowerBound(i) + "\t"
+                  + ReadStatistics.getLengthBucketUpperBound(i) + "\t"
+                  + stats.getReadsPerLengthBucket(i) + "\t"
+                  + stats.getBasesPerLengthBucket(i) + "\n");
+            }
+          }
+
+          // write the non empty bins of the quality histogram
+          for (int q = 0; q <= ReadStatistics.MAX_QUALITY; q++) {
+
+            if (stats.getReadsPerQuality(q) != 0) {
+              this.logReadDistributionsWriter.write("quality\t"
+                  + prefix + q + "\t" + q + "\t" + stats.getReadsPerQuality(q)
+                  + "\t\n");
+            }
+          }
+        }
+      }
+      this.logReadDistributionsWriter.close();
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
   //
   //
   // Create Log
@@ -137,6 +326,8 @@ public class Fast5ToFastqReporter {
         + Fast5ToFastq.getNumberFast5Files(this.localReporter));
     listLog.add("Input corrupt files: "
         + Fast5ToFastq.getNumberCorruptFast5Files(this.localReporter));
+    listLog.add("Input duplicate files: "
+        + Fast5ToFastq.getNumberDuplicateFast5Files(this.localReporter));
     listLog.add("Input calibrate strand files read: "
         + Fast5ToFastq.getNumberCalibrateStrandFast5Files(this.localReporter));
     listLog.add("Input unclassified files read: "
@@ -146,8 +337,74 @@ public class Fast5ToFastqReporter {
     listLog.add("Input pass files read: "
         + Fast5ToFastq.getNumberPassFast5Files(this.localReporter));
 
+    // add to the list log the hit rate of the read ahead
+    final long prefetchHits =
+        Fast5ToFastq.getNumberPrefetchHits(this.localReporter);
+    final long prefetchTotal = prefetchHits
+        + Fast5ToFastq.getNumberPrefetchMisses(this.localReporter);
+    if (prefetchTotal > 0) {
+      listLog.add("Input files read ahead: "
+          + prefetchHits + " on " + prefetchTotal + " ("
+          + String.format("%.1f", 100.0 * prefetchHits / prefetchTotal)
+          + "%)");
+    }
+
     // add to the list log the write file per type
     listLog.addAll(this.listWriteSequenceLog);
+
+    // add to the list log the length and quality statistics per type
+    listLog.addAll(getListLogReadStatistics());
+    return listLog;
+  }
+
+  /**
+   * This method of the class Fast5ToFastq get a list of log on the length and
+   * on the quality of the reads written.
+   * @return a list of string
+   */
+  private List<String> getListLogReadStatistics() {
+
+    List<String> listLog = new ArrayList<>();
+
+    for (Map.Entry<String, ReadStatistics[]> e : this.f5.getReadStatistics()
+        .entrySet()) {
+
+      listLog.add("");
+
+      for (SequenceType type : SequenceType.values()) {
+
+        final ReadStatistics stats = e.getValue()[type.ordinal()];
+
+        // test if sequences of this type have been written
+        if (stats.getReads() == 0) {
+          continue;
+        }
+
+        listLog.add("Barcode "
+            + e.getKey() + ", " + type.getName() + " reads: "
+            + stats.getReads() + ", bases: " + stats.getBases() + ", N50: "
+            + stats.getN50() + ", mean length: "
+            + String.format("%.1f", stats.getMeanLength())
+            + ", median length: " + stats.getMedianLength()
+            + ", min length: " + stats.getMinLength() + ", max length: "
+            + stats.getMaxLength());
+
+        // add the distribution of the mean qualities of the reads
+        StringBuilder sb = new StringBuilder();
+        for (int q = 0; q <= ReadStatistics.MAX_QUALITY; q++) {
+
+          if (stats.getReadsPerQuality(q) != 0) {
+            sb.append(' ').append(q).append(':')
+                .append(stats.getReadsPerQuality(q));
+          }
+        }
+
+        listLog.add("Barcode "
+            + e.getKey() + ", " + type.getName()
+            + " mean quality distribution (quality:reads):" + sb);
+      }
+    }
+
     return listLog;
   }
 
@@ -0,0 +1,631 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.ens.biologie.genomique.toullig.Utils;
+
+/**
+ * This class detect the reads already seen during the conversion of a run. A
+ * read is identified by its read id, an UUID stored on 128 bits. The ids are
+ * first tested with a scalable Bloom filter, so only the rare positive answers
+ * of the filter (the true duplicates and about 0.1% of the new reads) are
+ * verified with the exact list of the ids. This list is kept in a small
+ * in-memory buffer and in sorted runs written on the disk, with a sparse index
+ * of each run in memory to read only one block of the run for a verification.
+ * The methods are synchronized, so an instance can be shared between threads.
+ * @author Aurelien Birer
+ */
+class ReadIdDeduplicator implements Closeable {
+
+  private static final long BLOOM_INITIAL_CAPACITY = 1 << 20;
+  private static final double BLOOM_FALSE_POSITIVE_RATE = 0.001;
+
+  /** Number of ids of the in-memory buffer before writing a sorted run. */
+  private static final int BUFFER_CAPACITY = 1 << 18;
+
+  /** Number of runs on the disk before merging the runs. */
+  private static final int MAX_RUN_NUMBER = 16;
+
+  /** Number of ids between two entries of the index of a run. */
+  private static final int INDEX_INTERVAL = 256;
+
+  private static final int RECORD_SIZE = 16;
+
+  private final ScalableBloomFilter filter = new ScalableBloomFilter(
+      BLOOM_INITIAL_CAPACITY, BLOOM_FALSE_POSITIVE_RATE);
+  private final File temporaryDirectory;
+
+  // the buffer is an open addressing hash set, half-full at most
+  private final long[] bufferMostSignificantBits =
+      new long[2 * BUFFER_CAPACITY];
+  private final long[] bufferLeastSignificantBits =
+      new long[2 * BUFFER_CAPACITY];
+  private final boolean[] bufferUsed = new boolean[2 * BUFFER_CAPACITY];
+  private int bufferSize;
+
+  private final List<SortedRun> runs = new ArrayList<>();
+
+  private long readNumber;
+  private long duplicateNumber;
+  private long verificationNumber;
+
+  //
+  // Inner class
+  //
+
+  /**
+   * This class define a sorted run of ids on the disk.
+   */
+  private static final class SortedRun implements Closeable {
+
+    private final File file;
+    private final long size;
+    private final long[] indexMostSignificantBits;
+    private final long[] indexLeastSignificantBits;
+    private final RandomAccessFile raf;
+    private final byte[] block = new byte[INDEX_INTERVAL * RECORD_SIZE];
+
+    /**
+     * Constructor.
+     * @param file the file of the run
+     * @param size the number of ids of the run
+     * @param indexMostSignificantBits the most significant bits of the index
+     * @param indexLeastSignificantBits the least significant bits of the index
+     * @throws IOException if the run cannot be opened
+     */
+    private SortedRun(final File file, final long size,
+        final long[] indexMostSignificantBits,
+        final long[] indexLeastSignificantBits) throws IOException {
+
+      this.file = file;
+      this.size = size;
+      this.indexMostSignificantBits = indexMostSignificantBits;
+      this.indexLeastSignificantBits = indexLeastSignificantBits;
+      this.raf = new RandomAccessFile(file, "r");
+    }
+
+    /**
+     * Test if the run contains an id.
+     * @param msb the 64 most significant bits of the id
+     * @param lsb the 64 least significant bits of the id
+     * @return true if the run contains the id
+     * @throws IOException if the run cannot be read
+     */
+    private boolean contains(final long msb, final long lsb)
+        throws IOException {
+
+      // search the last block that starts with an id lower or equal to the id
+      int low = 0;
+      int high = this.indexMostSignificantBits.length - 1;
+      int blockIndex = -1;
+      while (low <= high) {
+
+        final int middle = (low + high) >>> 1;
+
+        if (compare(this.indexMostSignificantBits[middle],
+            this.indexLeastSignificantBits[middle], msb, lsb) <= 0) {
+          blockIndex = middle;
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+
+      // test if the id is lower than the first id of the run
+      if (blockIndex < 0) {
+        return false;
+      }
+
+      // read the block
+      final long start = (long) blockIndex * INDEX_INTERVAL;
+      final int count = (int) Math.min(INDEX_INTERVAL, this.size - start);
+      this.raf.seek(start * RECORD_SIZE);
+      this.raf.readFully(this.block, 0, count * RECORD_SIZE);
+
+      // search the id in the block
+      final ByteBuffer buffer = ByteBuffer.wrap(this.block);
+      low = 0;
+      high = count - 1;
+      while (low <= high) {
+
+        final int middle = (low + high) >>> 1;
+        final int cmp = compare(buffer.getLong(middle * RECORD_SIZE),
+            buffer.getLong(middle * RECORD_SIZE + 8), msb, lsb);
+
+        if (cmp == 0) {
+          return true;
+        }
+        if (cmp < 0) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      this.raf.close();
+
+      // test if the file can be removed
+      if (!this.file.delete()) {
+        getLogger().warning("Cannot remove the temporary file " + this.file);
+      }
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param temporaryDirectory the directory of the sorted runs
+   */
+  ReadIdDeduplicator(final File temporaryDirectory) {
+
+    this.temporaryDirectory = temporaryDirectory;
+  }
+
+  //
+  // Deduplication
+  //
+
+  /**
+   * Test if a read has already been seen. If the read is new, it is added to
+   * the reads seen.
+   * @param readId the id of the read
+   * @return true if the read has already been seen
+   * @throws IOException if the runs on the disk cannot be read or written
+   */
+  synchronized boolean isDuplicate(final String readId) throws IOException {
+
+    final long msb;
+    final long lsb;
+
+    // test if the read id is an UUID, otherwise the id is hashed on 128 bits
+    if (Utils.isUUID(readId)) {
+      msb = Utils.getUUIDMostSignificantBits(readId);
+      lsb = Utils.getUUIDLeastSignificantBits(readId);
+    } else {
+      msb = hash(readId, 0x5BD1E995L);
+      lsb = hash(readId, 0x27D4EB2F165667C5L);
+    }
+
+    this.readNumber++;
+
+    // test if the id might have been seen and verify it
+    if (this.filter.mightContain(msb, lsb)) {
+
+      this.verificationNumber++;
+
+      if (contains(msb, lsb)) {
+        this.duplicateNumber++;
+        return true;
+      }
+    }
+
+    this.filter.put(msb, lsb);
+    add(msb, lsb);
+
+    return false;
+  }
+
+  /**
+   * Get the number of duplicate reads found.
+   * @return the number of duplicate reads
+   */
+  synchronized long getDuplicateNumber() {
+    return this.duplicateNumber;
+  }
+
+  /**
+   * Get the number of reads verified with the exact list of ids.
+   * @return the number of verifications
+   */
+  synchronized long getVerificationNumber() {
+    return this.verificationNumber;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+
+    getLogger().info("Deduplication of the reads: "
+        + this.readNumber + " reads, " + this.duplicateNumber + " duplicates, "
+        + this.verificationNumber + " verifications, "
+        + this.filter.getMemoryUsage() / 1024 + " KB of Bloom filter");
+
+    for (SortedRun run : this.runs) {
+      run.close();
+    }
+    this.runs.clear();
+  }
+
+  //
+  // Exact list of ids
+  //
+
+  /**
+   * Test if an id is in the exact list of ids.
+   * @param msb the 64 most significant bits of the id
+   * @param lsb the 64 least significant bits of the id
+   * @return true if the id is in the list
+   * @throws IOException if the runs cannot be read
+   */
+  private boolean contains(final long msb, final long lsb)
+      throws IOException {
+
+    // search in the buffer
+    final int mask = this.bufferUsed.length - 1;
+    int slot = (int) ScalableBloomFilter.mix(msb ^ lsb) & mask;
+    while (this.bufferUsed[slot]) {
+
+      if (this.bufferMostSignificantBits[slot] == msb
+          && this.bufferLeastSignificantBits[slot] == lsb) {
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    // search in the runs
+    for (SortedRun run : this.runs) {
+      if (run.contains(msb, lsb)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Add an id to the exact list of ids.
+   * @param msb the 64 most significant bits of the id
+   * @param lsb the 64 least significant bits of the id
+   * @throws IOException if a run cannot be written
+   */
+  private void add(final long msb, final long lsb) throws IOException {
+
+    final int mask = this.bufferUsed.length - 1;
+    int slot = (int) ScalableBloomFilter.mix(msb ^ lsb) & mask;
+    while (this.bufferUsed[slot]) {
+      slot = (slot + 1) & mask;
+    }
+
+    this.bufferUsed[slot] = true;
+    this.bufferMostSignificantBits[slot] = msb;
+    this.bufferLeastSignificantBits[slot] = lsb;
+    this.bufferSize++;
+
+    // test if the buffer is full
+    if (this.bufferSize == BUFFER_CAPACITY) {
+      writeBuffer();
+    }
+  }
+
+  /**
+   * Write the buffer in a new sorted run and empty the buffer.
+   * @throws IOException if the run cannot be written
+   */
+  private void writeBuffer() throws IOException {
+
+    // get the ids of the buffer
+    final long[] msbs = new long[this.bufferSize];
+    final long[] lsbs = new long[this.bufferSize];
+    int count = 0;
+    for (int i = 0; i < this.bufferUsed.length; i++) {
+      if (this.bufferUsed[i]) {
+        msbs[count] = this.bufferMostSignificantBits[i];
+        lsbs[count] = this.bufferLeastSignificantBits[i];
+        count++;
+      }
+    }
+
+    sort(msbs, lsbs);
+
+    // write the run
+    final RunWriter writer = new RunWriter(count);
+    for (int i = 0; i < count; i++) {
+      writer.write(msbs[i], lsbs[i]);
+    }
+    this.runs.add(writer.close());
+
+    // empty the buffer
+    Arrays.fill(this.bufferUsed, false);
+    this.bufferSize = 0;
+
+    // test if the runs must be merged
+    if (this.runs.size() > MAX_RUN_NUMBER) {
+      mergeRuns();
+    }
+  }
+
+  /**
+   * Merge all the runs in one run.
+   * @throws IOException if the runs cannot be read or written
+   */
+  private void mergeRuns() throws IOException {
+
+    long size = 0;
+    for (SortedRun run : this.runs) {
+      size += run.size;
+    }
+
+    final RunWriter writer = new RunWriter(size);
+    final int runNumber = this.runs.size();
+    final DataInputStream[] inputs = new DataInputStream[runNumber];
+    final long[] remaining = new long[runNumber];
+    final long[] msbs = new long[runNumber];
+    final long[] lsbs = new long[runNumber];
+
+    try {
+
+      // read the first id of each run
+      for (int i = 0; i < runNumber; i++) {
+
+        final SortedRun run = this.runs.get(i);
+        inputs[i] = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(run.file), 1 << 16));
+        remaining[i] = run.size;
+        readNext(inputs[i], remaining, msbs, lsbs, i);
+      }
+
+      // write the lowest id while the runs are not empty
+      while (true) {
+
+        int lowest = -1;
+        for (int i = 0; i < runNumber; i++) {
+          // test if the run is not empty and has the lowest id
+          if (remaining[i] >= 0 && (lowest == -1
+              || compare(msbs[i], lsbs[i], msbs[lowest], lsbs[lowest]) < 0)) {
+            lowest = i;
+          }
+        }
+
+        // test if all the runs are empty
+        if (lowest == -1) {
+          break;
+        }
+
+        writer.write(msbs[lowest], lsbs[lowest]);
+        readNext(inputs[lowest], remaining, msbs, lsbs, lowest);
+      }
+
+    } finally {
+      for (DataInputStream input : inputs) {
+        if (input != null) {
+          input.close();
+        }
+      }
+    }
+
+    final SortedRun merged = writer.close();
+
+    // replace the runs by the merged run
+    for (SortedRun run : this.runs) {
+      run.close();
+    }
+    this.runs.clear();
+    this.runs.add(merged);
+  }
+
+  /**
+   * Read the next id of a run during a merge.
+   * @param input the input stream of the run
+   * @param remaining the number of ids to read of each run, -1 if the run is
+   *          empty
+   * @param msbs the current most significant bits of each run
+   * @param lsbs the current least significant bits of each run
+   * @param i the index of the run
+   * @throws IOException if the run cannot be read
+   */
+  private static void readNext(final DataInputStream input,
+      final long[] remaining, final long[] msbs, final long[] lsbs,
+      final int i) throws IOException {
+
+    if (remaining[i] == 0) {
+      remaining[i] = -1;
+      return;
+    }
+
+    msbs[i] = input.readLong();
+    lsbs[i] = input.readLong();
+    remaining[i]--;
+  }
+
+  /**
+   * This class write a sorted run and its index.
+   */
+  private final class RunWriter {
+
+    private final File file;
+    private final DataOutputStream out;
+    private final long[] indexMostSignificantBits;
+    private final long[] indexLeastSignificantBits;
+    private long count;
+
+    /**
+     * Constructor.
+     * @param size the number of ids of the run
+     * @throws IOException if the run cannot be created
+     */
+    private RunWriter(final long size) throws IOException {
+
+      final int indexSize =
+          (int) ((size + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+
+      this.file = File.createTempFile("toullig_readids_", ".run",
+          temporaryDirectory);
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(this.file), 1 << 16));
+      this.indexMostSignificantBits = new long[indexSize];
+      this.indexLeastSignificantBits = new long[indexSize];
+    }
+
+    /**
+     * Write an id, the ids must be written in ascending order.
+     * @param msb the 64 most significant bits of the id
+     * @param lsb the 64 least significant bits of the id
+     * @throws IOException if the id cannot be written
+     */
+    private void write(final long msb, final long lsb) throws IOException {
+
+      // test if the id is the first id of a block
+      if (this.count % INDEX_INTERVAL == 0) {
+        this.indexMostSignificantBits[(int) (this.count / INDEX_INTERVAL)] =
+            msb;
+        this.indexLeastSignificantBits[(int) (this.count / INDEX_INTERVAL)] =
+            lsb;
+      }
+
+      this.out.writeLong(msb);
+      this.out.writeLong(lsb);
+      this.count++;
+    }
+
+    /**
+     * Close the run.
+     * @return the sorted run written
+     * @throws IOException if the run cannot be closed
+     */
+    private SortedRun close() throws IOException {
+
+      this.out.close();
+
+      return new SortedRun(this.file, this.count,
+          this.indexMostSignificantBits, this.indexLeastSignificantBits);
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Compare two ids.
+   * @param msb1 the 64 most significant bits of the first id
+   * @param lsb1 the 64 least significant bits of the first id
+   * @param msb2 the 64 most significant bits of the second id
+   * @param lsb2 the 64 least significant bits of the second id
+   * @return a negative integer, zero, or a positive integer as the first id is
+   *         lower than, equal to, or greater than the second id
+   */
+  private static int compare(final long msb1, final long lsb1,
+      final long msb2, final long lsb2) {
+
+    if (msb1 != msb2) {
+      return msb1 < msb2 ? -1 : 1;
+    }
+    if (lsb1 != lsb2) {
+      return lsb1 < lsb2 ? -1 : 1;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Sort ids with a heap sort, that needs no additional memory.
+   * @param msbs the 64 most significant bits of the ids
+   * @param lsbs the 64 least significant bits of the ids
+   */
+  private static void sort(final long[] msbs, final long[] lsbs) {
+
+    final int n = msbs.length;
+
+    // build the heap
+    for (int i = n / 2 - 1; i >= 0; i--) {
+      siftDown(msbs, lsbs, i, n);
+    }
+
+    // move the greatest id at the end of the arrays
+    for (int end = n - 1; end > 0; end--) {
+      swap(msbs, lsbs, 0, end);
+      siftDown(msbs, lsbs, 0, end);
+    }
+  }
+
+  /**
+   * Move down an id in a heap.
+   * @param msbs the 64 most significant bits of the ids
+   * @param lsbs the 64 least significant bits of the ids
+   * @param i the index of the id to move
+   * @param n the size of the heap
+   */
+  private static void siftDown(final long[] msbs, final long[] lsbs,
+      final int i, final int n) {
+
+    int root = i;
+    while (2 * root + 1 < n) {
+
+      int child = 2 * root + 1;
+
+      // test if the right child is greater than the left child
+      if (child + 1 < n
+          && compare(msbs[child], lsbs[child], msbs[child + 1],
+              lsbs[child + 1]) < 0) {
+        child++;
+      }
+
+      // test if the heap is valid
+      if (compare(msbs[root], lsbs[root], msbs[child], lsbs[child]) >= 0) {
+        return;
+      }
+
+      swap(msbs, lsbs, root, child);
+      root = child;
+    }
+  }
+
+  /**
+   * Swap two ids.
+   * @param msbs the 64 most significant bits of the ids
+   * @param lsbs the 64 least significant bits of the ids
+   * @param i the index of the first id
+   * @param j the index of the second id
+   */
+  private static void swap(final long[] msbs, final long[] lsbs, final int i,
+      final int j) {
+
+    final long msb = msbs[i];
+    msbs[i] = msbs[j];
+    msbs[j] = msb;
+
+    final long lsb = lsbs[i];
+    lsbs[i] = lsbs[j];
+    lsbs[j] = lsb;
+  }
+
+  /**
+   * Hash a read id that is not an UUID on 64 bits.
+   * @param readId the read id
+   * @param seed the seed of the hash
+   * @return the hash of the read id
+   */
+  private static long hash(final String readId, final long seed) {
+
+    long h = seed;
+    for (int i = 0; i < readId.length(); i++) {
+      h = (h ^ readId.charAt(i)) * 0x100000001B3L;
+    }
+
+    return ScalableBloomFilter.mix(h ^ readId.length());
+  }
+
+}
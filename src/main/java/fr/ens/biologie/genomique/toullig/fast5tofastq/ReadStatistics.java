@@ -0,0 +1,276 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+/**
+ * This class accumulate the distributions of the length and of the mean
+ * quality of the reads written during the conversion. The memory used is fixed:
+ * the lengths are stored in a log-bucketed histogram (64 buckets per power of
+ * two, so the relative width of a bucket is lower than 1.6%) and the qualities
+ * in a linear histogram. As the number of bases of each length bucket is
+ * exact, the N50 and the median are given with the mean length of their
+ * bucket. An instance must not be shared between threads: use an instance per
+ * thread and merge them at the end.
+ * @author Aurelien Birer
+ */
+class ReadStatistics {
+
+  /** Maximal quality of the quality histogram. */
+  static final int MAX_QUALITY = 60;
+
+  /** Offset of the FASTQ quality encoding. */
+  private static final int PHRED_OFFSET = 33;
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_NUMBER = 1 << SUB_BUCKET_BITS;
+
+  /** Number of buckets of the length histogram. */
+  static final int LENGTH_BUCKET_NUMBER =
+      (Integer.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_NUMBER
+          + SUB_BUCKET_NUMBER;
+
+  // error probabilities of all the printable phred scores
+  private static final double[] ERROR_PROBABILITIES = new double[94];
+
+  static {
+    for (int q = 0; q < ERROR_PROBABILITIES.length; q++) {
+      ERROR_PROBABILITIES[q] = Math.pow(10, -q / 10.0);
+    }
+  }
+
+  private final long[] readsPerLength = new long[LENGTH_BUCKET_NUMBER];
+  private final long[] basesPerLength = new long[LENGTH_BUCKET_NUMBER];
+  private final long[] readsPerQuality = new long[MAX_QUALITY + 1];
+
+  private long reads;
+  private long bases;
+  private int minLength = Integer.MAX_VALUE;
+  private int maxLength;
+
+  //
+  // Accumulation
+  //
+
+  /**
+   * Add a FASTQ read to the statistics. The sequence and the quality are read
+   * directly in the FASTQ entry to avoid the creation of substrings.
+   * @param fastq the FASTQ entry
+   * @param sequenceStart the index of the first base of the sequence
+   * @param qualityStart the index of the first quality of the read
+   * @param length the length of the sequence
+   */
+  void addRead(final String fastq, final int sequenceStart,
+      final int qualityStart, final int length) {
+
+    final int bucket = getLengthBucket(length);
+
+    this.readsPerLength[bucket]++;
+    this.basesPerLength[bucket] += length;
+    this.reads++;
+    this.bases += length;
+    this.minLength = Math.min(this.minLength, length);
+    this.maxLength = Math.max(this.maxLength, length);
+
+    // test if the quality is complete
+    if (length == 0 || qualityStart + length > fastq.length()) {
+      return;
+    }
+
+    // the mean quality of the read is computed with the error probabilities
+    double sumErrorProbabilities = 0;
+    for (int i = qualityStart; i < qualityStart + length; i++) {
+
+      final int q = fastq.charAt(i) - PHRED_OFFSET;
+      sumErrorProbabilities += ERROR_PROBABILITIES[q < 0
+          ? 0 : q >= ERROR_PROBABILITIES.length
+              ? ERROR_PROBABILITIES.length - 1 : q];
+    }
+
+    // the epsilon avoids rounding errors for the reads with a constant quality
+    final int meanQuality =
+        (int) (-10 * Math.log10(sumErrorProbabilities / length) + 1e-6);
+
+    this.readsPerQuality[Math.max(0, Math.min(meanQuality, MAX_QUALITY))]++;
+  }
+
+  /**
+   * Add the counts of another ReadStatistics object to this object.
+   * @param other the statistics to merge
+   */
+  void merge(final ReadStatistics other) {
+
+    for (int i = 0; i < LENGTH_BUCKET_NUMBER; i++) {
+      this.readsPerLength[i] += other.readsPerLength[i];
+      this.basesPerLength[i] += other.basesPerLength[i];
+    }
+
+    for (int i = 0; i <= MAX_QUALITY; i++) {
+      this.readsPerQuality[i] += other.readsPerQuality[i];
+    }
+
+    this.reads += other.reads;
+    this.bases += other.bases;
+    this.minLength = Math.min(this.minLength, other.minLength);
+    this.maxLength = Math.max(this.maxLength, other.maxLength);
+  }
+
+  //
+  // Buckets
+  //
+
+  /**
+   * Get the bucket of a length. The lengths lower than 128 have their own
+   * bucket.
+   * @param length the length
+   * @return the index of the bucket
+   */
+  static int getLengthBucket(final int length) {
+
+    final int msb = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(length);
+    final int shift = Math.max(0, msb - SUB_BUCKET_BITS);
+
+    return shift * SUB_BUCKET_NUMBER + (length >>> shift);
+  }
+
+  /**
+   * Get the lowest length of a bucket.
+   * @param bucket the index of the bucket
+   * @return the lowest length of the bucket
+   */
+  static int getLengthBucketLowerBound(final int bucket) {
+
+    // test if the bucket contains only one length
+    if (bucket < 2 * SUB_BUCKET_NUMBER) {
+      return bucket;
+    }
+
+    final int shift = bucket / SUB_BUCKET_NUMBER - 1;
+
+    return (bucket - shift * SUB_BUCKET_NUMBER) << shift;
+  }
+
+  /**
+   * Get the highest length of a bucket.
+   * @param bucket the index of the bucket
+   * @return the highest length of the bucket
+   */
+  static int getLengthBucketUpperBound(final int bucket) {
+
+    // test if the bucket is the last bucket
+    if (bucket == LENGTH_BUCKET_NUMBER - 1) {
+      return Integer.MAX_VALUE;
+    }
+
+    return getLengthBucketLowerBound(bucket + 1) - 1;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of reads.
+   * @return the number of reads
+   */
+  long getReads() {
+    return this.reads;
+  }
+
+  /**
+   * Get the number of bases.
+   * @return the number of bases
+   */
+  long getBases() {
+    return this.bases;
+  }
+
+  /**
+   * Get the length of the shortest read.
+   * @return the length of the shortest read or 0 if there is no read
+   */
+  int getMinLength() {
+    return this.reads == 0 ? 0 : this.minLength;
+  }
+
+  /**
+   * Get the length of the longest read.
+   * @return the length of the longest read
+   */
+  int getMaxLength() {
+    return this.maxLength;
+  }
+
+  /**
+   * Get the mean length of the reads.
+   * @return the mean length
+   */
+  double getMeanLength() {
+    return this.reads == 0 ? 0 : (double) this.bases / this.reads;
+  }
+
+  /**
+   * Get the median length of the reads.
+   * @return the mean length of the bucket that contains the median
+   */
+  long getMedianLength() {
+
+    long count = 0;
+    for (int i = 0; i < LENGTH_BUCKET_NUMBER; i++) {
+
+      count += this.readsPerLength[i];
+
+      // test if the half of the reads is reached
+      if (2 * count >= this.reads && this.readsPerLength[i] != 0) {
+        return Math.round((double) this.basesPerLength[i] / readsPerLength[i]);
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Get the N50 of the reads.
+   * @return the mean length of the bucket that contains the N50
+   */
+  long getN50() {
+
+    long sum = 0;
+    for (int i = LENGTH_BUCKET_NUMBER - 1; i >= 0; i--) {
+
+      sum += this.basesPerLength[i];
+
+      // test if the half of the bases is reached
+      if (2 * sum >= this.bases && this.readsPerLength[i] != 0) {
+        return Math.round((double) this.basesPerLength[i] / readsPerLength[i]);
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Get the number of reads of a length bucket.
+   * @param bucket the index of the bucket
+   * @return the number of reads
+   */
+  long getReadsPerLengthBucket(final int bucket) {
+    return this.readsPerLength[bucket];
+  }
+
+  /**
+   * Get the number of bases of a length bucket.
+   * @param bucket the index of the bucket
+   * @return the number of bases
+   */
+  long getBasesPerLengthBucket(final int bucket) {
+    return this.basesPerLength[bucket];
+  }
+
+  /**
+   * Get the number of reads with a mean quality.
+   * @param quality the mean quality
+   * @return the number of reads
+   */
+  long getReadsPerQuality(final int quality) {
+    return this.readsPerQuality[quality];
+  }
+
+}
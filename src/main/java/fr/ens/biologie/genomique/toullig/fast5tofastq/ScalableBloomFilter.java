@@ -0,0 +1,208 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implement a scalable Bloom filter of 128 bits keys. The filter is
+ * a list of Bloom filters: when the current filter reaches its capacity, a new
+ * filter twice larger and with a twice lower false positive rate is added. So
+ * the number of keys has not to be known in advance and the global false
+ * positive rate stays lower than twice the false positive rate of the first
+ * filter. With a false positive rate of 0.1%, a key uses about 2 bytes.
+ * @author Aurelien Birer
+ */
+class ScalableBloomFilter {
+
+  private static final double LN2 = Math.log(2);
+  private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+  private final List<long[]> filters = new ArrayList<>();
+  private final List<Integer> hashNumbers = new ArrayList<>();
+
+  private long capacity;
+  private double falsePositiveRate;
+  private long count;
+  private long size;
+
+  /**
+   * Constructor.
+   * @param initialCapacity the number of keys of the first filter
+   * @param falsePositiveRate the false positive rate of the first filter
+   */
+  ScalableBloomFilter(final long initialCapacity,
+      final double falsePositiveRate) {
+
+    // test if the parameters are valid
+    if (initialCapacity < 1) {
+      throw new IllegalArgumentException(
+          "The capacity of the Bloom filter must be positive: "
+              + initialCapacity);
+    }
+    if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException(
+          "The false positive rate of the Bloom filter must be in ]0,1[: "
+              + falsePositiveRate);
+    }
+
+    // the first filter is created by the first put
+    this.capacity = initialCapacity;
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
+  //
+  // Filter
+  //
+
+  /**
+   * Test if a key might be in the filter.
+   * @param mostSignificantBits the 64 most significant bits of the key
+   * @param leastSignificantBits the 64 least significant bits of the key
+   * @return false if the key is not in the filter, true if the key might be in
+   *         the filter
+   */
+  boolean mightContain(final long mostSignificantBits,
+      final long leastSignificantBits) {
+
+    final long h1 = mix(mostSignificantBits ^ mix(leastSignificantBits));
+    final long h2 = mix(leastSignificantBits + GOLDEN_RATIO) | 1;
+
+    for (int i = 0; i < this.filters.size(); i++) {
+      if (contains(this.filters.get(i), this.hashNumbers.get(i), h1, h2)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Add a key to the filter.
+   * @param mostSignificantBits the 64 most significant bits of the key
+   * @param leastSignificantBits the 64 least significant bits of the key
+   */
+  void put(final long mostSignificantBits, final long leastSignificantBits) {
+
+    // test if the current filter is full
+    if (this.count == 0 || this.count >= this.capacity) {
+      addFilter();
+    }
+
+    final long h1 = mix(mostSignificantBits ^ mix(leastSignificantBits));
+    final long h2 = mix(leastSignificantBits + GOLDEN_RATIO) | 1;
+
+    final long[] bits = this.filters.get(this.filters.size() - 1);
+    final int hashNumber = this.hashNumbers.get(this.hashNumbers.size() - 1);
+    final long bitNumber = (long) bits.length * Long.SIZE;
+
+    long h = h1;
+    for (int i = 0; i < hashNumber; i++) {
+
+      final long index = (h & Long.MAX_VALUE) % bitNumber;
+      bits[(int) (index >>> 6)] |= 1L << index;
+      h += h2;
+    }
+
+    this.count++;
+    this.size++;
+  }
+
+  /**
+   * Get the number of keys added to the filter.
+   * @return the number of keys
+   */
+  long size() {
+    return this.size;
+  }
+
+  /**
+   * Get the memory used by the filter.
+   * @return the number of bytes of the filters
+   */
+  long getMemoryUsage() {
+
+    long result = 0;
+    for (long[] bits : this.filters) {
+      result += (long) bits.length * Long.SIZE / Byte.SIZE;
+    }
+
+    return result;
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Add a new filter twice larger with a twice lower false positive rate than
+   * the previous filter.
+   */
+  private void addFilter() {
+
+    // test if the filter is not the first filter
+    if (!this.filters.isEmpty()) {
+      this.capacity *= 2;
+      this.falsePositiveRate /= 2;
+    }
+    this.count = 0;
+
+    // optimal number of bits and of hash functions
+    final long bitNumber = (long) Math.ceil(
+        -this.capacity * Math.log(this.falsePositiveRate) / (LN2 * LN2));
+    final int hashNumber = Math.max(1,
+        (int) Math.round((double) bitNumber / this.capacity * LN2));
+
+    // the size of an array is limited to 2^31 longs
+    final long longNumber = Math.min((bitNumber + Long.SIZE - 1) / Long.SIZE,
+        Integer.MAX_VALUE - 8);
+
+    this.filters.add(new long[(int) longNumber]);
+    this.hashNumbers.add(hashNumber);
+  }
+
+  /**
+   * Test if a key might be in a filter.
+   * @param bits the bits of the filter
+   * @param hashNumber the number of hash functions of the filter
+   * @param h1 the first hash of the key
+   * @param h2 the second hash of the key
+   * @return true if all the bits of the key are set
+   */
+  private static boolean contains(final long[] bits, final int hashNumber,
+      final long h1, final long h2) {
+
+    final long bitNumber = (long) bits.length * Long.SIZE;
+
+    long h = h1;
+    for (int i = 0; i < hashNumber; i++) {
+
+      final long index = (h & Long.MAX_VALUE) % bitNumber;
+
+      // test if the bit of this hash function is not set
+      if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+        return false;
+      }
+      h += h2;
+    }
+
+    return true;
+  }
+
+  /**
+   * Mix the bits of a value (finalizer of MurmurHash3).
+   * @param value the value to mix
+   * @return the mixed value
+   */
+  static long mix(final long value) {
+
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB93FE1A85CA3L;
+    h ^= h >>> 33;
+
+    return h;
+  }
+
+}
@@ -0,0 +1,183 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import fr.ens.biologie.genomique.toullig.fast5tofastq.Fast5ToFastq.SequenceType;
+
+/**
+ * This class accumulate the number of reads and bases per channel and per time
+ * bin of a run during the conversion. The counts are stored in fixed-size
+ * arrays of primitives, so an instance must not be shared between threads:
+ * use an instance per thread and merge them at the end.
+ * @author Aurelien Birer
+ */
+class YieldStatistics {
+
+  /** Number of channels of a flow cell. */
+  static final int CHANNEL_NUMBER = 512;
+
+  /** Duration of a time bin in seconds. */
+  static final int TIME_BIN_DURATION = 900;
+
+  /** Number of time bins (72 hours of run). */
+  static final int TIME_BIN_NUMBER = 288;
+
+  // the index 0 is used for the reads with an unknown channel
+  private static final int CHANNEL_SLOTS = CHANNEL_NUMBER + 1;
+
+  private static final int TYPE_NUMBER = SequenceType.values().length;
+
+  private final long[] readsPerChannel = new long[TYPE_NUMBER * CHANNEL_SLOTS];
+  private final long[] basesPerChannel = new long[TYPE_NUMBER * CHANNEL_SLOTS];
+  private final long[] readsPerTimeBin =
+      new long[TYPE_NUMBER * TIME_BIN_NUMBER];
+  private final long[] basesPerTimeBin =
+      new long[TYPE_NUMBER * TIME_BIN_NUMBER];
+  private final long[] readsWithoutStartTime = new long[TYPE_NUMBER];
+
+  //
+  // Accumulation
+  //
+
+  /**
+   * Add a read to the statistics.
+   * @param type the type of the sequence
+   * @param channel the channel number of the read
+   * @param startTime the start time of the read in seconds, negative if
+   *          unknown
+   * @param length the length of the read sequence
+   */
+  void addRead(final SequenceType type, final int channel,
+      final double startTime, final int length) {
+
+    final int typeIndex = type.ordinal();
+
+    // test if the channel is out of the flow cell
+    final int channelIndex =
+        channel < 1 || channel > CHANNEL_NUMBER ? 0 : channel;
+
+    this.readsPerChannel[typeIndex * CHANNEL_SLOTS + channelIndex]++;
+    this.basesPerChannel[typeIndex * CHANNEL_SLOTS + channelIndex] += length;
+
+    // test if the start time of the read is unknown
+    if (startTime < 0) {
+      this.readsWithoutStartTime[typeIndex]++;
+      return;
+    }
+
+    // the reads after the last bin are stored in the last bin
+    final int bin =
+        (int) Math.min(startTime / TIME_BIN_DURATION, TIME_BIN_NUMBER - 1);
+
+    this.readsPerTimeBin[typeIndex * TIME_BIN_NUMBER + bin]++;
+    this.basesPerTimeBin[typeIndex * TIME_BIN_NUMBER + bin] += length;
+  }
+
+  /**
+   * Add the counts of another YieldStatistics object to this object.
+   * @param other the statistics to merge
+   */
+  void merge(final YieldStatistics other) {
+
+    add(this.readsPerChannel, other.readsPerChannel);
+    add(this.basesPerChannel, other.basesPerChannel);
+    add(this.readsPerTimeBin, other.readsPerTimeBin);
+    add(this.basesPerTimeBin, other.basesPerTimeBin);
+    add(this.readsWithoutStartTime, other.readsWithoutStartTime);
+  }
+
+  /**
+   * Add the values of an array to another array.
+   * @param to the array to increment
+   * @param from the array to add
+   */
+  private static void add(final long[] to, final long[] from) {
+
+    for (int i = 0; i < to.length; i++) {
+      to[i] += from[i];
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of reads of a channel.
+   * @param type the type of the sequence
+   * @param channel the channel number, 0 for the unknown channels
+   * @return the number of reads
+   */
+  long getReadsPerChannel(final SequenceType type, final int channel) {
+    return this.readsPerChannel[type.ordinal() * CHANNEL_SLOTS + channel];
+  }
+
+  /**
+   * Get the number of bases of a channel.
+   * @param type the type of the sequence
+   * @param channel the channel number, 0 for the unknown channels
+   * @return the number of bases
+   */
+  long getBasesPerChannel(final SequenceType type, final int channel) {
+    return this.basesPerChannel[type.ordinal() * CHANNEL_SLOTS + channel];
+  }
+
+  /**
+   * Get the number of reads of a time bin.
+   * @param type the type of the sequence
+   * @param bin the index of the time bin
+   * @return the number of reads
+   */
+  long getReadsPerTimeBin(final SequenceType type, final int bin) {
+    return this.readsPerTimeBin[type.ordinal() * TIME_BIN_NUMBER + bin];
+  }
+
+  /**
+   * Get the number of bases of a time bin.
+   * @param type the type of the sequence
+   * @param bin the index of the time bin
+   * @return the number of bases
+   */
+  long getBasesPerTimeBin(final SequenceType type, final int bin) {
+    return this.basesPerTimeBin[type.ordinal() * TIME_BIN_NUMBER + bin];
+  }
+
+  /**
+   * Get the number of reads without start time.
+   * @param type the type of the sequence
+   * @return the number of reads
+   */
+  long getReadsWithoutStartTime(final SequenceType type) {
+    return this.readsWithoutStartTime[type.ordinal()];
+  }
+
+  /**
+   * Get the number of reads of a type of sequence.
+   * @param type the type of the sequence
+   * @return the number of reads
+   */
+  long getReads(final SequenceType type) {
+
+    long sum = 0;
+    for (int channel = 0; channel < CHANNEL_SLOTS; channel++) {
+      sum += getReadsPerChannel(type, channel);
+    }
+
+    return sum;
+  }
+
+  /**
+   * Get the index of the last time bin that contains reads.
+   * @param type the type of the sequence
+   * @return the index of the last time bin or -1 if there is no time bin
+   */
+  int getLastTimeBin(final SequenceType type) {
+
+    for (int bin = TIME_BIN_NUMBER - 1; bin >= 0; bin--) {
+      if (getReadsPerTimeBin(type, bin) != 0) {
+        return bin;
+      }
+    }
+
+    return -1;
+  }
+
+}
@@ -82,6 +82,33 @@ public class TrimmingFastqONTModule extends AbstractModule {
           trim.setProcessStatsCutadapt();
         }
 
+        // Set the storage of the reads outside of the heap
+        if (this.offHeapReadStore) {
+          trim.setOffHeapReadStore();
+        }
+
+        // Set the sort on disk of the unsorted input files
+        if (this.externalSort) {
+          trim.setExternalSort();
+        }
+
+        // Set the number of threads of the outlier position finder
+        trim.setThreadNumber(this.threads);
+
+        // Set the number of cutadapt processes for each outlier side
+        trim.setCutadaptWorkerNumber(this.cutadaptWorkers);
+
+        // Set the minimal length of the poly-A/T tails removed of the outliers
+        trim.setPolyTailLength(this.polyTail);
+
+        // Set the length of the adaptor k-mers of the prefilter of the outliers
+        trim.setAdaptorKmerLength(this.adaptorKmer);
+
+        // Set the split of the chimeric reads at the internal adaptors
+        if (this.splitChimeras) {
+          trim.setSplitChimeras();
+        }
+
         // Set the threshold for Side-Window method
         if (this.thresholdSW != 0) {
           trim.setThresholdSideWindow(this.thresholdSW);
@@ -168,6 +195,13 @@ public class TrimmingFastqONTModule extends AbstractModule {
   private String trimmer = "cutadapt";
   private String mode = "P";
   private boolean stats = false;
+  private boolean offHeapReadStore = false;
+  private boolean externalSort = false;
+  private int threads = 1;
+  private int cutadaptWorkers = 1;
+  private int polyTail = 0;
+  private int adaptorKmer = 0;
+  private boolean splitChimeras = false;
   private double thresholdSW = 0;
   private int lengthWindowsSW = 0;
   private int addIndexOutlier = 0;
@@ -206,6 +240,34 @@ public class TrimmingFastqONTModule extends AbstractModule {
         }
         break;
 
+      case "trimmer.offHeapReadStore":
+        offHeapReadStore = p.getBooleanValue();
+        break;
+
+      case "trimmer.externalSort":
+        externalSort = p.getBooleanValue();
+        break;
+
+      case "trimmer.threads":
+        threads = p.getIntValue();
+        break;
+
+      case "trimmer.cutadaptWorkers":
+        cutadaptWorkers = p.getIntValue();
+        break;
+
+      case "trimmer.polyTail":
+        polyTail = p.getIntValue();
+        break;
+
+      case "trimmer.adaptorKmer":
+        adaptorKmer = p.getIntValue();
+        break;
+
+      case "trimmer.splitChimeras":
+        splitChimeras = p.getBooleanValue();
+        break;
+
       case "SW.thresholdSW":
         thresholdSW = p.getDoubleValue();
         break;
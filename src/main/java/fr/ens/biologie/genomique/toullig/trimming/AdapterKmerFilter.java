@@ -0,0 +1,259 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Class of a prefilter of the outliers on the k-mers of the adaptors. The
+ * k-mers of all the variants of the adaptors are kept with their 2 bits codes
+ * in an open addressing set, and an outlier is searched for the adaptors only
+ * if one of its k-mers is in the set. An alignment of an adaptor on L bases
+ * with d errors shares a k-mer with the outlier when L &gt;= (d + 1) * k, so
+ * no adaptor is missed when k is at most losslessKmerLength(). A longer k
+ * skips more outliers, but the adaptors aligned with many errors can be
+ * missed. The outliers shorter than k and the outliers with a base other than
+ * A, C, G or T are always searched. The filter is immutable and can be used
+ * by several threads.
+ * @author Aurelien Birer
+ */
+public final class AdapterKmerFilter {
+
+  // the codes of 15-mers fit in 30 bits, so -1 is never a code
+  public static final int MAX_KMER_LENGTH = 15;
+  private static final int EMPTY = -1;
+
+  private final int kmerLength;
+  private final int kmerMask;
+  private final int[] table;
+  private final int tableShift;
+  private final int kmerNumber;
+
+  /**
+   * Constructor of the AdapterKmerFilter class.
+   * @param adaptors, the sequences of the variants of the adaptors
+   * @param kmerLength, the length of the k-mers
+   */
+  public AdapterKmerFilter(String[] adaptors, int kmerLength) {
+
+    // test if the length of the k-mers is valid
+    if (kmerLength < 1 || kmerLength > MAX_KMER_LENGTH) {
+      throw new IllegalArgumentException("The length of the k-mers must be "
+          + "between 1 and " + MAX_KMER_LENGTH + ": " + kmerLength);
+    }
+
+    this.kmerLength = kmerLength;
+    this.kmerMask = (1 << (2 * kmerLength)) - 1;
+
+    int bases = 0;
+    for (String adaptor : adaptors) {
+      bases += adaptor.length();
+    }
+
+    // a table at most half full
+    int tableBits = 4;
+    while ((1 << tableBits) < 2 * bases) {
+      tableBits++;
+    }
+
+    this.table = new int[1 << tableBits];
+    this.tableShift = 32 - tableBits;
+    Arrays.fill(this.table, EMPTY);
+
+    int count = 0;
+
+    for (String adaptor : adaptors) {
+
+      final String upperCase = adaptor.toUpperCase(Locale.ROOT);
+      int kmer = 0;
+      int validBases = 0;
+
+      for (int i = 0; i < upperCase.length(); i++) {
+
+        final int code = PackedReadStore.encode(upperCase.charAt(i));
+
+        // test if the base breaks the k-mers
+        if (code < 0) {
+          validBases = 0;
+          continue;
+        }
+
+        kmer = (kmer << 2 | code) & this.kmerMask;
+
+        // test if a new k-mer ends at this base
+        if (++validBases >= kmerLength && add(kmer)) {
+          count++;
+        }
+      }
+    }
+
+    this.kmerNumber = count;
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to get the slot of a k-mer in the
+   * table, with a multiplicative hash.
+   * @param kmer, the code of the k-mer
+   * @return the first slot to probe
+   */
+  private int slot(final int kmer) {
+    return (kmer * 0x9E3779B9) >>> this.tableShift;
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to add a k-mer to the table.
+   * @param kmer, the code of the k-mer
+   * @return true if the k-mer was not in the table
+   */
+  private boolean add(final int kmer) {
+
+    final int mask = this.table.length - 1;
+
+    for (int s = slot(kmer);; s = (s + 1) & mask) {
+
+      if (this.table[s] == kmer) {
+        return false;
+      }
+
+      if (this.table[s] == EMPTY) {
+        this.table[s] = kmer;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to test if a k-mer is a k-mer of
+   * the adaptors.
+   * @param kmer, the code of the k-mer
+   * @return true if the k-mer is in the table
+   */
+  private boolean contains(final int kmer) {
+
+    final int mask = this.table.length - 1;
+
+    for (int s = slot(kmer);; s = (s + 1) & mask) {
+
+      if (this.table[s] == kmer) {
+        return true;
+      }
+
+      if (this.table[s] == EMPTY) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to test if an outlier must be
+   * searched for the adaptors.
+   * @param outlier, the sequence of the outlier
+   * @return false if the outlier is empty or if it has no k-mer of the
+   *         adaptors
+   */
+  public boolean mayContainAdaptor(String outlier) {
+
+    final int length = outlier.length();
+
+    // test if the outlier is empty
+    if (length == 0) {
+      return false;
+    }
+
+    // test if the outlier has no k-mer
+    if (length < this.kmerLength) {
+      return true;
+    }
+
+    int kmer = 0;
+
+    for (int i = 0; i < length; i++) {
+
+      final int code = PackedReadStore.encode(outlier.charAt(i));
+
+      // a base other than A, C, G or T can match any base of the adaptors
+      if (code < 0) {
+        return true;
+      }
+
+      kmer = (kmer << 2 | code) & this.kmerMask;
+
+      // test if a k-mer of the adaptors ends at this base
+      if (i >= this.kmerLength - 1 && contains(kmer)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Method of the class AdapterKmerFilter to get the length of the k-mers.
+   * @return the length of the k-mers
+   */
+  public int getKmerLength() {
+    return this.kmerLength;
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to get the number of distinct
+   * k-mers of the adaptors.
+   * @return the number of k-mers
+   */
+  public int getKmerNumber() {
+    return this.kmerNumber;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Method of the class AdapterKmerFilter to get the longest k-mers that
+   * miss no alignment of the adaptors, the alignments of L bases of an
+   * adaptor having at most errorRate * L errors.
+   * @param adaptors, the sequences of the adaptors
+   * @param errorRate, the maximal error rate of the alignments
+   * @param minOverlap, the minimal length of the alignments
+   * @return the length of the k-mers, at least 1
+   */
+  public static int losslessKmerLength(String[] adaptors, double errorRate,
+      int minOverlap) {
+
+    int result = MAX_KMER_LENGTH;
+
+    for (String adaptor : adaptors) {
+
+      final int m = adaptor.length();
+
+      for (int l = Math.min(minOverlap, m); l <= m; l++) {
+        result = Math.min(result, l / ((int) (errorRate * l) + 1));
+      }
+    }
+
+    return Math.max(result, 1);
+  }
+
+  /**
+   * Method of the class AdapterKmerFilter to log the hit rate of the filter
+   * on the outliers of a side.
+   * @param side, the side of the outliers
+   * @param tested, the number of outliers tested
+   * @param hits, the number of outliers searched for the adaptors
+   */
+  public static void logHitRate(String side, long tested, long hits) {
+
+    getLogger().info("Adaptor k-mer prefilter on "
+        + side + " outliers: " + hits + " searched for the adaptors, "
+        + (tested - hits) + " skipped, hit rate: "
+        + String.format(Locale.ROOT, "%.2f",
+            tested == 0 ? 0.0 : 100.0 * hits / tested)
+        + "%");
+  }
+
+}
@@ -0,0 +1,227 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.Alphabets.AMBIGUOUS_DNA_ALPHABET;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Class of the bit-parallel approximate matcher of Myers (1999), with the
+ * formulation of Hyyrö, to search a pattern in a text with the edit distance.
+ * The pattern can start and end anywhere in the text. A column of the dynamic
+ * programming matrix is encoded in the vertical deltas of one long per block of
+ * 64 bases of the pattern, so a pattern of 64 bases or fewer is searched in
+ * O(n) and a longer pattern in O(n * m / 64).
+ * <p>
+ * The bases are compared with the IUPAC codes of AMBIGUOUS_DNA_ALPHABET: two
+ * bases match if they have a common nucleotide, e.g. N matches any base and R
+ * matches A and G. The matcher is immutable and can be used by several
+ * threads.
+ * @author Aurelien Birer
+ */
+public final class BitParallelMatcher {
+
+  private static final int BLOCK_SIZE = 64;
+
+  // the nucleotides of the IUPAC codes (A=1, C=2, G=4, T=8), 0 for the other
+  // characters
+  private static final int[] NUCLEOTIDES = new int[128];
+
+  static {
+
+    final String codes = "ACGTURYSWKMBDHVN";
+    final int[] nucleotides =
+        {1, 2, 4, 8, 8, 1 | 4, 2 | 8, 2 | 4, 1 | 8, 4 | 8, 1 | 2, 2 | 4 | 8,
+            1 | 4 | 8, 1 | 2 | 8, 1 | 2 | 4, 1 | 2 | 4 | 8};
+
+    for (int i = 0; i < codes.length(); i++) {
+      NUCLEOTIDES[codes.charAt(i)] = nucleotides[i];
+      NUCLEOTIDES[Character.toLowerCase(codes.charAt(i))] = nucleotides[i];
+    }
+  }
+
+  private final String pattern;
+  private final int blockCount;
+  private final long lastBlockHighBit;
+
+  // peq[nucleotides][block] is the bit vector of the bases of the pattern
+  // matching a base of the text
+  private final long[][] peq;
+
+  /**
+   * A best match of the pattern in a text.
+   */
+  public static final class Match {
+
+    // the end of the match in the text (exclusive), -1 for an empty text
+    public final int end;
+    public final int errors;
+
+    Match(final int end, final int errors) {
+      this.end = end;
+      this.errors = errors;
+    }
+
+    @Override
+    public String toString() {
+      return this.end + " " + this.errors;
+    }
+  }
+
+  /**
+   * Constructor of the BitParallelMatcher class.
+   * @param pattern, the pattern to search
+   */
+  public BitParallelMatcher(String pattern) {
+
+    // test if the pattern is empty
+    if (pattern == null || pattern.isEmpty()) {
+      throw new IllegalArgumentException("The pattern is null or empty");
+    }
+
+    this.pattern = pattern.toUpperCase(Locale.ROOT);
+
+    final int length = this.pattern.length();
+    this.blockCount = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    this.lastBlockHighBit = 1L << ((length - 1) % BLOCK_SIZE);
+    this.peq = new long[16][this.blockCount];
+
+    for (int i = 0; i < length; i++) {
+
+      final char c = this.pattern.charAt(i);
+
+      // test if the base is a letter of the alphabet
+      if (c >= NUCLEOTIDES.length
+          || NUCLEOTIDES[c] == 0 || !AMBIGUOUS_DNA_ALPHABET.isLetterValid(c)) {
+        throw new IllegalArgumentException(
+            "Invalid base in the pattern: " + c);
+      }
+
+      for (int nucleotides = 1; nucleotides < 16; nucleotides++) {
+
+        // test if the base of the pattern matches the base of the text
+        if ((NUCLEOTIDES[c] & nucleotides) != 0) {
+          this.peq[nucleotides][i / BLOCK_SIZE] |= 1L << (i % BLOCK_SIZE);
+        }
+      }
+    }
+  }
+
+  /**
+   * Method of the class BitParallelMatcher to get the length of the pattern.
+   * @return the length of the pattern
+   */
+  public int patternLength() {
+    return this.pattern.length();
+  }
+
+  /**
+   * Method of the class BitParallelMatcher to compute the edit distance of the
+   * best alignment of the pattern ending at each base of a text.
+   * @param text, the text
+   * @param distances, an array of the length of the text or more, the cell j
+   *          is the number of errors of the pattern ending at the base j
+   */
+  public void distances(CharSequence text, int[] distances) {
+
+    // test if the array is too short
+    if (distances.length < text.length()) {
+      throw new IllegalArgumentException("The array of the distances is "
+          + distances.length + " long, less than the text: " + text.length());
+    }
+
+    search(text, distances);
+  }
+
+  /**
+   * Method of the class BitParallelMatcher to find the best match of the
+   * pattern in a text. The best match has the minimal number of errors, the
+   * first one in the text is kept.
+   * @param text, the text
+   * @return the best match
+   */
+  public Match bestMatch(CharSequence text) {
+
+    final int[] distances = new int[text.length()];
+    search(text, distances);
+
+    int end = -1;
+    int errors = this.pattern.length();
+
+    for (int j = 0; j < distances.length; j++) {
+
+      // test if the match is better
+      if (distances[j] < errors) {
+        end = j + 1;
+        errors = distances[j];
+      }
+    }
+
+    return new Match(end, errors);
+  }
+
+  /**
+   * Method of the class BitParallelMatcher to compute the last row of the
+   * dynamic programming matrix.
+   * @param text, the text
+   * @param distances, the last row without its first cell
+   */
+  private void search(final CharSequence text, final int[] distances) {
+
+    // the first column: D[i][0] = i
+    final long[] pv = new long[this.blockCount];
+    final long[] mv = new long[this.blockCount];
+    Arrays.fill(pv, -1L);
+
+    final int last = this.blockCount - 1;
+    int score = this.pattern.length();
+
+    for (int j = 0; j < text.length(); j++) {
+
+      final char c = text.charAt(j);
+      final long[] eqs = this.peq[c < NUCLEOTIDES.length ? NUCLEOTIDES[c] : 0];
+
+      // the pattern can start anywhere in the text: D[0][j] = 0
+      int hin = 0;
+
+      for (int b = 0; b <= last; b++) {
+
+        final long p = pv[b];
+        final long m = mv[b];
+        long eq = eqs[b];
+
+        final long xv = eq | m;
+
+        // test if the horizontal delta above the block is negative
+        if (hin < 0) {
+          eq |= 1L;
+        }
+
+        final long xh = (((eq & p) + p) ^ p) | eq;
+        long ph = m | ~(xh | p);
+        long mh = p & xh;
+
+        // the horizontal delta below the block
+        final long highBit = b == last ? this.lastBlockHighBit : Long.MIN_VALUE;
+        final int hout = (ph & highBit) != 0 ? 1 : (mh & highBit) != 0 ? -1 : 0;
+
+        ph <<= 1;
+        mh <<= 1;
+
+        if (hin < 0) {
+          mh |= 1L;
+        } else if (hin > 0) {
+          ph |= 1L;
+        }
+
+        pv[b] = mh | ~(xv | ph);
+        mv[b] = ph & xv;
+        hin = hout;
+      }
+
+      score += hin;
+      distances[j] = score;
+    }
+  }
+
+}
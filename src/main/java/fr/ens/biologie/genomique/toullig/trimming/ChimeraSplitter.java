@@ -0,0 +1,163 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class of the splitter of the chimeric reads, with adaptors inside the read
+ * and not only in the outliers. The whole trimmed read is scanned for each
+ * adaptor with the BitParallelMatcher, the read is cut at each hit of an
+ * adaptor and the pieces between the hits are written as separate reads. The
+ * hits closer to an end of the trimmed read than the length of the adaptor are
+ * remains of the terminal adaptors and are ignored. The pieces shorter than a
+ * minimal length are dropped. The splitter can be used by several threads.
+ * @author Aurelien Birer
+ */
+public final class ChimeraSplitter {
+
+  public static final double DEFAULT_ERROR_RATE = 0.15;
+  public static final int DEFAULT_MIN_PIECE_LENGTH = 50;
+
+  private final BitParallelMatcher[] matchers;
+  private final int[] maxErrors;
+  private final int minPieceLength;
+
+  private final AtomicLong splitReadNumber = new AtomicLong();
+  private final AtomicLong pieceNumber = new AtomicLong();
+
+  /**
+   * Constructor of the ChimeraSplitter class.
+   * @param adaptors, the sequences of the variants of the adaptors
+   * @param errorRate, the maximal error rate of a hit of an adaptor
+   * @param minPieceLength, the minimal length of the pieces written
+   */
+  public ChimeraSplitter(String[] adaptors, double errorRate,
+      int minPieceLength) {
+
+    // test if the options are valid
+    if (errorRate < 0 || errorRate >= 1 || minPieceLength < 1) {
+      throw new IllegalArgumentException("Invalid options of the splitter: "
+          + errorRate + " " + minPieceLength);
+    }
+
+    this.matchers = new BitParallelMatcher[adaptors.length];
+    this.maxErrors = new int[adaptors.length];
+    this.minPieceLength = minPieceLength;
+
+    for (int a = 0; a < adaptors.length; a++) {
+      this.matchers[a] = new BitParallelMatcher(adaptors[a]);
+      this.maxErrors[a] = (int) (errorRate * adaptors[a].length());
+    }
+  }
+
+  /**
+   * Method of the class ChimeraSplitter to split a trimmed read at the hits of
+   * the adaptors.
+   * @param sequence, the sequence of the read
+   * @param start, the start of the trimmed read
+   * @param end, the end of the trimmed read
+   * @return null if no adaptor is found, else the bounds of the pieces kept,
+   *         the start and the end of each piece in the sequence
+   */
+  public int[] split(String sequence, int start, int end) {
+
+    final CharSequence text = sequence.subSequence(start, end);
+    final int[] distances = new int[text.length()];
+
+    // the hits of the adaptors, start << 32 | end in the text
+    long[] hits = new long[4];
+    int hitNumber = 0;
+
+    for (int a = 0; a < this.matchers.length; a++) {
+
+      this.matchers[a].distances(text, distances);
+
+      final int length = this.matchers[a].patternLength();
+      int bestEnd = -1;
+
+      for (int j = 0; j <= distances.length; j++) {
+
+        // test if the base ends a hit of the adaptor
+        if (j < distances.length && distances[j] <= this.maxErrors[a]) {
+
+          // keep the end with the fewest errors of the consecutive ends
+          if (bestEnd == -1 || distances[j] < distances[bestEnd]) {
+            bestEnd = j;
+          }
+          continue;
+        }
+
+        // test if a hit ends before this base, far enough from the ends of
+        // the read to be inside the read
+        if (bestEnd != -1 && bestEnd + 1 - length >= length
+            && bestEnd + 1 <= distances.length - length) {
+
+          if (hitNumber == hits.length) {
+            hits = Arrays.copyOf(hits, hitNumber * 2);
+          }
+
+          hits[hitNumber++] =
+              (long) (bestEnd + 1 - length) << 32 | (bestEnd + 1);
+        }
+        bestEnd = -1;
+      }
+    }
+
+    // test if no adaptor is found
+    if (hitNumber == 0) {
+      return null;
+    }
+
+    Arrays.sort(hits, 0, hitNumber);
+
+    final int[] result = new int[2 * (hitNumber + 1)];
+    int resultLength = 0;
+    int pieceStart = 0;
+
+    for (int h = 0; h <= hitNumber; h++) {
+
+      final int hitStart =
+          h < hitNumber ? (int) (hits[h] >>> 32) : text.length();
+      final int hitEnd = h < hitNumber ? (int) hits[h] : text.length();
+
+      // test if the piece before the hit is long enough
+      if (hitStart - pieceStart >= this.minPieceLength) {
+        result[resultLength++] = start + pieceStart;
+        result[resultLength++] = start + hitStart;
+      }
+
+      // the overlapping hits are merged
+      pieceStart = Math.max(pieceStart, hitEnd);
+    }
+
+    this.splitReadNumber.incrementAndGet();
+    this.pieceNumber.addAndGet(resultLength / 2);
+
+    return Arrays.copyOf(result, resultLength);
+  }
+
+  /**
+   * Method of the class ChimeraSplitter to get the name of a piece of a read.
+   * @param id, the id of the read
+   * @param piece, the index of the piece
+   * @param pieceNumber, the number of pieces of the read
+   * @return the name of the piece, the id of the read if the read has a single
+   *         piece
+   */
+  public static String pieceName(String id, int piece, int pieceNumber) {
+    return pieceNumber == 1 ? id : id + "_" + (piece + 1);
+  }
+
+  /**
+   * Method of the class ChimeraSplitter to log the number of reads split.
+   */
+  public void logStatistics() {
+
+    getLogger().info("Number of reads with internal adaptors: "
+        + this.splitReadNumber.get() + ", split in " + this.pieceNumber.get()
+        + " reads");
+  }
+
+}
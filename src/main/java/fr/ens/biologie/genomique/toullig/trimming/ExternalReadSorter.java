@@ -0,0 +1,435 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+
+/**
+ * Class to sort the alignments of a SAM file and the reads of a FASTQ file by
+ * read name with a bounded memory. The records are sorted in runs written in
+ * the work directory, then the runs are merged. The sort is stable, so the
+ * alignments of a multi-mapped read keep the order of the SAM file. The sorted
+ * files can be joined with a merge join by ReadAlignmentJoin.
+ * @author Aurelien Birer
+ */
+public final class ExternalReadSorter {
+
+  private static final int MAX_MERGED_RUNS = 64;
+  private static final int RECORD_OVERHEAD = 64;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final File workDir;
+  private final long runSize;
+
+  /**
+   * A record to sort: the read name and the text of the record.
+   */
+  private static final class Record {
+
+    final String key;
+    final String text;
+
+    Record(final String key, final String text) {
+      this.key = key;
+      this.text = text;
+    }
+  }
+
+  private static final Comparator<Record> RECORD_COMPARATOR =
+      new Comparator<Record>() {
+
+        @Override
+        public int compare(final Record r1, final Record r2) {
+          return r1.key.compareTo(r2.key);
+        }
+      };
+
+  /**
+   * Constructor of the ExternalReadSorter class.
+   * @param workDir, the directory of the runs and the sorted files
+   * @param runSize, the maximal memory used by the records of a run in bytes
+   */
+  public ExternalReadSorter(final File workDir, final long runSize) {
+
+    // test if the size of the runs is valid
+    if (runSize < 1) {
+      throw new IllegalArgumentException(
+          "The size of the runs must be positive: " + runSize);
+    }
+
+    this.workDir = workDir;
+    this.runSize = runSize;
+  }
+
+  //
+  // Sort
+  //
+
+  /**
+   * Method of the class ExternalReadSorter to sort the alignments of a SAM
+   * file by read name. Only the fields QNAME, FLAG and CIGAR of the alignments
+   * are kept, the header is removed.
+   * @param samFile, the SAM file to sort
+   * @return a temporary SAM file in the work directory
+   * @throws IOException if an IO error occur
+   */
+  public File sortSamFile(final File samFile) throws IOException {
+
+    final long start = System.currentTimeMillis();
+    final RunWriter runs = new RunWriter();
+
+    try (SamAlignmentParser parser =
+        new SamAlignmentParser(new FileInputStream(samFile))) {
+
+      while (parser.next()) {
+
+        final String readName = parser.readName();
+        runs.add(new Record(readName, readName
+            + "\t" + parser.flag() + "\t*\t0\t0\t" + parser.cigarString()
+            + "\n"));
+      }
+    }
+
+    final File sortedFile = newTemporaryFile(".sam");
+    merge(runs.finish(), sortedFile);
+
+    getLogger().info("Sort of the SAM file by read name in "
+        + runs.runNumber + " run(s): "
+        + (System.currentTimeMillis() - start) / 1000.0 + "s");
+
+    return sortedFile;
+  }
+
+  /**
+   * Method of the class ExternalReadSorter to sort the reads of a FASTQ file
+   * by read name.
+   * @param fastqFile, the FASTQ file to sort
+   * @return a temporary FASTQ file in the work directory
+   * @throws IOException if an IO error occur
+   */
+  public File sortFastqFile(final File fastqFile) throws IOException {
+
+    final long start = System.currentTimeMillis();
+    final RunWriter runs = new RunWriter();
+
+    try (FastqReader reader = new FastqReader(fastqFile)) {
+
+      for (ReadSequence read : reader) {
+
+        runs.add(new Record(ReadAlignmentJoin.getId(read.getName()),
+            "@" + read.getName() + "\n" + read.getSequence() + "\n+\n"
+                + read.getQuality() + "\n"));
+      }
+
+      // throw the errors of the reading of the FASTQ file
+      reader.throwException();
+    }
+
+    final File sortedFile = newTemporaryFile(".fastq");
+    merge(runs.finish(), sortedFile);
+
+    getLogger().info("Sort of the FASTQ file by read name in "
+        + runs.runNumber + " run(s): "
+        + (System.currentTimeMillis() - start) / 1000.0 + "s");
+
+    return sortedFile;
+  }
+
+  /**
+   * Method of the class ExternalReadSorter to create a temporary file in the
+   * work directory.
+   * @param suffix, the suffix of the file
+   * @return a new empty file
+   * @throws IOException if an IO error occur
+   */
+  private File newTemporaryFile(final String suffix) throws IOException {
+
+    final File file =
+        File.createTempFile("toullig_sort_", suffix, this.workDir);
+    file.deleteOnExit();
+
+    return file;
+  }
+
+  //
+  // Runs
+  //
+
+  /**
+   * Class to write the sorted runs of the records.
+   */
+  private final class RunWriter {
+
+    private final List<Record> records = new ArrayList<>();
+    private final List<File> runFiles = new ArrayList<>();
+    private long memory;
+    private int runNumber;
+
+    /**
+     * Add a record, the records are written in a run when the size of the run
+     * is reached.
+     * @param record the record to add
+     * @throws IOException if an IO error occur
+     */
+    void add(final Record record) throws IOException {
+
+      this.records.add(record);
+      this.memory += 2L * (record.key.length() + record.text.length())
+          + RECORD_OVERHEAD;
+
+      // test if the size of the run is reached
+      if (this.memory >= runSize) {
+        spill();
+      }
+    }
+
+    /**
+     * Sort the records in memory and write them in a new run.
+     * @throws IOException if an IO error occur
+     */
+    private void spill() throws IOException {
+
+      // the sort of the collections is stable
+      Collections.sort(this.records, RECORD_COMPARATOR);
+
+      final File runFile = newTemporaryFile(".run");
+
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(runFile), BUFFER_SIZE))) {
+
+        for (Record record : this.records) {
+          writeRecord(out, record);
+        }
+      }
+
+      this.runFiles.add(runFile);
+      this.runNumber++;
+      this.records.clear();
+      this.memory = 0;
+    }
+
+    /**
+     * Write the last run.
+     * @return the list of the runs, in the order of the input
+     * @throws IOException if an IO error occur
+     */
+    List<File> finish() throws IOException {
+
+      // test if records have not been written
+      if (!this.records.isEmpty() || this.runFiles.isEmpty()) {
+        spill();
+      }
+
+      return this.runFiles;
+    }
+  }
+
+  /**
+   * Method of the class ExternalReadSorter to write a record in a run.
+   * @param out, the output stream of the run
+   * @param record, the record to write
+   * @throws IOException if an IO error occur
+   */
+  private static void writeRecord(final DataOutputStream out,
+      final Record record) throws IOException {
+
+    final byte[] key = record.key.getBytes(StandardCharsets.ISO_8859_1);
+    final byte[] text = record.text.getBytes(StandardCharsets.ISO_8859_1);
+
+    out.writeInt(key.length);
+    out.write(key);
+    out.writeInt(text.length);
+    out.write(text);
+  }
+
+  /**
+   * Class to read the records of a run in the merge.
+   */
+  private static final class RunReader implements Closeable {
+
+    private final DataInputStream in;
+    private final int index;
+    private Record record;
+
+    /**
+     * Constructor.
+     * @param runFile the file of the run
+     * @param index the index of the run in the input
+     * @throws IOException if an IO error occur
+     */
+    RunReader(final File runFile, final int index) throws IOException {
+
+      this.in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE));
+      this.index = index;
+    }
+
+    /**
+     * Read the next record of the run.
+     * @return false if there is no more record
+     * @throws IOException if an IO error occur
+     */
+    boolean next() throws IOException {
+
+      final int keyLength;
+      try {
+        keyLength = this.in.readInt();
+      } catch (EOFException e) {
+        this.record = null;
+        return false;
+      }
+
+      final byte[] key = new byte[keyLength];
+      this.in.readFully(key);
+      final byte[] text = new byte[this.in.readInt()];
+      this.in.readFully(text);
+
+      this.record = new Record(new String(key, StandardCharsets.ISO_8859_1),
+          new String(text, StandardCharsets.ISO_8859_1));
+
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+  }
+
+  //
+  // Merge
+  //
+
+  /**
+   * Method of the class ExternalReadSorter to merge the runs in a text file.
+   * When there are too many runs, the consecutive runs are merged in new runs
+   * before the final merge.
+   * @param runFiles, the runs in the order of the input
+   * @param outputFile, the output text file
+   * @throws IOException if an IO error occur
+   */
+  private void merge(final List<File> runFiles, final File outputFile)
+      throws IOException {
+
+    List<File> runs = runFiles;
+
+    // merge the runs by groups of consecutive runs
+    while (runs.size() > MAX_MERGED_RUNS) {
+
+      final List<File> mergedRuns = new ArrayList<>();
+
+      for (int i = 0; i < runs.size(); i += MAX_MERGED_RUNS) {
+
+        final List<File> group =
+            runs.subList(i, Math.min(i + MAX_MERGED_RUNS, runs.size()));
+        final File mergedRun = newTemporaryFile(".run");
+
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mergedRun), BUFFER_SIZE))) {
+          mergeRuns(group, out, null);
+        }
+
+        mergedRuns.add(mergedRun);
+      }
+
+      runs = mergedRuns;
+    }
+
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(outputFile), StandardCharsets.ISO_8859_1),
+        BUFFER_SIZE)) {
+      mergeRuns(runs, null, writer);
+    }
+  }
+
+  /**
+   * Method of the class ExternalReadSorter to merge runs in a run or in a text
+   * file. The runs are deleted after the merge.
+   * @param runs, the runs to merge, in the order of the input
+   * @param runOutput, the output run or null
+   * @param textOutput, the output text file or null
+   * @throws IOException if an IO error occur
+   */
+  private static void mergeRuns(final List<File> runs,
+      final DataOutputStream runOutput, final Writer textOutput)
+      throws IOException {
+
+    // the records with the same key are merged in the order of the runs
+    final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+        Math.max(1, runs.size()), new Comparator<RunReader>() {
+
+          @Override
+          public int compare(final RunReader r1, final RunReader r2) {
+
+            final int result = r1.record.key.compareTo(r2.record.key);
+            return result != 0 ? result : Integer.compare(r1.index, r2.index);
+          }
+        });
+
+    final List<RunReader> readers = new ArrayList<>();
+
+    try {
+
+      for (int i = 0; i < runs.size(); i++) {
+
+        final RunReader reader = new RunReader(runs.get(i), i);
+        readers.add(reader);
+
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+
+      while (!queue.isEmpty()) {
+
+        final RunReader reader = queue.poll();
+
+        // test if the output is a run
+        if (runOutput != null) {
+          writeRecord(runOutput, reader.record);
+        } else {
+          textOutput.write(reader.record.text);
+        }
+
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+
+    } finally {
+
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+
+      for (File run : runs) {
+        if (!run.delete()) {
+          getLogger().warning("Unable to delete the run: " + run);
+        }
+      }
+    }
+  }
+
+}
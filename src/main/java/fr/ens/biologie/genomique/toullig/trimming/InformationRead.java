@@ -1,16 +1,26 @@
 package fr.ens.biologie.genomique.toullig.trimming;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
- * Class of the Working trim Map Created by birer on 03/04/17.
+ * Class of the Working trim Map Created by birer on 03/04/17. The CIGAR of the
+ * alignment is not kept: the clip lengths and the match profile used by the
+ * outlier position finders are computed once when the SAM file is read.
  * @author Aurelien Birer
  */
 public class InformationRead {
 
-  public String sequence;
-  public String quality;
-  public final String cigar;
+  // length of a clip not found at the start or the end of the CIGAR
+  public static final int NO_CLIP = -1;
+
+  // handle of the sequence and the quality in the PackedReadStore
+  public long readIndex = PackedReadStore.NO_READ;
+  public final int leadingClipLength;
+  public final int trailingClipLength;
+  // runs of the bases of the CIGAR (M=1, N and D skipped, other letters=0),
+  // each run is (length << 1 | bit), null for an unmapped read
+  public final int[] matchProfile;
   public int leftLengthOutlier;
   public int rightLengthOutlier;
   public final int qFlag;
@@ -18,35 +28,155 @@ public class InformationRead {
 
   /**
    * Constructor of the InformationRead class.
-   * @param sequence, a string sequence of the fastq
-   * @param quality, a string quality of the fastq
-   * @param cigar, a string cigar of a sam file
-   * @param leftLengthOutlier, an int length of the left outlier
-   * @param rightLengthOutlier, an int length of the right outlier
+   * @param leadingClipLength, the length of the soft or hard clipping at the
+   *          start of the CIGAR or NO_CLIP
+   * @param trailingClipLength, the length of the soft or hard clipping at the
+   *          end of the CIGAR or NO_CLIP
+   * @param matchProfile, the runs of the binary CIGAR or null if the read is
+   *          unmapped
    * @param qFlag, an int of the qFlag of a sam file
    * @param cigarLength, an int of the length of the cigar of a sam
    */
-  public InformationRead(String sequence, String quality, String cigar,
-      int leftLengthOutlier, int rightLengthOutlier, int qFlag,
-      int cigarLength) {
-
-    this.sequence = sequence;
-    this.quality = quality;
-    this.cigar = cigar;
-    this.leftLengthOutlier = leftLengthOutlier;
-    this.rightLengthOutlier = rightLengthOutlier;
+  public InformationRead(int leadingClipLength, int trailingClipLength,
+      int[] matchProfile, int qFlag, int cigarLength) {
+
+    this.leadingClipLength = leadingClipLength;
+    this.trailingClipLength = trailingClipLength;
+    this.matchProfile = matchProfile;
     this.qFlag = qFlag;
     this.cigarLength = cigarLength;
 
   }
 
+  /**
+   * Method of the InformationRead class to create an InformationRead of the
+   * current alignment of a SAM parser.
+   * @param parser, the SAM parser
+   * @return a new InformationRead object
+   */
+  public static InformationRead newInformationRead(
+      SamAlignmentParser parser) {
+
+    final int count = parser.cigarOperationCount();
+
+    // test if the read is unmapped
+    if (count == 0) {
+      return new InformationRead(NO_CLIP, NO_CLIP, null, parser.flag(), 0);
+    }
+
+    // the leading clip must be followed by an other operation
+    int leadingClipLength = NO_CLIP;
+    if (count > 1 && isClip(parser.cigarOperation(0))) {
+      leadingClipLength = parser.cigarOperationLength(0);
+    }
+
+    int trailingClipLength = NO_CLIP;
+    if (isClip(parser.cigarOperation(count - 1))) {
+      trailingClipLength = parser.cigarOperationLength(count - 1);
+    }
+
+    return new InformationRead(leadingClipLength, trailingClipLength,
+        matchProfile(parser), parser.flag(), parser.alignmentLength());
+  }
+
+  /**
+   * Method of the InformationRead class to test if an operation of a CIGAR is
+   * a clipping.
+   * @param operation, the operation
+   * @return true for a soft or a hard clipping
+   */
+  private static boolean isClip(final char operation) {
+    return operation == 'S' || operation == 'H';
+  }
+
+  /**
+   * Method of the InformationRead class to compute the match profile of the
+   * CIGAR of a SAM parser. The consecutive operations with the same bit are
+   * merged in one run.
+   * @param parser, the SAM parser
+   * @return an array of runs
+   */
+  private static int[] matchProfile(final SamAlignmentParser parser) {
+
+    int runCount = 0;
+    int lastBit = -1;
+
+    // count the runs
+    for (int i = 0; i < parser.cigarOperationCount(); i++) {
+
+      final int bit = profileBit(parser.cigarOperation(i));
+
+      // test if the operation starts a new run
+      if (bit != -1 && bit != lastBit) {
+        runCount++;
+        lastBit = bit;
+      }
+    }
+
+    final int[] result = new int[runCount];
+    int run = -1;
+    lastBit = -1;
+
+    for (int i = 0; i < parser.cigarOperationCount(); i++) {
+
+      final int bit = profileBit(parser.cigarOperation(i));
+
+      // test if the operation is skipped
+      if (bit == -1) {
+        continue;
+      }
+
+      // test if the operation starts a new run
+      if (bit != lastBit) {
+        run++;
+        result[run] = bit;
+        lastBit = bit;
+      }
+
+      result[run] += parser.cigarOperationLength(i) << 1;
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the InformationRead class to get the bit of an operation in the
+   * match profile.
+   * @param operation, the operation
+   * @return 1 for M, -1 for N and D, 0 for the other operations
+   */
+  private static int profileBit(final char operation) {
+
+    switch (operation) {
+
+    case 'M':
+      return 1;
+
+    case 'N':
+    case 'D':
+      return -1;
+
+    default:
+      return 0;
+    }
+  }
+
+  /**
+   * Method of the InformationRead class to know if the read is mapped.
+   * @return true if the CIGAR of the read is not '*'
+   */
+  public boolean isMapped() {
+    return this.matchProfile != null;
+  }
+
   /**
    * Method of the InformationRead class to get the hashCode.
    * @return , an int of the hashCode
    */
   @Override
   public int hashCode() {
-    return Objects.hash(this.sequence, this.quality, this.cigar,
+    return Objects.hash(this.readIndex, this.leadingClipLength,
+        this.trailingClipLength, Arrays.hashCode(this.matchProfile),
         this.leftLengthOutlier, this.rightLengthOutlier, this.qFlag,
         this.cigarLength);
   }
@@ -57,8 +187,9 @@ public class InformationRead {
    */
   @Override
   public String toString() {
-    return this.sequence
-        + " " + this.quality + " " + this.cigar + " " + this.leftLengthOutlier
+    return this.readIndex
+        + " " + this.leadingClipLength + " " + this.trailingClipLength + " "
+        + Arrays.toString(this.matchProfile) + " " + this.leftLengthOutlier
         + " " + rightLengthOutlier + " " + qFlag + " " + cigarLength;
   }
 
@@ -69,9 +200,7 @@ public class InformationRead {
   public boolean equals(InformationRead informationRead) {
 
     // test if the hashcode is the same between the two InformationRead object
-    return informationRead.hashCode() == Objects.hash(this.sequence,
-        this.quality, this.cigar, this.leftLengthOutlier,
-        this.rightLengthOutlier, this.qFlag, this.cigarLength);
+    return informationRead.hashCode() == hashCode();
 
   }
 
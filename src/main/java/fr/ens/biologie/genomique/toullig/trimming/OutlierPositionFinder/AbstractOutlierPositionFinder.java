@@ -0,0 +1,421 @@
+package fr.ens.biologie.genomique.toullig.trimming.OutlierPositionFinder;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.ReadAlignmentJoin;
+import fr.ens.biologie.genomique.toullig.trimming.Trimmer.Trimmer;
+import fr.ens.biologie.genomique.toullig.trimming.Trimmer.TrimmingBatch;
+
+/**
+ * Class of the outlier position finders. The reads joined with their alignment
+ * are processed by batches:
+ * <ul>
+ * <li>the outliers of the mapped reads are found and the batch is processed
+ * by the trimmer, in parallel with several threads</li>
+ * <li>the batches are then written by the trimmer in the order of the fastq
+ * file</li>
+ * </ul>
+ * With several threads, a reader thread fills the batches, a pool of threads
+ * processes them and the calling thread writes them in order.
+ * @param <C> the type of the context of a processing thread
+ * @author Aurelien Birer
+ */
+abstract class AbstractOutlierPositionFinder<C>
+    implements OutlierPositionFinder {
+
+  private static final int BATCH_SIZE = 1000;
+
+  private final ReadAlignmentJoin join;
+  private final int threadNumber;
+
+  /**
+   * A read joined with its alignment and the outlier lengths given to the
+   * trimmer.
+   */
+  static final class ReadEntry {
+
+    final ReadSequence read;
+    final String id;
+    final InformationRead informationRead;
+    int leftLengthOutlier;
+    int rightLengthOutlier;
+
+    ReadEntry(final ReadSequence read, final String id,
+        final InformationRead informationRead) {
+      this.read = read;
+      this.id = id;
+      this.informationRead = informationRead;
+    }
+  }
+
+  /**
+   * A batch of reads and the batch of their mapped reads given to the trimmer.
+   */
+  private static final class ReadBatch {
+
+    final List<ReadEntry> entries = new ArrayList<>(BATCH_SIZE);
+    final TrimmingBatch trimmingBatch = new TrimmingBatch(BATCH_SIZE);
+  }
+
+  /**
+   * Constructor of the AbstractOutlierPositionFinder class.
+   * @param join, a join of the reads with their alignment
+   * @param threadNumber, the number of threads of the processing
+   */
+  AbstractOutlierPositionFinder(ReadAlignmentJoin join, int threadNumber) {
+
+    // test if the join is null
+    if (join != null) {
+
+      this.join = join;
+
+    } else {
+
+      getLogger().info("Join is null ! Critical error, contact developpers !");
+      this.join = null;
+      System.exit(0);
+
+    }
+
+    // test if the number of threads is valid
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be positive: " + threadNumber);
+    }
+
+    this.threadNumber = threadNumber;
+  }
+
+  //
+  // Methods of the finders
+  //
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to create the context of
+   * a processing thread.
+   * @return a new context
+   */
+  abstract C newContext();
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to find the outliers of
+   * a mapped read. This method is called by the processing threads: it must
+   * only set the lengths of the entry and the fields of its InformationRead.
+   * @param entry, the read
+   * @param context, the context of the processing thread
+   */
+  abstract void computeOutliers(ReadEntry entry, C context);
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to count a read for the
+   * statistics. This method is called in the order of the fastq file.
+   * @param entry, the read with its outliers
+   */
+  void countRead(final ReadEntry entry) {
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to log the statistics
+   * after the finding.
+   */
+  void logStatistics() {
+  }
+
+  //
+  // Find outliers
+  //
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to find the outliers of
+   * the reads and give them to the trimmer by batches.
+   * @param trimmer, the trimmer interface
+   */
+  @Override
+  public void findOutliers(Trimmer trimmer) throws IOException {
+
+    getLogger().info(
+        "Outlier position finder: " + this.threadNumber + " thread(s)");
+
+    // test if the reads are processed by the calling thread
+    if (this.threadNumber == 1) {
+
+      final C context = newContext();
+      ReadBatch batch;
+
+      while ((batch = readBatch()) != null) {
+
+        processBatch(batch, trimmer, context);
+        writeBatch(batch, trimmer);
+      }
+
+    } else {
+      findOutliersInParallel(trimmer);
+    }
+
+    logStatistics();
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to process the batches
+   * with a pool of threads and write them in order.
+   * @param trimmer, the trimmer
+   * @throws IOException if an IO error occur
+   */
+  private void findOutliersInParallel(final Trimmer trimmer)
+      throws IOException {
+
+    // each thread of the pool has its own context
+    final ThreadLocal<C> contexts = new ThreadLocal<C>() {
+
+      @Override
+      protected C initialValue() {
+        return newContext();
+      }
+    };
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(this.threadNumber);
+
+    // the batches in the order of the fastq file, a null batch is the end
+    final BlockingQueue<Future<ReadBatch>> queue =
+        new ArrayBlockingQueue<>(2 * this.threadNumber);
+
+    final Thread reader = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+
+        // the end of the batches or the failure of the reader, always given
+        // to the writer unless the writer has stopped
+        Future<ReadBatch> last = null;
+
+        try {
+
+          ReadBatch batch;
+          while ((batch = readBatch()) != null) {
+
+            final ReadBatch b = batch;
+            queue.put(executor.submit(new Callable<ReadBatch>() {
+
+              @Override
+              public ReadBatch call() throws IOException {
+
+                processBatch(b, trimmer, contexts.get());
+                return b;
+              }
+            }));
+          }
+
+          last = completedBatch(null);
+
+        } catch (InterruptedException e) {
+          // the writing of the batches has been stopped
+        } catch (Throwable t) {
+          last = failedBatch(t);
+        } finally {
+
+          try {
+
+            if (last != null) {
+              queue.put(last);
+            }
+
+          } catch (InterruptedException e) {
+            // the writing of the batches has been stopped
+          }
+        }
+      }
+    }, "toullig-outlier-reader");
+
+    reader.start();
+
+    try {
+
+      ReadBatch batch;
+      while ((batch = getBatch(queue.take())) != null) {
+
+        writeBatch(batch, trimmer);
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("The finding of the outliers has been interrupted",
+          e);
+    } finally {
+
+      // stop the reader and the pool if the writing has failed
+      reader.interrupt();
+      executor.shutdownNow();
+
+      try {
+        reader.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  //
+  // Batches
+  //
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to read the next batch
+   * of reads joined with their alignment.
+   * @return a batch or null if there is no more read
+   * @throws IOException if an IO error occur
+   */
+  private ReadBatch readBatch() throws IOException {
+
+    final ReadBatch batch = new ReadBatch();
+
+    while (batch.entries.size() < BATCH_SIZE && this.join.next()) {
+
+      batch.entries.add(new ReadEntry(this.join.getRead(), this.join.getId(),
+          this.join.getInformationRead()));
+    }
+
+    return batch.entries.isEmpty() ? null : batch;
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to find the outliers of
+   * the reads of a batch and to process its mapped reads with the trimmer.
+   * This method is called by several threads.
+   * @param batch, the batch
+   * @param trimmer, the trimmer
+   * @param context, the context of the processing thread
+   * @throws IOException if an IO error occur
+   */
+  private void processBatch(final ReadBatch batch, final Trimmer trimmer,
+      final C context) throws IOException {
+
+    for (ReadEntry entry : batch.entries) {
+
+      // test if the read is unmapped
+      if (!entry.informationRead.isMapped()) {
+        continue;
+      }
+
+      computeOutliers(entry, context);
+
+      batch.trimmingBatch.add(entry.id, entry.read.getSequence(),
+          entry.read.getQuality(), entry.informationRead,
+          entry.leftLengthOutlier, entry.rightLengthOutlier);
+    }
+
+    trimmer.processBatch(batch.trimmingBatch);
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to write a batch in the
+   * order of the fastq file.
+   * @param batch, the processed batch
+   * @param trimmer, the trimmer
+   * @throws IOException if an IO error occur
+   */
+  private void writeBatch(final ReadBatch batch, final Trimmer trimmer)
+      throws IOException {
+
+    for (ReadEntry entry : batch.entries) {
+      countRead(entry);
+    }
+
+    trimmer.writeBatch(batch.trimmingBatch);
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to get a processed
+   * batch.
+   * @param future, the future of the batch
+   * @return the batch or null at the end of the reads
+   * @throws IOException if an IO error occur during the reading or the
+   *           processing of the batch
+   */
+  private static ReadBatch getBatch(final Future<ReadBatch> future)
+      throws IOException, InterruptedException {
+
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to create a completed
+   * future of a batch.
+   * @param batch, the batch or null for the end of the reads
+   * @return a completed future
+   */
+  private static Future<ReadBatch> completedBatch(final ReadBatch batch) {
+
+    final FutureTask<ReadBatch> result =
+        new FutureTask<>(new Callable<ReadBatch>() {
+
+          @Override
+          public ReadBatch call() {
+            return batch;
+          }
+        });
+    result.run();
+
+    return result;
+  }
+
+  /**
+   * Method of the class AbstractOutlierPositionFinder to create a failed
+   * future of a batch.
+   * @param throwable, the exception or the error of the reading of the batch
+   * @return a completed future
+   */
+  private static Future<ReadBatch> failedBatch(final Throwable throwable) {
+
+    final FutureTask<ReadBatch> result =
+        new FutureTask<>(new Callable<ReadBatch>() {
+
+          @Override
+          public ReadBatch call() throws Exception {
+
+            // test if the reader has been stopped by an error
+            if (throwable instanceof Error) {
+              throw (Error) throwable;
+            }
+            if (throwable instanceof Exception) {
+              throw (Exception) throwable;
+            }
+            throw new IOException(throwable);
+          }
+        });
+    result.run();
+
+    return result;
+  }
+
+}
@@ -1,9 +1,6 @@
 package fr.ens.biologie.genomique.toullig.trimming.OutlierPositionFinder;
 
-import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
-
-import java.io.File;
-import java.util.Map;
+import fr.ens.biologie.genomique.toullig.trimming.ReadAlignmentJoin;
 
 /**
  * Created by birer on 09/05/17.
@@ -12,9 +9,8 @@ import java.util.Map;
 public class OutlierPositionFinderFactory {
 
   public static OutlierPositionFinder newOutlierPositionFinder(
-      Map<String, InformationRead> workTrimmingMap, int addIndexOutlier,
-      File fastqFile, int lengthWindowSideWindow, double thresholdSideWindow,
-      String mode) {
+      ReadAlignmentJoin join, int addIndexOutlier, int lengthWindowSideWindow,
+      double thresholdSideWindow, String mode, int threadNumber) {
 
     OutlierPositionFinder outlierPositionFinder = null;
 
@@ -22,8 +18,8 @@ public class OutlierPositionFinderFactory {
     if (mode.contains("p")) {
 
       // call PerfectOutlierPositionFinder constructor
-      outlierPositionFinder = new PerfectOutlierPositionFinder(workTrimmingMap,
-          addIndexOutlier, fastqFile);
+      outlierPositionFinder =
+          new PerfectOutlierPositionFinder(join, addIndexOutlier, threadNumber);
     }
 
     if (mode.contains("sw")) {
@@ -31,7 +27,7 @@ public class OutlierPositionFinderFactory {
       // call SideWindowOutlierPositionFinder constructor
       outlierPositionFinder =
           new SideWindowOutlierPositionFinder(lengthWindowSideWindow,
-              thresholdSideWindow, workTrimmingMap, fastqFile);
+              thresholdSideWindow, join, threadNumber);
 
     }
 
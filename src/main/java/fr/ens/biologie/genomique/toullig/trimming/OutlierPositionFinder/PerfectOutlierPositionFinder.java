@@ -1,14 +1,7 @@
 package fr.ens.biologie.genomique.toullig.trimming.OutlierPositionFinder;
 
-import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastaWriter;
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
 import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
-import fr.ens.biologie.genomique.toullig.trimming.Trimmer.Trimmer;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.Map;
+import fr.ens.biologie.genomique.toullig.trimming.ReadAlignmentJoin;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 
@@ -17,294 +10,167 @@ import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
  * Created by birer on 29/03/17.
  * @author Aurelien Birer
  */
-public class PerfectOutlierPositionFinder implements OutlierPositionFinder {
+public class PerfectOutlierPositionFinder
+    extends AbstractOutlierPositionFinder<Void> {
 
-  private final Map<String, InformationRead> workTrimmingMap;
   private final int addIndexOutlier;
-  private final File fastqFile;
+
+  private int countSamReads = 0;
+  private int countLeftOutlierFind = 0;
+  private int countRightOutlierFind = 0;
+  private int countCigarReads = 0;
+  private int countQFlag16 = 0;
+  private int countQFlag0 = 0;
+  private int countQFlag4 = 0;
 
   /**
    * Constructor of the PerfectOutlierPositionFinder class.
-   * @param workTrimmingMap, a Map of work information
+   * @param join, a join of the reads with their alignment
    * @param addIndexOutlier, a int of outlier index add
+   * @param threadNumber, the number of threads of the finding
    */
-  public PerfectOutlierPositionFinder(
-      Map<String, InformationRead> workTrimmingMap, int addIndexOutlier,
-      File fastqFile) {
-
-    // test if the workTrimmingMap Hash is null
-    if (workTrimmingMap != null) {
+  public PerfectOutlierPositionFinder(ReadAlignmentJoin join,
+      int addIndexOutlier, int threadNumber) {
 
-      this.workTrimmingMap = workTrimmingMap;
-
-    } else {
-
-      getLogger().info(
-          "Work Trimming Hash is null ! Critical error, contact developpers !");
-      this.workTrimmingMap = null;
-      System.exit(0);
-
-    }
+    super(join, threadNumber);
 
     this.addIndexOutlier = addIndexOutlier;
+  }
 
-    // test if the fastqFile File is null
-    if (fastqFile != null) {
-
-      this.fastqFile = fastqFile;
-
-    } else {
-
-      getLogger()
-          .info("Fastq File is null ! Critical error, contact developpers !");
-      this.fastqFile = null;
-      System.exit(0);
-
-    }
+  @Override
+  Void newContext() {
+    return null;
   }
 
   /**
-   * Method of the class PerfectOutlierPositionFinder to trim sequence to create
-   * sequences files for cutadapt.
-   * @param fastaLeftOutlierFile , a fasta File for left outlier
-   * @param fastaRightOutlierFile , a fasta File for right outlier
-   * @param trimmer, the trimmer interface
+   * Method of the class PerfectOutlierPositionFinder to find the outliers of a
+   * read with the clippings of its CIGAR.
+   * @param entry, the read
+   * @param context, not used
    */
-  public void findOutliers(File fastaLeftOutlierFile,
-      File fastaRightOutlierFile, Trimmer trimmer, File fastqOutputFile)
-      throws IOException {
+  @Override
+  void computeOutliers(ReadEntry entry, Void context) {
 
-    int countSamReads = 0;
-    int countLeftOutlierFind = 0;
-    int countRightOutlierFind = 0;
-    int countCigarReads = 0;
-    int countQFlag16 = 0;
-    int countQFlag0 = 0;
-    int countQFlag4 = 0;
+    InformationRead informationRead = entry.informationRead;
+    int leftLengthOutlier = 0;
+    int rightLengthOutlier = 0;
+    int qFlag = informationRead.qFlag;
 
-    // test if the fasta left file is correct
-    if (!fastaLeftOutlierFile.isFile() || fastaLeftOutlierFile == null) {
+    // test if the CIGAR starts with a Soft or a Hard clipping, between the
+    // adaptor and the mRNA
+    if (informationRead.leadingClipLength != InformationRead.NO_CLIP) {
 
-      getLogger().info("Left Fasta File is null or dont exist !");
-      System.exit(0);
-
-    }
+      // get the left length of the outlier
+      leftLengthOutlier =
+          informationRead.leadingClipLength + this.addIndexOutlier;
 
-    // test if the fasta left file is correct
-    if (!fastaRightOutlierFile.isFile() || fastaRightOutlierFile == null) {
+      // strand case
+      if (qFlag == 0) {
 
-      getLogger().info("Right Fasta File is null or dont exist !");
-      System.exit(0);
+        informationRead.leftLengthOutlier = leftLengthOutlier;
 
-    }
-
-    FastaWriter fastqOutputWriter = null;
-    FastaWriter fastaLeftOutlierWriter = null;
-    FastaWriter fastaRightOutlierWriter = null;
-
-    // test if the trimmer is trimmomatic
-    if (trimmer.toString().contains("TrimmomaticTrimmer")) {
-
-      fastqOutputWriter = new FastaWriter(fastqOutputFile);
-    }
+      }
+      // reverse complement case
+      else {
 
-    // test if the trimmer is cutadapt
-    if (trimmer.toString().contains("CutadaptTrimmer")) {
+        informationRead.rightLengthOutlier = leftLengthOutlier;
+      }
 
-      fastaLeftOutlierWriter = new FastaWriter(fastaLeftOutlierFile);
-      fastaRightOutlierWriter = new FastaWriter(fastaRightOutlierFile);
+    } else {
+      rightLengthOutlier = 0;
     }
 
-    // open the fastq File
-    try (FastqReader reader = new FastqReader(this.fastqFile)) {
-
-      // read the fastq file
-      for (ReadSequence read : reader) {
-
-        // get header
-        String header = read.getName();
-
-        // get id
-        String id = header.substring(0, header.indexOf(" "));
-
-        // get sequence
-        String sequence = read.getSequence();
-
-        // get quality
-        String quality = read.getQuality();
-
-        // get the information read of the id corresponding in the work trim
-        // map
-
-        InformationRead informationRead = this.workTrimmingMap.get(id);
-
-        // case that the SAM file has not succesful read this id (present in
-        // fastq file) read
-        if (informationRead == null) {
+    // test if the CIGAR ends with a Soft or a Hard clipping, between the mRNA
+    // and the adaptor
+    if (informationRead.trailingClipLength != InformationRead.NO_CLIP) {
 
-          break;
-        }
+      // get the right length of the outlier
+      rightLengthOutlier =
+          informationRead.trailingClipLength + this.addIndexOutlier;
 
-        // set the sequence of the read
-        informationRead.sequence = sequence;
+      // strand case
+      if (qFlag == 0) {
 
-        // set the quality of the read
-        informationRead.quality = quality;
+        informationRead.rightLengthOutlier = rightLengthOutlier;
 
-        int leftLengthOutlier = 0;
-        int rightLengthOutlier = 0;
-        countSamReads++;
-
-        // get information of each read
-        String cigar = informationRead.cigar;
-        int qFlag = informationRead.qFlag;
-
-        // trim by CIGAR
-        if (!"*".equals(cigar)) {
-
-          // Locate index between the adaptor and the mRNA with the Soft and
-          // Hard clipping for Left side
-          int leftIndexOutlier = cigar.indexOf("S");
-
-          // test if the last index is a Hard clipping
-          if (leftIndexOutlier > cigar.indexOf("H") && cigar.contains("H")) {
-            leftIndexOutlier = cigar.indexOf("H");
-          }
-
-          // test if the left index outlier is correct
-          if (leftIndexOutlier != -1
-              && leftIndexOutlier + 1 != cigar.length()
-              && leftIndexOutlier <= 6) {
-
-            // get the left length of the outlier
-            leftLengthOutlier =
-                Integer.parseInt(cigar.substring(0, leftIndexOutlier))
-                    + this.addIndexOutlier;
-
-            // strand case
-            if (qFlag == 0) {
-
-              informationRead.leftLengthOutlier = leftLengthOutlier;
-
-            }
-            // reverse complement case
-            else {
-
-              informationRead.rightLengthOutlier = leftLengthOutlier;
-            }
-
-            countLeftOutlierFind++;
-          } else {
-            rightLengthOutlier = 0;
-          }
-
-          // Locate index between the adaptor and the mRNA with the Soft and
-          // Hard clipping for Right side
-          int rightIndexOutlier = cigar.lastIndexOf("S");
-
-          // test if the last index is a Hard clipping
-          if (rightIndexOutlier < cigar.lastIndexOf("H")) {
-            rightIndexOutlier = cigar.lastIndexOf("H");
-          }
-
-          // test if the right index is negatif
-          if (rightIndexOutlier == -1) {
-            rightIndexOutlier = 0;
-          }
-
-          // test if the left index outlier is correct
-          if (rightIndexOutlier + 1 == cigar.length()
-              && cigar.length() - rightIndexOutlier < 5) {
-
-            // get the right length of the outlier
-            rightLengthOutlier = Integer.parseInt(
-                cigar.substring(cigar.lastIndexOf("M") + 1, rightIndexOutlier))
-                + this.addIndexOutlier;
-
-            // strand case
-            if (qFlag == 0) {
-
-              informationRead.rightLengthOutlier = rightLengthOutlier;
-
-            }
-            // reverse complement case
-            else {
-
-              informationRead.leftLengthOutlier = rightLengthOutlier;
-            }
-
-            countRightOutlierFind++;
+      }
+      // reverse complement case
+      else {
 
-          } else {
-            leftLengthOutlier = 0;
-          }
+        informationRead.leftLengthOutlier = rightLengthOutlier;
+      }
 
-          // test if the trimmer is trimmomatic
-          if (trimmer.toString().contains("TrimmomaticTrimmer")) {
+    } else {
+      leftLengthOutlier = 0;
+    }
 
-            // pre-process trim
-            trimmer.preProcessSequence(leftLengthOutlier, rightLengthOutlier,
-                sequence, id, quality, fastqOutputWriter);
-          }
+    entry.leftLengthOutlier = leftLengthOutlier;
+    entry.rightLengthOutlier = rightLengthOutlier;
+  }
 
-          // test if the trimmer is cutadapt
-          if (trimmer.toString().contains("CutadaptTrimmer")) {
+  /**
+   * Method of the class PerfectOutlierPositionFinder to count a read for the
+   * statistics.
+   * @param entry, the read
+   */
+  @Override
+  void countRead(ReadEntry entry) {
 
-            // pre-process trim
-            trimmer.preProcessSequence(leftLengthOutlier, rightLengthOutlier,
-                sequence, id, quality, fastaLeftOutlierWriter,
-                fastaRightOutlierWriter);
-          }
+    InformationRead informationRead = entry.informationRead;
+    int qFlag = informationRead.qFlag;
 
-        } else {
-          countCigarReads++;
-        }
+    this.countSamReads++;
 
-        // test if the qFlag equal to 16
-        if (qFlag == 16) {
-          countQFlag16++;
-        }
+    // test if the read is mapped
+    if (informationRead.isMapped()) {
 
-        // test if the qFlag equal to 0
-        if (qFlag == 0) {
-          countQFlag0++;
-        }
+      // test if a left outlier has been found
+      if (informationRead.leadingClipLength != InformationRead.NO_CLIP) {
+        this.countLeftOutlierFind++;
+      }
 
-        // test if the qFlag equal to 4
-        if (qFlag == 4) {
-          countQFlag4++;
-        }
+      // test if a right outlier has been found
+      if (informationRead.trailingClipLength != InformationRead.NO_CLIP) {
+        this.countRightOutlierFind++;
       }
 
-      reader.close();
-    } catch (IOException e) {
-      e.printStackTrace();
+    } else {
+      this.countCigarReads++;
     }
 
-    // test if the trimmer is trimmomatic
-    if (trimmer.toString().contains("TrimmomaticTrimmer")) {
-
-      fastqOutputWriter.close();
+    // test if the qFlag equal to 16
+    if (qFlag == 16) {
+      this.countQFlag16++;
     }
 
-    // test if the trimmer is cutadapt
-    if (trimmer.toString().contains("CutadaptTrimmer")) {
+    // test if the qFlag equal to 0
+    if (qFlag == 0) {
+      this.countQFlag0++;
+    }
 
-      fastaLeftOutlierWriter.close();
-      fastaRightOutlierWriter.close();
+    // test if the qFlag equal to 4
+    if (qFlag == 4) {
+      this.countQFlag4++;
     }
+  }
 
-    //
-    // Display information on the Perfect Outlier Position finder
-    //
-
-    getLogger().info("Number of reads in SAM File: " + countSamReads);
-    getLogger().info("Number of CIGAR code find (not '*'): " + countCigarReads);
-    getLogger().info("Number of QFlag '16': " + countQFlag16);
-    getLogger().info("Number of QFlag '0': " + countQFlag0);
-    getLogger().info("Number of QFlag '4': " + countQFlag4);
-    getLogger().info("Number of left Outlier find: " + countLeftOutlierFind);
-    getLogger().info("Number of right Outlier find: " + countRightOutlierFind);
+  //
+  // Display information on the Perfect Outlier Position finder
+  //
+
+  @Override
+  void logStatistics() {
+
+    getLogger().info("Number of reads in SAM File: " + this.countSamReads);
+    getLogger()
+        .info("Number of CIGAR code find (not '*'): " + this.countCigarReads);
+    getLogger().info("Number of QFlag '16': " + this.countQFlag16);
+    getLogger().info("Number of QFlag '0': " + this.countQFlag0);
+    getLogger().info("Number of QFlag '4': " + this.countQFlag4);
+    getLogger()
+        .info("Number of left Outlier find: " + this.countLeftOutlierFind);
+    getLogger()
+        .info("Number of right Outlier find: " + this.countRightOutlierFind);
 
   }
 }
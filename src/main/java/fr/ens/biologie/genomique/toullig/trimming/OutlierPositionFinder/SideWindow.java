@@ -0,0 +1,181 @@
+package fr.ens.biologie.genomique.toullig.trimming.OutlierPositionFinder;
+
+import java.util.Arrays;
+
+/**
+ * Class to compute the lengths of the outliers of a read with a side window on
+ * its CIGAR. Each base of the CIGAR is encoded in binary (M=1, N and D are
+ * skipped, other letters=0) in a prefix sum array, so the sum of a window is
+ * computed in O(1) and the window slides on the read in O(n) without
+ * allocation. The array is reused for all the reads, an instance must be used
+ * by only one thread.
+ * @author Aurelien Birer
+ */
+public final class SideWindow {
+
+  private final int lengthWindow;
+  private final double threshold;
+
+  // prefixSum[i] is the number of M bases in the first i bases of the CIGAR
+  private int[] prefixSum = new int[1024];
+  private int length;
+
+  /**
+   * Constructor of the SideWindow class.
+   * @param lengthWindow, the length of the window
+   * @param threshold, the minimal fraction of M bases in the window
+   */
+  public SideWindow(int lengthWindow, double threshold) {
+
+    // test if the length of the window is valid
+    if (lengthWindow < 1) {
+      throw new IllegalArgumentException(
+          "The length of the window must be positive: " + lengthWindow);
+    }
+
+    this.lengthWindow = lengthWindow;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Method of the class SideWindow to encode the CIGAR of a read.
+   * @param cigar, the CIGAR of the read
+   * @return the number of bases of the CIGAR encoded
+   */
+  public int setCigar(String cigar) {
+
+    this.length = 0;
+    int opLength = 0;
+
+    for (int i = 0; i < cigar.length(); i++) {
+
+      final char c = cigar.charAt(i);
+
+      // test if the character is a digit of the length of the operation
+      if (c >= '0' && c <= '9') {
+        opLength = opLength * 10 + (c - '0');
+        continue;
+      }
+
+      // test if the operation is skipped in the binary CIGAR
+      if (c != 'N' && c != 'D') {
+        append(c == 'M' ? 1 : 0, opLength);
+      }
+
+      opLength = 0;
+    }
+
+    return this.length;
+  }
+
+  /**
+   * Method of the class SideWindow to encode the match profile of a read.
+   * @param matchProfile, the runs of the binary CIGAR of the read, each run is
+   *          (length &lt;&lt; 1 | bit)
+   * @return the number of bases of the CIGAR encoded
+   */
+  public int setMatchProfile(int[] matchProfile) {
+
+    this.length = 0;
+
+    for (int run : matchProfile) {
+      append(run & 1, run >>> 1);
+    }
+
+    return this.length;
+  }
+
+  /**
+   * Method of the class SideWindow to add the bases of an operation.
+   * @param value, 1 for M bases, 0 for other bases
+   * @param count, the number of bases
+   */
+  private void append(final int value, final int count) {
+
+    // test if the array must be enlarged, one more cell for the empty prefix
+    if (this.length + count + 1 > this.prefixSum.length) {
+      this.prefixSum = Arrays.copyOf(this.prefixSum,
+          Math.max(this.prefixSum.length * 2, this.length + count + 1));
+    }
+
+    int sum = this.prefixSum[this.length];
+
+    for (int i = 1; i <= count; i++) {
+      sum += value;
+      this.prefixSum[this.length + i] = sum;
+    }
+
+    this.length += count;
+  }
+
+  /**
+   * Method of the class SideWindow to test if the fraction of M bases in a
+   * window reach the threshold.
+   * @param start, the start of the window
+   * @return true if the window reach the threshold
+   */
+  private boolean isAligned(final int start) {
+
+    final int sum = this.prefixSum[start + this.lengthWindow]
+        - this.prefixSum[start];
+
+    return (double) sum / this.lengthWindow >= this.threshold;
+  }
+
+  //
+  // get index by side window
+  //
+
+  /**
+   * Method of the class SideWindow to get the length of the left outlier of
+   * the last CIGAR. The window slides from the start of the read to the first
+   * window that reach the threshold, the outlier ends at the start of this
+   * window.
+   * @return int, the length of the outlier
+   */
+  public int leftLength() {
+
+    // the last windows of the read are not tested, except for the reads
+    // shorter than the window plus two bases
+    final int end = this.length - this.lengthWindow - 2 >= 0
+        ? this.length - this.lengthWindow - 2
+        : this.length - this.lengthWindow + 1;
+
+    for (int i = 0; i < end; i++) {
+
+      // test if the window reach the threshold
+      if (isAligned(i)) {
+        return i;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Method of the class SideWindow to get the length of the right outlier of
+   * the last CIGAR. The window slides from the end of the read to the first
+   * window that reach the threshold.
+   * @return int, the length of the outlier
+   */
+  public int rightLength() {
+
+    // i is the end of the window, the first window of the read is not tested
+    for (int i = this.length; i > this.lengthWindow; i--) {
+
+      // test if the window reach the threshold
+      if (isAligned(i - this.lengthWindow)) {
+
+        // test if the window is at the end of the read
+        if (i >= this.length - this.lengthWindow) {
+          return this.length - i;
+        }
+
+        return this.length - i - this.lengthWindow;
+      }
+    }
+
+    return 0;
+  }
+
+}
@@ -0,0 +1,266 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to store the sequences and the qualities of the reads in a compact
+ * form. The bases A, C, G and T are packed on 2 bits, the other characters (N,
+ * IUPAC ambiguity codes, lower case bases) are stored in a side table of
+ * exceptions and the qualities are stored as raw bytes. The records are
+ * written in pages of bytes, on the heap or off-heap (direct buffers), and a
+ * read is referenced by a long handle instead of an object. A record is:
+ * <ul>
+ * <li>the length of the sequence (int)</li>
+ * <li>the length of the quality (int)</li>
+ * <li>the number of exceptions (int)</li>
+ * <li>the packed bases, 4 bases by byte</li>
+ * <li>the exceptions, the position (int) and the character (byte)</li>
+ * <li>the quality, 1 byte by character</li>
+ * </ul>
+ * @author Aurelien Birer
+ */
+public class PackedReadStore {
+
+  /** Handle of a read not stored. */
+  public static final long NO_READ = -1;
+
+  private static final int PAGE_SIZE = 1 << 24;
+  private static final int HEADER_SIZE = 12;
+  private static final int EXCEPTION_SIZE = 5;
+
+  private final boolean offHeap;
+  private final List<ByteBuffer> pages = new ArrayList<>();
+  private ByteBuffer currentPage;
+  private int currentPageIndex = -1;
+  private int currentOffset;
+
+  private long readNumber;
+  private long baseNumber;
+  private long exceptionNumber;
+  private long allocatedBytes;
+
+  /**
+   * Constructor of the PackedReadStore class.
+   * @param offHeap, true to store the reads in direct buffers outside of the
+   *          heap
+   */
+  public PackedReadStore(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  //
+  // Add
+  //
+
+  /**
+   * Method of the class PackedReadStore to add a read to the store.
+   * @param sequence, the sequence of the read
+   * @param quality, the quality of the read
+   * @return the handle of the read in the store
+   */
+  public long add(CharSequence sequence, CharSequence quality) {
+
+    // test if the sequence or the quality is null
+    if (sequence == null || quality == null) {
+      throw new NullPointerException("The sequence or the quality is null");
+    }
+
+    final int sequenceLength = sequence.length();
+    final int qualityLength = quality.length();
+
+    // count the characters that cannot be packed on 2 bits
+    int exceptionCount = 0;
+    for (int i = 0; i < sequenceLength; i++) {
+      if (encode(sequence.charAt(i)) < 0) {
+        exceptionCount++;
+      }
+    }
+
+    final long recordSize = (long) HEADER_SIZE
+        + (sequenceLength + 3) / 4 + (long) exceptionCount * EXCEPTION_SIZE
+        + qualityLength;
+
+    // test if the record is too large for a page
+    if (recordSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The read is too large to be stored: " + sequenceLength + " bases");
+    }
+
+    final ByteBuffer page = reserve((int) recordSize);
+    final int offset = this.currentOffset;
+
+    page.putInt(offset, sequenceLength);
+    page.putInt(offset + 4, qualityLength);
+    page.putInt(offset + 8, exceptionCount);
+
+    // pack the bases, the exceptions are packed as A
+    int position = offset + HEADER_SIZE;
+    int exceptionPosition = position + (sequenceLength + 3) / 4;
+    int packed = 0;
+    for (int i = 0; i < sequenceLength; i++) {
+
+      final char c = sequence.charAt(i);
+      final int code = encode(c);
+
+      // test if the character is an exception
+      if (code < 0) {
+        page.putInt(exceptionPosition, i);
+        page.put(exceptionPosition + 4, (byte) c);
+        exceptionPosition += EXCEPTION_SIZE;
+      } else {
+        packed |= code << ((i & 3) * 2);
+      }
+
+      // test if the byte is full
+      if ((i & 3) == 3 || i == sequenceLength - 1) {
+        page.put(position++, (byte) packed);
+        packed = 0;
+      }
+    }
+
+    // copy the quality
+    for (int i = 0; i < qualityLength; i++) {
+      page.put(exceptionPosition + i, (byte) quality.charAt(i));
+    }
+
+    this.currentOffset += (int) recordSize;
+    this.readNumber++;
+    this.baseNumber += sequenceLength;
+    this.exceptionNumber += exceptionCount;
+
+    return ((long) this.currentPageIndex << 32) | offset;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get a page with enough space for a
+   * record. A record larger than a page is stored in its own page.
+   * @param recordSize, the size of the record in bytes
+   * @return the page where the record must be written at the current offset
+   */
+  private ByteBuffer reserve(final int recordSize) {
+
+    // test if the current page has enough space
+    if (this.currentPage != null
+        && this.currentPage.capacity() - this.currentOffset >= recordSize) {
+      return this.currentPage;
+    }
+
+    final int size = Math.max(PAGE_SIZE, recordSize);
+    this.currentPage = this.offHeap
+        ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    this.pages.add(this.currentPage);
+    this.currentPageIndex = this.pages.size() - 1;
+    this.currentOffset = 0;
+    this.allocatedBytes += size;
+
+    return this.currentPage;
+  }
+
+  /**
+   * Method of the class PackedReadStore to remove all the reads of the store.
+   * The pages are released, the direct buffers are freed by the garbage
+   * collector before a new allocation of direct memory fails. The handles of
+   * the reads removed must not be used.
+   */
+  public void clear() {
+
+    this.pages.clear();
+    this.currentPage = null;
+    this.currentPageIndex = -1;
+    this.currentOffset = 0;
+    this.readNumber = 0;
+    this.baseNumber = 0;
+    this.exceptionNumber = 0;
+    this.allocatedBytes = 0;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get the 2 bits code of a base.
+   * @param c, the character of the base
+   * @return the code of the base or -1 if the base is not A, C, G or T
+   */
+  static int encode(final char c) {
+
+    switch (c) {
+    case 'A':
+      return 0;
+    case 'C':
+      return 1;
+    case 'G':
+      return 2;
+    case 'T':
+      return 3;
+    default:
+      return -1;
+    }
+  }
+
+  //
+  // Get
+  //
+
+  /**
+   * Method of the class PackedReadStore to get a view on a read of the store.
+   * @param handle, the handle of the read
+   * @param reuse, a view to reuse or null to create a new view
+   * @return a view on the read
+   */
+  public ReadView getView(long handle, ReadView reuse) {
+
+    // test if the handle is valid
+    if (handle < 0) {
+      throw new IllegalArgumentException("Invalid read handle: " + handle);
+    }
+
+    final ByteBuffer page = this.pages.get((int) (handle >>> 32));
+    final ReadView view = reuse == null ? new ReadView() : reuse;
+    view.set(page, (int) handle);
+
+    return view;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get the number of reads stored.
+   * @return the number of reads
+   */
+  public long getReadNumber() {
+    return this.readNumber;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get the number of bases stored.
+   * @return the number of bases
+   */
+  public long getBaseNumber() {
+    return this.baseNumber;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get the number of bases stored in
+   * the table of exceptions.
+   * @return the number of exceptions
+   */
+  public long getExceptionNumber() {
+    return this.exceptionNumber;
+  }
+
+  /**
+   * Method of the class PackedReadStore to get the memory allocated by the
+   * pages of the store.
+   * @return the number of bytes allocated
+   */
+  public long getMemoryUsage() {
+    return this.allocatedBytes;
+  }
+
+  /**
+   * Method of the class PackedReadStore to know if the pages are off-heap.
+   * @return true if the pages are direct buffers
+   */
+  public boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+}
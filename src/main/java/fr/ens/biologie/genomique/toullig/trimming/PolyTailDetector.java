@@ -0,0 +1,170 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+/**
+ * Class of the detector of the poly-A and poly-T tails in the outliers of the
+ * reads. With the ONT cDNA reads, the poly-T primer and the poly-A tail are
+ * between the transcript and the RT adaptor, so the tail and the part of the
+ * outlier beyond it are removed before the adaptors are searched: the adaptor
+ * matching is only done on the part of the outlier between the main sequence
+ * and the tail.
+ * <p>
+ * An outlier is scanned from the main sequence to the end of the read with a
+ * state machine on the 2 bits codes of the bases of PackedReadStore: out of a
+ * run, an A or a T starts a run of this base; in a run, the score is increased
+ * by a base of the run and decreased by another base, and the run ends when
+ * the score falls too far below its best value. The run ends at its best
+ * score, so a few errors are tolerated inside a run but not at its ends. The
+ * first run long enough is the tail. The detector allocates nothing, it is
+ * immutable and can be used by several threads.
+ * @author Aurelien Birer
+ */
+public final class PolyTailDetector {
+
+  private static final int CODE_A = PackedReadStore.encode('A');
+  private static final int CODE_T = PackedReadStore.encode('T');
+
+  // the score of a base of the run and of another base
+  private static final int MATCH_SCORE = 1;
+  private static final int MISMATCH_SCORE = -2;
+
+  // the drop of the score below its best value ending a run, two consecutive
+  // errors end a run
+  private static final int MAX_DROP = 4;
+
+  private final int minLength;
+
+  /**
+   * Constructor of the PolyTailDetector class.
+   * @param minLength, the minimal length of a tail
+   */
+  public PolyTailDetector(int minLength) {
+
+    // test if the minimal length is valid
+    if (minLength < 1) {
+      throw new IllegalArgumentException(
+          "The minimal length of the poly-A/T tails must be positive: "
+              + minLength);
+    }
+
+    this.minLength = minLength;
+  }
+
+  /**
+   * Method of the class PolyTailDetector to get the minimal length of a tail.
+   * @return the minimal length of a tail
+   */
+  public int getMinLength() {
+    return this.minLength;
+  }
+
+  /**
+   * Method of the class PolyTailDetector to get the start of the part of the
+   * left outlier to search for the adaptors. The left outlier is scanned from
+   * its end, next to the main sequence, to the start of the read.
+   * @param sequence, the sequence of the read
+   * @param leftLengthOutlier, the length of the left outlier
+   * @return the end of the tail or 0 if no tail is found
+   */
+  public int leftOutlierStart(CharSequence sequence, int leftLengthOutlier) {
+
+    final int tailEnd = findTail(sequence,
+        Math.min(leftLengthOutlier, sequence.length()) - 1, -1, -1);
+
+    return tailEnd == -1 ? 0 : tailEnd + 1;
+  }
+
+  /**
+   * Method of the class PolyTailDetector to get the end of the part of the
+   * right outlier to search for the adaptors. The right outlier is scanned
+   * from its start, next to the main sequence, to the end of the read.
+   * @param sequence, the sequence of the read
+   * @param rightLengthOutlier, the length of the right outlier
+   * @return the start of the tail or the length of the sequence if no tail is
+   *         found
+   */
+  public int rightOutlierEnd(CharSequence sequence, int rightLengthOutlier) {
+
+    final int length = sequence.length();
+    final int tailStart = findTail(sequence,
+        Math.max(length - Math.max(rightLengthOutlier, 0), 0), length, 1);
+
+    return tailStart == -1 ? length : tailStart;
+  }
+
+  /**
+   * Method of the class PolyTailDetector to find the first tail in a part of a
+   * sequence.
+   * @param sequence, the sequence
+   * @param from, the first base scanned
+   * @param to, the base after the last base scanned
+   * @param step, 1 to scan to the end of the sequence, -1 to its start
+   * @return the first base of the tail in the scan or -1 if no tail is found
+   */
+  private int findTail(final CharSequence sequence, final int from,
+      final int to, final int step) {
+
+    // the base of the current run or -1 out of a run
+    int runCode = -1;
+    int runStart = 0;
+    int runEnd = 0;
+    int score = 0;
+    int bestScore = 0;
+
+    for (int i = from; i != to; i += step) {
+
+      final int code = PackedReadStore.encode(sequence.charAt(i));
+
+      // test if the base extends the run
+      if (runCode != -1) {
+
+        if (code == runCode) {
+
+          score += MATCH_SCORE;
+
+          // test if the run ends at this base
+          if (score > bestScore) {
+            bestScore = score;
+            runEnd = i;
+          }
+          continue;
+        }
+
+        score += MISMATCH_SCORE;
+
+        // test if the run is not ended
+        if (bestScore - score < MAX_DROP) {
+          continue;
+        }
+
+        // test if the run is the tail
+        if ((runEnd - runStart) * step + 1 >= this.minLength) {
+          return runStart;
+        }
+
+        // scan again the bases after the end of the run, one of them can
+        // start a run of the other base
+        runCode = -1;
+        i = runEnd;
+        continue;
+      }
+
+      // test if the base starts a run
+      if (code == CODE_A || code == CODE_T) {
+
+        runCode = code;
+        runStart = i;
+        runEnd = i;
+        score = MATCH_SCORE;
+        bestScore = MATCH_SCORE;
+      }
+    }
+
+    // test if the last run is the tail
+    if (runCode != -1 && (runEnd - runStart) * step + 1 >= this.minLength) {
+      return runStart;
+    }
+
+    return -1;
+  }
+
+}
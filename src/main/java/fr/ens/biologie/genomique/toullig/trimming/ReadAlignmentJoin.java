@@ -0,0 +1,466 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+
+/**
+ * Class to join the reads of a FASTQ file with their alignment in a SAM file
+ * by read name. The join can be done in two ways:
+ * <ul>
+ * <li>with a map of the alignments, filled before the join by reading the
+ * whole SAM file</li>
+ * <li>with a merge of the two files, when the alignments of the SAM file are
+ * in the order of the reads of the FASTQ file (e.g. minimap2 output). Only the
+ * alignments of the current read are in memory.</li>
+ * </ul>
+ * The reads of the FASTQ file without alignment are skipped. For a
+ * multi-mapped read, the longest alignment is kept as in
+ * TrimFastq.readSamFile(). A merge join of files in the same order stops and
+ * isOutOfOrder() returns true when an alignment of the SAM file is of a read
+ * already passed in the FASTQ file, or at the end of the FASTQ file when
+ * alignments have not been joined (e.g. a read of the SAM file not in the
+ * FASTQ file). A merge join of files sorted by read name (e.g. by
+ * ExternalReadSorter) skips the alignments of the reads not in the FASTQ file
+ * and stops only when the read names of a file are not sorted.
+ * @author Aurelien Birer
+ */
+public class ReadAlignmentJoin implements Closeable {
+
+  private static final int SAM_PREFIX_LENGTH = 1000;
+  private static final int FASTQ_PREFIX_LENGTH = 4 * SAM_PREFIX_LENGTH;
+
+  private final ReadIdMap<InformationRead> workTrimmingMap;
+  private final boolean mergeJoin;
+  private final boolean sorted;
+  private final FastqReader fastqReader;
+  private final Iterator<ReadSequence> fastqIterator;
+  private final SamAlignmentParser samParser;
+
+  // the name of the alignment read by the parser and not yet joined
+  private String pendingReadName;
+
+  // the ids of the reads of the FASTQ file passed since the last joined read
+  private final Set<String> skippedIds = new HashSet<>();
+
+  // the id of the last read of the FASTQ file for files sorted by read name
+  private String previousId;
+
+  private ReadSequence read;
+  private String id;
+  private InformationRead informationRead;
+
+  private long joinedReadNumber;
+  private long unjoinedReadNumber;
+  private long multiMappedReadNumber;
+  private long unjoinedAlignmentNumber;
+  private boolean outOfOrder;
+
+  /**
+   * Constructor of the ReadAlignmentJoin class.
+   * @param samFile, the SAM file, only read for a merge join
+   * @param fastqFile, the FASTQ file
+   * @param workTrimmingMap, for a map join the map of the alignments, for a
+   *          merge join the map to fill with the joined alignments or null
+   * @param mergeJoin, true for a merge join
+   * @throws IOException if an IO error occur
+   */
+  public ReadAlignmentJoin(File samFile, File fastqFile,
+      ReadIdMap<InformationRead> workTrimmingMap, boolean mergeJoin)
+      throws IOException {
+
+    this(samFile, fastqFile, workTrimmingMap, mergeJoin, false);
+  }
+
+  /**
+   * Constructor of the ReadAlignmentJoin class.
+   * @param samFile, the SAM file, only read for a merge join
+   * @param fastqFile, the FASTQ file
+   * @param workTrimmingMap, for a map join the map of the alignments, for a
+   *          merge join the map to fill with the joined alignments or null
+   * @param mergeJoin, true for a merge join
+   * @param sorted, true for a merge join of files sorted by read name
+   * @throws IOException if an IO error occur
+   */
+  public ReadAlignmentJoin(File samFile, File fastqFile,
+      ReadIdMap<InformationRead> workTrimmingMap, boolean mergeJoin,
+      boolean sorted) throws IOException {
+
+    // test if the map is null for a map join
+    if (!mergeJoin && workTrimmingMap == null) {
+      throw new NullPointerException("The work trimming map is null");
+    }
+
+    this.workTrimmingMap = workTrimmingMap;
+    this.mergeJoin = mergeJoin;
+    this.sorted = mergeJoin && sorted;
+    this.fastqReader = new FastqReader(fastqFile);
+    this.fastqIterator = this.fastqReader.iterator();
+
+    // test if the SAM file must be read
+    if (mergeJoin) {
+
+      this.samParser = new SamAlignmentParser(new FileInputStream(samFile));
+      this.pendingReadName =
+          this.samParser.next() ? this.samParser.readName() : null;
+
+    } else {
+      this.samParser = null;
+    }
+  }
+
+  //
+  // Join
+  //
+
+  /**
+   * Method of the class ReadAlignmentJoin to join the next read of the FASTQ
+   * file with its alignment.
+   * @return false if there is no more read to join
+   * @throws IOException if an IO error occur
+   */
+  public boolean next() throws IOException {
+
+    while (!this.outOfOrder && this.fastqIterator.hasNext()) {
+
+      final ReadSequence read = this.fastqIterator.next();
+      final String id = getId(read.getName());
+
+      final InformationRead informationRead = this.mergeJoin
+          ? nextAlignment(id) : this.workTrimmingMap.get(id);
+
+      // test if the read has no alignment in the SAM file
+      if (informationRead == null) {
+        this.unjoinedReadNumber++;
+
+        // test if the read of the next alignment can be after this read
+        if (this.mergeJoin && !this.sorted && this.pendingReadName != null) {
+          this.skippedIds.add(id);
+        }
+        continue;
+      }
+
+      this.read = read;
+      this.id = id;
+      this.informationRead = informationRead;
+      this.joinedReadNumber++;
+
+      return true;
+    }
+
+    // throw the errors of the reading of the FASTQ file
+    this.fastqReader.throwException();
+
+    // test if alignments of the SAM file have not been joined
+    if (this.mergeJoin && !this.outOfOrder && this.pendingReadName != null) {
+
+      // test if the alignments are of reads after the last read
+      if (this.sorted) {
+        while (this.pendingReadName != null && !this.outOfOrder) {
+          this.unjoinedAlignmentNumber++;
+          nextSamAlignment();
+        }
+      } else {
+        this.outOfOrder = true;
+        getLogger().warning("The read of the alignment "
+            + this.pendingReadName + " is not found in the FASTQ file");
+      }
+    }
+
+    this.read = null;
+    this.id = null;
+    this.informationRead = null;
+
+    return false;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to read the alignments of a read in
+   * the SAM file for a merge join.
+   * @param id, the id of the read in the FASTQ file
+   * @return the longest alignment of the read or null if the next alignment of
+   *         the SAM file is not of this read
+   * @throws IOException if an IO error occur
+   */
+  private InformationRead nextAlignment(final String id) throws IOException {
+
+    // test if the files are sorted by read name
+    if (this.sorted) {
+
+      // test if the read is before the previous read
+      if (this.previousId != null && this.previousId.compareTo(id) > 0) {
+        this.outOfOrder = true;
+        getLogger().warning("The reads of the FASTQ file are not sorted: "
+            + id + " after " + this.previousId);
+        return null;
+      }
+      this.previousId = id;
+
+      // skip the alignments of the reads before this read, they are not in
+      // the FASTQ file
+      while (!this.outOfOrder && this.pendingReadName != null
+          && this.pendingReadName.compareTo(id) < 0) {
+        this.unjoinedAlignmentNumber++;
+        nextSamAlignment();
+      }
+    }
+
+    // test if the next alignment is of this read
+    if (this.pendingReadName == null || !this.pendingReadName.equals(id)) {
+      return null;
+    }
+
+    InformationRead result = newInformationRead();
+    boolean multiMapped = false;
+
+    // read the other alignments of the read
+    while (nextSamAlignment() && this.pendingReadName.equals(id)) {
+
+      multiMapped = true;
+
+      // Select the largest alignement for a multi-mapped read
+      if (result.cigarLength <= this.samParser.alignmentLength()) {
+        result = newInformationRead();
+      }
+    }
+
+    // test if the read is multi-mapped
+    if (multiMapped) {
+      this.multiMappedReadNumber++;
+    }
+
+    // test if the next alignment is of a read already passed
+    if (this.pendingReadName != null
+        && this.skippedIds.contains(this.pendingReadName)) {
+      this.outOfOrder = true;
+      getLogger().warning("The read of the alignment " + this.pendingReadName
+          + " is before the read " + id + " in the FASTQ file");
+    }
+    this.skippedIds.clear();
+
+    // test if the joined alignments must be kept
+    if (this.workTrimmingMap != null) {
+      this.workTrimmingMap.put(id, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to read the next alignment of the
+   * SAM file.
+   * @return false if there is no more alignment
+   * @throws IOException if an IO error occur
+   */
+  private boolean nextSamAlignment() throws IOException {
+
+    final String previousReadName = this.pendingReadName;
+    this.pendingReadName =
+        this.samParser.next() ? this.samParser.readName() : null;
+
+    // test if the alignments are not sorted by read name
+    if (this.sorted && this.pendingReadName != null && previousReadName != null
+        && previousReadName.compareTo(this.pendingReadName) > 0) {
+      this.outOfOrder = true;
+      getLogger().warning("The alignments of the SAM file are not sorted: "
+          + this.pendingReadName + " after " + previousReadName);
+    }
+
+    return this.pendingReadName != null;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to create an InformationRead of the
+   * current alignment of the SAM file.
+   * @return a new InformationRead object
+   */
+  private InformationRead newInformationRead() {
+
+    return InformationRead.newInformationRead(this.samParser);
+  }
+
+  //
+  // Co-sorting
+  //
+
+  /**
+   * Method of the class ReadAlignmentJoin to test if the alignments of a SAM
+   * file are in the order of the reads of a FASTQ file. Only the beginning of
+   * the files is read: the first read names of the SAM file must be found in
+   * the same order in the first reads of the FASTQ file, some reads of the
+   * FASTQ file can have no alignment.
+   * @param samFile, the SAM file
+   * @param fastqFile, the FASTQ file
+   * @return true if the beginnings of the files are in the same order
+   * @throws IOException if an IO error occur
+   */
+  public static boolean isCoSorted(File samFile, File fastqFile)
+      throws IOException {
+
+    final List<String> samReadNames = new ArrayList<>();
+
+    // get the first read names of the SAM file
+    try (SamAlignmentParser parser =
+        new SamAlignmentParser(new FileInputStream(samFile))) {
+
+      String lastReadName = null;
+      while (samReadNames.size() < SAM_PREFIX_LENGTH && parser.next()) {
+
+        final String readName = parser.readName();
+
+        // test if the alignment is of a new read
+        if (!readName.equals(lastReadName)) {
+          samReadNames.add(readName);
+          lastReadName = readName;
+        }
+      }
+    }
+
+    int index = 0;
+    int fastqReadNumber = 0;
+
+    // search the read names of the SAM file in the first reads of the FASTQ
+    try (FastqReader reader = new FastqReader(fastqFile)) {
+
+      for (ReadSequence read : reader) {
+
+        // test if all the read names have been found
+        if (index == samReadNames.size()
+            || fastqReadNumber == FASTQ_PREFIX_LENGTH) {
+          break;
+        }
+
+        if (getId(read.getName()).equals(samReadNames.get(index))) {
+          index++;
+        }
+        fastqReadNumber++;
+      }
+    }
+
+    return index == samReadNames.size();
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the id of a read from the
+   * header of the FASTQ file.
+   * @param header, the header of the read
+   * @return the id of the read
+   */
+  static String getId(final String header) {
+
+    final int index = header.indexOf(' ');
+
+    return index == -1 ? header : header.substring(0, index);
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the current read.
+   * @return the read of the FASTQ file
+   */
+  public ReadSequence getRead() {
+    return this.read;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the id of the current read.
+   * @return the id of the read
+   */
+  public String getId() {
+    return this.id;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the alignment of the current
+   * read.
+   * @return the InformationRead of the read
+   */
+  public InformationRead getInformationRead() {
+    return this.informationRead;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to know if the join is a merge join.
+   * @return true for a merge join
+   */
+  public boolean isMergeJoin() {
+    return this.mergeJoin;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to know if a merge join has found
+   * alignments out of the order of the FASTQ file, or files not sorted by read
+   * name. In this case, the reads after these alignments have not been
+   * joined.
+   * @return true if the files are not in the same order
+   */
+  public boolean isOutOfOrder() {
+    return this.outOfOrder;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the number of reads joined.
+   * @return the number of reads joined
+   */
+  public long getJoinedReadNumber() {
+    return this.joinedReadNumber;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the number of reads of the
+   * FASTQ file without alignment.
+   * @return the number of reads without alignment
+   */
+  public long getUnjoinedReadNumber() {
+    return this.unjoinedReadNumber;
+  }
+
+  /**
+   * Method of the class ReadAlignmentJoin to get the number of alignments of
+   * reads not in the FASTQ file, for a merge join of sorted files.
+   * @return the number of alignments without read
+   */
+  public long getUnjoinedAlignmentNumber() {
+    return this.unjoinedAlignmentNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.fastqReader.close();
+
+    // test if the SAM file has been read
+    if (this.samParser != null) {
+      this.samParser.close();
+
+      getLogger().info(
+          "Number of multi-mapped reads: " + this.multiMappedReadNumber);
+
+      // test if the alignments of reads not in the FASTQ file are skipped
+      if (this.sorted) {
+        getLogger().info("Number of alignments without read: "
+            + this.unjoinedAlignmentNumber);
+      }
+    }
+
+    getLogger().info("Join of the SAM and FASTQ files ("
+        + (this.sorted ? "sorted merge" : this.mergeJoin ? "merge" : "map")
+        + "): " + this.joinedReadNumber + " reads joined, "
+        + this.unjoinedReadNumber + " reads without alignment");
+  }
+
+}
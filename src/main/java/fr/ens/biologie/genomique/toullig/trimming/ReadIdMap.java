@@ -0,0 +1,362 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import fr.ens.biologie.genomique.toullig.Utils;
+
+/**
+ * Class of a map with read ids as keys. The ONT read ids are UUIDs in lower
+ * case (e.g. 6a3d8c5e-2b0f-4c7a-9e1d-0f5b6a7c8d9e): these ids are stored as two
+ * longs in parallel arrays with open addressing and linear probing, instead of
+ * String keys in a HashMap. The other read ids are stored in a HashMap. The
+ * null values are not allowed.
+ * @param <V> the type of the values
+ * @author Aurelien Birer
+ */
+public class ReadIdMap<V> {
+
+  private static final int DEFAULT_CAPACITY = 1 << 10;
+  private static final int MAX_LOAD_PERCENT = 60;
+
+  private long[] mostSignificantBits;
+  private long[] leastSignificantBits;
+  private Object[] values;
+  private int uuidNumber;
+
+  private final Map<String, V> otherIds = new HashMap<>();
+
+  /**
+   * Constructor of the ReadIdMap class.
+   */
+  public ReadIdMap() {
+    allocate(DEFAULT_CAPACITY);
+  }
+
+  //
+  // Map
+  //
+
+  /**
+   * Method of the class ReadIdMap to get the value of a read id.
+   * @param id, the read id
+   * @return the value or null if the read id is not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V get(String id) {
+
+    // test if the id is not stored in the arrays
+    if (!isPackedId(id)) {
+      return this.otherIds.get(id);
+    }
+
+    final int slot = find(Utils.getUUIDMostSignificantBits(id),
+        Utils.getUUIDLeastSignificantBits(id));
+
+    return (V) this.values[slot];
+  }
+
+  /**
+   * Method of the class ReadIdMap to test if a read id is in the map.
+   * @param id, the read id
+   * @return true if the read id is in the map
+   */
+  public boolean containsKey(String id) {
+    return get(id) != null;
+  }
+
+  /**
+   * Method of the class ReadIdMap to set the value of a read id.
+   * @param id, the read id
+   * @param value, the value, not null
+   * @return the previous value or null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(String id, V value) {
+
+    // test if the value is null
+    if (value == null) {
+      throw new NullPointerException("The value of a read id is null");
+    }
+
+    // test if the id is not stored in the arrays
+    if (!isPackedId(id)) {
+      return this.otherIds.put(id, value);
+    }
+
+    final long msb = Utils.getUUIDMostSignificantBits(id);
+    final long lsb = Utils.getUUIDLeastSignificantBits(id);
+    final int slot = find(msb, lsb);
+    final V previous = (V) this.values[slot];
+
+    this.values[slot] = value;
+
+    // test if the id is new
+    if (previous == null) {
+
+      this.mostSignificantBits[slot] = msb;
+      this.leastSignificantBits[slot] = lsb;
+      this.uuidNumber++;
+
+      // test if the arrays must be enlarged
+      if (this.uuidNumber * 100L > this.values.length
+          * (long) MAX_LOAD_PERCENT) {
+        rehash(this.values.length * 2);
+      }
+    }
+
+    return previous;
+  }
+
+  /**
+   * Method of the class ReadIdMap to get the number of read ids.
+   * @return the number of read ids in the map
+   */
+  public int size() {
+    return this.uuidNumber + this.otherIds.size();
+  }
+
+  /**
+   * Method of the class ReadIdMap to remove all the read ids.
+   */
+  public void clear() {
+
+    allocate(DEFAULT_CAPACITY);
+    this.uuidNumber = 0;
+    this.otherIds.clear();
+  }
+
+  /**
+   * Method of the class ReadIdMap to iterate over the read ids. The UUID read
+   * ids are formatted from their two longs.
+   * @return an Iterable over the read ids
+   */
+  public Iterable<String> readIds() {
+
+    return new Iterable<String>() {
+
+      @Override
+      public Iterator<String> iterator() {
+        return new ReadIdIterator();
+      }
+    };
+  }
+
+  //
+  // Open addressing
+  //
+
+  /**
+   * Method of the class ReadIdMap to test if a read id is stored in the
+   * arrays. Only the UUIDs in lower case are stored in the arrays, so the read
+   * ids can be formatted back without change.
+   * @param id, the read id
+   * @return true if the read id is stored in the arrays
+   */
+  static boolean isPackedId(final String id) {
+
+    // test if the id is an UUID
+    if (!Utils.isUUID(id)) {
+      return false;
+    }
+
+    for (int i = 0; i < id.length(); i++) {
+
+      final char c = id.charAt(i);
+
+      // test if the digit is in upper case
+      if (c >= 'A' && c <= 'F') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Method of the class ReadIdMap to find the slot of an UUID.
+   * @param msb, the 64 most significant bits of the UUID
+   * @param lsb, the 64 least significant bits of the UUID
+   * @return the slot of the UUID or the empty slot where it must be added
+   */
+  private int find(final long msb, final long lsb) {
+
+    final int mask = this.values.length - 1;
+    int slot = hash(msb, lsb) & mask;
+
+    // linear probing until the UUID or an empty slot is found
+    while (this.values[slot] != null
+        && (this.mostSignificantBits[slot] != msb
+            || this.leastSignificantBits[slot] != lsb)) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  /**
+   * Method of the class ReadIdMap to hash an UUID. The random bits of the
+   * UUIDs are mixed to use all the bits in the hash.
+   * @param msb, the 64 most significant bits of the UUID
+   * @param lsb, the 64 least significant bits of the UUID
+   * @return the hash of the UUID
+   */
+  private static int hash(final long msb, final long lsb) {
+
+    long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+
+    return (int) h;
+  }
+
+  /**
+   * Method of the class ReadIdMap to allocate the arrays.
+   * @param capacity, the number of slots, a power of two
+   */
+  private void allocate(final int capacity) {
+
+    this.mostSignificantBits = new long[capacity];
+    this.leastSignificantBits = new long[capacity];
+    this.values = new Object[capacity];
+  }
+
+  /**
+   * Method of the class ReadIdMap to move the UUIDs in larger arrays.
+   * @param capacity, the new number of slots, a power of two
+   */
+  private void rehash(final int capacity) {
+
+    // test if the capacity is too large
+    if (capacity <= 0) {
+      throw new IllegalStateException("Too many read ids in the map");
+    }
+
+    final long[] oldMsbs = this.mostSignificantBits;
+    final long[] oldLsbs = this.leastSignificantBits;
+    final Object[] oldValues = this.values;
+
+    allocate(capacity);
+
+    for (int i = 0; i < oldValues.length; i++) {
+
+      // test if the slot is used
+      if (oldValues[i] != null) {
+
+        final int slot = find(oldMsbs[i], oldLsbs[i]);
+        this.mostSignificantBits[slot] = oldMsbs[i];
+        this.leastSignificantBits[slot] = oldLsbs[i];
+        this.values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Method of the class ReadIdMap to format an UUID as a read id.
+   * @param msb, the 64 most significant bits of the UUID
+   * @param lsb, the 64 least significant bits of the UUID
+   * @return the read id in lower case
+   */
+  static String formatUUID(final long msb, final long lsb) {
+
+    final char[] result = new char[36];
+
+    formatHex(msb >>> 32, 8, result, 0);
+    result[8] = '-';
+    formatHex(msb >>> 16, 4, result, 9);
+    result[13] = '-';
+    formatHex(msb, 4, result, 14);
+    result[18] = '-';
+    formatHex(lsb >>> 48, 4, result, 19);
+    result[23] = '-';
+    formatHex(lsb, 12, result, 24);
+
+    return new String(result);
+  }
+
+  /**
+   * Method of the class ReadIdMap to format the lowest hexadecimal digits of a
+   * long.
+   * @param value, the value to format
+   * @param digits, the number of digits
+   * @param result, the array of the characters
+   * @param offset, the offset of the first digit in the array
+   */
+  private static void formatHex(final long value, final int digits,
+      final char[] result, final int offset) {
+
+    for (int i = 0; i < digits; i++) {
+
+      final int digit = (int) (value >>> (4 * (digits - 1 - i))) & 0xf;
+      result[offset + i] = Character.forDigit(digit, 16);
+    }
+  }
+
+  /**
+   * Class to iterate over the read ids of the map.
+   */
+  private final class ReadIdIterator implements Iterator<String> {
+
+    private int slot = -1;
+    private final Iterator<String> otherIterator =
+        ReadIdMap.this.otherIds.keySet().iterator();
+
+    /**
+     * Constructor.
+     */
+    ReadIdIterator() {
+      advance();
+    }
+
+    /**
+     * Move to the next used slot.
+     */
+    private void advance() {
+
+      do {
+        this.slot++;
+      } while (this.slot < values.length && values[this.slot] == null);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.slot < values.length || this.otherIterator.hasNext();
+    }
+
+    @Override
+    public String next() {
+
+      // test if the UUIDs are all iterated
+      if (this.slot >= values.length) {
+
+        if (!this.otherIterator.hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        return this.otherIterator.next();
+      }
+
+      final String result = formatUUID(mostSignificantBits[this.slot],
+          leastSignificantBits[this.slot]);
+      advance();
+
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReadIdMap{uuids="
+        + this.uuidNumber + ", otherIds=" + this.otherIds.size()
+        + ", capacity=" + this.values.length + "}";
+  }
+
+}
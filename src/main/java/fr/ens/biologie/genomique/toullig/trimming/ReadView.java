@@ -0,0 +1,231 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class of a view on a read of a PackedReadStore. The view decodes the bases
+ * and the qualities on demand, so a read is only converted to a String when it
+ * is written. A view can be reused for several reads with the method
+ * PackedReadStore.getView().
+ * @author Aurelien Birer
+ */
+public class ReadView {
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  private ByteBuffer page;
+  private int sequenceLength;
+  private int qualityLength;
+  private int exceptionCount;
+  private int packedStart;
+  private int exceptionStart;
+  private int qualityStart;
+
+  /**
+   * Constructor of the ReadView class.
+   */
+  ReadView() {
+  }
+
+  /**
+   * Method of the class ReadView to set the record of the view.
+   * @param page, the page of the record
+   * @param offset, the offset of the record in the page
+   */
+  void set(final ByteBuffer page, final int offset) {
+
+    this.page = page;
+    this.sequenceLength = page.getInt(offset);
+    this.qualityLength = page.getInt(offset + 4);
+    this.exceptionCount = page.getInt(offset + 8);
+    this.packedStart = offset + 12;
+    this.exceptionStart = this.packedStart + (this.sequenceLength + 3) / 4;
+    this.qualityStart = this.exceptionStart + this.exceptionCount * 5;
+  }
+
+  //
+  // Sequence
+  //
+
+  /**
+   * Method of the class ReadView to get the length of the sequence.
+   * @return the length of the sequence
+   */
+  public int length() {
+    return this.sequenceLength;
+  }
+
+  /**
+   * Method of the class ReadView to get a base of the sequence.
+   * @param index, the index of the base
+   * @return the character of the base
+   */
+  public char baseAt(int index) {
+
+    // test if the index is valid
+    if (index < 0 || index >= this.sequenceLength) {
+      throw new IndexOutOfBoundsException("Invalid base index: " + index);
+    }
+
+    final int exception = findException(index);
+
+    // test if the base is an exception
+    if (exception < this.exceptionCount
+        && exceptionPosition(exception) == index) {
+      return (char) (this.page.get(this.exceptionStart + exception * 5 + 4)
+          & 0xff);
+    }
+
+    return decode(index);
+  }
+
+  /**
+   * Method of the class ReadView to get a sub-sequence.
+   * @param start, the index of the first base
+   * @param end, the index after the last base
+   * @return a string with the sub-sequence
+   */
+  public String getSequence(int start, int end) {
+
+    // test if the bounds are valid
+    if (start < 0 || end > this.sequenceLength || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Invalid bounds: " + start + ", " + end);
+    }
+
+    final char[] result = new char[end - start];
+
+    for (int i = start; i < end; i++) {
+      result[i - start] = decode(i);
+    }
+
+    // overlay the exceptions of the sub-sequence
+    for (int e = findException(start); e < this.exceptionCount; e++) {
+
+      final int position = exceptionPosition(e);
+
+      // test if the exception is after the sub-sequence
+      if (position >= end) {
+        break;
+      }
+
+      result[position - start] =
+          (char) (this.page.get(this.exceptionStart + e * 5 + 4) & 0xff);
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Method of the class ReadView to get the sequence.
+   * @return a string with the sequence
+   */
+  public String getSequence() {
+    return getSequence(0, this.sequenceLength);
+  }
+
+  /**
+   * Method of the class ReadView to decode a packed base.
+   * @param index, the index of the base
+   * @return the character of the base
+   */
+  private char decode(final int index) {
+
+    final int b = this.page.get(this.packedStart + (index >> 2));
+    return BASES[(b >> ((index & 3) * 2)) & 3];
+  }
+
+  /**
+   * Method of the class ReadView to get the position of an exception.
+   * @param exception, the index of the exception
+   * @return the position of the exception in the sequence
+   */
+  private int exceptionPosition(final int exception) {
+    return this.page.getInt(this.exceptionStart + exception * 5);
+  }
+
+  /**
+   * Method of the class ReadView to find the first exception at a position
+   * greater or equal to a position of the sequence.
+   * @param position, the position in the sequence
+   * @return the index of the exception or the number of exceptions
+   */
+  private int findException(final int position) {
+
+    int low = 0;
+    int high = this.exceptionCount;
+
+    // binary search in the exceptions sorted by position
+    while (low < high) {
+
+      final int middle = (low + high) >>> 1;
+
+      if (exceptionPosition(middle) < position) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    return low;
+  }
+
+  //
+  // Quality
+  //
+
+  /**
+   * Method of the class ReadView to get the length of the quality.
+   * @return the length of the quality
+   */
+  public int qualityLength() {
+    return this.qualityLength;
+  }
+
+  /**
+   * Method of the class ReadView to get a character of the quality.
+   * @param index, the index of the character
+   * @return the character of the quality
+   */
+  public char qualityAt(int index) {
+
+    // test if the index is valid
+    if (index < 0 || index >= this.qualityLength) {
+      throw new IndexOutOfBoundsException("Invalid quality index: " + index);
+    }
+
+    return (char) (this.page.get(this.qualityStart + index) & 0xff);
+  }
+
+  /**
+   * Method of the class ReadView to get a sub-sequence of the quality.
+   * @param start, the index of the first character
+   * @param end, the index after the last character
+   * @return a string with the sub-sequence of the quality
+   */
+  public String getQuality(int start, int end) {
+
+    // test if the bounds are valid
+    if (start < 0 || end > this.qualityLength || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Invalid bounds: " + start + ", " + end);
+    }
+
+    final char[] result = new char[end - start];
+
+    for (int i = start; i < end; i++) {
+      result[i - start] = (char) (this.page.get(this.qualityStart + i) & 0xff);
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Method of the class ReadView to get the quality.
+   * @return a string with the quality
+   */
+  public String getQuality() {
+    return getQuality(0, this.qualityLength);
+  }
+
+}
@@ -0,0 +1,406 @@
+package fr.ens.biologie.genomique.toullig.trimming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class to read the alignments of a SAM file without splitting the lines. Only
+ * the fields used by the trimming are parsed (QNAME, FLAG and CIGAR), directly
+ * in the bytes of the line, and the CIGAR is stored in arrays of primitives.
+ * The line buffer and the CIGAR arrays are reused for all the alignments, so
+ * the values of an alignment are valid until the next call to next().
+ * @author Aurelien Birer
+ */
+public class SamAlignmentParser implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int bufferPosition;
+  private int bufferLimit;
+
+  private byte[] line = new byte[1024];
+  private int lineLength;
+
+  // fields of the current alignment
+  private int readNameEnd;
+  private int flag;
+  private int cigarStart;
+  private int cigarEnd;
+  private int[] operationLengths = new int[64];
+  private byte[] operations = new byte[64];
+  private int operationCount;
+  private int alignmentLength;
+
+  private long bytesRead;
+  private long alignmentNumber;
+  private long invalidLineNumber;
+
+  /**
+   * Constructor of the SamAlignmentParser class.
+   * @param in, the input stream of the SAM file
+   */
+  public SamAlignmentParser(InputStream in) {
+
+    // test if the input stream is null
+    if (in == null) {
+      throw new NullPointerException("The SAM input stream is null");
+    }
+
+    this.in = in;
+  }
+
+  //
+  // Parsing
+  //
+
+  /**
+   * Method of the class SamAlignmentParser to read the next alignment. The
+   * header lines and the invalid lines are skipped.
+   * @return false if there is no more alignment
+   * @throws IOException if an IO error occur
+   */
+  public boolean next() throws IOException {
+
+    while (readLine()) {
+
+      // test if the line is a header line or an empty line
+      if (this.lineLength == 0 || this.line[0] == '@') {
+        continue;
+      }
+
+      // test if the alignment is valid
+      if (parseLine()) {
+        this.alignmentNumber++;
+        return true;
+      }
+
+      this.invalidLineNumber++;
+    }
+
+    return false;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to read a line in the line buffer.
+   * @return false if the end of the file is reached
+   * @throws IOException if an IO error occur
+   */
+  private boolean readLine() throws IOException {
+
+    this.lineLength = 0;
+    boolean empty = true;
+
+    while (true) {
+
+      // test if the buffer must be filled
+      if (this.bufferPosition == this.bufferLimit) {
+
+        final int n = this.in.read(this.buffer);
+
+        // test if the end of the file is reached
+        if (n == -1) {
+          return !empty;
+        }
+
+        this.bufferPosition = 0;
+        this.bufferLimit = n;
+        this.bytesRead += n;
+      }
+
+      empty = false;
+
+      // search the end of the line in the buffer
+      int end = this.bufferPosition;
+      while (end < this.bufferLimit && this.buffer[end] != '\n') {
+        end++;
+      }
+
+      appendToLine(this.bufferPosition, end - this.bufferPosition);
+
+      // test if the end of the line has been found
+      if (end < this.bufferLimit) {
+
+        this.bufferPosition = end + 1;
+
+        // remove the carriage return of the Windows files
+        if (this.lineLength > 0 && this.line[this.lineLength - 1] == '\r') {
+          this.lineLength--;
+        }
+
+        return true;
+      }
+
+      this.bufferPosition = end;
+    }
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to append bytes of the buffer to
+   * the line buffer.
+   * @param start, the index of the first byte in the buffer
+   * @param length, the number of bytes
+   */
+  private void appendToLine(final int start, final int length) {
+
+    // test if the line buffer is too small
+    if (this.lineLength + length > this.line.length) {
+
+      final byte[] newLine =
+          new byte[Math.max(2 * this.line.length, this.lineLength + length)];
+      System.arraycopy(this.line, 0, newLine, 0, this.lineLength);
+      this.line = newLine;
+    }
+
+    System.arraycopy(this.buffer, start, this.line, this.lineLength, length);
+    this.lineLength += length;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to parse the fields QNAME, FLAG and
+   * CIGAR of the line.
+   * @return true if the fields are valid
+   */
+  private boolean parseLine() {
+
+    // QNAME is the field 1
+    int end = nextTab(0);
+    if (end < 0) {
+      return false;
+    }
+    this.readNameEnd = end;
+
+    // FLAG is the field 2
+    int start = end + 1;
+    end = nextTab(start);
+    if (end < 0 || end == start) {
+      return false;
+    }
+
+    int value = 0;
+    for (int i = start; i < end; i++) {
+
+      final int digit = this.line[i] - '0';
+
+      // test if the flag is a number
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      value = value * 10 + digit;
+    }
+    this.flag = value;
+
+    // skip RNAME, POS and MAPQ, CIGAR is the field 6
+    for (int field = 3; field <= 5; field++) {
+
+      end = nextTab(end + 1);
+      if (end < 0) {
+        return false;
+      }
+    }
+
+    start = end + 1;
+    end = nextTab(start);
+    if (end < 0) {
+      end = this.lineLength;
+    }
+    this.cigarStart = start;
+    this.cigarEnd = end;
+
+    return parseCigar(start, end);
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to parse the CIGAR of the line.
+   * @param start, the index of the first character of the CIGAR
+   * @param end, the index after the last character of the CIGAR
+   * @return true if the CIGAR is valid
+   */
+  private boolean parseCigar(final int start, final int end) {
+
+    this.operationCount = 0;
+    this.alignmentLength = 0;
+
+    // test if the read is unmapped
+    if (end - start == 1 && this.line[start] == '*') {
+      return true;
+    }
+
+    // test if the CIGAR is empty
+    if (end == start) {
+      return false;
+    }
+
+    int length = 0;
+    boolean digits = false;
+    for (int i = start; i < end; i++) {
+
+      final byte c = this.line[i];
+
+      // test if the character is a digit of the length of the operation
+      if (c >= '0' && c <= '9') {
+        length = length * 10 + c - '0';
+        digits = true;
+        continue;
+      }
+
+      // test if the operation has no length
+      if (!digits) {
+        return false;
+      }
+
+      addOperation(c, length);
+      length = 0;
+      digits = false;
+    }
+
+    // test if the CIGAR ends with a length without operation
+    return !digits;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to add an operation to the CIGAR.
+   * @param operation, the code of the operation
+   * @param length, the length of the operation
+   */
+  private void addOperation(final byte operation, final int length) {
+
+    // test if the arrays are too small
+    if (this.operationCount == this.operations.length) {
+
+      final int newSize = 2 * this.operations.length;
+      final byte[] newOperations = new byte[newSize];
+      final int[] newLengths = new int[newSize];
+      System.arraycopy(this.operations, 0, newOperations, 0,
+          this.operationCount);
+      System.arraycopy(this.operationLengths, 0, newLengths, 0,
+          this.operationCount);
+      this.operations = newOperations;
+      this.operationLengths = newLengths;
+    }
+
+    this.operations[this.operationCount] = operation;
+    this.operationLengths[this.operationCount] = length;
+    this.operationCount++;
+    this.alignmentLength += length;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the index of the next tab of
+   * the line.
+   * @param from, the index to start the search
+   * @return the index of the tab or -1 if there is no tab
+   */
+  private int nextTab(final int from) {
+
+    for (int i = from; i < this.lineLength; i++) {
+      if (this.line[i] == '\t') {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Method of the class SamAlignmentParser to get the name of the read.
+   * @return a string with the QNAME field
+   */
+  public String readName() {
+    return new String(this.line, 0, this.readNameEnd,
+        StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the flag of the alignment.
+   * @return an int with the FLAG field
+   */
+  public int flag() {
+    return this.flag;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the CIGAR of the alignment.
+   * @return a string with the CIGAR field
+   */
+  public String cigarString() {
+    return new String(this.line, this.cigarStart,
+        this.cigarEnd - this.cigarStart, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the number of operations of
+   * the CIGAR.
+   * @return the number of operations, 0 if the read is unmapped
+   */
+  public int cigarOperationCount() {
+    return this.operationCount;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get an operation of the CIGAR.
+   * @param index, the index of the operation
+   * @return the code of the operation (e.g. 'M', 'S')
+   */
+  public char cigarOperation(final int index) {
+    return (char) this.operations[index];
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the length of an operation of
+   * the CIGAR.
+   * @param index, the index of the operation
+   * @return the length of the operation
+   */
+  public int cigarOperationLength(final int index) {
+    return this.operationLengths[index];
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the sum of the lengths of all
+   * the operations of the CIGAR.
+   * @return the length of the alignment, 0 if the read is unmapped
+   */
+  public int alignmentLength() {
+    return this.alignmentLength;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the number of bytes read.
+   * @return the number of bytes read
+   */
+  public long getBytesRead() {
+    return this.bytesRead;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the number of alignments
+   * read.
+   * @return the number of alignments
+   */
+  public long getAlignmentNumber() {
+    return this.alignmentNumber;
+  }
+
+  /**
+   * Method of the class SamAlignmentParser to get the number of invalid lines
+   * skipped.
+   * @return the number of invalid lines
+   */
+  public long getInvalidLineNumber() {
+    return this.invalidLineNumber;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+}
@@ -16,6 +16,8 @@ import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
  */
 public class TrimFastq {
 
+  private static final long MIN_SORT_RUN_SIZE = 16 * 1024 * 1024;
+
   private String adaptorRT;
   private String adaptorStrandSwitching;
 
@@ -29,6 +31,13 @@ public class TrimFastq {
   private String mode;
 
   private boolean processStatsCutadapt = false;
+  private boolean offHeapReadStore = false;
+  private boolean externalSort = false;
+  private int threadNumber = 1;
+  private int cutadaptWorkerNumber = 1;
+  private int polyTailLength = 0;
+  private int adaptorKmerLength = 0;
+  private boolean splitChimeras = false;
 
   private int addIndexOutlier = 0;
   private int lengthWindowSideWindow = 15;
@@ -170,104 +179,73 @@ public class TrimFastq {
    * @param workTrimmingMap, the input stream file sam
    */
   private static void readSamFile(File samFile,
-      Map<String, InformationRead> workTrimmingMap) throws IOException {
+      ReadIdMap<InformationRead> workTrimmingMap) throws IOException {
 
     // open the sam File
     // try (final SamReader inputSam = SamReaderFactory.makeDefault()
     // .open(SamInputResource.of(samInputStream))) {
 
-    int lengthBeginOutlier = 0;
-    int lengthEndOutlier = 0;
-    String quality = "";
-    String sequence = "";
-
     // create a hash for multi-mapped read
     Set<String> multiMappedReadsSet = new HashSet<String>();
 
-    BufferedReader reader = new BufferedReader(new FileReader(samFile));
-    String line;
-
-    try {
-
-      while ((line = reader.readLine()) != null) {
+    // get the time of the begin of the reading of the sam file
+    long start = System.currentTimeMillis();
 
-        String part[] = line.split("\t");
+    // the parser read only the QNAME, FLAG and CIGAR fields of the alignments
+    try (SamAlignmentParser parser =
+        new SamAlignmentParser(new FileInputStream(samFile))) {
 
-        if (line.indexOf("@") == 0) {
-          continue;
-        }
-
-        // Get cigar information
-        String cigar = part[5];
-
-        int qFlag;
-        // Get qFlag information
-        try {
-          qFlag = Integer.parseInt(part[1]);
-        } catch (Exception e) {
-          e.printStackTrace();
-          continue;
-        }
+      while (parser.next()) {
 
         // Get id information
-        String id = part[0];
+        String id = parser.readName();
 
-        // Get cigarLength information
-        int cigarLength;
+        // Get cigarLength information, that correspond of the alignment length
+        int cigarLength = parser.alignmentLength();
 
-        // test if the cigar code is a '*'
-        if (part[5].equals("*")) {
+        // get the informationRead of existing read on the work trim map
+        InformationRead informationRead = workTrimmingMap.get(id);
 
-          cigarLength = 0;
-
-        } else {
-
-          String partCigarLength[] = part[5].split("[A-Z]");
-          int sum = 0;
-
-          // comput the length of the cigar length that correrspond of the
-          // alignment length
-          for (String numberCigar : partCigarLength) {
-
-            sum += Integer.parseInt(numberCigar);
-          }
-
-          cigarLength = sum;
-        }
-        
         // test if the work Map already contains this id
-        if (workTrimmingMap.containsKey(id)) {
+        if (informationRead != null) {
 
           // add this read to the multi-mapped reads
           multiMappedReadsSet.add(id);
 
-          // get the informationRead of existing read on the work trim map
-          InformationRead informationRead = workTrimmingMap.get(id);
-
           // Select the largest alignement for a multi-mapped read
           if (informationRead.cigarLength <= cigarLength) {
 
             // add the read to the work Trimming map
             workTrimmingMap.put(id,
-                new InformationRead(sequence, quality, cigar,
-                    lengthBeginOutlier, lengthEndOutlier, qFlag, cigarLength));
+                InformationRead.newInformationRead(parser));
           }
 
         } else {
 
           // add the read to the work Trimming map
-          workTrimmingMap.put(id, new InformationRead(sequence, quality, cigar,
-              lengthBeginOutlier, lengthEndOutlier, qFlag, cigarLength));
+          workTrimmingMap.put(id, InformationRead.newInformationRead(parser));
         }
-
       }
 
-    } catch (IOException e1) {
-      e1.printStackTrace();
+      // get the time of the end of the reading of the sam file
+      long end = Math.max(1, System.currentTimeMillis() - start);
+
+      getLogger().info("Read "
+          + parser.getAlignmentNumber() + " alignments ("
+          + parser.getBytesRead() / (1024 * 1024) + " MB) of the SAM file in "
+          + end / 1000.0 + "s: " + parser.getAlignmentNumber() * 1000 / end
+          + " alignments/s, "
+          + String.format("%.1f",
+              parser.getBytesRead() / (1024.0 * 1024.0) * 1000 / end)
+          + " MB/s");
+
+      // test if invalid lines have been skipped
+      if (parser.getInvalidLineNumber() > 0) {
+        getLogger().warning("Number of invalid lines skipped in the SAM file: "
+            + parser.getInvalidLineNumber());
+      }
     }
 
-    reader.close();
-
     // This follow comment code work for SAMRcord object BUT i rise a error of
     // SAMtools for a suit of a Deletion base and an Insertion base
 
@@ -407,6 +385,96 @@ public class TrimFastq {
     this.processStatsCutadapt = true;
   }
 
+  /**
+   * Method of the class TrimFastq to store the reads outside of the heap.
+   */
+  public void setOffHeapReadStore() {
+    this.offHeapReadStore = true;
+  }
+
+  /**
+   * Method of the class TrimFastq to sort the sam and the fastq files on disk
+   * when they are not in the same order, instead of loading the alignments in
+   * memory.
+   */
+  public void setExternalSort() {
+    this.externalSort = true;
+  }
+
+  /**
+   * Method of the class TrimFastq to set the number of threads of the outlier
+   * position finder.
+   * @param threadNumber, the number of threads
+   */
+  public void setThreadNumber(int threadNumber) {
+
+    // test if the number of threads is valid
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be positive: " + threadNumber);
+    }
+    this.threadNumber = threadNumber;
+  }
+
+  /**
+   * Method of the class TrimFastq to set the number of cutadapt processes for
+   * each outlier side.
+   * @param cutadaptWorkerNumber, the number of cutadapt processes
+   */
+  public void setCutadaptWorkerNumber(int cutadaptWorkerNumber) {
+
+    // test if the number of cutadapt processes is valid
+    if (cutadaptWorkerNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of cutadapt workers must be positive: "
+              + cutadaptWorkerNumber);
+    }
+    this.cutadaptWorkerNumber = cutadaptWorkerNumber;
+  }
+
+  /**
+   * Method of the class TrimFastq to set the minimal length of the poly-A/T
+   * tails removed of the outliers before the adaptors are searched.
+   * @param polyTailLength, the minimal length of the tails or 0 to keep them
+   */
+  public void setPolyTailLength(int polyTailLength) {
+
+    // test if the length of the tails is valid
+    if (polyTailLength < 0) {
+      throw new IllegalArgumentException(
+          "The length of the poly-A/T tails must be positive: "
+              + polyTailLength);
+    }
+    this.polyTailLength = polyTailLength;
+  }
+
+  /**
+   * Method of the class TrimFastq to set the length of the k-mers of the
+   * prefilter of the outliers, the outliers without a k-mer of the adaptors
+   * are not searched for the adaptors.
+   * @param adaptorKmerLength, the length of the k-mers or 0 to search all the
+   *          outliers
+   */
+  public void setAdaptorKmerLength(int adaptorKmerLength) {
+
+    // test if the length of the k-mers is valid
+    if (adaptorKmerLength < 0
+        || adaptorKmerLength > AdapterKmerFilter.MAX_KMER_LENGTH) {
+      throw new IllegalArgumentException(
+          "The length of the adaptor k-mers must be between 0 and "
+              + AdapterKmerFilter.MAX_KMER_LENGTH + ": " + adaptorKmerLength);
+    }
+    this.adaptorKmerLength = adaptorKmerLength;
+  }
+
+  /**
+   * Method of the class TrimFastq to split the chimeric reads at the adaptors
+   * found inside the trimmed reads.
+   */
+  public void setSplitChimeras() {
+    this.splitChimeras = true;
+  }
+
   //
   // Main execution
   //
@@ -418,84 +486,127 @@ public class TrimFastq {
   @SuppressWarnings("ResultOfMethodCallIgnored")
   public void execution() throws IOException {
 
-    Map<String, InformationRead> workTrimmingMap = new HashMap<>();
-
-    getLogger().info("add_index: " + this.addIndexOutlier);
+    // the UUIDs of the read ids are stored as longs in the map
+    ReadIdMap<InformationRead> workTrimmingMap = new ReadIdMap<>();
 
-    // Declare the left outlier output fasta for cutadapt
-    File outputTrimLeftFastaFile =
-        new File(this.workDir + "/outputFastaFileLeftOutlier.fastq");
+    // the sequences and the qualities of the reads are stored packed
+    final PackedReadStore readStore =
+        new PackedReadStore(this.offHeapReadStore);
 
-    // Declare the right outlier output fasta for cutadapt
-    File outputTrimRightFastaFile =
-        new File(this.workDir + "/outputFastaFileRightOutlier.fastq");
+    getLogger().info("add_index: " + this.addIndexOutlier);
 
     // Problem with ONT skip read for the RT adaptor (to many TTTT..)
     // read the adaptor File
     readAdaptorRTFile(this.adaptorFile);
 
-    // read the sam File
-    readSamFile(this.samFile, workTrimmingMap);
+    // the files joined, sorted by read name if the files are not in the same
+    // order
+    File joinSamFile = this.samFile;
+    File joinFastqFile = this.fastqFile;
+    Trimmer trimmer;
 
-    // Declare the left outlier fasta for cutadapt
-    File fastaLeftOutlierFile =
-        new File(this.workDir + "/fastaFileLeftOutlier.fasta");
+    try {
 
-    // Test if the file exist
-    if (!fastaLeftOutlierFile.exists()) {
+      // test if the alignments of the sam File are in the order of the reads of
+      // the fastq File, in this case the sam File is not loaded in memory
+      boolean mergeJoin =
+          ReadAlignmentJoin.isCoSorted(this.samFile, this.fastqFile);
 
-      fastaLeftOutlierFile.createNewFile();
-    }
+      // true if the files are sorted by read name
+      boolean sorted = false;
 
-    // Declare the right outlier fasta for cutadapt
-    File fastaRightOutlierFile =
-        new File(this.workDir + "/fastaFileRightOutlier.fasta");
+      // test if the sam File must be loaded in memory
+      if (mergeJoin) {
+        getLogger().info("The sam File and the fastq File are in the same "
+            + "order, the alignments are streamed");
+      }
 
-    // Test if the file exist
-    if (!fastaRightOutlierFile.exists()) {
+      // test if the files must be sorted on disk, when it is asked or when the
+      // sam File is larger than the heap
+      else if (this.externalSort
+          || this.samFile.length() > Runtime.getRuntime().maxMemory()) {
 
-      fastaRightOutlierFile.createNewFile();
-    }
+        getLogger().info("The sam File and the fastq File are not in the same "
+            + "order, the files are sorted by read name in " + this.workDir);
 
-    // Declare the left info on trim for cutadapt
-    File infoTrimLeftFile =
-        new File(this.workDir + "/logCutadaptLeftOutlier.txt");
+        ExternalReadSorter sorter = new ExternalReadSorter(this.workDir,
+            Math.max(MIN_SORT_RUN_SIZE, Runtime.getRuntime().maxMemory() / 8));
+        joinSamFile = sorter.sortSamFile(this.samFile);
+        joinFastqFile = sorter.sortFastqFile(this.fastqFile);
+        mergeJoin = true;
+        sorted = true;
 
-    // Test if the file exist
-    if (!infoTrimLeftFile.exists()) {
+      } else {
+        readSamFile(this.samFile, workTrimmingMap);
+      }
 
-      infoTrimLeftFile.createNewFile();
-    }
+      // Create the Trimmer Object with the correct method to the TrimmerFactory
+      trimmer = TrimmerFactory.newTrimmer(workTrimmingMap, readStore,
+          this.outputFastqFile, this.workDir, this.adaptorRT,
+          this.adaptorStrandSwitching, this.errorRateCutadapt, this.adaptorFile,
+          this.seedMismatchesTrimmomatic,
+          this.palindromeClipThresholdTrimmomatic, this.simpleClipThreshold,
+          this.trimmer, this.processStatsCutadapt, this.cutadaptWorkerNumber,
+          this.polyTailLength, this.adaptorKmerLength, this.splitChimeras);
+
+      // execute the outlier position finder with a merge join
+      if (mergeJoin && !findOutliers(joinSamFile, joinFastqFile,
+          workTrimmingMap, trimmer, true, sorted)) {
+
+        // close the output of the trimmer
+        if (trimmer instanceof Closeable) {
+          ((Closeable) trimmer).close();
+        }
 
-    // Declare the right info on trim for cutadapt
-    File infoTrimRightFile =
-        new File(this.workDir + "/logCutadaptRightOutlier.txt");
+        // test if the sorted files are not in the order of the read names,
+        // the sam File can be larger than the heap and is not loaded
+        if (sorted) {
+          throw new IOException("The sorted sam File and fastq File are not "
+              + "in the order of the read names");
+        }
 
-    // Test if the file exist
-    if (!infoTrimRightFile.exists()) {
+        getLogger().warning("The sam File and the fastq File are not in the "
+            + "same order, the alignments are loaded in memory");
+
+        // restart with the alignments loaded in memory, the reads of the
+        // merge join are released
+        mergeJoin = false;
+        workTrimmingMap.clear();
+        readStore.clear();
+        readSamFile(this.samFile, workTrimmingMap);
+
+        trimmer = TrimmerFactory.newTrimmer(workTrimmingMap, readStore,
+            this.outputFastqFile, this.workDir, this.adaptorRT,
+            this.adaptorStrandSwitching, this.errorRateCutadapt,
+            this.adaptorFile, this.seedMismatchesTrimmomatic,
+            this.palindromeClipThresholdTrimmomatic, this.simpleClipThreshold,
+            this.trimmer, this.processStatsCutadapt, this.cutadaptWorkerNumber,
+            this.polyTailLength, this.adaptorKmerLength, this.splitChimeras);
+      }
 
-      infoTrimRightFile.createNewFile();
+      // execute the outlier position finder with the alignments in memory
+      if (!mergeJoin) {
+        findOutliers(this.samFile, this.fastqFile, workTrimmingMap, trimmer,
+            false, false);
+      }
+
+    } finally {
+
+      // test if the files have been sorted, delete the sorted files even if
+      // the finding has failed
+      if (joinSamFile != this.samFile) {
+        joinSamFile.delete();
+      }
+      if (joinFastqFile != this.fastqFile) {
+        joinFastqFile.delete();
+      }
     }
 
-    // Create the OutlierPositionFinder Object with the correct method to the
-    // OutlierPositionFactory
-    OutlierPositionFinder outlierPositionFinder =
-        OutlierPositionFinderFactory.newOutlierPositionFinder(workTrimmingMap,
-            this.addIndexOutlier, this.fastqFile, this.lengthWindowSideWindow,
-            this.thresholdSideWindow, this.mode);
-
-    // Create the Trimmer Object with the correct method to the TrimmerFactory
-    Trimmer trimmer = TrimmerFactory.newTrimmer(workTrimmingMap,
-        this.outputFastqFile, outputTrimLeftFastaFile, outputTrimRightFastaFile,
-        this.adaptorRT, this.adaptorStrandSwitching, this.errorRateCutadapt,
-        fastaLeftOutlierFile, fastaRightOutlierFile, infoTrimLeftFile,
-        infoTrimRightFile, this.adaptorFile, this.seedMismatchesTrimmomatic,
-        this.palindromeClipThresholdTrimmomatic, this.simpleClipThreshold,
-        this.trimmer, this.processStatsCutadapt);
-
-    // execute the outlier position finder
-    outlierPositionFinder.findOutliers(fastaLeftOutlierFile,
-        fastaRightOutlierFile, trimmer, this.outputFastqFile);
+    getLogger().info("Read store: "
+        + readStore.getReadNumber() + " reads, " + readStore.getBaseNumber()
+        + " bases (" + readStore.getExceptionNumber()
+        + " not ACGT), " + readStore.getMemoryUsage() / (1024 * 1024) + " MB "
+        + (readStore.isOffHeap() ? "off-heap" : "on heap"));
 
     // execute the trimming
     if (trimmer != null) {
@@ -503,4 +614,43 @@ public class TrimFastq {
     }
 
   }
+
+  /**
+   * Method of the class TrimFastq to execute the outlier position finder on
+   * the reads of the fastq file joined with their alignment.
+   * @param samFile, the sam file to join
+   * @param fastqFile, the fastq file to join
+   * @param workTrimmingMap, the map of the alignments, filled by a merge join
+   *          only if it is used by the trimmer
+   * @param trimmer, the trimmer
+   * @param mergeJoin, true to stream the sam file
+   * @param sorted, true if the files are sorted by read name
+   * @return false if a merge join has found the files in a different order
+   * @throws IOException if an IO error occur
+   */
+  private boolean findOutliers(File samFile, File fastqFile,
+      ReadIdMap<InformationRead> workTrimmingMap, Trimmer trimmer,
+      boolean mergeJoin, boolean sorted) throws IOException {
+
+    // only the trimmers which use the alignments after the finder need the map
+    ReadIdMap<InformationRead> joinMap =
+        mergeJoin && (trimmer == null || !trimmer.needsAlignments())
+            ? null : workTrimmingMap;
+
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(samFile, fastqFile,
+        joinMap, mergeJoin, sorted)) {
+
+      // Create the OutlierPositionFinder Object with the correct method to the
+      // OutlierPositionFactory
+      OutlierPositionFinder outlierPositionFinder =
+          OutlierPositionFinderFactory.newOutlierPositionFinder(join,
+              this.addIndexOutlier, this.lengthWindowSideWindow,
+              this.thresholdSideWindow, this.mode, this.threadNumber);
+
+      // execute the outlier position finder
+      outlierPositionFinder.findOutliers(trimmer);
+
+      return !join.isOutOfOrder();
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter;
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
+
+/**
+ * Class of the trimmers setting the bounds of the trimmed reads during the
+ * outlier position finding. The trimmed reads of a batch are formatted by the
+ * thread processing the batch and written in the output fastq file in the
+ * order of the fastq file, so no read is kept in memory. The chimeric reads
+ * are split in the same pass, when their trimmed reads are formatted.
+ * @author Aurelien Birer
+ */
+abstract class AbstractFastqTrimmer implements Trimmer, Closeable {
+
+  private final File nameOutputFastq;
+  private final ChimeraSplitter chimeraSplitter;
+  private Writer fastqWriter;
+
+  // the statistics of the reads written, counted by the threads processing
+  // the batches
+  private int countWritten = 0;
+  private int countNull = 0;
+  private int shortestFastqSequenceLength = 0;
+
+  /**
+   * Constructor of the AbstractFastqTrimmer class.
+   * @param outputFastqFile, a File of output fastq
+   * @param chimeraSplitter, the splitter of the chimeric reads or null
+   */
+  AbstractFastqTrimmer(File outputFastqFile, ChimeraSplitter chimeraSplitter) {
+
+    this.nameOutputFastq = outputFastqFile;
+    this.chimeraSplitter = chimeraSplitter;
+  }
+
+  /**
+   * Method of the class AbstractFastqTrimmer to set the bounds of the trimmed
+   * reads of a batch. This method is called by several threads.
+   * @param batch, the batch
+   * @throws IOException if an IO error occur
+   */
+  abstract void trimBatch(TrimmingBatch batch) throws IOException;
+
+  /**
+   * Method of the class AbstractFastqTrimmer to log the statistics of the
+   * trimmer after the trimming.
+   */
+  void logStatistics() {
+  }
+
+  //
+  // Batches
+  //
+
+  /**
+   * Method of the class AbstractFastqTrimmer to trim a batch and to format its
+   * trimmed reads in fastq.
+   * @param batch, the batch
+   * @throws IOException if an IO error occur
+   */
+  @Override
+  public final void processBatch(TrimmingBatch batch) throws IOException {
+
+    trimBatch(batch);
+
+    final StringWriter output = new StringWriter();
+    int batchCountWritten = 0;
+    int batchCountNull = 0;
+    int batchShortestLength = 0;
+
+    try (FastqWriter writer = new FastqWriter(output)) {
+
+      for (int i = 0; i < batch.size(); i++) {
+
+        final String sequence = batch.getSequence(i);
+        final String quality = batch.getQuality(i);
+
+        // test if the quality length is differerent to the sequence length
+        if (quality.length() != sequence.length()) {
+          getLogger().info("problem :  "
+              + quality.length() + "     " + sequence.length() + "     "
+              + batch.getId(i));
+        }
+
+        final int end = Math.min(batch.getTrimEnd(i), quality.length());
+        final int start = Math.min(batch.getTrimStart(i), end);
+
+        // test if the sequence trimmed is empty
+        if (start >= end) {
+          batchCountNull++;
+          continue;
+        }
+
+        int[] pieces = this.chimeraSplitter == null
+            ? null : this.chimeraSplitter.split(sequence, start, end);
+        final boolean split = pieces != null;
+
+        // test if the read is not split
+        if (!split) {
+          pieces = new int[] {start, end};
+        }
+
+        for (int p = 0; p < pieces.length; p += 2) {
+
+          final int pieceLength = pieces[p + 1] - pieces[p];
+
+          write(writer,
+              split ? ChimeraSplitter.pieceName(batch.getId(i), p / 2,
+                  pieces.length / 2) : batch.getId(i),
+              sequence, quality, pieces[p], pieces[p + 1]);
+
+          // test if a new shortest read is found
+          if (batchCountWritten == 0 || pieceLength < batchShortestLength) {
+            batchShortestLength = pieceLength;
+          }
+
+          batchCountWritten++;
+        }
+      }
+    }
+
+    batch.setOutputs(output.toString());
+    addStatistics(batchCountWritten, batchCountNull, batchShortestLength);
+  }
+
+  /**
+   * Method of the class AbstractFastqTrimmer to add the statistics of the
+   * reads written by a batch, the pieces of the split reads are counted as
+   * reads.
+   * @param batchCountWritten, the number of reads written
+   * @param batchCountNull, the number of reads empty after the trimming
+   * @param batchShortestLength, the length of the shortest read written
+   */
+  private synchronized void addStatistics(final int batchCountWritten,
+      final int batchCountNull, final int batchShortestLength) {
+
+    // test if a new shortest read is found
+    if (batchCountWritten > 0 && (this.countWritten == 0
+        || batchShortestLength < this.shortestFastqSequenceLength)) {
+      this.shortestFastqSequenceLength = batchShortestLength;
+    }
+
+    this.countWritten += batchCountWritten;
+    this.countNull += batchCountNull;
+  }
+
+  /**
+   * Method of the class AbstractFastqTrimmer to write a part of a read in
+   * fastq.
+   * @param writer, the fastq writer
+   * @param name, the name of the read written
+   * @param sequence, the sequence of the read
+   * @param quality, the quality of the read
+   * @param start, the start of the part written
+   * @param end, the end of the part written
+   * @throws IOException if an IO error occur
+   */
+  private static void write(final FastqWriter writer, final String name,
+      final String sequence, final String quality, final int start,
+      final int end) throws IOException {
+
+    ReadSequence fastq = new ReadSequence();
+    fastq.setName(name);
+    fastq.setSequence(sequence.substring(start, end));
+    fastq.setQuality(quality.substring(start, end));
+
+    writer.write(fastq);
+  }
+
+  /**
+   * Method of the class AbstractFastqTrimmer to write the trimmed reads of a
+   * batch.
+   * @param batch, the processed batch
+   * @throws IOException if an IO error occur
+   */
+  @Override
+  public void writeBatch(TrimmingBatch batch) throws IOException {
+
+    // test if the output fastq file is open
+    if (this.fastqWriter == null) {
+      this.fastqWriter =
+          new BufferedWriter(new FileWriter(this.nameOutputFastq), 1 << 16);
+    }
+
+    this.fastqWriter.write(batch.getOutput(0));
+  }
+
+  /**
+   * Method of the class AbstractFastqTrimmer to test if the map of the
+   * alignments is used after the batches. The reads are trimmed with the
+   * batches only.
+   * @return false
+   */
+  @Override
+  public boolean needsAlignments() {
+    return false;
+  }
+
+  //
+  // Main execution
+  //
+
+  /**
+   * Method of the class AbstractFastqTrimmer to trim with the Trimmer
+   * interface. The reads have already been written, the output fastq file is
+   * closed and the statistics are logged.
+   * @throws IOException if the output fastq file can not be closed
+   */
+  @Override
+  public void trim() throws IOException {
+
+    // test if no read has been written, the output file is emptied
+    if (this.fastqWriter == null) {
+      this.fastqWriter = new FileWriter(this.nameOutputFastq);
+    }
+
+    // close the writer
+    close();
+
+    getLogger().info(
+        "The shortest read size is: " + this.shortestFastqSequenceLength);
+    getLogger().info("Number of trim read write: " + this.countWritten);
+    getLogger().info("Number of trim read null: " + this.countNull);
+
+    // test if the chimeric reads have been split
+    if (this.chimeraSplitter != null) {
+      this.chimeraSplitter.logStatistics();
+    }
+
+    logStatistics();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    // test if the output fastq file is open
+    if (this.fastqWriter != null) {
+      this.fastqWriter.close();
+      this.fastqWriter = null;
+    }
+  }
+
+}
@@ -0,0 +1,273 @@
+package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
+
+import java.util.Locale;
+
+/**
+ * Class of a semi-global aligner of adapters, with the semantics of the
+ * options of cutadapt used by toullig:
+ * <ul>
+ * <li>a 5' adapter (-g) may start before the read, the adapter and the bases
+ * before it are removed</li>
+ * <li>a 3' adapter (-a) may end after the read, the adapter and the bases
+ * after it are removed</li>
+ * <li>the number of errors (mismatches, insertions and deletions) is at most
+ * the error rate multiplied by the length of the aligned part of the adapter
+ * (--error-rate)</li>
+ * <li>the aligned part of the adapter must have a minimal length
+ * (--overlap)</li>
+ * <li>the best adapter is removed several times (--times)</li>
+ * <li>a N in the read matches any base of the adapter
+ * (--match-read-wildcards)</li>
+ * </ul>
+ * The best alignment of an adapter has the maximal number of matches, then the
+ * minimal number of errors. The aligner is immutable and can be used by several
+ * threads.
+ * @author Aurelien Birer
+ */
+public final class AdapterAligner {
+
+  // the options of cutadapt used by CutadaptTrimmer
+  public static final int DEFAULT_MIN_OVERLAP = 8;
+  public static final int DEFAULT_TIMES = 10;
+
+  private final String[] adapters;
+  private final boolean front;
+  private final double errorRate;
+  private final int minOverlap;
+  private final int times;
+
+  /**
+   * Constructor of the AdapterAligner class.
+   * @param adapters, the sequences of the adapters
+   * @param front, true for 5' adapters (-g), false for 3' adapters (-a)
+   * @param errorRate, the maximal error rate
+   * @param minOverlap, the minimal length of the aligned part of an adapter
+   * @param times, the maximal number of adapters removed of a sequence
+   */
+  public AdapterAligner(String[] adapters, boolean front, double errorRate,
+      int minOverlap, int times) {
+
+    // test if the adapters are null
+    if (adapters == null) {
+      throw new NullPointerException("The adapters are null");
+    }
+
+    // test if the options are valid
+    if (errorRate < 0 || minOverlap < 1 || times < 0) {
+      throw new IllegalArgumentException("Invalid options of the aligner: "
+          + errorRate + " " + minOverlap + " " + times);
+    }
+
+    this.adapters = new String[adapters.length];
+    for (int i = 0; i < adapters.length; i++) {
+      this.adapters[i] = adapters[i].toUpperCase(Locale.ROOT);
+    }
+
+    this.front = front;
+    this.errorRate = errorRate;
+    this.minOverlap = minOverlap;
+    this.times = times;
+  }
+
+  /**
+   * Method of the class AdapterAligner to remove the adapters of a sequence.
+   * @param sequence, the sequence
+   * @param adapterCounts, the number of times each adapter has been removed,
+   *          incremented by this method, or null
+   * @return the sequence without the adapters
+   */
+  public String trim(String sequence, int[] adapterCounts) {
+
+    return trim(sequence, adapterCounts, null);
+  }
+
+  /**
+   * Method of the class AdapterAligner to remove the adapters of a sequence
+   * and to count the construction of the adapters removed.
+   * @param sequence, the sequence
+   * @param adapterCounts, the number of times each adapter has been removed,
+   *          incremented by this method, or null
+   * @param constructions, the counter of the constructions of adapters or null
+   * @return the sequence without the adapters
+   */
+  String trim(String sequence, int[] adapterCounts,
+      AdaptorConstructionCounter constructions) {
+
+    String result = sequence;
+    final int[] match = new int[4];
+    final int[] removedAdapters = new int[this.times];
+    int removedAdapterNumber = 0;
+
+    for (int t = 0; t < this.times; t++) {
+
+      final String upperCase = result.toUpperCase(Locale.ROOT);
+      int bestAdapter = -1;
+      int bestMatches = -1;
+      int bestErrors = 0;
+      int bestStart = 0;
+      int bestEnd = 0;
+
+      // keep the adapter with the best alignment
+      for (int a = 0; a < this.adapters.length; a++) {
+
+        // test if the adapter is found
+        if (!align(this.adapters[a], upperCase, match)) {
+          continue;
+        }
+
+        if (match[0] > bestMatches
+            || (match[0] == bestMatches && match[1] < bestErrors)) {
+          bestAdapter = a;
+          bestMatches = match[0];
+          bestErrors = match[1];
+          bestStart = match[2];
+          bestEnd = match[3];
+        }
+      }
+
+      // test if no adapter is found
+      if (bestAdapter == -1) {
+        break;
+      }
+
+      if (adapterCounts != null) {
+        adapterCounts[bestAdapter]++;
+      }
+      removedAdapters[removedAdapterNumber++] = bestAdapter;
+
+      result = this.front
+          ? result.substring(bestEnd) : result.substring(0, bestStart);
+    }
+
+    if (constructions != null) {
+      constructions.count(removedAdapters, removedAdapterNumber);
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the class AdapterAligner to align an adapter on a sequence. The
+   * edit distance matrix is computed column by column on the sequence, with
+   * the start of the alignment in each cell.
+   * @param adapter, the adapter in upper case
+   * @param sequence, the sequence in upper case
+   * @param match, the number of matches, the number of errors, the start and
+   *          the end of the best alignment in the sequence
+   * @return true if an alignment has been found
+   */
+  private boolean align(final String adapter, final String sequence,
+      final int[] match) {
+
+    final int m = adapter.length();
+    final int n = sequence.length();
+
+    int[] costs = new int[m + 1];
+    int[] matches = new int[m + 1];
+    int[] startSequence = new int[m + 1];
+    int[] startAdapter = new int[m + 1];
+    int[] previousCosts = new int[m + 1];
+    int[] previousMatches = new int[m + 1];
+    int[] previousStartSequence = new int[m + 1];
+    int[] previousStartAdapter = new int[m + 1];
+
+    // first column: a 5' adapter may start before the sequence
+    for (int i = 0; i <= m; i++) {
+      costs[i] = this.front ? 0 : i;
+      startAdapter[i] = this.front ? i : 0;
+    }
+
+    boolean found = false;
+    final int overlap = Math.min(this.minOverlap, m);
+
+    for (int j = 0; j <= n; j++) {
+
+      // test if the column must be computed
+      if (j > 0) {
+
+        int[] tmp = previousCosts;
+        previousCosts = costs;
+        costs = tmp;
+        tmp = previousMatches;
+        previousMatches = matches;
+        matches = tmp;
+        tmp = previousStartSequence;
+        previousStartSequence = startSequence;
+        startSequence = tmp;
+        tmp = previousStartAdapter;
+        previousStartAdapter = startAdapter;
+        startAdapter = tmp;
+
+        // the adapter may start anywhere in the sequence
+        costs[0] = 0;
+        matches[0] = 0;
+        startSequence[0] = j;
+        startAdapter[0] = 0;
+
+        final char c = sequence.charAt(j - 1);
+
+        for (int i = 1; i <= m; i++) {
+
+          final boolean equal = c == 'N' || c == adapter.charAt(i - 1);
+
+          // diagonal
+          int cost = previousCosts[i - 1] + (equal ? 0 : 1);
+          int matchCount = previousMatches[i - 1] + (equal ? 1 : 0);
+          int origin = i - 1;
+          int[] originStartSequence = previousStartSequence;
+          int[] originStartAdapter = previousStartAdapter;
+
+          // base of the adapter missing in the sequence
+          if (costs[i - 1] + 1 < cost || (costs[i - 1] + 1 == cost
+              && matches[i - 1] > matchCount)) {
+            cost = costs[i - 1] + 1;
+            matchCount = matches[i - 1];
+            originStartSequence = startSequence;
+            originStartAdapter = startAdapter;
+          }
+
+          // base of the sequence missing in the adapter
+          if (previousCosts[i] + 1 < cost || (previousCosts[i] + 1 == cost
+              && previousMatches[i] > matchCount)) {
+            cost = previousCosts[i] + 1;
+            matchCount = previousMatches[i];
+            origin = i;
+            originStartSequence = previousStartSequence;
+            originStartAdapter = previousStartAdapter;
+          }
+
+          costs[i] = cost;
+          matches[i] = matchCount;
+          startSequence[i] = originStartSequence[origin];
+          startAdapter[i] = originStartAdapter[origin];
+        }
+      }
+
+      // the alignment ends at the end of the adapter or, for a 3' adapter, at
+      // the end of the sequence
+      final int first = !this.front && j == n ? 1 : m;
+
+      for (int i = first; i <= m; i++) {
+
+        final int length = i - startAdapter[i];
+
+        // test if the alignment is valid and better than the previous one
+        if (length < overlap
+            || costs[i] > this.errorRate * length
+            || (found && (matches[i] < match[0]
+                || (matches[i] == match[0] && costs[i] >= match[1])))) {
+          continue;
+        }
+
+        found = true;
+        match[0] = matches[i];
+        match[1] = costs[i];
+        match[2] = startSequence[i];
+        match[3] = j;
+      }
+    }
+
+    return found;
+  }
+
+}
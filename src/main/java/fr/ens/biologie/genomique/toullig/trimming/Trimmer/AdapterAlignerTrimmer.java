@@ -0,0 +1,274 @@
+package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.bio.Alphabets.AMBIGUOUS_DNA_ALPHABET;
+import static fr.ens.biologie.genomique.eoulsan.bio.Sequence.reverseComplement;
+import static fr.ens.biologie.genomique.toullig.Utils.complement;
+
+import java.io.File;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.eoulsan.bio.Alphabet;
+import fr.ens.biologie.genomique.toullig.Utils;
+import fr.ens.biologie.genomique.toullig.trimming.AdapterKmerFilter;
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
+import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.PolyTailDetector;
+import fr.ens.biologie.genomique.toullig.trimming.UtilsTrimming;
+
+/**
+ * Class of the AdapterAlignerTrimmer to trim the outliers with the adapters in
+ * the Java process. The outliers are trimmed with the eight adapters given to
+ * cutadapt by CutadaptTrimmer and with the same options, but without the
+ * cutadapt processes and the merge of their outputs: each batch of reads is
+ * trimmed during the outlier position finding and written in the output fastq
+ * file. With a k-mer prefilter, the outliers without a k-mer of the adaptors
+ * are kept without alignment.
+ * @author Aurelien Birer
+ */
+public class AdapterAlignerTrimmer extends AbstractFastqTrimmer {
+
+  // the names of the adaptors given to cutadapt
+  static final String[] ADAPTOR_NAMES = {"RT_adaptor",
+      "Switch_Strand_RT_adaptor", "reverse_RT_adaptor",
+      "reverse_Switch_Strand_RT_adaptor", "complement_RT_adaptor",
+      "complement_Switch_Strand_RT_adaptor", "reverse_complement_RT_adaptor",
+      "reverse_complement_Switch_Strand_RT_adaptor"};
+
+  private final AdapterAligner leftAligner;
+  private final AdapterAligner rightAligner;
+  private final PolyTailDetector polyTailDetector;
+  private final AdapterKmerFilter kmerFilter;
+
+  private final int[] leftAdaptorCounts = new int[ADAPTOR_NAMES.length];
+  private final int[] rightAdaptorCounts = new int[ADAPTOR_NAMES.length];
+  private final AdaptorConstructionCounter leftConstructions =
+      new AdaptorConstructionCounter(ADAPTOR_NAMES);
+  private final AdaptorConstructionCounter rightConstructions =
+      new AdaptorConstructionCounter(ADAPTOR_NAMES);
+
+  // the outliers tested by the prefilter and searched for the adaptors, on
+  // the left and on the right
+  private final long[] filterCounts = new long[4];
+
+  /**
+   * Constructor of the AdapterAlignerTrimmer class.
+   * @param outputFastqFile, a File of output fastq
+   * @param adaptorRetroTranscritpion, a string of the Retro-Transcription
+   *          adaptor
+   * @param adaptorStrandSwitching, a string of the Strand-Switching adaptor
+   * @param errorRate, the error rate of the alignment of the adaptors
+   * @param polyTailDetector, the detector of the poly-A/T tails removed before
+   *          the alignment of the adaptors or null
+   * @param kmerFilter, the prefilter of the outliers on the k-mers of the
+   *          adaptors or null
+   * @param chimeraSplitter, the splitter of the chimeric reads or null
+   */
+  public AdapterAlignerTrimmer(File outputFastqFile,
+      String adaptorRetroTranscritpion, String adaptorStrandSwitching,
+      double errorRate, PolyTailDetector polyTailDetector,
+      AdapterKmerFilter kmerFilter, ChimeraSplitter chimeraSplitter) {
+
+    super(outputFastqFile, chimeraSplitter);
+
+    this.polyTailDetector = polyTailDetector;
+    this.kmerFilter = kmerFilter;
+
+    final String[] adaptors =
+        adaptors(adaptorRetroTranscritpion, adaptorStrandSwitching);
+
+    // the left outlier is trimmed as with the -g option of cutadapt and the
+    // right outlier as with the -a option
+    this.leftAligner = new AdapterAligner(adaptors, true, errorRate,
+        AdapterAligner.DEFAULT_MIN_OVERLAP, AdapterAligner.DEFAULT_TIMES);
+    this.rightAligner = new AdapterAligner(adaptors, false, errorRate,
+        AdapterAligner.DEFAULT_MIN_OVERLAP, AdapterAligner.DEFAULT_TIMES);
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to get the variants of the
+   * adaptors given to cutadapt.
+   * @param adaptorRetroTranscritpion, a string of the Retro-Transcription
+   *          adaptor
+   * @param adaptorStrandSwitching, a string of the Strand-Switching adaptor
+   * @return the adaptors in the order of ADAPTOR_NAMES
+   */
+  static String[] adaptors(final String adaptorRetroTranscritpion,
+      final String adaptorStrandSwitching) {
+
+    final Alphabet alphabet = AMBIGUOUS_DNA_ALPHABET;
+
+    return new String[] {adaptorRetroTranscritpion, adaptorStrandSwitching,
+        Utils.reverse(adaptorRetroTranscritpion),
+        Utils.reverse(adaptorStrandSwitching),
+        complement(adaptorRetroTranscritpion, alphabet),
+        complement(adaptorStrandSwitching, alphabet),
+        reverseComplement(adaptorRetroTranscritpion, alphabet),
+        reverseComplement(adaptorStrandSwitching, alphabet)};
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to trim the reads of a batch.
+   * The adaptors are removed of the outliers and the rest of the outliers is
+   * kept with the main sequence, as in the merge of CutadaptTrimmer.
+   * @param batch, the batch
+   */
+  @Override
+  void trimBatch(TrimmingBatch batch) {
+
+    final int[] leftCounts = new int[ADAPTOR_NAMES.length];
+    final int[] rightCounts = new int[ADAPTOR_NAMES.length];
+    final long[] batchFilterCounts = new long[4];
+
+    for (int i = 0; i < batch.size(); i++) {
+
+      // the lengths of the outliers on the strand of the fastq read
+      final InformationRead informationRead = batch.getInformationRead(i);
+      final String sequence = batch.getSequence(i);
+      final int sequenceLength = sequence.length();
+      int leftLengthOutlier = informationRead.leftLengthOutlier;
+      int rightLengthOutlier = informationRead.rightLengthOutlier;
+
+      // test if the length of the left outlier is negatif
+      if (leftLengthOutlier < 0) {
+        leftLengthOutlier = 0;
+      }
+
+      // test if the length of the right outlier is negatif
+      if (rightLengthOutlier < 0) {
+        rightLengthOutlier = 0;
+      }
+
+      // get the rest of the outliers without the tails and the adaptors
+      final String leftSequence = trimOutlier(this.leftAligner,
+          UtilsTrimming.getOutlierLeftSequence(leftLengthOutlier, sequence,
+              this.polyTailDetector),
+          leftCounts, this.leftConstructions, batchFilterCounts, 0);
+      final String rightSequence = trimOutlier(this.rightAligner,
+          UtilsTrimming.getOutlierRightSequence(rightLengthOutlier, sequence,
+              this.polyTailDetector),
+          rightCounts, this.rightConstructions, batchFilterCounts, 2);
+
+      //
+      // get the length of the trim outlier sequence
+      //
+
+      int leftLength = leftLengthOutlier - leftSequence.length();
+      int rightLength =
+          (sequenceLength - rightLengthOutlier) + rightSequence.length();
+
+      // test if the right length trimmed sequence is superior to the quality
+      // length
+      if (rightLength > batch.getQuality(i).length()) {
+        rightLength = batch.getQuality(i).length();
+      }
+
+      // test if the outliers overlap
+      if (leftLength > rightLength) {
+        leftLength = rightLength;
+      }
+
+      batch.setTrimBounds(i, leftLength, rightLength);
+    }
+
+    count(leftCounts, rightCounts, batchFilterCounts);
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to remove the adaptors of an
+   * outlier, if it is not skipped by the prefilter.
+   * @param aligner, the aligner of the side
+   * @param outlier, the outlier
+   * @param adaptorCounts, the number of times each adaptor has been found
+   * @param constructions, the counter of the constructions of the side
+   * @param batchFilterCounts, the counts of the prefilter of the batch
+   * @param side, the index of the counts of the side in batchFilterCounts
+   * @return the outlier without the adaptors
+   */
+  private String trimOutlier(final AdapterAligner aligner,
+      final String outlier, final int[] adaptorCounts,
+      final AdaptorConstructionCounter constructions,
+      final long[] batchFilterCounts, final int side) {
+
+    // test if the outliers are prefiltered
+    if (this.kmerFilter != null) {
+
+      batchFilterCounts[side]++;
+
+      // test if the outlier has no k-mer of the adaptors
+      if (!this.kmerFilter.mayContainAdaptor(outlier)) {
+        constructions.count(null, 0);
+        return outlier;
+      }
+
+      batchFilterCounts[side + 1]++;
+    }
+
+    return aligner.trim(outlier, adaptorCounts, constructions);
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to count the adaptors found in a
+   * batch for the statistics.
+   * @param leftCounts, the number of times each adaptor has been found in the
+   *          left outliers
+   * @param rightCounts, the number of times each adaptor has been found in the
+   *          right outliers
+   * @param batchFilterCounts, the outliers tested by the prefilter and
+   *          searched for the adaptors
+   */
+  private synchronized void count(final int[] leftCounts,
+      final int[] rightCounts, final long[] batchFilterCounts) {
+
+    for (int i = 0; i < ADAPTOR_NAMES.length; i++) {
+      this.leftAdaptorCounts[i] += leftCounts[i];
+      this.rightAdaptorCounts[i] += rightCounts[i];
+    }
+
+    for (int i = 0; i < this.filterCounts.length; i++) {
+      this.filterCounts[i] += batchFilterCounts[i];
+    }
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to log the number of times each
+   * adaptor has been found.
+   */
+  @Override
+  synchronized void logStatistics() {
+
+    for (int i = 0; i < ADAPTOR_NAMES.length; i++) {
+      getLogger().info("Adaptor "
+          + ADAPTOR_NAMES[i] + " found in left outliers: "
+          + this.leftAdaptorCounts[i] + ", in right outliers: "
+          + this.rightAdaptorCounts[i]);
+    }
+
+    logConstructions("left", this.leftConstructions);
+    logConstructions("right", this.rightConstructions);
+
+    // test if the outliers have been prefiltered
+    if (this.kmerFilter != null) {
+      AdapterKmerFilter.logHitRate("left", this.filterCounts[0],
+          this.filterCounts[1]);
+      AdapterKmerFilter.logHitRate("right", this.filterCounts[2],
+          this.filterCounts[3]);
+    }
+  }
+
+  /**
+   * Method of the class AdapterAlignerTrimmer to log the constructions of
+   * adaptors found on the outliers of a side.
+   * @param side, the side of the outliers
+   * @param constructions, the counter of the constructions
+   */
+  private static void logConstructions(final String side,
+      final AdaptorConstructionCounter constructions) {
+
+    for (Map.Entry<String, Long> e : constructions.getCounts().entrySet()) {
+      getLogger().info("Construction of adaptors "
+          + e.getKey() + " found in " + side + " outliers: " + e.getValue());
+    }
+  }
+
+}
@@ -0,0 +1,175 @@
+package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class of the counter of the constructions of adaptors found on the outliers,
+ * e.g. "RT_adaptor + Switch_Strand_RT_adaptor" for an outlier with these two
+ * adaptors. The constructions are counted online, while the adaptors are
+ * matched, by several threads. The names of the constructions of no, one and
+ * two adaptors are built once with the counter and their counts are in an
+ * array, only the rare constructions of more adaptors are counted in a
+ * concurrent map.
+ * @author Aurelien Birer
+ */
+final class AdaptorConstructionCounter {
+
+  static final String NO_ADAPTOR_FOUND = "no_adaptor_found";
+  private static final String SEPARATOR = " + ";
+
+  private final String[] adaptorNames;
+  private final Map<String, Integer> adaptorIndexes = new HashMap<>();
+
+  // the constructions of no, one and two adaptors and their counts
+  private final String[] constructions;
+  private final AtomicLongArray counts;
+
+  // the counts of the constructions of more adaptors
+  private final ConcurrentMap<String, AtomicLong> longConstructionCounts =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Constructor of the AdaptorConstructionCounter class.
+   * @param adaptorNames, the names of the adaptors
+   */
+  AdaptorConstructionCounter(String[] adaptorNames) {
+
+    final int n = adaptorNames.length;
+
+    this.adaptorNames = adaptorNames.clone();
+    this.constructions = new String[1 + n + n * n];
+    this.counts = new AtomicLongArray(this.constructions.length);
+
+    this.constructions[0] = NO_ADAPTOR_FOUND;
+
+    for (int a = 0; a < n; a++) {
+
+      this.adaptorIndexes.put(adaptorNames[a], a);
+      this.constructions[1 + a] = adaptorNames[a];
+
+      for (int b = 0; b < n; b++) {
+        this.constructions[1 + n + a * n + b] =
+            adaptorNames[a] + SEPARATOR + adaptorNames[b];
+      }
+    }
+  }
+
+  /**
+   * Method of the class AdaptorConstructionCounter to get the index of an
+   * adaptor.
+   * @param adaptorName, the name of the adaptor
+   * @return the index of the adaptor or -1 if the adaptor is unknown
+   */
+  int adaptorIndex(String adaptorName) {
+
+    final Integer result = this.adaptorIndexes.get(adaptorName);
+
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Method of the class AdaptorConstructionCounter to count the construction
+   * of the adaptors found on an outlier. This method can be called by several
+   * threads.
+   * @param adaptors, the indexes of the adaptors in the order they have been
+   *          found
+   * @param adaptorNumber, the number of adaptors found
+   */
+  void count(int[] adaptors, int adaptorNumber) {
+
+    final int n = this.adaptorNames.length;
+
+    switch (adaptorNumber) {
+
+    case 0:
+      this.counts.incrementAndGet(0);
+      return;
+
+    case 1:
+      this.counts.incrementAndGet(1 + adaptors[0]);
+      return;
+
+    case 2:
+      this.counts.incrementAndGet(1 + n + adaptors[0] * n + adaptors[1]);
+      return;
+
+    default:
+      break;
+    }
+
+    final StringBuilder sb = new StringBuilder(this.adaptorNames[adaptors[0]]);
+    for (int i = 1; i < adaptorNumber; i++) {
+      sb.append(SEPARATOR).append(this.adaptorNames[adaptors[i]]);
+    }
+    final String construction = sb.toString();
+
+    AtomicLong count = this.longConstructionCounts.get(construction);
+
+    // test if the construction is counted for the first time
+    if (count == null) {
+
+      final AtomicLong newCount = new AtomicLong();
+      count = this.longConstructionCounts.putIfAbsent(construction, newCount);
+
+      if (count == null) {
+        count = newCount;
+      }
+    }
+
+    count.incrementAndGet();
+  }
+
+  /**
+   * Method of the class AdaptorConstructionCounter to get the constructions
+   * found. The constructions of no, one and two adaptors are first, in the
+   * order of the adaptors, then the constructions of more adaptors by name.
+   * @return a map of the number of outliers of each construction found
+   */
+  Map<String, Long> getCounts() {
+
+    final Map<String, Long> result = new LinkedHashMap<>();
+
+    for (int i = 0; i < this.constructions.length; i++) {
+
+      final long count = this.counts.get(i);
+
+      // test if the construction has been found
+      if (count > 0) {
+        result.put(this.constructions[i], count);
+      }
+    }
+
+    for (Map.Entry<String, AtomicLong> e : new TreeMap<>(
+        this.longConstructionCounts).entrySet()) {
+      result.put(e.getKey(), e.getValue().get());
+    }
+
+    return result;
+  }
+
+  /**
+   * Method of the class AdaptorConstructionCounter to write the constructions
+   * found.
+   * @param writer, the writer
+   * @param header, the header of the constructions
+   * @throws IOException if an IO error occur
+   */
+  void write(Writer writer, String header) throws IOException {
+
+    writer.write(header + "\n\n");
+
+    for (Map.Entry<String, Long> e : getCounts().entrySet()) {
+      writer.write(e.getKey() + " :  " + e.getValue() + "\n");
+    }
+  }
+
+}
@@ -1,20 +1,28 @@
 package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
 
-import com.google.common.base.Strings;
 import fr.ens.biologie.genomique.eoulsan.bio.Alphabet;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.Sequence;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastaReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastaWriter;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter;
-import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 import fr.ens.biologie.genomique.toullig.Utils;
+import fr.ens.biologie.genomique.toullig.trimming.AdapterKmerFilter;
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
 import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.PackedReadStore;
+import fr.ens.biologie.genomique.toullig.trimming.PolyTailDetector;
+import fr.ens.biologie.genomique.toullig.trimming.ReadIdMap;
+import fr.ens.biologie.genomique.toullig.trimming.ReadView;
 import fr.ens.biologie.genomique.toullig.trimming.UtilsTrimming;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.eoulsan.bio.Alphabets.AMBIGUOUS_DNA_ALPHABET;
@@ -22,271 +30,806 @@ import static fr.ens.biologie.genomique.eoulsan.bio.Sequence.reverseComplement;
 import static fr.ens.biologie.genomique.toullig.Utils.complement;
 
 /**
- * Class to execute the Cutadapt trimmer. Created by birer on 27/03/17.
+ * Class to execute the Cutadapt trimmer. Created by birer on 27/03/17. The
+ * cutadapt processes of the left and the right outliers run at the same time
+ * as the outlier position finder: the outliers are written to their standard
+ * input and the trimmed outliers are read from their standard output, without
+ * temporary fasta files. With several workers, the outliers of each side are
+ * sent by chunks to several cutadapt processes in turn. Only the lengths of
+ * the trimmed outliers are kept: cutadapt writes a record for each outlier in
+ * the order of its input, so the k-th record of each side is the outlier of the
+ * k-th mapped read of the fastq file and the merge reads the store of the
+ * reads and the two sides in lockstep. For the statistics, cutadapt writes its
+ * information on the trimming in a named pipe of each worker in the work
+ * directory, where the constructions of adaptors are counted while the worker
+ * runs. With a k-mer prefilter, the outliers without a k-mer of the adaptors
+ * are not sent to cutadapt and are kept whole by the merge.
  * @author Aurelien Birer
  */
-class CutadaptTrimmer implements Trimmer {
+public class CutadaptTrimmer implements Trimmer, Closeable {
 
-  private final Map<String, InformationRead> workTrimmingMap;
+  // the number of outliers sent to a cutadapt worker before the next one
+  private static final int CHUNK_SIZE = 1000;
+
+  // the maximal number of adaptors removed of an outlier
+  private static final int TIMES = 10;
+
+  // the marks of the reads of a batch whose outliers are not sent to cutadapt
+  private static final int LEFT_SKIPPED = 1;
+  private static final int RIGHT_SKIPPED = 2;
+
+  private final ReadIdMap<InformationRead> workTrimmingMap;
+  private final PackedReadStore readStore;
   private final File nameOutputFastq;
-  private final File outputTrimLeftFastaFile;
-  private final File outputTrimRightFastaFile;
+  private final File workDir;
 
-  private final File infoTrimLeftFile;
-  private final File infoTrimRightFile;
+  private final AdaptorConstructionCounter leftConstructions;
+  private final AdaptorConstructionCounter rightConstructions;
 
   private final String adaptorRetroTranscritpion;
   private final String adaptorStrandSwitching;
   private final Alphabet alphabet = AMBIGUOUS_DNA_ALPHABET;
   private final double errorRateCutadapt;
+  private final int workerNumber;
+  private final PolyTailDetector polyTailDetector;
+  private final AdapterKmerFilter kmerFilter;
+  private final ChimeraSplitter chimeraSplitter;
+
+  // the outliers tested by the prefilter and sent to cutadapt, on the left
+  // and on the right
+  private final AtomicLongArray filterCounts = new AtomicLongArray(4);
+
+  // the ranks of the reads of the store whose outliers are not sent and the
+  // lengths of these outliers, kept whole
+  private final BitSet leftSkippedOutliers = new BitSet();
+  private final BitSet rightSkippedOutliers = new BitSet();
+  private final TrimmedOutliers leftKeptOutliers = new TrimmedOutliers();
+  private final TrimmedOutliers rightKeptOutliers = new TrimmedOutliers();
+  private int storedReadNumber;
+
+  private CutadaptProcess[] leftProcesses;
+  private CutadaptProcess[] rightProcesses;
+  private Writer fastaLeftOutlierWriter;
+  private Writer fastaRightOutlierWriter;
 
-  private final File fastaLeftOutlierFile;
-  private final File fastaRightOutlierFile;
+  /**
+   * The lengths of the outliers trimmed by a cutadapt process, in the order of
+   * its output, or of the outliers not sent to cutadapt, with the hash of
+   * their read id to check the order.
+   */
+  private static final class TrimmedOutliers {
+
+    private int[] lengths = new int[1024];
+    private int[] idHashes = new int[1024];
+    private int size;
+
+    /**
+     * Method of the class TrimmedOutliers to add a trimmed outlier.
+     * @param id, the read id of the outlier
+     * @param length, the length of the trimmed outlier
+     */
+    void add(final String id, final int length) {
+
+      // test if the arrays must be enlarged
+      if (this.size == this.lengths.length) {
+        this.lengths = Arrays.copyOf(this.lengths, this.size * 2);
+        this.idHashes = Arrays.copyOf(this.idHashes, this.size * 2);
+      }
+
+      this.lengths[this.size] = length;
+      this.idHashes[this.size] = id.hashCode();
+      this.size++;
+    }
+  }
+
+  /**
+   * A cutadapt process with the threads reading its outputs.
+   */
+  private static final class CutadaptProcess {
+
+    private final Process process;
+    private final TrimmedOutliers trimmedOutliers = new TrimmedOutliers();
+    private final Thread outputReader;
+    private final Thread logReader;
+    private final Thread infoReader;
+    private final File infoPipe;
+    private volatile IOException exception;
+
+    /**
+     * Constructor of the CutadaptProcess class, the process is started.
+     * @param command, the command of cutadapt
+     * @param name, the name of the outliers
+     * @param infoPipe, the named pipe of the information written by cutadapt
+     *          or null
+     * @param constructions, the counter of the constructions of adaptors found
+     *          in the information or null
+     * @throws IOException if the process can not be started
+     */
+    CutadaptProcess(final List<String> command, final String name,
+        final File infoPipe, final AdaptorConstructionCounter constructions)
+        throws IOException {
+
+      this.infoPipe = infoPipe;
+      this.process = new ProcessBuilder(command).start();
+
+      // read the trimmed outliers of the standard output
+      this.outputReader = new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+
+          try (FastaReader reader =
+              new FastaReader(process.getInputStream())) {
+
+            for (final Sequence read : reader) {
+              trimmedOutliers.add(read.getName(), read.length());
+            }
+            reader.throwException();
+
+          } catch (IOException e) {
+            exception = e;
+          }
+        }
+      }, "toullig-cutadapt-" + name);
+
+      // display the report of cutadapt written on the standard error
+      this.logReader = new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+
+          try (BufferedReader stdError = new BufferedReader(
+              new InputStreamReader(process.getErrorStream()))) {
+
+            String s;
+            while ((s = stdError.readLine()) != null) {
+              System.out.println(s);
+            }
+
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
+      }, "toullig-cutadapt-log-" + name);
+
+      // count the constructions of adaptors of the information lines written
+      // in the named pipe
+      this.infoReader = infoPipe == null ? null : new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+
+          final InfoLineParser parser = new InfoLineParser(constructions);
+
+          try (BufferedReader reader =
+              new BufferedReader(new FileReader(infoPipe), 1 << 16)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+              parser.parse(line);
+            }
+            parser.end();
+
+          } catch (IOException e) {
+            exception = e;
+          }
+        }
+      }, "toullig-cutadapt-info-" + name);
+
+      this.outputReader.start();
+      this.logReader.start();
+
+      if (this.infoReader != null) {
+        this.infoReader.start();
+      }
+    }
+
+    /**
+     * Method of the class CutadaptProcess to wait the end of the process.
+     * @throws IOException if cutadapt has failed
+     * @throws InterruptedException if the thread is interrupted
+     */
+    void waitFor() throws IOException, InterruptedException {
+
+      try {
+
+        final int exitValue = this.process.waitFor();
+        this.outputReader.join();
+        this.logReader.join();
+
+        // test if the information lines are read
+        if (this.infoReader != null) {
+          unblockInfoReader();
+          this.infoReader.join();
+        }
+
+        // test if the outputs of cutadapt have been read
+        if (this.exception != null) {
+          throw this.exception;
+        }
+
+        // test if cutadapt has failed
+        if (exitValue != 0) {
+          throw new IOException(
+              "cutadapt has failed with the code " + exitValue);
+        }
+
+      } finally {
+        deleteInfoPipe();
+      }
+    }
+
+    /**
+     * Method of the class CutadaptProcess to stop the process.
+     */
+    void destroy() {
+
+      this.process.destroy();
+
+      // test if the information lines are read
+      if (this.infoReader != null) {
+        unblockInfoReader();
+        deleteInfoPipe();
+      }
+    }
+
+    /**
+     * Method of the class CutadaptProcess to unblock the reader of the named
+     * pipe when cutadapt has ended without opening it. The opening of a named
+     * pipe for reading waits a writer, the pipe is opened and closed in read
+     * and write mode, which does not wait a reader on Linux.
+     */
+    private void unblockInfoReader() {
+
+      // test if the reader still waits
+      if (!this.infoReader.isAlive()) {
+        return;
+      }
+
+      try {
+        new RandomAccessFile(this.infoPipe, "rw").close();
+      } catch (IOException e) {
+        getLogger().warning("Unable to open the cutadapt information pipe: "
+            + this.infoPipe);
+      }
+    }
+
+    /**
+     * Method of the class CutadaptProcess to delete the named pipe of the
+     * information lines.
+     */
+    private void deleteInfoPipe() {
+
+      if (this.infoPipe != null && this.infoPipe.exists()
+          && !this.infoPipe.delete()) {
+        getLogger().warning("Unable to delete the cutadapt information pipe: "
+            + this.infoPipe);
+      }
+    }
+  }
+
+  /**
+   * A parser of the information lines of cutadapt, counting the construction
+   * of adaptors of each outlier. cutadapt writes a line for each adaptor found
+   * on an outlier, in the order they have been found, or a line with -1 errors
+   * if no adaptor is found, so the lines of an outlier are consecutive.
+   */
+  private static final class InfoLineParser {
+
+    private final AdaptorConstructionCounter constructions;
+    private final int[] adaptors = new int[TIMES];
+    private int adaptorNumber;
+    private String id;
+
+    /**
+     * Constructor of the InfoLineParser class.
+     * @param constructions, the counter of the constructions
+     */
+    InfoLineParser(final AdaptorConstructionCounter constructions) {
+      this.constructions = constructions;
+    }
+
+    /**
+     * Method of the class InfoLineParser to parse an information line. The
+     * fields are: the id, the number of errors or -1, the start and the end of
+     * the adaptor, the sequences before, in and after the adaptor and the name
+     * of the adaptor.
+     * @param line, the line
+     */
+    void parse(final String line) {
+
+      final int idEnd = line.indexOf('\t');
+      final String lineId = line.substring(0, idEnd);
+
+      // test if the line is the one of a new outlier
+      if (!lineId.equals(this.id)) {
+        end();
+        this.id = lineId;
+      }
+
+      // test if no adaptor is found
+      if (line.startsWith("-1", idEnd + 1)) {
+        return;
+      }
+
+      // find the name of the adaptor, the 8th field
+      int start = idEnd;
+      for (int i = 1; i < 7 && start != -1; i++) {
+        start = line.indexOf('\t', start + 1);
+      }
+
+      // test if the line is truncated
+      if (start == -1) {
+        return;
+      }
+
+      int end = line.indexOf('\t', start + 1);
+      if (end == -1) {
+        end = line.length();
+      }
+
+      final int adaptor =
+          this.constructions.adaptorIndex(line.substring(start + 1, end));
+
+      // test if the adaptor is known
+      if (adaptor != -1 && this.adaptorNumber < this.adaptors.length) {
+        this.adaptors[this.adaptorNumber++] = adaptor;
+      }
+    }
+
+    /**
+     * Method of the class InfoLineParser to count the construction of the
+     * last outlier parsed.
+     */
+    void end() {
+
+      // test if an outlier has been parsed
+      if (this.id != null) {
+        this.constructions.count(this.adaptors, this.adaptorNumber);
+      }
+
+      this.id = null;
+      this.adaptorNumber = 0;
+    }
+  }
+
+  /**
+   * An output stream sending the fasta records by chunks to the standard
+   * inputs of the workers in turn, so the k-th outlier is trimmed by the
+   * worker (k / CHUNK_SIZE) % workerNumber.
+   */
+  private static final class ChunkedOutputStream extends OutputStream {
+
+    private final OutputStream[] outputs;
+    private int worker;
+    private int recordCount;
+    private boolean lineStart = true;
+
+    /**
+     * Constructor of the ChunkedOutputStream class.
+     * @param processes, the workers
+     */
+    ChunkedOutputStream(final CutadaptProcess[] processes) {
+
+      this.outputs = new OutputStream[processes.length];
+      for (int i = 0; i < processes.length; i++) {
+        this.outputs[i] = new BufferedOutputStream(
+            processes[i].process.getOutputStream(), 1 << 16);
+      }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+
+      int start = off;
+      final int end = off + len;
+
+      for (int i = off; i < end; i++) {
+
+        // test if a new record starts
+        if (this.lineStart && b[i] == '>') {
+
+          // test if the chunk of the current worker is full
+          if (this.recordCount == CHUNK_SIZE) {
+
+            this.outputs[this.worker].write(b, start, i - start);
+            start = i;
+            this.worker = (this.worker + 1) % this.outputs.length;
+            this.recordCount = 0;
+          }
+          this.recordCount++;
+        }
+
+        this.lineStart = b[i] == '\n';
+      }
+
+      this.outputs[this.worker].write(b, start, end - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+      for (OutputStream out : this.outputs) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      IOException exception = null;
+
+      // close all the standard inputs, even if one of them fails
+      for (OutputStream out : this.outputs) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          exception = e;
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
 
   /**
    * Constructor of the CutadaptTrimmer class
    * @param workTrimmingMap, a Map of working information
+   * @param readStore, a store of the sequences and the qualities
    * @param outputFastqFile, a File of the output fastq
-   * @param outputTrimLeftFastaFile, a File of the left outlier fasta
-   * @param outputTrimRightFastaFile, a File of the right outlier fasta
+   * @param workDir, the directory of the named pipes of cutadapt
    * @param adaptorRetroTranscritpion, a string of the Retro-Transcription
    *          adaptor
    * @param adaptorStrandSwitching, a string of the Strand-Switching adaptor
    * @param errorRateCutadapt, a int of the error rate for Cutadapt
-   * @param fastaLeftOutlierFile, a File of the left outlier output fasta
-   * @param fastaRightOutlierFile, a File of the right outlier output fasta
-   * @param infoTrimLeftFile, a File of the left information give by cutadapt
-   * @param infoTrimRightFile, a File of the right information give by cutadapt
+   * @param processStats, true to count the constructions of adaptors found
+   *          by cutadapt
+   * @param workerNumber, the number of cutadapt processes of each side
+   * @param polyTailDetector, the detector of the poly-A/T tails removed before
+   *          cutadapt or null
+   * @param kmerFilter, the prefilter of the outliers on the k-mers of the
+   *          adaptors or null
+   * @param chimeraSplitter, the splitter of the chimeric reads or null
    */
-  CutadaptTrimmer(Map<String, InformationRead> workTrimmingMap,
-      File outputFastqFile, File outputTrimLeftFastaFile,
-      File outputTrimRightFastaFile, String adaptorRetroTranscritpion,
-      String adaptorStrandSwitching, double errorRateCutadapt,
-      File fastaLeftOutlierFile, File fastaRightOutlierFile,
-      File infoTrimLeftFile, File infoTrimRightFile) {
+  CutadaptTrimmer(ReadIdMap<InformationRead> workTrimmingMap,
+      PackedReadStore readStore, File outputFastqFile, File workDir,
+      String adaptorRetroTranscritpion, String adaptorStrandSwitching,
+      double errorRateCutadapt, boolean processStats, int workerNumber,
+      PolyTailDetector polyTailDetector, AdapterKmerFilter kmerFilter,
+      ChimeraSplitter chimeraSplitter) {
+
+    // test if the number of workers is valid
+    if (workerNumber < 1) {
+      throw new IllegalArgumentException(
+          "The number of cutadapt workers must be positive: " + workerNumber);
+    }
 
     this.workTrimmingMap = workTrimmingMap;
+    this.readStore = readStore;
     this.nameOutputFastq = outputFastqFile;
-    this.outputTrimLeftFastaFile = outputTrimLeftFastaFile;
-    this.outputTrimRightFastaFile = outputTrimRightFastaFile;
+    this.workDir = workDir;
     this.adaptorRetroTranscritpion = adaptorRetroTranscritpion;
     this.adaptorStrandSwitching = adaptorStrandSwitching;
     this.errorRateCutadapt = errorRateCutadapt;
-    this.infoTrimLeftFile = infoTrimLeftFile;
-    this.infoTrimRightFile = infoTrimRightFile;
-    this.fastaLeftOutlierFile = fastaLeftOutlierFile;
-    this.fastaRightOutlierFile = fastaRightOutlierFile;
+    this.leftConstructions = processStats
+        ? new AdaptorConstructionCounter(AdapterAlignerTrimmer.ADAPTOR_NAMES)
+        : null;
+    this.rightConstructions = processStats
+        ? new AdaptorConstructionCounter(AdapterAlignerTrimmer.ADAPTOR_NAMES)
+        : null;
+    this.workerNumber = workerNumber;
+    this.polyTailDetector = polyTailDetector;
+    this.kmerFilter = kmerFilter;
+    this.chimeraSplitter = chimeraSplitter;
 
   }
 
+  //
+  // Merge outlier
+  //
+
   /**
-   * Method of the CutadaptTrimmer class to read a Cutadapt fasta output.
-   * @param outputTrimFastaFile, a fasta output of cutadapt
-   * @param fastaHash, a HashMap
-   * @return , a HashMap
+   * Method of the class CutadaptTrimmer to get the ids of the mapped reads of
+   * the store in the order of the fastq file. The reads have been added to the
+   * store in this order, so the ids are sorted by handle.
+   * @return the ids of the mapped reads stored
    */
-  private HashMap<String, String> FastaReaderForCutadapt(
-      File outputTrimFastaFile, HashMap<String, String> fastaHash) {
+  private String[] storedReadIds() {
+
+    long[] handles = new long[this.workTrimmingMap.size()];
+    int readNumber = 0;
 
-    // test if the output left fasta file is correctly open
-    try (FastaReader reader = new FastaReader(outputTrimFastaFile)) {
+    // get the handles of the mapped reads found in the fastq file
+    for (String id : this.workTrimmingMap.readIds()) {
 
-      // get each read in the output
-      for (final Sequence read : reader) {
-        fastaHash.put(read.getName(), read.getSequence());
+      final InformationRead informationRead = this.workTrimmingMap.get(id);
+
+      // test if the read is mapped and stored
+      if (informationRead.isMapped()
+          && informationRead.readIndex != PackedReadStore.NO_READ) {
+        handles[readNumber++] = informationRead.readIndex;
       }
+    }
 
-    } catch (IOException e) {
-      e.printStackTrace();
+    handles = Arrays.copyOf(handles, readNumber);
+    Arrays.sort(handles);
+
+    final String[] result = new String[readNumber];
+
+    // put each id at the rank of its handle
+    for (String id : this.workTrimmingMap.readIds()) {
+
+      final InformationRead informationRead = this.workTrimmingMap.get(id);
+
+      // test if the read is mapped and stored
+      if (informationRead.isMapped()
+          && informationRead.readIndex != PackedReadStore.NO_READ) {
+        result[Arrays.binarySearch(handles, informationRead.readIndex)] = id;
+      }
     }
 
-    return fastaHash;
+    return result;
   }
 
   /**
-   * Method of the class CutadapatTrimmer to get the outlier sequence.
-   * @param fastaLeftHash, a fastaLeftHash with all outliers sequence
-   * @param id, the id to the interest sequence
-   * @return , the sequence of the outlier trim
+   * Method of the class CutadaptTrimmer to count the outliers trimmed by the
+   * workers of a side.
+   * @param processes, the workers or null if they have not been started
+   * @return the number of trimmed outliers
    */
-  public String lengthSequence(HashMap<String, String> fastaLeftHash,
-      String id) {
+  private static long trimmedOutlierNumber(final CutadaptProcess[] processes) {
 
-    String lengthSequence;
+    long result = 0;
 
-    // test if the local left hash contains this id read
-    if (fastaLeftHash.containsKey(id)) {
-      lengthSequence = "";
-    } else {
-      lengthSequence = fastaLeftHash.get(id);
+    // test if the workers have been started
+    if (processes != null) {
+      for (CutadaptProcess process : processes) {
+        result += process.trimmedOutliers.size;
+      }
     }
 
-    // test if the sequence is null and put it empty if it's null for the
-    // left outlier
-    lengthSequence = Strings.nullToEmpty(lengthSequence);
+    return result;
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to get the length of the outlier of a
+   * read trimmed by cutadapt. The k-th outlier has been trimmed by the worker
+   * (k / CHUNK_SIZE) % workerNumber.
+   * @param processes, the workers of the side
+   * @param rank, the rank of the read in the outliers
+   * @param id, the id of the read
+   * @return the length of the trimmed outlier
+   * @throws IOException if the outlier is not the one of the read
+   */
+  private static int trimmedOutlierLength(final CutadaptProcess[] processes,
+      final int rank, final String id) throws IOException {
 
-    return lengthSequence;
+    final int chunk = rank / CHUNK_SIZE;
+
+    return outlierLength(processes[chunk % processes.length].trimmedOutliers,
+        (chunk / processes.length) * CHUNK_SIZE + rank % CHUNK_SIZE, id);
   }
 
-  //
-  // Merge outlier
-  //
+  /**
+   * Method of the class CutadaptTrimmer to get the length of an outlier.
+   * @param outliers, the outliers
+   * @param position, the position of the outlier
+   * @param id, the id of the read
+   * @return the length of the outlier
+   * @throws IOException if the outlier is not the one of the read
+   */
+  private static int outlierLength(final TrimmedOutliers outliers,
+      final int position, final String id) throws IOException {
+
+    // test if the outliers are in the order of the reads
+    if (position >= outliers.size
+        || outliers.idHashes[position] != id.hashCode()) {
+      throw new IOException(
+          "The trimmed outlier of the read " + id + " is not in order");
+    }
+
+    return outliers.lengths[position];
+  }
 
   /**
    * Method of the class CutadaptTrimmer to merge the results of cutadapt with
-   * the trim sequence.
+   * the trim sequence. The reads of the store and their outliers trimmed by
+   * the workers of the two sides are read in lockstep, in the order of the
+   * fastq file.
+   * @throws IOException if the output of cutadapt does not match the outliers
+   *           sent or if an IO error occur
    */
-  private void mergeTrimOutlier() {
-
-    HashMap<String, String> fastaLeftHash = new HashMap<>();
-    HashMap<String, String> fastaRightHash = new HashMap<>();
+  private void mergeTrimOutlier() throws IOException {
 
-    String shortestFastqSequence = "";
-    int i = 0;
+    int shortestFastqSequenceLength = 0;
     int countWritten = 0;
     int countNull = 0;
 
-    //
-    // Read of the outliers fastas outputs by cutadapt
-    //
-
-    fastaLeftHash =
-        FastaReaderForCutadapt(this.outputTrimLeftFastaFile, fastaLeftHash);
-    fastaRightHash =
-        FastaReaderForCutadapt(this.outputTrimRightFastaFile, fastaRightHash);
-
     //
     // Start merging
     //
 
     getLogger().info("Start of merging sequence !");
 
-    // test if the output left fasta file is correctly open
-    try (BufferedWriter fastqTrimFile =
-        new BufferedWriter(new FileWriter(this.nameOutputFastq))) {
+    final String[] ids = storedReadIds();
+
+    // the mapped reads not found in the fastq file are not written
+    for (String id : this.workTrimmingMap.readIds()) {
+
+      final InformationRead informationRead = this.workTrimmingMap.get(id);
+
+      // test if the read is mapped and not stored
+      if (informationRead.isMapped()
+          && informationRead.readIndex == PackedReadStore.NO_READ) {
+        countNull++;
+      }
+    }
+
+    // test if the output fastq file is correctly open
+    try (FastqWriter fastqWriter = new FastqWriter(
+        new BufferedWriter(new FileWriter(this.nameOutputFastq), 1 << 16))) {
+
+      // test if cutadapt has trimmed each outlier sent
+      if (trimmedOutlierNumber(this.leftProcesses) != ids.length
+          - this.leftSkippedOutliers.cardinality()
+          || trimmedOutlierNumber(this.rightProcesses) != ids.length
+              - this.rightSkippedOutliers.cardinality()) {
+        throw new IOException("cutadapt has trimmed "
+            + trimmedOutlierNumber(this.leftProcesses) + " left and "
+            + trimmedOutlierNumber(this.rightProcesses)
+            + " right outliers for " + ids.length + " reads");
+      }
+
+      // the view on the reads of the store, reused for all the reads
+      ReadView view = null;
 
-      // get id for each red on the work map
-      for (String id : this.workTrimmingMap.keySet()) {
+      // the ranks of the outliers sent to cutadapt and of the outliers kept
+      int leftRank = 0;
+      int rightRank = 0;
+      int leftKeptRank = 0;
+      int rightKeptRank = 0;
 
-        i++;
+      for (int rank = 0; rank < ids.length; rank++) {
+
+        final String id = ids[rank];
 
         // get information for the read
         InformationRead informationRead = this.workTrimmingMap.get(id);
-        String cigar = informationRead.cigar;
-        String quality = informationRead.quality;
-        String sequence = informationRead.sequence;
         int leftLengthOutlier = informationRead.leftLengthOutlier;
         int rightLengthOutlier = informationRead.rightLengthOutlier;
 
-        // test if the read is unmapped
-        if (!cigar.equals("*")) {
+        // get the sequence and the quality of the read in the store
+        view = this.readStore.getView(informationRead.readIndex, view);
+        int sequenceLength = view.length();
+        int qualityLength = view.qualityLength();
 
-          // test if the length of the left outlier is negatif
-          if (leftLengthOutlier < 0) {
-            leftLengthOutlier = 0;
-          }
+        // test if the length of the left outlier is negatif
+        if (leftLengthOutlier < 0) {
+          leftLengthOutlier = 0;
+        }
 
-          // test if the length of the left outlier is negatif
-          if (rightLengthOutlier < 0) {
-            rightLengthOutlier = 0;
-          }
+        // test if the length of the left outlier is negatif
+        if (rightLengthOutlier < 0) {
+          rightLengthOutlier = 0;
+        }
 
-          String mainSequenceWithoutOutlier = "";
+        int mainSequenceWithoutOutlierLength = 0;
 
-          // test if the trim sequence and strictly inferior to the length
-          // of the sequence
-          if ((leftLengthOutlier + rightLengthOutlier) < sequence.length()) {
+        // test if the trim sequence and strictly inferior to the length
+        // of the sequence
+        if ((leftLengthOutlier + rightLengthOutlier) < sequenceLength) {
 
-            mainSequenceWithoutOutlier = sequence.substring(leftLengthOutlier,
-                sequence.length() - rightLengthOutlier);
+          mainSequenceWithoutOutlierLength =
+              sequenceLength - rightLengthOutlier - leftLengthOutlier;
+        }
 
-          }
+        // get the length of the left outlier trimmed
+        final int leftSequenceLength = this.leftSkippedOutliers.get(rank)
+            ? outlierLength(this.leftKeptOutliers, leftKeptRank++, id)
+            : trimmedOutlierLength(this.leftProcesses, leftRank++, id);
 
-          // get the left sequence outlier trimmed
-          String leftSequence = lengthSequence(fastaLeftHash, id);
+        // get the length of the right outlier trimmed
+        final int rightSequenceLength = this.rightSkippedOutliers.get(rank)
+            ? outlierLength(this.rightKeptOutliers, rightKeptRank++, id)
+            : trimmedOutlierLength(this.rightProcesses, rightRank++, id);
 
-          // get the right sequence outlier trimmed
-          String rightSequence = lengthSequence(fastaRightHash, id);
+        //
+        // get the length of the trim outlier sequence
+        //
 
-          //
-          // get the length of the trim outlier sequence
-          //
+        int leftLength = leftLengthOutlier - leftSequenceLength;
+        int rightLength =
+            (sequenceLength - rightLengthOutlier) + rightSequenceLength;
 
-          int leftLength = leftLengthOutlier - leftSequence.length();
-          int rightLength =
-              (sequence.length() - rightLengthOutlier) + rightSequence.length();
+        // test if the left trim outlier sequence is superior to the left
+        // outlier sequence
+        if (leftLengthOutlier - leftSequenceLength < 0) {
+          leftLength = 0;
+        }
 
-          // test if the left trim outlier sequence is superior to the left
-          // outlier sequence
-          if (leftLengthOutlier - leftSequence.length() < 0) {
-            leftLength = 0;
-          }
+        // test if the right length trimmed sequence is superior to the
+        // quality length
+        if (rightLength > qualityLength) {
+          rightLength = qualityLength;
+        }
 
-          // test if the right length trimmed sequence is superior to the
-          // quality length
-          if (rightLength > quality.length()) {
-            rightLength = quality.length();
-          }
+        // case with the addition of index (>0)
+        if (leftLength > rightLength) {
+          leftLength = rightLength;
+        }
 
-          // case with the addition of index (>0)
-          if (leftLength > rightLength) {
-            leftLength = rightLength;
-          }
+        //
+        // Get the sequence and quality trimmed
+        //
 
-          //
-          // Get the sequence and quality trimmed
-          //
+        String sequenceTrim = view.getSequence(leftLength, rightLength);
 
-          String sequenceTrim = sequence.substring(leftLength, rightLength);
+        String qualityTrim = view.getQuality(leftLength, rightLength);
 
-          String qualityTrim = quality.substring(leftLength, rightLength);
+        // test if the quality length is differerent to the sequence length
+        if (qualityTrim.length() != sequenceTrim.length()) {
+          System.out.println("problem :  "
+              + qualityTrim.length() + "     " + sequenceTrim.length() + "   "
+              + mainSequenceWithoutOutlierLength);
+          System.out.println(leftLength + "     " + rightLength + "     " + id);
+        }
 
-          // test if the quality length is differerent to the sequence length
-          if (qualityTrim.length() != sequenceTrim.length()) {
-            System.out.println("problem :  "
-                + qualityTrim.length() + "     " + sequenceTrim.length() + "   "
-                + mainSequenceWithoutOutlier.length());
-            System.out
-                .println(leftLength + "     " + rightLength + "     " + id);
-          }
+        // test if the sequence trimmed is empty
+        if (sequenceTrim.isEmpty()) {
+          countNull++;
+          continue;
+        }
 
-          // test if the sequence trimmed is empty
-          if (!sequenceTrim.isEmpty()) {
+        int[] pieces = this.chimeraSplitter == null ? null
+            : this.chimeraSplitter.split(sequenceTrim, 0,
+                sequenceTrim.length());
+        final boolean split = pieces != null;
 
-            ReadSequence fastq = new ReadSequence();
-            fastq.setName(id);
-            fastq.setSequence(sequenceTrim);
-            fastq.setQuality(qualityTrim);
+        // test if the read is not split
+        if (!split) {
+          pieces = new int[] {0, sequenceTrim.length()};
+        }
 
-            // write the trimmed read
-            FastqWriter fastqWriter = new FastqWriter(fastqTrimFile);
-            fastqWriter.write(fastq);
+        for (int p = 0; p < pieces.length; p += 2) {
 
-            countWritten++;
+          final int pieceLength = pieces[p + 1] - pieces[p];
 
-            // test for the first loop
-            if (i == 1) {
-              shortestFastqSequence = sequenceTrim;
-            }
+          ReadSequence fastq = new ReadSequence();
+          fastq.setName(split
+              ? ChimeraSplitter.pieceName(id, p / 2, pieces.length / 2) : id);
+          fastq.setSequence(sequenceTrim.substring(pieces[p], pieces[p + 1]));
+          fastq.setQuality(qualityTrim.substring(pieces[p], pieces[p + 1]));
 
-            // test if a new shortest read is comput in this loop
-            if (shortestFastqSequence.length() >= sequenceTrim.length()) {
-              shortestFastqSequence = sequenceTrim;
-            }
+          // write the trimmed read
+          fastqWriter.write(fastq);
 
-          } else {
-            countNull++;
+          // test if a new shortest read is found
+          if (countWritten == 0 || pieceLength < shortestFastqSequenceLength) {
+            shortestFastqSequenceLength = pieceLength;
           }
+
+          countWritten++;
         }
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     }
 
     getLogger()
-        .info("The shortest read size is: " + shortestFastqSequence.length());
+        .info("The shortest read size is: " + shortestFastqSequenceLength);
     getLogger().info("Number of trim read write: " + countWritten);
     getLogger().info("Number of trim read null: " + countNull);
+
+    // test if the chimeric reads have been split
+    if (this.chimeraSplitter != null) {
+      this.chimeraSplitter.logStatistics();
+    }
   }
 
   //
@@ -294,277 +837,502 @@ class CutadaptTrimmer implements Trimmer {
   //
 
   /**
-   * Method of the class CutadaptTrimmer to execute cutadapt.
-   * @param fastaOutlierFile, a fasta File with outlier to trim
+   * Method of the class CutadaptTrimmer to start cutadapt on the outliers
+   * written to its standard input.
    * @param strand, the cutadapt strand of the adaptor
-   * @param infoTrimFile, path to the output log of cutadapt
-   * @param pathOutputTrimFasta, path to the output of cutadapt
+   * @param name, the name of the outliers
+   * @param constructions, the counter of the constructions of adaptors of the
+   *          side or null
+   * @return the cutadapt process
+   * @throws IOException if cutadapt can not be started
    */
-  private void cutadaptTrimming(File fastaOutlierFile, String strand,
-      File infoTrimFile, File pathOutputTrimFasta) {
+  private CutadaptProcess startCutadapt(String strand, String name,
+      AdaptorConstructionCounter constructions) throws IOException {
+
+    final List<String> command = new ArrayList<>();
+    command.add("cutadapt");
+
+    addAdaptor(command, strand, "RT_adaptor", this.adaptorRetroTranscritpion);
+    addAdaptor(command, strand, "Switch_Strand_RT_adaptor",
+        this.adaptorStrandSwitching);
+    addAdaptor(command, strand, "reverse_RT_adaptor",
+        Utils.reverse(this.adaptorRetroTranscritpion));
+    addAdaptor(command, strand, "reverse_Switch_Strand_RT_adaptor",
+        Utils.reverse(this.adaptorStrandSwitching));
+    addAdaptor(command, strand, "complement_RT_adaptor",
+        complement(this.adaptorRetroTranscritpion, this.alphabet));
+    addAdaptor(command, strand, "complement_Switch_Strand_RT_adaptor",
+        complement(this.adaptorStrandSwitching, this.alphabet));
+    addAdaptor(command, strand, "reverse_complement_RT_adaptor",
+        reverseComplement(this.adaptorRetroTranscritpion, this.alphabet));
+    addAdaptor(command, strand, "reverse_complement_Switch_Strand_RT_adaptor",
+        reverseComplement(this.adaptorStrandSwitching, this.alphabet));
+
+    command.add("--error-rate=" + this.errorRateCutadapt);
+
+    // test if the information on the trimming must be read, it is written in
+    // a named pipe of its own
+    File infoPipe = null;
+    if (constructions != null) {
+      infoPipe = newNamedPipe();
+      command.add("--info-file=" + infoPipe.getPath());
+    }
+
+    command.add("--overlap=8");
+    command.add("--times=" + TIMES);
+    command.add("--match-read-wildcards");
+    command.add("--format=fasta");
+
+    // the outliers are read on the standard input
+    command.add("-");
 
-    // test if the follow code execute correctly
     try {
+      return new CutadaptProcess(command, name, infoPipe, constructions);
+    } catch (IOException e) {
+
+      // test if the named pipe has been created
+      if (infoPipe != null) {
+        infoPipe.delete();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to create a named pipe in the work
+   * directory.
+   * @return the named pipe
+   * @throws IOException if the named pipe can not be created
+   */
+  private File newNamedPipe() throws IOException {
+
+    // reserve a name for the pipe
+    final File result =
+        File.createTempFile("toullig_cutadapt_info_", ".fifo", this.workDir);
+    if (!result.delete()) {
+      throw new IOException("Unable to create the named pipe: " + result);
+    }
 
-      String reverseComplementAdaptorRT = strand
-          + " reverse_complement_RT_adaptor="
-          + reverseComplement(this.adaptorRetroTranscritpion, this.alphabet);
+    try {
 
-      String reverseComplementAdaptorSwithStrand = strand
-          + " reverse_complement_Switch_Strand_RT_adaptor="
-          + reverseComplement(this.adaptorStrandSwitching, this.alphabet);
+      final int exitValue =
+          new ProcessBuilder("mkfifo", result.getPath()).start().waitFor();
 
-      String complementAdaptorRT = strand
-          + " complement_RT_adaptor="
-          + complement(this.adaptorRetroTranscritpion, this.alphabet);
+      // test if mkfifo has failed
+      if (exitValue != 0) {
+        throw new IOException("Unable to create the named pipe: " + result
+            + ", mkfifo has failed with the code " + exitValue);
+      }
 
-      String complementAdaptorSwithStrand = strand
-          + " complement_Switch_Strand_RT_adaptor="
-          + complement(this.adaptorStrandSwitching, this.alphabet);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("The creation of the named pipe has been "
+          + "interrupted: " + result, e);
+    }
 
-      String reverseAdaptorRT = strand
-          + " reverse_RT_adaptor="
-          + Utils.reverse(this.adaptorRetroTranscritpion);
+    return result;
+  }
 
-      String reverseAdaptorSwithStrand = strand
-          + " reverse_Switch_Strand_RT_adaptor="
-          + Utils.reverse(this.adaptorStrandSwitching);
+  /**
+   * Method of the class CutadaptTrimmer to add an adaptor to the command of
+   * cutadapt.
+   * @param command, the command
+   * @param strand, the cutadapt strand of the adaptor
+   * @param name, the name of the adaptor
+   * @param adaptor, the sequence of the adaptor
+   */
+  private static void addAdaptor(final List<String> command,
+      final String strand, final String name, final String adaptor) {
 
-      String adaptorRT =
-          strand + " RT_adaptor=" + this.adaptorRetroTranscritpion;
+    command.add(strand);
+    command.add(name + "=" + adaptor);
+  }
 
-      String adaptorStrandSwitching =
-          strand + " Switch_Strand_RT_adaptor=" + this.adaptorStrandSwitching;
+  /**
+   * Method of the class CutadaptTrimmer to start the cutadapt workers of a
+   * side.
+   * @param strand, the cutadapt strand of the adaptor
+   * @param name, the name of the outliers
+   * @param constructions, the counter of the constructions of adaptors of the
+   *          side or null
+   * @return the workers
+   * @throws IOException if cutadapt can not be started
+   */
+  private CutadaptProcess[] startWorkers(final String strand,
+      final String name, final AdaptorConstructionCounter constructions)
+      throws IOException {
 
-      // if a problem occur for the cutadapt display
-      // String quiet="--quiet";
-      String quiet = "";
+    final CutadaptProcess[] result = new CutadaptProcess[this.workerNumber];
 
-      // get the processus builder for launching cutadapt in the shell
-      ProcessBuilder pb = new ProcessBuilder("/bin/bash", "-c", "cutadapt "
-          + adaptorRT + " " + adaptorStrandSwitching + " " + reverseAdaptorRT
-          + " " + reverseAdaptorSwithStrand + " " + complementAdaptorRT + " "
-          + complementAdaptorSwithStrand + " " + reverseComplementAdaptorRT
-          + " " + reverseComplementAdaptorSwithStrand + " " + quiet
-          + " --error-rate=" + this.errorRateCutadapt + " --info-file="
-          + infoTrimFile.toString()
-          + " --overlap=8 --times=10 --match-read-wildcards --format=fasta "
-          + fastaOutlierFile.toString() + " > " + pathOutputTrimFasta);
+    try {
 
-      // System.out.println(pb.command());
+      for (int i = 0; i < result.length; i++) {
+        result[i] = startCutadapt(strand, name + "-" + i, constructions);
+      }
 
-      // get error enable for the processus
-      pb.redirectErrorStream(true);
+    } catch (IOException e) {
 
-      // process the processus
-      Process proc = pb.start(); // Start the process.
+      // stop the workers already started
+      destroy(result);
+      throw e;
+    }
 
-      // get log of the processus
-      getLogCutadapt(proc);
+    return result;
+  }
 
-      // wait to the end of the processus
-      proc.waitFor();
+  /**
+   * Method of the class CutadaptTrimmer to get the standard input of the
+   * workers of a side.
+   * @param processes, the workers
+   * @return the standard input of the only worker or a stream sending the
+   *         outliers by chunks to the workers
+   */
+  private static OutputStream workerInput(final CutadaptProcess[] processes) {
 
-    } catch (IOException | InterruptedException e) {
-      e.printStackTrace(); // or log it, or otherwise handle it
+    // test if there is only one worker
+    if (processes.length == 1) {
+      return processes[0].process.getOutputStream();
     }
+
+    return new ChunkedOutputStream(processes);
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to start cutadapt on the left and the
+   * right outliers, before the first batch is written.
+   * @throws IOException if cutadapt can not be started
+   */
+  private void startOutlierTrimming() throws IOException {
+
+    this.leftProcesses = startWorkers("-g", "left", this.leftConstructions);
+    this.fastaLeftOutlierWriter = newWriter(workerInput(this.leftProcesses));
+
+    this.rightProcesses =
+        startWorkers("-a", "right", this.rightConstructions);
+    this.fastaRightOutlierWriter = newWriter(workerInput(this.rightProcesses));
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to open the standard input of the
+   * workers of a side.
+   * @param out, the standard input of the workers
+   * @return a buffered writer
+   */
+  private static Writer newWriter(final OutputStream out) {
+
+    return new BufferedWriter(
+        new OutputStreamWriter(out, StandardCharsets.ISO_8859_1), 1 << 16);
   }
 
   /**
-   * Method of the class CutadaptTrimmer to display log of cutadapt (delete the
-   * option --quiet).
-   * @param proc, a Processus
+   * Method of the class CutadaptTrimmer to close the standard input of the
+   * workers, so cutadapt ends after the last outliers.
    * @throws IOException if an IO error occur
    */
-  private void getLogCutadapt(Process proc) throws IOException {
+  private void closeOutlierWriters() throws IOException {
 
-    BufferedReader stdInput =
-        new BufferedReader(new InputStreamReader(proc.getInputStream()));
-    BufferedReader stdError =
-        new BufferedReader(new InputStreamReader(proc.getErrorStream()));
+    try {
 
-    // read the output from the command
-    System.out.println("Here is the standard output of the command:\n");
-    String s;
-    while ((s = stdInput.readLine()) != null) {
-      System.out.println(s);
-    }
-    stdInput.close();
+      // test if the left outliers are written
+      if (this.fastaLeftOutlierWriter != null) {
+        this.fastaLeftOutlierWriter.close();
+      }
 
-    // read any errors from the attempted command
-    System.out.println("Here is the standard error of the command (if any):\n");
-    while ((s = stdError.readLine()) != null) {
-      System.out.println(s);
+    } finally {
+
+      // test if the right outliers are written
+      if (this.fastaRightOutlierWriter != null) {
+        this.fastaRightOutlierWriter.close();
+      }
+
+      this.fastaLeftOutlierWriter = null;
+      this.fastaRightOutlierWriter = null;
     }
-    stdError.close();
   }
 
   /**
-   * Method of the class CutadaptTrimmer to make some stats of the
-   * cutadaptTrimming
-   * @param infoTrimFile, a path to store stats in a file
-   * @throws IOException if an IO error occur
+   * Method of the class CutadaptTrimmer to wait the end of the workers of a
+   * side.
+   * @param processes, the workers or null if they have not been started
+   * @throws IOException if a worker has failed or has been interrupted
    */
-  void statsLogCutadapt(File infoTrimFile, String header) throws IOException {
+  private static void waitFor(final CutadaptProcess[] processes)
+      throws IOException {
 
-    // create new localReporter object
-    LocalReporter localReporterNumberTimesAdaptor = new LocalReporter();
+    // test if the workers have not been started
+    if (processes == null) {
+      return;
+    }
 
-    // open to read the info Trim file of cutadapt
-    BufferedReader infoTrimBufferedReader =
-        new BufferedReader(new FileReader(infoTrimFile));
-    String line;
-    String oldId = "";
-    String stackConstructAdaptor = "";
+    try {
 
-    // read the info trim file of cutadapt
-    while ((line = infoTrimBufferedReader.readLine()) != null) {
+      for (CutadaptProcess process : processes) {
+        process.waitFor();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("The wait of cutadapt has been interrupted", e);
+    }
+  }
 
-      String[] part = line.split("\t");
-      String id = part[0];
-      String error = part[1];
+  /**
+   * Method of the class CutadaptTrimmer to stop the workers of a side.
+   * @param processes, the workers or null
+   */
+  private static void destroy(final CutadaptProcess[] processes) {
 
-      // test if no adaptor is found for this read by cutadapt
-      if (error.equals("-1")) {
+    // test if the workers have been started
+    if (processes == null) {
+      return;
+    }
 
-        // test if this status already exist on the localReporter object
-        if (localReporterNumberTimesAdaptor.getCounterNames("Construction")
-            .contains("no_adaptor_found")) {
+    for (CutadaptProcess process : processes) {
 
-          localReporterNumberTimesAdaptor.incrCounter("Construction",
-              "no_adaptor_found", 1);
-        } else {
-          localReporterNumberTimesAdaptor.setCounter("Construction",
-              "no_adaptor_found", 1);
-        }
-        continue;
+      // test if the worker has been started
+      if (process != null) {
+        process.destroy();
       }
+    }
+  }
 
-      String nameAdaptor = part[7];
+  /**
+   * Method of the class CutadaptTrimmer to write the constructions of adaptors
+   * found by cutadapt on the left and the right outliers.
+   * @throws IOException if an IO error occur
+   */
+  private void writeConstructions() throws IOException {
 
-      // test if the id uis the same of the last loop (technique to have multi
-      // adaptor found)
-      if (!id.equals(oldId)) {
+    final File statFile =
+        new File(this.nameOutputFastq.getAbsoluteFile().getParentFile(),
+            "differents_constructions_of_RT_adaptor_on_outliers.txt");
 
-        // test if the stack construct adaptor is empty
-        if (stackConstructAdaptor.equals("")) {
+    try (Writer writerStat = new FileWriter(statFile)) {
 
-          // test if the localReporterNumberTimesAdaptor have already this
-          // adaptor construction
-          if (localReporterNumberTimesAdaptor.getCounterNames("Construction")
-              .contains(nameAdaptor)) {
+      this.leftConstructions.write(writerStat, "Start stat Left outlier");
+      writerStat.write("\n");
+      this.rightConstructions.write(writerStat, "Start stat Right outlier");
+    }
+  }
 
-            localReporterNumberTimesAdaptor.incrCounter("Construction",
-                nameAdaptor, 1);
-          } else {
-            localReporterNumberTimesAdaptor.setCounter("Construction",
-                nameAdaptor, 1);
-          }
-        } else {
+  //
+  // Main execution
+  //
 
-          // test if the localReporterNumberTimesAdaptor have a complex adaptor
-          // construction (more than 2 adaptor)
-          if (stackConstructAdaptor.contains(" + ")) {
-            localReporterNumberTimesAdaptor.incrCounter("Construction",
-                stackConstructAdaptor, 1);
-          } else {
-            localReporterNumberTimesAdaptor.incrCounter("Construction",
-                stackConstructAdaptor, 1);
-          }
-          stackConstructAdaptor = "";
+  /**
+   * Method of the class CutadaptTrimmer to write the outliers of the reads of
+   * a batch in fasta. This method is called by several threads.
+   * @param batch, the batch
+   * @throws IOException if an IO error occur
+   */
+  @Override
+  public void processBatch(TrimmingBatch batch) throws IOException {
+
+    final StringWriter leftOutliers = new StringWriter();
+    final StringWriter rightOutliers = new StringWriter();
+    final long[] batchFilterCounts = new long[4];
+
+    try (FastaWriter leftOutlierWriter = new FastaWriter(leftOutliers);
+        FastaWriter rightOutlierWriter = new FastaWriter(rightOutliers)) {
+
+      for (int i = 0; i < batch.size(); i++) {
+
+        final String sequence = batch.getSequence(i);
+        final String id = batch.getId(i);
+
+        // get the outliers without the tails
+        final String leftOutlier = UtilsTrimming.getOutlierLeftSequence(
+            batch.getLeftLengthOutlier(i), sequence, this.polyTailDetector);
+        final String rightOutlier = UtilsTrimming.getOutlierRightSequence(
+            batch.getRightLengthOutlier(i), sequence, this.polyTailDetector);
+
+        // test if the outliers are not prefiltered
+        if (this.kmerFilter == null) {
+          UtilsTrimming.writeOutliers(leftOutlier, rightOutlier, id,
+              leftOutlierWriter, rightOutlierWriter);
+          continue;
         }
 
-      } else {
+        int mark = 0;
+
+        // test if the left outlier has a k-mer of the adaptors
+        if (prefilter(leftOutlier, this.leftConstructions,
+            batchFilterCounts, 0)) {
+          UtilsTrimming.writeOutlier(leftOutlier, id, leftOutlierWriter);
+        } else {
+          mark |= LEFT_SKIPPED;
+        }
 
-        // test if the stack construction adaptor is empty
-        if (stackConstructAdaptor.equals("")) {
-          stackConstructAdaptor += nameAdaptor;
+        // test if the right outlier has a k-mer of the adaptors
+        if (prefilter(rightOutlier, this.rightConstructions,
+            batchFilterCounts, 2)) {
+          UtilsTrimming.writeOutlier(rightOutlier, id, rightOutlierWriter);
         } else {
-          stackConstructAdaptor += " + " + nameAdaptor;
+          mark |= RIGHT_SKIPPED;
         }
+
+        batch.setMark(i, mark);
       }
-      oldId = id;
     }
 
-    //
-    // Analyze counter group Construction
-    //
+    for (int i = 0; i < batchFilterCounts.length; i++) {
+      this.filterCounts.addAndGet(i, batchFilterCounts[i]);
+    }
 
-    try {
+    batch.setOutputs(leftOutliers.toString(), rightOutliers.toString());
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to test if an outlier must be sent to
+   * cutadapt. The construction of an outlier not sent is counted without
+   * adaptor.
+   * @param outlier, the outlier
+   * @param constructions, the counter of the constructions of the side or
+   *          null
+   * @param batchFilterCounts, the counts of the prefilter of the batch
+   * @param side, the index of the counts of the side in batchFilterCounts
+   * @return true if the outlier has a k-mer of the adaptors
+   */
+  private boolean prefilter(final String outlier,
+      final AdaptorConstructionCounter constructions,
+      final long[] batchFilterCounts, final int side) {
 
-      FileWriter writerStat = new FileWriter(this.nameOutputFastq.getParent()
-          + "/differents_constructions_of_RT_adaptor_on_outliers.txt");
+    batchFilterCounts[side]++;
 
-      writerStat.write(header + "\n\n");
+    // test if the outlier has no k-mer of the adaptors
+    if (!this.kmerFilter.mayContainAdaptor(outlier)) {
 
-      // get all adaptor construction in the localReporterNumberTimesAdaptor
-      // object
-      for (String constructionAdaptor : localReporterNumberTimesAdaptor
-          .getCounterNames("Construction")) {
-        writerStat.write(constructionAdaptor
-            + " :  " + localReporterNumberTimesAdaptor
-                .getCounterValue("Construction", constructionAdaptor)
-            + "\n");
+      if (constructions != null) {
+        constructions.count(null, 0);
       }
+      return false;
+    }
 
-      writerStat.close();
+    batchFilterCounts[side + 1]++;
+    return true;
+  }
 
-    } catch (Exception e) {
+  /**
+   * Method of the class CutadaptTrimmer to store the reads of a batch for the
+   * merge and to send their outliers to cutadapt.
+   * @param batch, the processed batch
+   * @throws IOException if an IO error occur
+   */
+  @Override
+  public void writeBatch(TrimmingBatch batch) throws IOException {
 
-      e.printStackTrace();
+    // test if the cutadapt processes are started
+    if (this.fastaLeftOutlierWriter == null) {
+      startOutlierTrimming();
     }
 
-  }
+    // store the sequence and the quality of the reads for the merge
+    for (int i = 0; i < batch.size(); i++) {
 
-  //
-  // Main execution
-  //
+      final String sequence = batch.getSequence(i);
+      batch.getInformationRead(i).readIndex =
+          this.readStore.add(sequence, batch.getQuality(i));
 
-  /**
-   * Method of the class CutadaptTrimmer to trim with the Trimmer interface.
-   * @param leftLengthOutlier , the length of the left outlier
-   * @param rightLengthOutlier , the length of the left outlier
-   * @param sequence, the sequence of the read
-   * @param id , the id of the read
-   * @param quality , the quality of the read
-   */
-  public void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality,
-      FastaWriter fastaLeftOutlierWriter, FastaWriter fastaRightOutlierWriter) {
+      // test if the left outlier has not been sent to cutadapt
+      if ((batch.getMark(i) & LEFT_SKIPPED) != 0) {
+        this.leftSkippedOutliers.set(this.storedReadNumber);
+        this.leftKeptOutliers.add(batch.getId(i),
+            UtilsTrimming.getOutlierLeftSequence(batch.getLeftLengthOutlier(i),
+                sequence, this.polyTailDetector).length());
+      }
+
+      // test if the right outlier has not been sent to cutadapt
+      if ((batch.getMark(i) & RIGHT_SKIPPED) != 0) {
+        this.rightSkippedOutliers.set(this.storedReadNumber);
+        this.rightKeptOutliers.add(batch.getId(i),
+            UtilsTrimming.getOutlierRightSequence(
+                batch.getRightLengthOutlier(i), sequence,
+                this.polyTailDetector).length());
+      }
 
-    // write outliers in a fasta file
-    UtilsTrimming.writeOutliers(leftLengthOutlier, rightLengthOutlier, sequence,
-        id, fastaLeftOutlierWriter, fastaRightOutlierWriter);
+      this.storedReadNumber++;
+    }
 
+    this.fastaLeftOutlierWriter.write(batch.getOutput(0));
+    this.fastaRightOutlierWriter.write(batch.getOutput(1));
   }
 
+  /**
+   * Method of the class CutadaptTrimmer to test if the map of the alignments
+   * is used after the batches. The results of cutadapt are merged with the
+   * reads of the map.
+   * @return true
+   */
   @Override
-  public void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality, FastaWriter fastqOutputFile)
-      throws IOException {
-
+  public boolean needsAlignments() {
+    return true;
   }
 
   /**
-   * Method of the class CutadaptTrimmer to trim with the Trimmer interface
+   * Method of the class CutadaptTrimmer to trim with the Trimmer interface. The
+   * cutadapt processes have been started with the first batch, their end is
+   * waited before the merge.
+   * @throws IOException if cutadapt has failed or if an IO error occur
    */
-  public void trim() {
+  @Override
+  public void trim() throws IOException {
+
+    // end the outliers given to cutadapt
+    closeOutlierWriters();
 
-    System.out.println("Begin use cutadapt !");
+    getLogger().info("Wait the end of cutadapt");
+
+    // wait the cutadapt processes of the left and the right outliers
+    try {
+      waitFor(this.leftProcesses);
+      waitFor(this.rightProcesses);
+    } catch (IOException e) {
 
-    String strandLeft = "-g";
-    String strandRight = "-a";
+      // stop the other workers and release their named pipes
+      destroy(this.leftProcesses);
+      destroy(this.rightProcesses);
+      throw e;
+    }
 
-    // Cutadapt execution for the left outlier
-    cutadaptTrimming(this.fastaLeftOutlierFile, strandLeft,
-        this.infoTrimLeftFile, this.outputTrimLeftFastaFile);
+    // test to write the constructions of adaptors counted during the trimming
+    if (this.leftConstructions != null && this.leftProcesses != null) {
+      writeConstructions();
+    }
 
-    // Cutadapt execution for the right outlier
-    cutadaptTrimming(this.fastaRightOutlierFile, strandRight,
-        this.infoTrimRightFile, this.outputTrimRightFastaFile);
+    // test if the outliers have been prefiltered
+    if (this.kmerFilter != null) {
+      AdapterKmerFilter.logHitRate("left", this.filterCounts.get(0),
+          this.filterCounts.get(1));
+      AdapterKmerFilter.logHitRate("right", this.filterCounts.get(2),
+          this.filterCounts.get(3));
+    }
 
     // Merge the output form cutadapt
     mergeTrimOutlier();
 
+    // the trimmed outliers are no more needed
+    this.leftProcesses = null;
+    this.rightProcesses = null;
+
+  }
+
+  /**
+   * Method of the class CutadaptTrimmer to stop the cutadapt processes, when
+   * the trimming is not done.
+   */
+  @Override
+  public void close() {
+
+    // stop the cutadapt processes if they are running
+    destroy(this.leftProcesses);
+    destroy(this.rightProcesses);
+    this.leftProcesses = null;
+    this.rightProcesses = null;
+
+    try {
+      closeOutlierWriters();
+    } catch (IOException e) {
+      // the cutadapt processes have been stopped
+    }
   }
 }
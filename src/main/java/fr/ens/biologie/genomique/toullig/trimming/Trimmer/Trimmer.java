@@ -1,26 +1,27 @@
 package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
 
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastaWriter;
-
 import java.io.IOException;
 
 /**
- * Interface for Trimmer Created by birer on 03/04/17.
+ * Interface for Trimmer Created by birer on 03/04/17. The outlier position
+ * finder gives the mapped reads to the trimmer by batches: a batch is first
+ * processed, several batches can be processed at the same time by several
+ * threads, then the batches are written one by one in the order of the fastq
+ * file.
  * @author Aurelien Birer
  */
 public interface Trimmer {
 
-  // Method to pre-process trim ONT data
-  void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality,
-      FastaWriter fastaLeftOutlierWriter, FastaWriter fastaRightOutlierWriter);
+  // Method to trim a batch of reads, called by several threads
+  void processBatch(TrimmingBatch batch) throws IOException;
+
+  // Method to write a processed batch, called in the order of the fastq file
+  void writeBatch(TrimmingBatch batch) throws IOException;
 
-  // Method to pre-process trim ONT data
-  void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality, FastaWriter fastqOutputFile)
-      throws IOException;
+  // Method to trim ONT data, after the last batch has been written
+  void trim() throws IOException;
 
-  // Method to trim ONT data
-  void trim();
+  // Method to test if the map of the alignments is used after the batches
+  boolean needsAlignments();
 
 }
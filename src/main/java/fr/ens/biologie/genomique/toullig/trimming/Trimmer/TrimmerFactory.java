@@ -1,10 +1,16 @@
 package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
 
+import fr.ens.biologie.genomique.toullig.trimming.AdapterKmerFilter;
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
 import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.PackedReadStore;
+import fr.ens.biologie.genomique.toullig.trimming.PolyTailDetector;
+import fr.ens.biologie.genomique.toullig.trimming.ReadIdMap;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 
 /**
  * Created by birer on 09/05/17.
@@ -12,48 +18,49 @@ import java.util.Map;
  */
 public class TrimmerFactory {
 
-  public static Trimmer newTrimmer(Map<String, InformationRead> workTrimmingMap,
-      File outputFastqFile, File outputTrimLeftFastaFile,
-      File outputTrimRightFastaFile, String adaptorRT,
-      String adaptorStrandSwitching, double errorRateCutadapt,
-      File fastaLeftOutlierFile, File fastaRightOutlierFile,
-      File infoTrimLeftFile, File infoTrimRightFile, File adaptorFile,
+  public static Trimmer newTrimmer(ReadIdMap<InformationRead> workTrimmingMap,
+      PackedReadStore readStore, File outputFastqFile, File workDir,
+      String adaptorRT, String adaptorStrandSwitching,
+      double errorRateCutadapt, File adaptorFile,
       int seedMismatchesTrimmomatic, int palindromeClipThresholdTrimmomatic,
-      int simpleClipThreshold, String trimmer, boolean processStatsCutadapt)
-      throws IOException {
+      int simpleClipThreshold, String trimmer, boolean processStatsCutadapt,
+      int cutadaptWorkerNumber, int polyTailLength, int adaptorKmerLength,
+      boolean splitChimeras) throws IOException {
 
     Trimmer trimmerObject = null;
 
+    // the poly-A/T tails are removed before the adaptors are searched only
+    // when their minimal length is set
+    final PolyTailDetector polyTailDetector =
+        polyTailLength > 0 ? new PolyTailDetector(polyTailLength) : null;
+
+    // the outliers are prefiltered on the k-mers of the adaptors only when
+    // the length of the k-mers is set
+    final AdapterKmerFilter kmerFilter = adaptorKmerLength > 0
+        ? newKmerFilter(adaptorRT, adaptorStrandSwitching, errorRateCutadapt,
+            adaptorKmerLength)
+        : null;
+
+    // the chimeric reads are split at the internal adaptors only when it is
+    // asked
+    final ChimeraSplitter chimeraSplitter = splitChimeras
+        ? new ChimeraSplitter(
+            AdapterAlignerTrimmer.adaptors(adaptorRT, adaptorStrandSwitching),
+            ChimeraSplitter.DEFAULT_ERROR_RATE,
+            ChimeraSplitter.DEFAULT_MIN_PIECE_LENGTH)
+        : null;
+
     // test to process the cutadapt trimmer
     if (trimmer.contains("cutadapt")) {
 
       System.out.println("error rate cutadapt: " + errorRateCutadapt);
+      System.out.println("cutadapt workers: " + cutadaptWorkerNumber);
 
       // call CutadaptTrimmer constructor
-      trimmerObject = new CutadaptTrimmer(workTrimmingMap, outputFastqFile,
-          outputTrimLeftFastaFile, outputTrimRightFastaFile, adaptorRT,
-          adaptorStrandSwitching, errorRateCutadapt, fastaLeftOutlierFile,
-          fastaRightOutlierFile, infoTrimLeftFile, infoTrimRightFile);
-
-      // test to execute stats for cutadapt trim
-      if (processStatsCutadapt) {
-
-        // call CutadaptTrimmer constructor
-        CutadaptTrimmer trimmingCutadapt =
-            new CutadaptTrimmer(workTrimmingMap, outputFastqFile,
-                outputTrimLeftFastaFile, outputTrimRightFastaFile, adaptorRT,
-                adaptorStrandSwitching, errorRateCutadapt, fastaLeftOutlierFile,
-                fastaRightOutlierFile, infoTrimLeftFile, infoTrimRightFile);
-
-        // execute for the left outlier the stats of cutadapt
-        trimmingCutadapt.statsLogCutadapt(infoTrimLeftFile,
-            "Start stat Left outlier");
-
-        // execute for the right outlier the stats of cutadapt
-        trimmingCutadapt.statsLogCutadapt(infoTrimRightFile,
-            "Start stat Right outlier");
-      }
-
+      trimmerObject = new CutadaptTrimmer(workTrimmingMap, readStore,
+          outputFastqFile, workDir, adaptorRT, adaptorStrandSwitching,
+          errorRateCutadapt, processStatsCutadapt, cutadaptWorkerNumber,
+          polyTailDetector, kmerFilter, chimeraSplitter);
     }
 
     // test to process the trimmomatic trimmer
@@ -61,19 +68,64 @@ public class TrimmerFactory {
 
       // call TrimmomaticTrimmer constructor
       trimmerObject =
-          new TrimmomaticTrimmer(adaptorFile, seedMismatchesTrimmomatic,
-              palindromeClipThresholdTrimmomatic, simpleClipThreshold);
+          new TrimmomaticTrimmer(outputFastqFile, adaptorFile,
+              seedMismatchesTrimmomatic, palindromeClipThresholdTrimmomatic,
+              simpleClipThreshold, polyTailDetector, chimeraSplitter);
+    }
+
+    // test to process the adapter aligner trimmer
+    if (trimmer.contains("aligner")) {
+
+      System.out.println("error rate adapter aligner: " + errorRateCutadapt);
+
+      // call AdapterAlignerTrimmer constructor
+      trimmerObject = new AdapterAlignerTrimmer(outputFastqFile, adaptorRT,
+          adaptorStrandSwitching, errorRateCutadapt, polyTailDetector,
+          kmerFilter, chimeraSplitter);
     }
 
     // test to process no trimmer
     if (trimmer.contains("no")) {
 
       // call NoTrimmer constructor
-      trimmerObject = new NoTrimmer(workTrimmingMap, outputFastqFile);
+      trimmerObject = new NoTrimmer(outputFastqFile, chimeraSplitter);
     }
 
     return trimmerObject;
 
   }
 
+  /**
+   * Method of the class TrimmerFactory to create the prefilter of the
+   * outliers on the k-mers of the adaptors given to cutadapt.
+   * @param adaptorRT, the Retro-Transcription adaptor
+   * @param adaptorStrandSwitching, the Strand-Switching adaptor
+   * @param errorRate, the error rate of the alignment of the adaptors
+   * @param kmerLength, the length of the k-mers
+   * @return the prefilter
+   */
+  private static AdapterKmerFilter newKmerFilter(final String adaptorRT,
+      final String adaptorStrandSwitching, final double errorRate,
+      final int kmerLength) {
+
+    final String[] adaptors =
+        AdapterAlignerTrimmer.adaptors(adaptorRT, adaptorStrandSwitching);
+    final AdapterKmerFilter result =
+        new AdapterKmerFilter(adaptors, kmerLength);
+    final int losslessKmerLength = AdapterKmerFilter.losslessKmerLength(
+        adaptors, errorRate, AdapterAligner.DEFAULT_MIN_OVERLAP);
+
+    getLogger().info("Adaptor k-mer prefilter: "
+        + result.getKmerNumber() + " " + kmerLength + "-mers");
+
+    // test if adaptors aligned with errors can be skipped
+    if (kmerLength > losslessKmerLength) {
+      getLogger().warning("The adaptor k-mers are longer than "
+          + losslessKmerLength + " bases, the adaptors aligned with the error "
+          + "rate " + errorRate + " may be skipped by the prefilter");
+    }
+
+    return result;
+  }
+
 }
@@ -0,0 +1,247 @@
+package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
+
+import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+
+/**
+ * Class of a batch of mapped reads given to a trimmer. For each read, the
+ * batch holds the sequence, the quality and the lengths of the outliers found
+ * by the outlier position finder, and the bounds of the trimmed read set by
+ * the trimmer. By default, the trimmed read is the whole read. The trimmer can
+ * also keep in the batch the outputs prepared during the processing and a mark
+ * of each read, to write them in the order of the fastq file. The sequences
+ * and the qualities are the strings read in the fastq file, they are not copied
+ * in the PackedReadStore, which is only filled for the merge of cutadapt.
+ * @author Aurelien Birer
+ */
+public final class TrimmingBatch {
+
+  private final String[] ids;
+  private final String[] sequences;
+  private final String[] qualities;
+  private final InformationRead[] informationReads;
+  private final int[] leftLengthOutliers;
+  private final int[] rightLengthOutliers;
+  private final int[] trimStarts;
+  private final int[] trimEnds;
+  private final int[] marks;
+  private int size;
+
+  private String[] outputs = new String[0];
+
+  /**
+   * Constructor of the TrimmingBatch class.
+   * @param capacity, the maximal number of reads of the batch
+   */
+  public TrimmingBatch(int capacity) {
+
+    this.ids = new String[capacity];
+    this.sequences = new String[capacity];
+    this.qualities = new String[capacity];
+    this.informationReads = new InformationRead[capacity];
+    this.leftLengthOutliers = new int[capacity];
+    this.rightLengthOutliers = new int[capacity];
+    this.trimStarts = new int[capacity];
+    this.trimEnds = new int[capacity];
+    this.marks = new int[capacity];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to add a read to the batch.
+   * @param id, the id of the read
+   * @param sequence, the sequence of the read
+   * @param quality, the quality of the read
+   * @param informationRead, the information of the alignment of the read
+   * @param leftLengthOutlier, the length of the left outlier
+   * @param rightLengthOutlier, the length of the right outlier
+   */
+  public void add(String id, String sequence, String quality,
+      InformationRead informationRead, int leftLengthOutlier,
+      int rightLengthOutlier) {
+
+    // test if the batch is full
+    if (this.size == this.ids.length) {
+      throw new IllegalStateException(
+          "The batch is full: " + this.ids.length + " reads");
+    }
+
+    final int i = this.size++;
+    this.ids[i] = id;
+    this.sequences[i] = sequence;
+    this.qualities[i] = quality;
+    this.informationReads[i] = informationRead;
+    this.leftLengthOutliers[i] = leftLengthOutlier;
+    this.rightLengthOutliers[i] = rightLengthOutlier;
+    this.trimStarts[i] = 0;
+    this.trimEnds[i] = sequence.length();
+    this.marks[i] = 0;
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the number of reads.
+   * @return the number of reads of the batch
+   */
+  public int size() {
+    return this.size;
+  }
+
+  //
+  // Reads
+  //
+
+  /**
+   * Method of the class TrimmingBatch to get the id of a read.
+   * @param i, the index of the read in the batch
+   * @return the id of the read
+   */
+  public String getId(int i) {
+    return this.ids[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the sequence of a read.
+   * @param i, the index of the read in the batch
+   * @return the sequence of the read
+   */
+  public String getSequence(int i) {
+    return this.sequences[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the quality of a read.
+   * @param i, the index of the read in the batch
+   * @return the quality of the read
+   */
+  public String getQuality(int i) {
+    return this.qualities[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the information of the alignment
+   * of a read.
+   * @param i, the index of the read in the batch
+   * @return the information of the read
+   */
+  public InformationRead getInformationRead(int i) {
+    return this.informationReads[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the length of the left outlier of
+   * a read.
+   * @param i, the index of the read in the batch
+   * @return the length of the left outlier, negative if there is no outlier
+   */
+  public int getLeftLengthOutlier(int i) {
+    return this.leftLengthOutliers[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the length of the right outlier
+   * of a read.
+   * @param i, the index of the read in the batch
+   * @return the length of the right outlier, negative if there is no outlier
+   */
+  public int getRightLengthOutlier(int i) {
+    return this.rightLengthOutliers[checkIndex(i)];
+  }
+
+  //
+  // Trimmed reads
+  //
+
+  /**
+   * Method of the class TrimmingBatch to set the bounds of a trimmed read.
+   * @param i, the index of the read in the batch
+   * @param start, the index of the first base kept
+   * @param end, the index after the last base kept, equal to start if the
+   *          trimmed read is empty
+   */
+  public void setTrimBounds(int i, int start, int end) {
+
+    // test if the bounds are valid
+    if (start < 0
+        || start > end || end > this.sequences[checkIndex(i)].length()) {
+      throw new IndexOutOfBoundsException("Invalid bounds of the trimmed read "
+          + this.ids[i] + ": " + start + ", " + end);
+    }
+
+    this.trimStarts[i] = start;
+    this.trimEnds[i] = end;
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the start of a trimmed read.
+   * @param i, the index of the read in the batch
+   * @return the index of the first base kept
+   */
+  public int getTrimStart(int i) {
+    return this.trimStarts[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the end of a trimmed read.
+   * @param i, the index of the read in the batch
+   * @return the index after the last base kept
+   */
+  public int getTrimEnd(int i) {
+    return this.trimEnds[checkIndex(i)];
+  }
+
+  //
+  // Outputs
+  //
+
+  /**
+   * Method of the class TrimmingBatch to keep the outputs prepared by the
+   * trimmer during the processing of the batch.
+   * @param outputs, the outputs
+   */
+  public void setOutputs(String... outputs) {
+    this.outputs = outputs;
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get an output prepared by the
+   * trimmer.
+   * @param index, the index of the output
+   * @return the output
+   */
+  public String getOutput(int index) {
+    return this.outputs[index];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to mark a read during the processing of
+   * the batch.
+   * @param i, the index of the read in the batch
+   * @param mark, the mark of the read
+   */
+  public void setMark(int i, int mark) {
+    this.marks[checkIndex(i)] = mark;
+  }
+
+  /**
+   * Method of the class TrimmingBatch to get the mark of a read.
+   * @param i, the index of the read in the batch
+   * @return the mark of the read, 0 if the read has not been marked
+   */
+  public int getMark(int i) {
+    return this.marks[checkIndex(i)];
+  }
+
+  /**
+   * Method of the class TrimmingBatch to test the index of a read.
+   * @param i, the index of the read in the batch
+   * @return the index
+   */
+  private int checkIndex(final int i) {
+
+    // test if the index is in the batch
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Invalid read index: " + i);
+    }
+
+    return i;
+  }
+
+}
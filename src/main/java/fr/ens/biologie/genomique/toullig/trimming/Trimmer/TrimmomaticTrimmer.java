@@ -1,7 +1,5 @@
 package fr.ens.biologie.genomique.toullig.trimming.Trimmer;
 
-import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastaWriter;
 import org.usadellab.trimmomatic.fastq.FastqRecord;
 import org.usadellab.trimmomatic.trim.IlluminaClippingTrimmer;
 import org.usadellab.trimmomatic.util.Logger;
@@ -9,37 +7,87 @@ import org.usadellab.trimmomatic.util.Logger;
 import java.io.File;
 import java.io.IOException;
 
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
+import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.PolyTailDetector;
+
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.toullig.Utils.reverse;
 import static fr.ens.biologie.genomique.toullig.trimming.UtilsTrimming.*;
 
 /**
- * Class to execute the Trimmomatic trimmer. Created by birer on 27/03/17.
+ * Class to execute the Trimmomatic trimmer. Created by birer on 27/03/17. The
+ * outliers are trimmed by batches of reads: the outliers of a batch are
+ * collected in an array of records and trimmed by the Trimmomatic trimmer of
+ * the thread, so several batches can be trimmed at the same time by the
+ * threads of the outlier position finder.
  * @author Aurelien Birer
  */
-public class TrimmomaticTrimmer implements Trimmer {
+public class TrimmomaticTrimmer extends AbstractFastqTrimmer {
+
+  private final String clippingSettings;
+  private final PolyTailDetector polyTailDetector;
+
+  // each thread has its own Trimmomatic trimmer
+  private final ThreadLocal<org.usadellab.trimmomatic.trim.Trimmer> trimmers =
+      new ThreadLocal<org.usadellab.trimmomatic.trim.Trimmer>() {
+
+        @Override
+        protected org.usadellab.trimmomatic.trim.Trimmer initialValue() {
+          return newClippingTrimmer();
+        }
+      };
+
+  /**
+   * Constructor of the TrimmomaticTrimmer class.
+   * @param outputFastqFile, a File of output fastq
+   * @param adaptorFile, the fasta file of the adaptors
+   * @param seedMismatchesTrimmomatic, the seed mismatches of Trimmomatic
+   * @param palindromeClipThresholdTrimmomatic, the palindrome clip threshold
+   *          of Trimmomatic
+   * @param simpleClipThreshold, the simple clip threshold of Trimmomatic
+   * @param polyTailDetector, the detector of the poly-A/T tails removed before
+   *          Trimmomatic or null
+   * @param chimeraSplitter, the splitter of the chimeric reads or null
+   */
+  public TrimmomaticTrimmer(File outputFastqFile, File adaptorFile,
+      int seedMismatchesTrimmomatic, int palindromeClipThresholdTrimmomatic,
+      int simpleClipThreshold, PolyTailDetector polyTailDetector,
+      ChimeraSplitter chimeraSplitter) {
+
+    super(outputFastqFile, chimeraSplitter);
+
+    this.polyTailDetector = polyTailDetector;
+
+    this.clippingSettings = adaptorFile.getPath()
+        + ":" + seedMismatchesTrimmomatic + ":"
+        + palindromeClipThresholdTrimmomatic + ":" + simpleClipThreshold;
 
-  private static org.usadellab.trimmomatic.trim.Trimmer trimmer;
+    getLogger().info("Illumina Clipping Trimmer: " + this.clippingSettings);
 
-  public TrimmomaticTrimmer(File adaptorFile, int seedMismatchesTrimmomatic,
-      int palindromeClipThresholdTrimmomatic, int simpleClipThreshold) {
+    // create the trimmer of the calling thread to check the settings
+    this.trimmers.get();
+  }
 
-    getLogger().info("Illumina Clipping Trimmer: "
-        + adaptorFile.getPath() + ":" + seedMismatchesTrimmomatic + ":"
-        + palindromeClipThresholdTrimmomatic + ":" + simpleClipThreshold);
+  /**
+   * Method of the class TrimmomaticTrimmer to create a Trimmomatic trimmer.
+   * @return a new Illumina clipping trimmer
+   */
+  private org.usadellab.trimmomatic.trim.Trimmer newClippingTrimmer() {
 
     try {
       // create the logger for trimmomatic
       Logger logger = new Logger(true, true, true);
 
       // create the trimmer for trimmomatic
-      trimmer = IlluminaClippingTrimmer.makeIlluminaClippingTrimmer(logger,
-          adaptorFile.getPath()
-              + ":" + seedMismatchesTrimmomatic + ":"
-              + palindromeClipThresholdTrimmomatic + ":" + simpleClipThreshold);
+      return IlluminaClippingTrimmer.makeIlluminaClippingTrimmer(logger,
+          this.clippingSettings);
 
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new IllegalStateException(
+          "Unable to create the Illumina Clipping Trimmer: "
+              + this.clippingSettings,
+          e);
     }
   }
 
@@ -47,125 +95,131 @@ public class TrimmomaticTrimmer implements Trimmer {
   // Trimmomatic
   //
 
-  @Override
-  public void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality,
-      FastaWriter fastaLeftOutlierWriter, FastaWriter fastaRightOutlierWriter) {
-
-  }
-
   /**
-   * Method of the class TrimmomaticTrimmer to trim with the Trimmer interface.
-   * @param leftLengthOutlier , the length of the left outlier
-   * @param rightLengthOutlier , the length of the left outlier
-   * @param sequence, the sequence of the read
-   * @param id , the id of the read
-   * @param quality , the quality of the read
+   * Method of the class TrimmomaticTrimmer to trim the outliers of the reads of
+   * a batch. The left outlier is reversed to be clipped from its start, the
+   * rest of the outliers is kept with the main sequence.
+   * @param batch, the batch
    */
-  public void preProcessSequence(int leftLengthOutlier, int rightLengthOutlier,
-      String sequence, String id, String quality, FastaWriter fastqOutputFile)
-      throws IOException {
+  @Override
+  void trimBatch(TrimmingBatch batch) {
+
+    final int readNumber = batch.size();
+    final int[] leftLengthOutliers = new int[readNumber];
+    final int[] rightLengthOutliers = new int[readNumber];
 
     //
     // Pre-process before trimmomatic
     //
 
-    // get the left outlier sequence
-    String leftOutlierSequence =
-        getOutlierLeftSequence(rightLengthOutlier, sequence);
-
-    // get the right outlier sequence
-    String rightOutlierSequence =
-        getOutlierRightSequence(leftLengthOutlier, sequence);
-
-    // get the left outlier quality
-    String leftOutlierQuality =
-        getOutlierLeftQuality(rightLengthOutlier, quality);
-
-    // get the right outlier quality
-    String rightOutlierQuality =
-        getOutlierRightQuality(leftLengthOutlier, quality);
-
-    // get the main sequence (without outlier)
-    String mainSequence = sequence.substring(rightLengthOutlier,
-        sequence.length() - leftLengthOutlier);
-
-    // get the main quality (without outlier)
-    String mainQuality = quality.substring(rightLengthOutlier,
-        quality.length() - leftLengthOutlier);
+    // the reversed left outlier and the right outlier of each read
+    final FastqRecord[] records = new FastqRecord[2 * readNumber];
+
+    for (int i = 0; i < readNumber; i++) {
+
+      final InformationRead informationRead = batch.getInformationRead(i);
+      final String sequence = batch.getSequence(i);
+      final String quality = batch.getQuality(i);
+
+      // the outliers on the strand of the fastq read are in the sequence and
+      // do not overlap
+      leftLengthOutliers[i] = Math.min(
+          Math.max(informationRead.leftLengthOutlier, 0), sequence.length());
+      rightLengthOutliers[i] = Math.min(
+          Math.max(informationRead.rightLengthOutlier, 0),
+          sequence.length() - leftLengthOutliers[i]);
+
+      // get the left outlier sequence and quality
+      String leftOutlierSequence =
+          getOutlierLeftSequence(leftLengthOutliers[i], sequence);
+      String leftOutlierQuality =
+          getOutlierLeftQuality(leftLengthOutliers[i], quality);
+
+      // get the right outlier sequence and quality
+      String rightOutlierSequence =
+          getOutlierRightSequence(rightLengthOutliers[i], sequence);
+      String rightOutlierQuality =
+          getOutlierRightQuality(rightLengthOutliers[i], quality);
+
+      // test if the poly-A/T tails and the bases beyond them are removed
+      if (this.polyTailDetector != null) {
+
+        final int leftTailEnd = this.polyTailDetector
+            .leftOutlierStart(sequence, leftLengthOutliers[i]);
+        final int rightTailStart = this.polyTailDetector.rightOutlierEnd(
+            sequence, rightLengthOutliers[i]) - sequence.length()
+            + rightLengthOutliers[i];
+
+        leftOutlierSequence = leftOutlierSequence.substring(leftTailEnd);
+        leftOutlierQuality = leftOutlierQuality.substring(leftTailEnd);
+        rightOutlierSequence =
+            rightOutlierSequence.substring(0, rightTailStart);
+        rightOutlierQuality = rightOutlierQuality.substring(0, rightTailStart);
+      }
+
+      records[2 * i] = new FastqRecord("name", reverse(leftOutlierSequence), "",
+          reverse(leftOutlierQuality), 33);
+      records[2 * i + 1] = new FastqRecord("name", rightOutlierSequence, "",
+          rightOutlierQuality, 33);
+    }
 
     //
     // Execute trimmomatic
     //
 
-    // Trimming with trimmomatic the right outlier
-    String leftTrimSequence = trimmingTrimmomatic(reverse(leftOutlierSequence),
-        reverse(leftOutlierQuality));
-
-    // Trimming with trimmomatic the right outlier
-    String rigthTrimSequence =
-        trimmingTrimmomatic(rightOutlierSequence, rightOutlierQuality);
+    final String[] trimmedSequences = trimmingTrimmomatic(records);
 
     //
     // Post-process after trimmomatic
     //
 
-    // get the left trimmed quality
-    String leftTrimQuality = quality.substring(
-        leftOutlierQuality.length() - leftTrimSequence.length(),
-        leftOutlierQuality.length());
-
-    // get the right trimmed quality
-    String rigthTrimQuality = quality.substring(mainQuality.length(),
-        mainQuality.length() + rightOutlierSequence.length());
-
-    // get the sequence trimmed
-    String sequenceTrimmed =
-        leftTrimSequence + mainSequence + rigthTrimSequence;
-
-    // get the quality trimmed
-    String qualityTrimmed = leftTrimQuality + mainQuality + rigthTrimQuality;
-
-    //
-    // Write the sequence and the quality trimmed
-    //
-
-    ReadSequence fastq = new ReadSequence();
-    fastq.setName(id);
-    fastq.setSequence(sequenceTrimmed);
-    fastq.setQuality(qualityTrimmed);
-
-    fastqOutputFile.write(fastq);
+    for (int i = 0; i < readNumber; i++) {
 
+      // the end of the left outlier and the start of the right outlier are
+      // kept
+      batch.setTrimBounds(i,
+          leftLengthOutliers[i] - trimmedSequences[2 * i].length(),
+          batch.getSequence(i).length()
+              - rightLengthOutliers[i] + trimmedSequences[2 * i + 1].length());
+    }
   }
 
   /**
-   * Method of the class TrimmomaticTrimmer to trim a sequence with trimmomatic.
-   * @return , a sequence trimmed in string format
+   * Method of the class TrimmomaticTrimmer to trim records with the
+   * Trimmomatic trimmer of the thread. The Illumina clipping trimmer processes
+   * an array of two records as a pair of reads, so the records are given one
+   * by one to the trimmer.
+   * @param records, the records to trim
+   * @return , the sequences trimmed in the order of the records
    */
-  String trimmingTrimmomatic(String sequence, String quality) {
+  String[] trimmingTrimmomatic(FastqRecord[] records) {
 
-    // get basic information of the read
-    FastqRecord record = new FastqRecord("name", sequence, "", quality, 33);
+    final org.usadellab.trimmomatic.trim.Trimmer trimmer = this.trimmers.get();
+    final FastqRecord[] input = new FastqRecord[1];
+    final String[] result = new String[records.length];
 
-    // trim with trimmomatic
-    FastqRecord[] result = trimmer.processRecords(new FastqRecord[] {record});
+    for (int i = 0; i < records.length; i++) {
 
-    try {
+      // test if the outlier is empty, there is nothing to trim
+      if (records[i].getSequence().isEmpty()) {
+        result[i] = "";
+        continue;
+      }
+
+      input[0] = records[i];
 
-      // return the trimmed sequence
-      return result[0].getSequence();
+      // trim with trimmomatic
+      final FastqRecord[] output = trimmer.processRecords(input);
 
-    } catch (Exception e) {
-      e.printStackTrace();
-      return "";
+      // test if the record has been dropped by trimmomatic
+      if (output == null || output.length == 0 || output[0] == null) {
+        result[i] = "";
+      } else {
+        result[i] = output[0].getSequence();
+      }
     }
-  }
 
-  /**
-   * Method of the class TrimmomaticTrimmer to trim with the Trimmer interface
-   */
-  public void trim() {
+    return result;
   }
 
 }
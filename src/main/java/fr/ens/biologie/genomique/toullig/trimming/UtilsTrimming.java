@@ -73,6 +73,51 @@ public class UtilsTrimming {
 
   }
 
+  /**
+   * Method of the class TrimModes to obtain the part of the left outlier to
+   * search for the adaptors, without the poly-A/T tail and the bases before
+   * it.
+   * @param lengthOutlierBegin, the length of the outlier
+   * @param sequence, the sequence of the read
+   * @param polyTailDetector, the detector of the tails or null to keep the
+   *          whole outlier
+   * @return the sequence of the left outlier without the tail
+   */
+  public static String getOutlierLeftSequence(int lengthOutlierBegin,
+      String sequence, PolyTailDetector polyTailDetector) {
+
+    // test if the tails are not detected or if the outlier is empty
+    if (polyTailDetector == null || lengthOutlierBegin <= 0) {
+      return getOutlierLeftSequence(lengthOutlierBegin, sequence);
+    }
+
+    return sequence.substring(
+        polyTailDetector.leftOutlierStart(sequence, lengthOutlierBegin),
+        lengthOutlierBegin);
+  }
+
+  /**
+   * Method of the class TrimModes to obtain the part of the right outlier to
+   * search for the adaptors, without the poly-A/T tail and the bases after
+   * it.
+   * @param lengthOutlierRight, the length of the outlier
+   * @param sequence, the sequence of the read
+   * @param polyTailDetector, the detector of the tails or null to keep the
+   *          whole outlier
+   * @return the sequence of the right outlier without the tail
+   */
+  public static String getOutlierRightSequence(int lengthOutlierRight,
+      String sequence, PolyTailDetector polyTailDetector) {
+
+    // test if the tails are not detected or if the outlier is empty
+    if (polyTailDetector == null || lengthOutlierRight <= 0) {
+      return getOutlierRightSequence(lengthOutlierRight, sequence);
+    }
+
+    return sequence.substring(sequence.length() - lengthOutlierRight,
+        polyTailDetector.rightOutlierEnd(sequence, lengthOutlierRight));
+  }
+
   /**
    * Method of the class TrimModes to obtain the score of the left outlier.
    * @param lengthOutlierBegin, the length of the outlier
@@ -153,25 +198,48 @@ public class UtilsTrimming {
     String rightOutlierSequence =
         getOutlierRightSequence(rightLengthOutlier, sequence);
 
-    try {
+    writeOutliers(leftOutlierSequence, rightOutlierSequence, id,
+        leftFastaWriter, rightFastaWriter);
+  }
+
+  /**
+   * Method of the class TrimModes to write the sequences of the outliers (3'
+   * and 5') in fasta files.
+   * @param leftOutlierSequence, the sequence of the left outlier
+   * @param rightOutlierSequence, the sequence of the right outlier
+   * @param id, the id of the read
+   */
+  public static void writeOutliers(String leftOutlierSequence,
+      String rightOutlierSequence, String id, FastaWriter leftFastaWriter,
+      FastaWriter rightFastaWriter) {
 
-      Sequence leftFasta = new Sequence();
+    // write the left outlier
+    writeOutlier(leftOutlierSequence, id, leftFastaWriter);
+
+    // write the right outlier
+    writeOutlier(rightOutlierSequence, id, rightFastaWriter);
+  }
 
-      // get id and sequence of the left outlier
-      leftFasta.setName(id);
-      leftFasta.setSequence(leftOutlierSequence);
+  /**
+   * Method of the class TrimModes to write the sequence of an outlier in a
+   * fasta file.
+   * @param outlierSequence, the sequence of the outlier
+   * @param id, the id of the read
+   * @param fastaWriter, the writer of the outliers of the side
+   */
+  public static void writeOutlier(String outlierSequence, String id,
+      FastaWriter fastaWriter) {
 
-      // write the left outlier
-      leftFastaWriter.write(leftFasta);
+    try {
 
-      Sequence rightFasta = new Sequence();
+      Sequence fasta = new Sequence();
 
-      // get id and sequence of the right outlier
-      rightFasta.setName(id);
-      rightFasta.setSequence(rightOutlierSequence);
+      // get id and sequence of the outlier
+      fasta.setName(id);
+      fasta.setSequence(outlierSequence);
 
-      // write the right outlier
-      rightFastaWriter.write(rightFasta);
+      // write the outlier
+      fastaWriter.write(fasta);
 
     } catch (IOException e) {
       e.printStackTrace();
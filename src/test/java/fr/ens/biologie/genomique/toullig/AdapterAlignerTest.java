@@ -0,0 +1,109 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.Trimmer.AdapterAligner;
+
+public class AdapterAlignerTest {
+
+  private static final String ADAPTER = "ACTTGCCTGTCGCTCTATCTTC";
+  private static final String OTHER_ADAPTER = "TTTCTGTTGGTGCTGATATTGC";
+  private static final String INSERT = "GATTACAGATTACA";
+
+  private static AdapterAligner aligner(final boolean front,
+      final double errorRate, final int times) {
+
+    return new AdapterAligner(new String[] {ADAPTER, OTHER_ADAPTER}, front,
+        errorRate, AdapterAligner.DEFAULT_MIN_OVERLAP, times);
+  }
+
+  @Test
+  public void testBackAdapter() {
+
+    final AdapterAligner aligner = aligner(false, 0.1, 1);
+
+    // the adapter and the bases after it are removed
+    assertEquals(INSERT, aligner.trim(INSERT + ADAPTER + "GGGCC", null));
+    assertEquals(INSERT, aligner.trim(INSERT + OTHER_ADAPTER, null));
+
+    // the start of the adapter at the end of the sequence
+    assertEquals(INSERT,
+        aligner.trim(INSERT + ADAPTER.substring(0, 8), null));
+
+    // the overlap is too short
+    assertEquals(INSERT + ADAPTER.substring(0, 7),
+        aligner.trim(INSERT + ADAPTER.substring(0, 7), null));
+
+    // the end of the adapter is not a 3' adapter
+    assertEquals(ADAPTER.substring(10) + INSERT,
+        aligner.trim(ADAPTER.substring(10) + INSERT, null));
+  }
+
+  @Test
+  public void testFrontAdapter() {
+
+    final AdapterAligner aligner = aligner(true, 0.1, 1);
+
+    // the adapter and the bases before it are removed
+    assertEquals(INSERT, aligner.trim("GGGCC" + ADAPTER + INSERT, null));
+
+    // the end of the adapter at the start of the sequence
+    assertEquals(INSERT, aligner.trim(ADAPTER.substring(12) + INSERT, null));
+
+    // the start of the adapter is not a 5' adapter
+    assertEquals(INSERT + ADAPTER.substring(0, 10),
+        aligner.trim(INSERT + ADAPTER.substring(0, 10), null));
+  }
+
+  @Test
+  public void testErrors() {
+
+    // a mismatch and a deletion in the read
+    final String mutated = "ACTTGCCAGTCGCTCTTCTTC";
+
+    assertEquals(INSERT, aligner(false, 0.1, 1).trim(INSERT + mutated, null));
+    assertEquals(INSERT + mutated,
+        aligner(false, 0.05, 1).trim(INSERT + mutated, null));
+
+    // a N of the read matches any base of the adapter
+    final String wildcards = ADAPTER.replace('G', 'N');
+    assertEquals(INSERT, aligner(false, 0.0, 1).trim(INSERT + wildcards, null));
+  }
+
+  @Test
+  public void testTimes() {
+
+    final String sequence = INSERT + ADAPTER + OTHER_ADAPTER + "GGG";
+    final String reverse = "CCC" + ADAPTER + OTHER_ADAPTER + INSERT;
+    final int[] counts = new int[2];
+
+    // the best adapter is removed at each time
+    assertEquals(INSERT, aligner(false, 0.1, 1).trim(sequence, counts));
+    assertArrayEquals(new int[] {1, 0}, counts);
+
+    assertEquals(OTHER_ADAPTER + INSERT,
+        aligner(true, 0.1, 1).trim(reverse, counts));
+    assertEquals(INSERT, aligner(true, 0.1, 2).trim(reverse, counts));
+    assertArrayEquals(new int[] {3, 1}, counts);
+  }
+
+  @Test
+  public void testLongSequence() {
+
+    // a sequence longer than 65535 bases
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < 70000) {
+      sb.append(INSERT);
+    }
+    final String sequence = sb.toString();
+
+    assertEquals(sequence,
+        aligner(false, 0.1, 1).trim(sequence + ADAPTER + "GGGCC", null));
+    assertEquals(sequence,
+        aligner(true, 0.1, 1).trim("GGGCC" + ADAPTER + sequence, null));
+  }
+
+}
@@ -0,0 +1,99 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.AdapterKmerFilter;
+import fr.ens.biologie.genomique.toullig.trimming.Trimmer.AdapterAligner;
+
+public class AdapterKmerFilterTest {
+
+  private static final String[] ADAPTORS =
+      {"ACTTGCCTGTCGCTCTATCTTC", "TTTCTGTTGGTGCTGATATTGC"};
+
+  private final Random random = new Random(11);
+
+  private String randomSequence(final int length) {
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append("ACGT".charAt(this.random.nextInt(4)));
+    }
+
+    return sb.toString();
+  }
+
+  private String mutate(final String sequence, final int errors) {
+
+    final StringBuilder sb = new StringBuilder(sequence);
+    for (int e = 0; e < errors; e++) {
+      final int position = this.random.nextInt(sb.length());
+      switch (this.random.nextInt(3)) {
+      case 0:
+        sb.setCharAt(position, "ACGT".charAt(this.random.nextInt(4)));
+        break;
+      case 1:
+        sb.deleteCharAt(position);
+        break;
+      default:
+        sb.insert(position, "ACGT".charAt(this.random.nextInt(4)));
+        break;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testLosslessKmerLength() {
+
+    // 1 error on 10 to 19 bases
+    assertEquals(5, AdapterKmerFilter.losslessKmerLength(ADAPTORS, 0.1, 8));
+
+    // no error on 8 bases
+    assertEquals(8, AdapterKmerFilter.losslessKmerLength(ADAPTORS, 0.0, 8));
+  }
+
+  @Test
+  public void testMayContainAdaptor() {
+
+    final AdapterKmerFilter filter = new AdapterKmerFilter(ADAPTORS, 10);
+
+    assertFalse(filter.mayContainAdaptor(""));
+    assertTrue(filter.mayContainAdaptor("ACGTA"));
+    assertTrue(filter.mayContainAdaptor("GGGGGGGGGGGNGGGGGGGG"));
+    assertFalse(filter.mayContainAdaptor("GGGGGGGGGGGGGGGGGGGG"));
+    assertTrue(filter.mayContainAdaptor("GGGG" + ADAPTORS[1] + "GGGG"));
+    assertTrue(filter.mayContainAdaptor("GGGGGG" + ADAPTORS[0].substring(5)));
+  }
+
+  @Test
+  public void testNoAdaptorMissed() {
+
+    final double errorRate = 0.1;
+    final int k = AdapterKmerFilter.losslessKmerLength(ADAPTORS, errorRate,
+        AdapterAligner.DEFAULT_MIN_OVERLAP);
+    final AdapterKmerFilter filter = new AdapterKmerFilter(ADAPTORS, k);
+    final AdapterAligner aligner = new AdapterAligner(ADAPTORS, false,
+        errorRate, AdapterAligner.DEFAULT_MIN_OVERLAP, 1);
+
+    for (int i = 0; i < 2000; i++) {
+
+      final String adaptor = ADAPTORS[this.random.nextInt(ADAPTORS.length)];
+      final int start = this.random.nextInt(adaptor.length() - 4);
+      final String outlier = randomSequence(this.random.nextInt(30))
+          + mutate(adaptor.substring(start), this.random.nextInt(3));
+
+      // test if an outlier trimmed by the aligner is not skipped
+      if (!aligner.trim(outlier, null).equals(outlier)) {
+        assertTrue(outlier, filter.mayContainAdaptor(outlier));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.Alphabets.AMBIGUOUS_DNA_ALPHABET;
+import static fr.ens.biologie.genomique.eoulsan.bio.Sequence.reverseComplement;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.demultiplexing.BarcodeAssigner;
+import fr.ens.biologie.genomique.toullig.demultiplexing.BarcodeIndex;
+
+public class BarcodeAssignerTest {
+
+  private static final File BARCODE_FILE =
+      new File("config_files/barcode_sequence.txt");
+
+  private final Random random = new Random(7);
+
+  private String randomSequence(final int length) {
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append("ACGT".charAt(this.random.nextInt(4)));
+    }
+
+    return sb.toString();
+  }
+
+  private static int barcode(final BarcodeIndex index, final String name) {
+
+    for (int b = 0; b < index.getBarcodeNumber(); b++) {
+      if (index.getBarcodeName(b).equals(name)) {
+        return b;
+      }
+    }
+
+    return -1;
+  }
+
+  @Test
+  public void testBarcodeFile() throws IOException {
+
+    final Map<String, String> barcodes =
+        BarcodeIndex.readBarcodes(BARCODE_FILE, null);
+    assertEquals(108, barcodes.size());
+
+    // the native barcodes have the sequences of the first PCR barcodes
+    final BarcodeIndex index = new BarcodeIndex(barcodes, 8);
+    assertEquals(96, index.getBarcodeNumber());
+    assertEquals(-1, barcode(index, "NB01"));
+
+    // the native barcodes are indexed when they are selected
+    final BarcodeIndex nativeIndex = new BarcodeIndex(BarcodeIndex
+        .readBarcodes(BARCODE_FILE, Arrays.asList("NB01", "NB02")), 8);
+    assertEquals(2, nativeIndex.getBarcodeNumber());
+    assertEquals("NB01", nativeIndex.getBarcodeName(0));
+  }
+
+  @Test
+  public void testAssign() throws IOException {
+
+    final Map<String, String> barcodes =
+        BarcodeIndex.readBarcodes(BARCODE_FILE, null);
+    final BarcodeIndex index = new BarcodeIndex(barcodes, 8);
+    final BarcodeAssigner assigner = new BarcodeAssigner(index,
+        BarcodeAssigner.DEFAULT_SEARCH_LENGTH,
+        BarcodeAssigner.DEFAULT_ERROR_RATE);
+
+    // a barcode with a mismatch and a deletion at the start of the read
+    final String bc05 = barcodes.get("BC05");
+    final String mutated =
+        bc05.substring(0, 5) + "A" + bc05.substring(6, 15) + bc05.substring(16);
+    assertEquals(barcode(index, "BC05"), assigner
+        .assign(randomSequence(30) + mutated + randomSequence(500)));
+
+    // the reverse complement of a barcode at the end of the read
+    final String bc10 =
+        reverseComplement(barcodes.get("BC10"), AMBIGUOUS_DNA_ALPHABET);
+    assertEquals(barcode(index, "BC10"), assigner
+        .assign(randomSequence(600) + bc10 + randomSequence(20)));
+
+    // no barcode
+    assertEquals(BarcodeAssigner.UNCLASSIFIED,
+        assigner.assign(randomSequence(800)));
+
+    // two barcodes with the same errors
+    assertEquals(BarcodeAssigner.UNCLASSIFIED,
+        assigner.assign(barcodes.get("BC01")
+            + randomSequence(400)
+            + reverseComplement(barcodes.get("BC02"),
+                AMBIGUOUS_DNA_ALPHABET)));
+  }
+
+}
@@ -0,0 +1,83 @@
+package fr.ens.biologie.genomique.toullig;
+
+import java.util.Random;
+
+import fr.ens.biologie.genomique.toullig.trimming.BitParallelMatcher;
+
+/**
+ * Benchmark of the bit-parallel matcher against the plain dynamic programming
+ * of BitParallelMatcherTest. The eight adaptors of the trimming are searched in
+ * random outliers, as in the trimming of a run of ONT reads. This class is not
+ * run by the tests, use:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... \
+ *     fr.ens.biologie.genomique.toullig.BitParallelMatcherBenchmark
+ * </pre>
+ */
+public class BitParallelMatcherBenchmark {
+
+  private static final int OUTLIER_NUMBER = 20000;
+  private static final int ITERATIONS = 5;
+
+  public static void main(final String[] args) {
+
+    final Random random = new Random(40);
+
+    // the adaptors of 22 bases and of the multi-block patterns
+    final String[] patterns = new String[8];
+    for (int i = 0; i < patterns.length; i++) {
+      patterns[i] = BitParallelMatcherTest.randomSequence(random,
+          i < 6 ? 22 : 100, "ACGT");
+    }
+
+    final String[] outliers = new String[OUTLIER_NUMBER];
+    for (int i = 0; i < outliers.length; i++) {
+      outliers[i] = BitParallelMatcherTest.randomSequence(random,
+          20 + random.nextInt(180), "ACGTN");
+    }
+
+    final BitParallelMatcher[] matchers =
+        new BitParallelMatcher[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      matchers[i] = new BitParallelMatcher(patterns[i]);
+    }
+
+    // the first iterations are the warm-up of the JIT
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+
+      long start = System.nanoTime();
+      long sum = 0;
+
+      for (String outlier : outliers) {
+        for (BitParallelMatcher matcher : matchers) {
+          sum += matcher.bestMatch(outlier).errors;
+        }
+      }
+
+      final long bitParallelTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long dpSum = 0;
+
+      for (String outlier : outliers) {
+        for (String pattern : patterns) {
+
+          int errors = pattern.length();
+          for (int d : BitParallelMatcherTest.distances(pattern, outlier)) {
+            errors = Math.min(errors, d);
+          }
+          dpSum += errors;
+        }
+      }
+
+      final long dpTime = System.nanoTime() - start;
+
+      System.out.println("iteration "
+          + iteration + ": bit-parallel " + bitParallelTime / 1000000
+          + " ms, dynamic programming " + dpTime / 1000000
+          + " ms, same errors: " + (sum == dpSum));
+    }
+  }
+
+}
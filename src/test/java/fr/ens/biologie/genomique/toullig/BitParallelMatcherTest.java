@@ -0,0 +1,141 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.BitParallelMatcher;
+
+public class BitParallelMatcherTest {
+
+  private static final String CODES = "ACGTRYSWKMBDHVN";
+  private static final int[] NUCLEOTIDES = {1, 2, 4, 8, 5, 10, 6, 9, 12, 3, 14,
+      13, 11, 7, 15};
+
+  /**
+   * Get the nucleotides of the IUPAC codes of a sequence.
+   */
+  private static int[] nucleotides(final String sequence) {
+
+    final int[] result = new int[sequence.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = NUCLEOTIDES[CODES.indexOf(sequence.charAt(i))];
+    }
+
+    return result;
+  }
+
+  /**
+   * Compute the last row of the edit distance matrix of a pattern ending
+   * anywhere in a text with the plain dynamic programming, in O(n * m).
+   * @param pattern the pattern
+   * @param text the text
+   * @return the number of errors of the pattern ending at each base of the
+   *         text
+   */
+  static int[] distances(final String pattern, final String text) {
+
+    final int m = pattern.length();
+    final int[] p = nucleotides(pattern);
+    final int[] t = nucleotides(text);
+    int[] previous = new int[m + 1];
+    int[] current = new int[m + 1];
+    final int[] result = new int[text.length()];
+
+    for (int i = 0; i <= m; i++) {
+      previous[i] = i;
+    }
+
+    for (int j = 0; j < text.length(); j++) {
+
+      current[0] = 0;
+      for (int i = 1; i <= m; i++) {
+        current[i] = Math.min(
+            previous[i - 1] + ((p[i - 1] & t[j]) != 0 ? 0 : 1),
+            Math.min(previous[i], current[i - 1]) + 1);
+      }
+
+      result[j] = current[m];
+      final int[] tmp = previous;
+      previous = current;
+      current = tmp;
+    }
+
+    return result;
+  }
+
+  static String randomSequence(final Random random, final int length,
+      final String letters) {
+
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(letters.charAt(random.nextInt(letters.length())));
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testBestMatch() {
+
+    final BitParallelMatcher matcher =
+        new BitParallelMatcher("ACTTGCCTGTCGCTCTATCTTC");
+
+    BitParallelMatcher.Match match =
+        matcher.bestMatch("GATTACAACTTGCCTGTCGCTCTATCTTCGATTACA");
+    assertEquals(29, match.end);
+    assertEquals(0, match.errors);
+
+    // a mismatch and a deletion
+    match = matcher.bestMatch("GATTACAACTTGCCAGTCGCTCTTCTTCGATTACA");
+    assertEquals(28, match.end);
+    assertEquals(2, match.errors);
+
+    // the N of the text match any base
+    match = matcher.bestMatch("ACTTNCCTGTCGCNCTATCTTN");
+    assertEquals(22, match.end);
+    assertEquals(0, match.errors);
+
+    match = matcher.bestMatch("");
+    assertEquals(-1, match.end);
+    assertEquals(22, match.errors);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPattern() {
+    new BitParallelMatcher("ACGT-ACGT");
+  }
+
+  @Test
+  public void testRandomSequences() {
+
+    final Random random = new Random(40);
+
+    for (int n = 0; n < 2000; n++) {
+
+      // patterns of one and several blocks
+      final int m = 1 + random.nextInt(n % 2 == 0 ? 64 : 200);
+      final String pattern = randomSequence(random, m,
+          n % 3 == 0 ? CODES : "ACGT");
+      final String text = randomSequence(random, random.nextInt(300),
+          n % 5 == 0 ? CODES : "ACGTN");
+
+      // insert a copy of the pattern with errors
+      final StringBuilder sb = new StringBuilder(text);
+      if (text.length() > 0) {
+        final String copy = pattern.substring(random.nextInt(m));
+        sb.insert(random.nextInt(text.length()), copy.replace('C', 'T'));
+      }
+
+      final int[] expected = distances(pattern, sb.toString());
+      final int[] result = new int[sb.length()];
+      new BitParallelMatcher(pattern).distances(sb, result);
+
+      assertArrayEquals(pattern + " " + sb, expected, result);
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.ChimeraSplitter;
+
+public class ChimeraSplitterTest {
+
+  private static final String[] ADAPTORS =
+      {"ACTTGCCTGTCGCTCTATCTTC", "TTTCTGTTGGTGCTGATATTGC"};
+
+  private final Random random = new Random(7);
+
+  private String randomSequence(final int length) {
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append("ACGT".charAt(this.random.nextInt(4)));
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testSplit() {
+
+    final ChimeraSplitter splitter = new ChimeraSplitter(ADAPTORS,
+        ChimeraSplitter.DEFAULT_ERROR_RATE, 50);
+
+    final String left = randomSequence(120);
+    final String right = randomSequence(80);
+    final String read = "GG" + left + ADAPTORS[0] + right + "GG";
+
+    // the bounds of the trimmed read exclude the first and last bases
+    final int[] pieces = splitter.split(read, 2, read.length() - 2);
+
+    assertNotNull(pieces);
+    assertArrayEquals(new int[] {2, 122, 144, 224}, pieces);
+    assertEquals("id_2", ChimeraSplitter.pieceName("id", 1, 2));
+  }
+
+  @Test
+  public void testShortPiecesDropped() {
+
+    final ChimeraSplitter splitter = new ChimeraSplitter(ADAPTORS,
+        ChimeraSplitter.DEFAULT_ERROR_RATE, 50);
+
+    final String read = randomSequence(30) + ADAPTORS[1] + randomSequence(100);
+
+    assertArrayEquals(new int[] {52, 152},
+        splitter.split(read, 0, read.length()));
+
+    // a single piece keeps the id of the read
+    assertEquals("id", ChimeraSplitter.pieceName("id", 0, 1));
+  }
+
+  @Test
+  public void testTerminalAdaptorsIgnored() {
+
+    final ChimeraSplitter splitter = new ChimeraSplitter(ADAPTORS,
+        ChimeraSplitter.DEFAULT_ERROR_RATE, 50);
+
+    // the adaptors closer to an end than their length are not inside the read
+    final String read = randomSequence(10) + ADAPTORS[0] + randomSequence(200)
+        + ADAPTORS[1] + randomSequence(5);
+
+    assertNull(splitter.split(read, 0, read.length()));
+
+    // the ends are the bounds of the trimmed read
+    final String chimera =
+        randomSequence(100) + ADAPTORS[0] + randomSequence(100);
+
+    assertArrayEquals(new int[] {0, 100, 122, 222},
+        splitter.split(chimera, 0, chimera.length()));
+    assertNull(splitter.split(chimera, 0, 132));
+  }
+
+  @Test
+  public void testNoAdaptor() {
+
+    final ChimeraSplitter splitter = new ChimeraSplitter(ADAPTORS,
+        ChimeraSplitter.DEFAULT_ERROR_RATE, 50);
+
+    final String read = randomSequence(500);
+
+    assertNull(splitter.split(read, 0, read.length()));
+  }
+
+}
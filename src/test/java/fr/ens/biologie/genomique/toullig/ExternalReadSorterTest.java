@@ -0,0 +1,237 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.ExternalReadSorter;
+
+public class ExternalReadSorterTest {
+
+  /**
+   * Create an empty temporary directory.
+   * @return the directory
+   * @throws IOException if an IO error occur
+   */
+  private static File directory() throws IOException {
+
+    final File result = File.createTempFile("sort", "");
+    assertTrue(result.delete());
+    assertTrue(result.mkdir());
+    result.deleteOnExit();
+
+    return result;
+  }
+
+  /**
+   * Create a file.
+   * @param directory the directory of the file
+   * @param name the name of the file
+   * @param content the content of the file
+   * @return the file
+   * @throws IOException if an IO error occur
+   */
+  private static File file(final File directory, final String name,
+      final String content) throws IOException {
+
+    final File result = new File(directory, name);
+    result.deleteOnExit();
+
+    try (Writer writer = new FileWriter(result)) {
+      writer.write(content);
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the lines of a file.
+   * @param file the file
+   * @return the lines of the file
+   * @throws IOException if an IO error occur
+   */
+  private static List<String> lines(final File file) throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        result.add(line);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the read names r0 to r(n-1), each present 1 to 3 times, in a
+   * random order.
+   * @param readNumber the number of reads
+   * @param random the random generator
+   * @return the read names
+   */
+  private static List<String> readNames(final int readNumber,
+      final Random random) {
+
+    final List<String> result = new ArrayList<>();
+
+    for (int i = 0; i < readNumber; i++) {
+
+      final int count = 1 + random.nextInt(3);
+      for (int j = 0; j < count; j++) {
+        result.add("r" + i);
+      }
+    }
+    Collections.shuffle(result, random);
+
+    return result;
+  }
+
+  @Test
+  public void testSortSamFile() throws IOException {
+
+    final File directory = directory();
+    final List<String> readNames = readNames(3000, new Random(34));
+
+    // the CIGAR of an alignment is its index in the SAM file, to test the
+    // stability of the sort
+    final StringBuilder sb = new StringBuilder("@HD\tVN:1.5\n");
+    for (int i = 0; i < readNames.size(); i++) {
+      sb.append(readNames.get(i)
+          + "\t16\tchr1\t1\t60\t" + (i + 1) + "M\t*\t0\t0\tACGT\tIIII\n");
+    }
+    final File samFile = file(directory, "input.sam", sb.toString());
+
+    // a run for each alignment, more than 64 * 64 runs are merged in several
+    // passes
+    final File sortedFile =
+        new ExternalReadSorter(directory, 1).sortSamFile(samFile);
+    sortedFile.deleteOnExit();
+
+    final List<String> lines = lines(sortedFile);
+    assertEquals(readNames.size(), lines.size());
+    assertTrue(readNames.size() > 64 * 64);
+
+    String previousName = "";
+    int previousIndex = 0;
+
+    for (String line : lines) {
+
+      final String[] fields = line.split("\t");
+      assertEquals(6, fields.length);
+      assertEquals("16", fields[1]);
+
+      final int index =
+          Integer.parseInt(fields[5].substring(0, fields[5].length() - 1));
+      assertEquals(readNames.get(index - 1), fields[0]);
+
+      // test the order of the names, and the order of the SAM file for the
+      // alignments of a read
+      final int comparison = fields[0].compareTo(previousName);
+      assertTrue(comparison >= 0);
+      assertTrue(comparison > 0 || index > previousIndex);
+
+      previousName = fields[0];
+      previousIndex = index;
+    }
+
+    // the runs have been deleted
+    assertEquals(Arrays.asList("input.sam", sortedFile.getName()),
+        sortedNames(directory));
+  }
+
+  @Test
+  public void testSortFastqFile() throws IOException {
+
+    final File directory = directory();
+    final Random random = new Random(34);
+    final List<String> readNames = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      readNames.add("r" + random.nextInt(100));
+    }
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < readNames.size(); i++) {
+      sb.append("@" + readNames.get(i) + " index=" + i + "\nACGT\n+\nIIII\n");
+    }
+    final File fastqFile = file(directory, "input.fastq", sb.toString());
+
+    // runs of a few reads, merged in a single pass
+    final File sortedFile =
+        new ExternalReadSorter(directory, 1000).sortFastqFile(fastqFile);
+    sortedFile.deleteOnExit();
+
+    final List<String> lines = lines(sortedFile);
+    assertEquals(4 * readNames.size(), lines.size());
+
+    final List<String> expected = new ArrayList<>(readNames);
+    Collections.sort(expected);
+
+    String previousHeader = "";
+    String previousName = "";
+    for (int i = 0; i < readNames.size(); i++) {
+
+      final String header = lines.get(4 * i);
+      assertEquals("@" + expected.get(i),
+          header.substring(0, header.indexOf(' ')));
+      assertEquals("ACGT", lines.get(4 * i + 1));
+      assertEquals("+", lines.get(4 * i + 2));
+      assertEquals("IIII", lines.get(4 * i + 3));
+
+      // test if the reads with the same name keep the order of the file
+      if (expected.get(i).equals(previousName)) {
+        assertTrue(index(header) > index(previousHeader));
+      }
+      previousHeader = header;
+      previousName = expected.get(i);
+    }
+
+    assertEquals(Arrays.asList("input.fastq", sortedFile.getName()),
+        sortedNames(directory));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRunSize() throws IOException {
+
+    new ExternalReadSorter(directory(), 0);
+  }
+
+  /**
+   * Get the index of a read in the input FASTQ file.
+   * @param header the header of the read
+   * @return the index of the read
+   */
+  private static int index(final String header) {
+
+    return Integer.parseInt(header.substring(header.indexOf('=') + 1));
+  }
+
+  /**
+   * Get the sorted names of the files of a directory.
+   * @param directory the directory
+   * @return the names of the files
+   */
+  private static List<String> sortedNames(final File directory) {
+
+    final List<String> result = Arrays.asList(directory.list());
+    Collections.sort(result);
+
+    return result;
+  }
+
+}
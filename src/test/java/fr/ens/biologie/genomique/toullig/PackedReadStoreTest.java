@@ -0,0 +1,138 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.PackedReadStore;
+import fr.ens.biologie.genomique.toullig.trimming.ReadView;
+
+public class PackedReadStoreTest {
+
+  /**
+   * Create a random read with some ambiguous and lower case bases.
+   * @param random the random generator
+   * @param length the length of the read
+   * @return a string with the sequence
+   */
+  private static String randomSequence(final Random random, final int length) {
+
+    final String bases = "ACGTACGTACGTACGTNRYacgtn";
+    final StringBuilder sb = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      sb.append(bases.charAt(random.nextInt(bases.length())));
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Create a random quality.
+   * @param random the random generator
+   * @param length the length of the quality
+   * @return a string with the quality
+   */
+  private static String randomQuality(final Random random, final int length) {
+
+    final StringBuilder sb = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('!' + random.nextInt(42)));
+    }
+
+    return sb.toString();
+  }
+
+  private static void testRoundTrip(final boolean offHeap) {
+
+    final Random random = new Random(42);
+    final PackedReadStore store = new PackedReadStore(offHeap);
+
+    final int n = 500;
+    final String[] sequences = new String[n];
+    final String[] qualities = new String[n];
+    final long[] handles = new long[n];
+
+    for (int i = 0; i < n; i++) {
+      sequences[i] = randomSequence(random, random.nextInt(2000));
+      qualities[i] = randomQuality(random, sequences[i].length());
+      handles[i] = store.add(sequences[i], qualities[i]);
+    }
+
+    ReadView view = null;
+    for (int i = 0; i < n; i++) {
+
+      view = store.getView(handles[i], view);
+
+      assertEquals(sequences[i].length(), view.length());
+      assertEquals(sequences[i], view.getSequence());
+      assertEquals(qualities[i], view.getQuality());
+
+      // test the sub-sequences and the random accesses
+      if (view.length() > 10) {
+
+        final int start = random.nextInt(view.length() / 2);
+        final int end = start + random.nextInt(view.length() - start);
+
+        assertEquals(sequences[i].substring(start, end),
+            view.getSequence(start, end));
+        assertEquals(qualities[i].substring(start, end),
+            view.getQuality(start, end));
+        assertEquals(sequences[i].charAt(start), view.baseAt(start));
+        assertEquals(qualities[i].charAt(end), view.qualityAt(end));
+      }
+    }
+
+    assertEquals(n, store.getReadNumber());
+  }
+
+  @Test
+  public void testHeap() {
+    testRoundTrip(false);
+  }
+
+  @Test
+  public void testOffHeap() {
+    testRoundTrip(true);
+  }
+
+  @Test
+  public void testLargeRead() {
+
+    // a read larger than a page of the store
+    final Random random = new Random(7);
+    final PackedReadStore store = new PackedReadStore(false);
+
+    final long small = store.add("ACGTN", "!!!!!");
+    final String sequence = randomSequence(random, 40000000);
+    final long large = store.add(sequence, "");
+
+    assertEquals("ACGTN", store.getView(small, null).getSequence());
+    assertEquals(sequence, store.getView(large, null).getSequence());
+    assertEquals(0, store.getView(large, null).qualityLength());
+  }
+
+  @Test
+  public void testClear() {
+
+    final PackedReadStore store = new PackedReadStore(true);
+
+    store.add("ACGTN", "!!!!!");
+    store.clear();
+
+    assertEquals(0, store.getReadNumber());
+    assertEquals(0, store.getBaseNumber());
+    assertEquals(0, store.getExceptionNumber());
+    assertEquals(0, store.getMemoryUsage());
+
+    // the store is used again after the release of its pages
+    final long handle = store.add("GGCCA", "IIIII");
+    assertEquals(0, handle);
+    assertEquals("GGCCA", store.getView(handle, null).getSequence());
+    assertEquals(1, store.getReadNumber());
+  }
+
+}
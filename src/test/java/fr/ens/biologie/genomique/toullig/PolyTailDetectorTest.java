@@ -0,0 +1,74 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.PolyTailDetector;
+
+public class PolyTailDetectorTest {
+
+  private static final String MAIN = "GCGATCGCAGGCCTAGCG";
+  private static final String ADAPTOR = "CCTGTCGCTCTATCTTC";
+
+  private final PolyTailDetector detector = new PolyTailDetector(10);
+
+  @Test
+  public void testRightTail() {
+
+    final String outlier = "GC" + "AAAAAAAAAAAAAAA" + ADAPTOR;
+    final String sequence = MAIN + outlier;
+
+    // the tail and the adaptor after it are removed
+    assertEquals(MAIN.length() + 2,
+        this.detector.rightOutlierEnd(sequence, outlier.length()));
+
+    // the tail is searched only in the outlier
+    assertEquals(sequence.length(),
+        this.detector.rightOutlierEnd(sequence, ADAPTOR.length()));
+  }
+
+  @Test
+  public void testLeftTail() {
+
+    final String outlier = ADAPTOR + "TTTTTTTTTTTT" + "CG";
+    final String sequence = outlier + MAIN;
+
+    // the tail and the adaptor before it are removed
+    assertEquals(ADAPTOR.length() + 12,
+        this.detector.leftOutlierStart(sequence, outlier.length()));
+
+    // no outlier
+    assertEquals(0, this.detector.leftOutlierStart(sequence, 0));
+  }
+
+  @Test
+  public void testErrors() {
+
+    // isolated errors are tolerated inside the tail
+    final String tail = "AAAAAGAAAAACAAAAA";
+    assertEquals(MAIN.length(), this.detector.rightOutlierEnd(
+        MAIN + tail + ADAPTOR, tail.length() + ADAPTOR.length()));
+
+    // two consecutive errors end the run, the runs are too short
+    final String broken = "AAAAAAGCAAAAAA";
+    assertEquals(MAIN.length() + broken.length() + ADAPTOR.length(),
+        this.detector.rightOutlierEnd(MAIN + broken + ADAPTOR,
+            broken.length() + ADAPTOR.length()));
+
+    // the errors at the end of the run are not in the tail
+    final String end = "AAAAAAAAAAAAGTC";
+    assertEquals(MAIN.length() + 1, this.detector.rightOutlierEnd(
+        MAIN + "C" + end, end.length() + 1));
+  }
+
+  @Test
+  public void testOtherBase() {
+
+    // a run of T ending a run of A
+    final String outlier = "GAAAATTTTTTTTTTTG";
+    assertEquals(MAIN.length() + 5,
+        this.detector.rightOutlierEnd(MAIN + outlier, outlier.length()));
+  }
+
+}
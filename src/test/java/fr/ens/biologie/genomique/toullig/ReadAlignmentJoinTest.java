@@ -0,0 +1,205 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.ReadAlignmentJoin;
+
+public class ReadAlignmentJoinTest {
+
+  /**
+   * Create a temporary file.
+   * @param suffix the suffix of the file
+   * @param content the content of the file
+   * @return the file
+   * @throws IOException if an IO error occur
+   */
+  private static File file(final String suffix, final String content)
+      throws IOException {
+
+    final File result = File.createTempFile("join", suffix);
+    result.deleteOnExit();
+
+    try (Writer writer = new FileWriter(result)) {
+      writer.write(content);
+    }
+
+    return result;
+  }
+
+  /**
+   * Create a FASTQ file with the reads r0 to r(n-1).
+   * @param readNumber the number of reads
+   * @return the file
+   * @throws IOException if an IO error occur
+   */
+  private static File fastq(final int readNumber) throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < readNumber; i++) {
+      sb.append("@r" + i + " runid=1\nACGTACGTAC\n+\nIIIIIIIIII\n");
+    }
+
+    return file(".fastq", sb.toString());
+  }
+
+  /**
+   * Create a FASTQ file with a read for each read name.
+   * @param readNames the read names of the reads
+   * @return the file
+   * @throws IOException if an IO error occur
+   */
+  private static File sortedFastq(final String... readNames)
+      throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+    for (String readName : readNames) {
+      sb.append("@" + readName + " runid=1\nACGTACGTAC\n+\nIIIIIIIIII\n");
+    }
+
+    return file(".fastq", sb.toString());
+  }
+
+  /**
+   * Create a SAM file with an alignment for each read name.
+   * @param readNames the read names of the alignments
+   * @return the file
+   * @throws IOException if an IO error occur
+   */
+  private static File sam(final String... readNames) throws IOException {
+
+    final StringBuilder sb = new StringBuilder("@HD\tVN:1.5\n");
+    for (String readName : readNames) {
+      sb.append(readName
+          + "\t0\tchr1\t1\t60\t10M\t*\t0\t0\tACGTACGTAC\tIIIIIIIIII\n");
+    }
+
+    return file(".sam", sb.toString());
+  }
+
+  /**
+   * Join the files with a merge join.
+   * @param join the join
+   * @return the ids of the reads joined
+   * @throws IOException if an IO error occur
+   */
+  private static List<String> joinedIds(final ReadAlignmentJoin join)
+      throws IOException {
+
+    final List<String> result = new ArrayList<>();
+    while (join.next()) {
+      result.add(join.getId());
+    }
+
+    return result;
+  }
+
+  @Test
+  public void testCoSorted() throws IOException {
+
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r0", "r1", "r1", "r2", "r3"), fastq(4), null, true)) {
+
+      assertEquals(4, joinedIds(join).size());
+      assertEquals(0, join.getUnjoinedReadNumber());
+      assertFalse(join.isOutOfOrder());
+    }
+  }
+
+  @Test
+  public void testReadsMissingFromSam() throws IOException {
+
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r1", "r4", "r5"), fastq(8), null, true)) {
+
+      final List<String> ids = joinedIds(join);
+      assertEquals(3, ids.size());
+      assertEquals("r4", ids.get(1));
+      assertEquals(5, join.getUnjoinedReadNumber());
+      assertFalse(join.isOutOfOrder());
+    }
+  }
+
+  @Test
+  public void testOutOfOrderSam() throws IOException {
+
+    // an alignment of a read already passed
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r0", "r2", "r1", "r3"), fastq(1000), null, true)) {
+
+      assertEquals(2, joinedIds(join).size());
+      assertTrue(join.isOutOfOrder());
+      assertEquals(1, join.getUnjoinedReadNumber());
+    }
+
+    // an alignment of a read not in the FASTQ file, the whole FASTQ file is
+    // passed
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r0", "x", "r1"), fastq(10000), null, true)) {
+
+      assertEquals(1, joinedIds(join).size());
+      assertTrue(join.isOutOfOrder());
+      assertEquals(9999, join.getUnjoinedReadNumber());
+    }
+  }
+
+  @Test
+  public void testLongGapsWithoutAlignment() throws IOException {
+
+    // a SAM file with only the mapped reads, separated by more than 4000
+    // reads without alignment
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r1", "r5000", "r15000"), fastq(20000), null, true)) {
+
+      final List<String> ids = joinedIds(join);
+      assertEquals(Arrays.asList("r1", "r5000", "r15000"), ids);
+      assertEquals(19997, join.getUnjoinedReadNumber());
+      assertFalse(join.isOutOfOrder());
+    }
+  }
+
+  @Test
+  public void testSorted() throws IOException {
+
+    // the read names sorted as strings, the alignments of x and r5 have no
+    // read in the FASTQ file
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r0", "r1", "r1", "r10", "r5", "x"), sortedFastq("r0", "r1",
+            "r10", "r100", "r2"), null, true, true)) {
+
+      assertEquals(Arrays.asList("r0", "r1", "r10"), joinedIds(join));
+      assertEquals(2, join.getUnjoinedReadNumber());
+      assertEquals(2, join.getUnjoinedAlignmentNumber());
+      assertFalse(join.isOutOfOrder());
+    }
+
+    // an alignment not sorted, found after the join of r2
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(
+        sam("r0", "r2", "r1"), sortedFastq("r0", "r1", "r2"), null, true,
+        true)) {
+
+      assertEquals(Arrays.asList("r0", "r2"), joinedIds(join));
+      assertTrue(join.isOutOfOrder());
+    }
+
+    // a read not sorted
+    try (ReadAlignmentJoin join = new ReadAlignmentJoin(sam("r0", "r1", "r2"),
+        sortedFastq("r0", "r2", "r1"), null, true, true)) {
+
+      assertEquals(Arrays.asList("r0", "r2"), joinedIds(join));
+      assertTrue(join.isOutOfOrder());
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.ReadIdMap;
+
+public class ReadIdMapTest {
+
+  @Test
+  public void testUUIDs() {
+
+    final Random random = new Random(35);
+    final Map<String, Integer> expected = new HashMap<>();
+    final ReadIdMap<Integer> map = new ReadIdMap<>();
+
+    // enough read ids to enlarge the arrays several times
+    for (int i = 0; i < 20000; i++) {
+
+      final String id =
+          new UUID(random.nextLong(), random.nextLong()).toString();
+      expected.put(id, i);
+      assertNull(map.put(id, i));
+    }
+
+    assertEquals(expected.size(), map.size());
+
+    for (Map.Entry<String, Integer> e : expected.entrySet()) {
+      assertEquals(e.getValue(), map.get(e.getKey()));
+    }
+
+    // the read ids formatted by the map are the original ids
+    final Set<String> ids = new HashSet<>();
+    for (String id : map.readIds()) {
+      ids.add(id);
+    }
+    assertEquals(expected.keySet(), ids);
+
+    // replace a value
+    final String id = expected.keySet().iterator().next();
+    assertEquals(expected.get(id), map.put(id, -1));
+    assertEquals(Integer.valueOf(-1), map.get(id));
+    assertEquals(expected.size(), map.size());
+
+    assertFalse(
+        map.containsKey(new UUID(random.nextLong(), random.nextLong())
+            .toString()));
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertNull(map.get(id));
+  }
+
+  @Test
+  public void testOtherIds() {
+
+    final ReadIdMap<String> map = new ReadIdMap<>();
+    final String upperCase = "6A3D8C5E-2B0F-4C7A-9E1D-0F5B6A7C8D9E";
+    final String lowerCase = upperCase.toLowerCase();
+
+    map.put("read_1", "a");
+    map.put(upperCase, "b");
+    map.put(lowerCase, "c");
+
+    assertEquals(3, map.size());
+    assertEquals("a", map.get("read_1"));
+    assertEquals("b", map.get(upperCase));
+    assertEquals("c", map.get(lowerCase));
+    assertTrue(map.containsKey("read_1"));
+    assertFalse(map.containsKey("read_2"));
+
+    final Set<String> ids = new HashSet<>();
+    for (String id : map.readIds()) {
+      ids.add(id);
+    }
+
+    assertEquals(3, ids.size());
+    assertTrue(ids.contains("read_1"));
+    assertTrue(ids.contains(upperCase));
+    assertTrue(ids.contains(lowerCase));
+  }
+
+}
@@ -0,0 +1,104 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.SamAlignmentParser;
+
+public class SamAlignmentParserTest {
+
+  /**
+   * Create a parser on a string.
+   * @param sam the content of the SAM file
+   * @return a SamAlignmentParser object
+   */
+  private static SamAlignmentParser parser(final String sam) {
+    return new SamAlignmentParser(
+        new ByteArrayInputStream(sam.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void testFields() throws IOException {
+
+    try (SamAlignmentParser parser = parser("@HD\tVN:1.5\n"
+        + "@SQ\tSN:chr1\tLN:1000\n"
+        + "read1\t16\tchr1\t10\t60\t5S100M2I3D20N10H\t*\t0\t0\tACGT\t!!!!\n"
+        + "read2\t4\t*\t0\t0\t*\t*\t0\t0\tACGT\t!!!!")) {
+
+      assertTrue(parser.next());
+      assertEquals("read1", parser.readName());
+      assertEquals(16, parser.flag());
+      assertEquals("5S100M2I3D20N10H", parser.cigarString());
+      assertEquals(6, parser.cigarOperationCount());
+      assertEquals('S', parser.cigarOperation(0));
+      assertEquals(5, parser.cigarOperationLength(0));
+      assertEquals('H', parser.cigarOperation(5));
+      assertEquals(10, parser.cigarOperationLength(5));
+      assertEquals(140, parser.alignmentLength());
+
+      // the last line has no end of line
+      assertTrue(parser.next());
+      assertEquals("read2", parser.readName());
+      assertEquals(4, parser.flag());
+      assertEquals("*", parser.cigarString());
+      assertEquals(0, parser.cigarOperationCount());
+      assertEquals(0, parser.alignmentLength());
+
+      assertFalse(parser.next());
+      assertEquals(2, parser.getAlignmentNumber());
+    }
+  }
+
+  @Test
+  public void testInvalidLines() throws IOException {
+
+    try (SamAlignmentParser parser = parser("read1\tX\tchr1\t1\t60\t10M\r\n"
+        + "read2\t0\tchr1\t1\n"
+        + "read3\t0\tchr1\t1\t60\t10M5\n"
+        + "\n"
+        + "read4\t0\tchr1\t1\t60\t10M\r\n")) {
+
+      assertTrue(parser.next());
+      assertEquals("read4", parser.readName());
+      assertEquals("10M", parser.cigarString());
+      assertFalse(parser.next());
+      assertEquals(3, parser.getInvalidLineNumber());
+    }
+  }
+
+  @Test
+  public void testLongLines() throws IOException {
+
+    // a line longer than the buffers of the parser
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      sb.append('A');
+    }
+
+    final StringBuilder cigar = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      cigar.append("10M1I");
+    }
+
+    try (SamAlignmentParser parser = parser("read1\t0\tchr1\t1\t60\t"
+        + cigar + "\t*\t0\t0\t" + sb + "\t" + sb + "\nread2\t0\tchr1\t1\t60\t"
+        + "7M\t*\t0\t0\tACGT\t!!!!\n")) {
+
+      assertTrue(parser.next());
+      assertEquals(1000, parser.cigarOperationCount());
+      assertEquals(5500, parser.alignmentLength());
+      assertTrue(parser.next());
+      assertEquals("read2", parser.readName());
+      assertEquals(7, parser.alignmentLength());
+      assertFalse(parser.next());
+    }
+  }
+
+}
@@ -0,0 +1,200 @@
+package fr.ens.biologie.genomique.toullig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.toullig.trimming.InformationRead;
+import fr.ens.biologie.genomique.toullig.trimming.SamAlignmentParser;
+import fr.ens.biologie.genomique.toullig.trimming.OutlierPositionFinder.SideWindow;
+
+public class SideWindowTest {
+
+  /**
+   * Create the InformationRead of an alignment.
+   * @param cigar the CIGAR of the alignment
+   * @return an InformationRead object
+   */
+  private static InformationRead informationRead(final String cigar)
+      throws IOException {
+
+    final String sam = "read1\t0\tchr1\t1\t60\t" + cigar + "\n";
+
+    try (SamAlignmentParser parser = new SamAlignmentParser(
+        new ByteArrayInputStream(sam.getBytes(StandardCharsets.US_ASCII)))) {
+
+      assertTrue(parser.next());
+      return InformationRead.newInformationRead(parser);
+    }
+  }
+
+  /**
+   * Encode a CIGAR in a binary string as the side window (M=1, N and D are
+   * skipped, other letters=0).
+   * @param cigar the CIGAR
+   * @return a string of 0 and 1
+   */
+  private static String binaryCigar(final String cigar) {
+
+    final StringBuilder sb = new StringBuilder();
+    int opLength = 0;
+
+    for (char c : cigar.toCharArray()) {
+
+      if (Character.isDigit(c)) {
+        opLength = opLength * 10 + c - '0';
+        continue;
+      }
+
+      for (int i = 0; i < opLength; i++) {
+        if (c == 'M') {
+          sb.append('1');
+        } else if (c != 'N' && c != 'D') {
+          sb.append('0');
+        }
+      }
+      opLength = 0;
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Fraction of 1 in a binary window.
+   * @param window the window
+   * @return the fraction of 1
+   */
+  private static double sum(final String window) {
+
+    int sum = 0;
+    for (char c : window.toCharArray()) {
+      if (c == '1') {
+        sum++;
+      }
+    }
+
+    return (double) sum / window.length();
+  }
+
+  /**
+   * Length of the left outlier computed on the binary string, with the
+   * windows of the previous implementation. The outlier ends at the start of
+   * the first aligned window.
+   */
+  private static int left(final String b, final int w, final double t) {
+
+    for (int i = 0; i <= b.length(); i++) {
+
+      if (i == b.length() - w - 2 || i + w > b.length()) {
+        break;
+      }
+      if (sum(b.substring(i, i + w)) >= t) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Length of the right outlier computed on the binary string, with the
+   * windows of the previous implementation.
+   */
+  private static int right(final String b, final int w, final double t) {
+
+    for (int i = b.length(); i >= 0; i--) {
+
+      if (i <= w) {
+        break;
+      }
+      if (sum(b.substring(i - w, i)) >= t) {
+        return i >= b.length() - w ? b.length() - i : b.length() - i - w;
+      }
+    }
+    return 0;
+  }
+
+  @Test
+  public void testFixedCigars() {
+
+    final SideWindow sideWindow = new SideWindow(5, 0.8);
+
+    assertEquals(40, sideWindow.setCigar("10S20M5D3I2N7S"));
+    assertEquals(9, sideWindow.leftLength());
+    assertEquals(4, sideWindow.rightLength());
+
+    // a fully aligned read has no outlier on both sides
+    assertEquals(40, sideWindow.setCigar("40M"));
+    assertEquals(0, sideWindow.leftLength());
+    assertEquals(0, sideWindow.rightLength());
+
+    // a read shorter than the window plus two bases
+    assertEquals(6, sideWindow.setCigar("6M"));
+    assertEquals(0, sideWindow.leftLength());
+    assertEquals(0, sideWindow.rightLength());
+
+    assertEquals(20, sideWindow.setCigar("20S"));
+    assertEquals(0, sideWindow.leftLength());
+    assertEquals(0, sideWindow.rightLength());
+  }
+
+  @Test
+  public void testClipLengths() throws IOException {
+
+    InformationRead informationRead = informationRead("5H10S100M3I20M7S");
+    assertEquals(5, informationRead.leadingClipLength);
+    assertEquals(7, informationRead.trailingClipLength);
+    assertEquals(5, informationRead.matchProfile.length);
+
+    informationRead = informationRead("100M");
+    assertEquals(InformationRead.NO_CLIP, informationRead.leadingClipLength);
+    assertEquals(InformationRead.NO_CLIP, informationRead.trailingClipLength);
+
+    // a clipping alone is only a trailing clipping
+    informationRead = informationRead("20S");
+    assertEquals(InformationRead.NO_CLIP, informationRead.leadingClipLength);
+    assertEquals(20, informationRead.trailingClipLength);
+
+    assertFalse(informationRead("*").isMapped());
+  }
+
+  @Test
+  public void testRandomCigars() throws IOException {
+
+    final Random random = new Random(36);
+    final String ops = "MMMMIDNSH";
+
+    for (int n = 0; n < 5000; n++) {
+
+      final StringBuilder cigar = new StringBuilder();
+      final int opNumber = 1 + random.nextInt(12);
+
+      for (int i = 0; i < opNumber; i++) {
+        cigar.append(1 + random.nextInt(40));
+        cigar.append(ops.charAt(random.nextInt(ops.length())));
+      }
+
+      final int w = 1 + random.nextInt(20);
+      final double t = random.nextInt(11) / 10.0;
+      final SideWindow sideWindow = new SideWindow(w, t);
+      final String b = binaryCigar(cigar.toString());
+
+      assertEquals(b.length(), sideWindow.setCigar(cigar.toString()));
+      assertEquals(cigar.toString(), left(b, w, t), sideWindow.leftLength());
+      assertEquals(cigar.toString(), right(b, w, t), sideWindow.rightLength());
+
+      // the match profile of the SAM gives the same binary CIGAR
+      assertEquals(b.length(), sideWindow
+          .setMatchProfile(informationRead(cigar.toString()).matchProfile));
+      assertEquals(cigar.toString(), left(b, w, t), sideWindow.leftLength());
+      assertEquals(cigar.toString(), right(b, w, t), sideWindow.rightLength());
+    }
+  }
+
+}
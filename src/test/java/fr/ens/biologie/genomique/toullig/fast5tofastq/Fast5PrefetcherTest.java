@@ -0,0 +1,124 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class Fast5PrefetcherTest {
+
+  /**
+   * Create temporary files.
+   * @param fileNumber the number of files
+   * @return the files
+   * @throws IOException if an IO error occur
+   */
+  private static List<File> files(final int fileNumber) throws IOException {
+
+    final List<File> result = new ArrayList<>();
+
+    for (int i = 0; i < fileNumber; i++) {
+
+      final File file = File.createTempFile("prefetch", ".fast5");
+      file.deleteOnExit();
+
+      try (OutputStream out = new FileOutputStream(file)) {
+        out.write(new byte[1000]);
+      }
+
+      result.add(file);
+    }
+
+    return result;
+  }
+
+  /**
+   * Wait until a number of files have been read ahead.
+   * @param prefetcher the prefetcher
+   * @param fileNumber the number of files
+   * @throws InterruptedException if the wait is interrupted
+   */
+  private static void waitPrefetch(final Fast5Prefetcher prefetcher,
+      final int fileNumber) throws InterruptedException {
+
+    final long end = System.currentTimeMillis() + 10000;
+
+    while (prefetcher.getPrefetchedFileNumber() < fileNumber
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+
+    assertEquals(fileNumber, prefetcher.getPrefetchedFileNumber());
+  }
+
+  @Test
+  public void testSequentialConsumption() throws Exception {
+
+    final List<File> files = files(10);
+    final Fast5Prefetcher prefetcher = new Fast5Prefetcher(files, 2);
+
+    try {
+
+      // only the first files are read ahead before the conversion
+      waitPrefetch(prefetcher, 2);
+      Thread.sleep(50);
+      assertEquals(2, prefetcher.getPrefetchedFileNumber());
+
+      for (int i = 0; i < files.size(); i++) {
+
+        prefetcher.consume(files.get(i));
+        waitPrefetch(prefetcher, Math.min(i + 3, files.size()));
+      }
+
+      assertEquals(10, prefetcher.getHits());
+      assertEquals(0, prefetcher.getMisses());
+
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testStolenRange() throws Exception {
+
+    final List<File> files = files(20);
+    final Fast5Prefetcher prefetcher = new Fast5Prefetcher(files, 3);
+
+    try {
+
+      waitPrefetch(prefetcher, 3);
+
+      // a second thread starts the conversion of the second half of the list,
+      // its first file has not been read ahead
+      prefetcher.consume(files.get(10));
+      assertEquals(1, prefetcher.getMisses());
+
+      // the next files of the second thread are read ahead
+      waitPrefetch(prefetcher, 6);
+      prefetcher.consume(files.get(11));
+      prefetcher.consume(files.get(0));
+      assertEquals(2, prefetcher.getHits());
+
+      // a file outside of the work list is ignored
+      prefetcher.consume(new File("unknown.fast5"));
+      assertEquals(2, prefetcher.getHits());
+      assertEquals(1, prefetcher.getMisses());
+
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDepth() {
+
+    new Fast5Prefetcher(new ArrayList<File>(), 0);
+  }
+
+}
@@ -0,0 +1,116 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ReadIdDeduplicatorTest {
+
+  /**
+   * Create an empty temporary directory.
+   * @return the directory
+   * @throws IOException if an IO error occur
+   */
+  private static File directory() throws IOException {
+
+    final File result = File.createTempFile("dedup", "");
+    assertTrue(result.delete());
+    assertTrue(result.mkdir());
+    result.deleteOnExit();
+
+    return result;
+  }
+
+  /**
+   * Create the read ids of the test, UUIDs with mixed bits. The ids of two
+   * different series or indexes are different.
+   * @param series the series of the id
+   * @param index the index of the id
+   * @return a read id
+   */
+  private static String readId(final long series, final int index) {
+
+    return new UUID(ScalableBloomFilter.mix(series),
+        ScalableBloomFilter.mix(index)).toString();
+  }
+
+  @Test
+  public void testDuplicates() throws IOException {
+
+    final File directory = directory();
+
+    try (ReadIdDeduplicator deduplicator = new ReadIdDeduplicator(directory)) {
+
+      // the ids that are not UUIDs are hashed
+      for (int i = 0; i < 1000; i++) {
+        assertFalse(deduplicator.isDuplicate("read" + i));
+        assertFalse(deduplicator.isDuplicate(readId(1, i)));
+      }
+      assertEquals(0, deduplicator.getDuplicateNumber());
+
+      for (int i = 0; i < 1000; i++) {
+        assertTrue(deduplicator.isDuplicate("read" + i));
+        assertTrue(deduplicator.isDuplicate(readId(1, i)));
+      }
+      assertEquals(2000, deduplicator.getDuplicateNumber());
+
+      // the case of a UUID is ignored
+      assertTrue(deduplicator.isDuplicate(readId(1, 0).toUpperCase()));
+
+      // only the positive answers of the Bloom filter are verified
+      assertEquals(2001, deduplicator.getVerificationNumber());
+    }
+  }
+
+  @Test
+  public void testRuns() throws IOException {
+
+    final File directory = directory();
+
+    // more ids than the buffer and than the runs merged
+    final int readNumber = 18 * (1 << 18) + 1000;
+
+    try (ReadIdDeduplicator deduplicator = new ReadIdDeduplicator(directory)) {
+
+      for (int i = 0; i < readNumber; i++) {
+        assertFalse(deduplicator.isDuplicate(readId(2, i)));
+      }
+
+      // the false positives of the Bloom filter are verified, about 0.1% of
+      // the new reads
+      final long verifications = deduplicator.getVerificationNumber();
+      assertEquals(0, deduplicator.getDuplicateNumber());
+      assertTrue("verifications: " + verifications,
+          verifications < readNumber / 500);
+
+      // the ids of the merged run, of the last run and of the buffer
+      int duplicateNumber = 0;
+      for (int i = 0; i < readNumber; i += 997) {
+        assertTrue(deduplicator.isDuplicate(readId(2, i)));
+        duplicateNumber++;
+      }
+      assertTrue(deduplicator.isDuplicate(readId(2, readNumber - 1)));
+      duplicateNumber++;
+
+      // the new ids are not duplicates
+      for (int i = 0; i < 10000; i++) {
+        assertFalse(deduplicator.isDuplicate(readId(3, i)));
+      }
+
+      assertEquals(duplicateNumber, deduplicator.getDuplicateNumber());
+
+      // the merged run and the last run
+      assertEquals(2, directory.list().length);
+    }
+
+    // the runs are removed
+    assertEquals(0, directory.list().length);
+  }
+
+}
@@ -0,0 +1,177 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReadStatisticsTest {
+
+  /**
+   * Add a read with a constant quality to the statistics.
+   * @param statistics the statistics
+   * @param length the length of the read
+   * @param quality the quality character of the bases
+   */
+  private static void addRead(final ReadStatistics statistics,
+      final int length, final char quality) {
+
+    final StringBuilder sb = new StringBuilder("@read\n");
+    for (int i = 0; i < length; i++) {
+      sb.append('A');
+    }
+    sb.append("\n+\n");
+    for (int i = 0; i < length; i++) {
+      sb.append(quality);
+    }
+    sb.append('\n');
+
+    statistics.addRead(sb.toString(), 6, 9 + length, length);
+  }
+
+  @Test
+  public void testLengthBuckets() {
+
+    // the short lengths have their own bucket
+    for (int length = 0; length < 128; length++) {
+      assertEquals(length, ReadStatistics.getLengthBucket(length));
+      assertEquals(length, ReadStatistics.getLengthBucketLowerBound(length));
+      assertEquals(length, ReadStatistics.getLengthBucketUpperBound(length));
+    }
+
+    // the buckets are contiguous and narrow
+    for (int bucket = 1; bucket < ReadStatistics.LENGTH_BUCKET_NUMBER - 1;
+        bucket++) {
+
+      final int lower = ReadStatistics.getLengthBucketLowerBound(bucket);
+      final int upper = ReadStatistics.getLengthBucketUpperBound(bucket);
+
+      assertEquals(upper,
+          ReadStatistics.getLengthBucketLowerBound(bucket + 1) - 1);
+      assertEquals(bucket, ReadStatistics.getLengthBucket(lower));
+      assertEquals(bucket, ReadStatistics.getLengthBucket(upper));
+      assertTrue(upper - lower + 1 <= 0.016 * lower + 1);
+    }
+
+    assertEquals(ReadStatistics.LENGTH_BUCKET_NUMBER - 1,
+        ReadStatistics.getLengthBucket(Integer.MAX_VALUE));
+    assertEquals(Integer.MAX_VALUE, ReadStatistics.getLengthBucketUpperBound(
+        ReadStatistics.LENGTH_BUCKET_NUMBER - 1));
+  }
+
+  @Test
+  public void testShortReads() {
+
+    final ReadStatistics statistics = new ReadStatistics();
+
+    assertEquals(0, statistics.getMinLength());
+    assertEquals(0, statistics.getMedianLength());
+    assertEquals(0, statistics.getN50());
+
+    addRead(statistics, 10, 'I');
+    addRead(statistics, 20, 'I');
+    addRead(statistics, 30, 'I');
+    addRead(statistics, 40, 'I');
+    addRead(statistics, 100, 'I');
+
+    assertEquals(5, statistics.getReads());
+    assertEquals(200, statistics.getBases());
+    assertEquals(10, statistics.getMinLength());
+    assertEquals(100, statistics.getMaxLength());
+    assertEquals(40.0, statistics.getMeanLength(), 1e-9);
+
+    // the lengths lower than 128 are exact
+    assertEquals(30, statistics.getMedianLength());
+    assertEquals(100, statistics.getN50());
+    assertEquals(1, statistics.getReadsPerLengthBucket(100));
+    assertEquals(100, statistics.getBasesPerLengthBucket(100));
+  }
+
+  @Test
+  public void testLongReads() {
+
+    final Random random = new Random(27);
+    final ReadStatistics statistics = new ReadStatistics();
+    final List<Integer> lengths = new ArrayList<>();
+    long bases = 0;
+
+    for (int i = 0; i < 1000; i++) {
+
+      final int length = 200 + random.nextInt(50000);
+      lengths.add(length);
+      bases += length;
+      statistics.addRead("", 0, 0, length);
+    }
+
+    // the N50 and the median computed on the sorted lengths
+    Collections.sort(lengths);
+    final long median = lengths.get(lengths.size() / 2 - 1);
+    long n50 = 0;
+    long sum = 0;
+    for (int i = lengths.size() - 1; 2 * sum < bases; i--) {
+      sum += lengths.get(i);
+      n50 = lengths.get(i);
+    }
+
+    // the error is lower than the width of a bucket
+    assertEquals(median, statistics.getMedianLength(), 0.016 * median);
+    assertEquals(n50, statistics.getN50(), 0.016 * n50);
+    assertEquals(bases, statistics.getBases());
+  }
+
+  @Test
+  public void testQualities() {
+
+    final ReadStatistics statistics = new ReadStatistics();
+
+    // a constant quality of 40
+    addRead(statistics, 10, 'I');
+    assertEquals(1, statistics.getReadsPerQuality(40));
+
+    // the mean quality is computed on the error probabilities: the mean of
+    // Q10 and Q40 is Q13
+    final String fastq = "@read\nAA\n+\n+I\n";
+    statistics.addRead(fastq, 6, 11, 2);
+    assertEquals(1, statistics.getReadsPerQuality(13));
+
+    // the qualities higher than the maximal quality are in the last bin
+    addRead(statistics, 10, '~');
+    assertEquals(1, statistics.getReadsPerQuality(ReadStatistics.MAX_QUALITY));
+
+    // the reads without complete quality are only counted in the lengths
+    statistics.addRead("@read\nAAAA\n+\nII", 6, 13, 4);
+    assertEquals(4, statistics.getReads());
+    assertEquals(3, statistics.getReadsPerQuality(13)
+        + statistics.getReadsPerQuality(40)
+        + statistics.getReadsPerQuality(ReadStatistics.MAX_QUALITY));
+  }
+
+  @Test
+  public void testMerge() {
+
+    final ReadStatistics statistics1 = new ReadStatistics();
+    final ReadStatistics statistics2 = new ReadStatistics();
+    final ReadStatistics empty = new ReadStatistics();
+
+    addRead(statistics1, 50, 'I');
+    addRead(statistics2, 20, '5');
+    addRead(statistics2, 80, '5');
+
+    statistics1.merge(statistics2);
+    statistics1.merge(empty);
+
+    assertEquals(3, statistics1.getReads());
+    assertEquals(150, statistics1.getBases());
+    assertEquals(20, statistics1.getMinLength());
+    assertEquals(80, statistics1.getMaxLength());
+    assertEquals(1, statistics1.getReadsPerQuality(40));
+    assertEquals(2, statistics1.getReadsPerQuality(20));
+    assertEquals(50, statistics1.getMedianLength());
+  }
+
+}
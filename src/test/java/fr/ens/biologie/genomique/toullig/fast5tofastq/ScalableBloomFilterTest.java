@@ -0,0 +1,131 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ScalableBloomFilterTest {
+
+  /**
+   * Compute the false positive rate of a filter with keys never added.
+   * @param filter the filter
+   * @param random the generator of the keys
+   * @param keyNumber the number of keys to test
+   * @return the false positive rate
+   */
+  private static double falsePositiveRate(final ScalableBloomFilter filter,
+      final Random random, final int keyNumber) {
+
+    int falsePositives = 0;
+    for (int i = 0; i < keyNumber; i++) {
+      if (filter.mightContain(random.nextLong(), random.nextLong())) {
+        falsePositives++;
+      }
+    }
+
+    return (double) falsePositives / keyNumber;
+  }
+
+  @Test
+  public void testNoFalseNegative() {
+
+    final ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+
+    assertTrue(!filter.mightContain(1, 2));
+
+    // the keys are added in several filters
+    Random random = new Random(28);
+    for (int i = 0; i < 100000; i++) {
+      filter.put(random.nextLong(), random.nextLong());
+    }
+    assertEquals(100000, filter.size());
+
+    random = new Random(28);
+    for (int i = 0; i < 100000; i++) {
+      assertTrue(filter.mightContain(random.nextLong(), random.nextLong()));
+    }
+  }
+
+  @Test
+  public void testFalsePositiveGrowth() {
+
+    final double rate = 0.01;
+    final ScalableBloomFilter filter = new ScalableBloomFilter(1000, rate);
+    final Random random = new Random(28);
+
+    // the first filter is full
+    for (int i = 0; i < 1000; i++) {
+      filter.put(random.nextLong(), random.nextLong());
+    }
+    final double firstRate = falsePositiveRate(filter, random, 200000);
+    assertEquals(rate, firstRate, rate / 4);
+
+    // six filters are full: 1000 + 2000 + ... + 32000 keys
+    for (int i = 1000; i < 63000; i++) {
+      filter.put(random.nextLong(), random.nextLong());
+    }
+    final double globalRate = falsePositiveRate(filter, random, 200000);
+
+    // the rate of each new filter is twice lower, so the global rate is
+    // lower than twice the rate of the first filter
+    double expectedRate = 1;
+    for (int i = 0; i < 6; i++) {
+      expectedRate *= 1 - rate / (1 << i);
+    }
+    expectedRate = 1 - expectedRate;
+
+    assertTrue(expectedRate < 2 * rate);
+    assertEquals(expectedRate, globalRate, expectedRate / 10);
+  }
+
+  @Test
+  public void testCapacity() {
+
+    final ScalableBloomFilter filter = new ScalableBloomFilter(10000, 0.001);
+    final Random random = new Random(28);
+
+    assertEquals(0, filter.getMemoryUsage());
+
+    for (int i = 0; i < 10000; i++) {
+      filter.put(random.nextLong(), random.nextLong());
+    }
+
+    // a key of the first filter uses about 1.8 bytes
+    final long firstMemory = filter.getMemoryUsage();
+    assertEquals(1.8, firstMemory / 10000.0, 0.05);
+
+    // the next key creates a second filter twice larger, with more bits per
+    // key for its lower false positive rate
+    filter.put(random.nextLong(), random.nextLong());
+
+    final long secondMemory = filter.getMemoryUsage() - firstMemory;
+    assertTrue(secondMemory > 2 * firstMemory);
+    assertTrue(secondMemory < 3 * firstMemory);
+
+    // the second filter is full after 20000 keys
+    for (int i = 1; i < 20000; i++) {
+      filter.put(random.nextLong(), random.nextLong());
+    }
+    assertEquals(firstMemory + secondMemory, filter.getMemoryUsage());
+
+    filter.put(random.nextLong(), random.nextLong());
+    assertTrue(filter.getMemoryUsage() > firstMemory + secondMemory);
+    assertEquals(30001, filter.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+
+    new ScalableBloomFilter(0, 0.01);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFalsePositiveRate() {
+
+    new ScalableBloomFilter(1000, 1);
+  }
+
+}
@@ -0,0 +1,104 @@
+package fr.ens.biologie.genomique.toullig.fast5tofastq;
+
+import static fr.ens.biologie.genomique.toullig.fast5tofastq.Fast5ToFastq.SequenceType.COMPLEMENT;
+import static fr.ens.biologie.genomique.toullig.fast5tofastq.Fast5ToFastq.SequenceType.TEMPLATE;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class YieldStatisticsTest {
+
+  @Test
+  public void testChannels() {
+
+    final YieldStatistics statistics = new YieldStatistics();
+
+    statistics.addRead(TEMPLATE, 1, 10, 100);
+    statistics.addRead(TEMPLATE, 1, 20, 50);
+    statistics.addRead(TEMPLATE, YieldStatistics.CHANNEL_NUMBER, 30, 10);
+    statistics.addRead(COMPLEMENT, 1, 10, 7);
+
+    assertEquals(2, statistics.getReadsPerChannel(TEMPLATE, 1));
+    assertEquals(150, statistics.getBasesPerChannel(TEMPLATE, 1));
+    assertEquals(1, statistics.getReadsPerChannel(TEMPLATE,
+        YieldStatistics.CHANNEL_NUMBER));
+    assertEquals(3, statistics.getReads(TEMPLATE));
+
+    // the types of sequences are counted separately
+    assertEquals(1, statistics.getReadsPerChannel(COMPLEMENT, 1));
+    assertEquals(7, statistics.getBasesPerChannel(COMPLEMENT, 1));
+    assertEquals(1, statistics.getReads(COMPLEMENT));
+  }
+
+  @Test
+  public void testUnknownChannels() {
+
+    final YieldStatistics statistics = new YieldStatistics();
+
+    statistics.addRead(TEMPLATE, 0, 10, 100);
+    statistics.addRead(TEMPLATE, -1, 10, 100);
+    statistics.addRead(TEMPLATE, YieldStatistics.CHANNEL_NUMBER + 1, 10, 100);
+
+    assertEquals(3, statistics.getReadsPerChannel(TEMPLATE, 0));
+    assertEquals(300, statistics.getBasesPerChannel(TEMPLATE, 0));
+    assertEquals(3, statistics.getReads(TEMPLATE));
+  }
+
+  @Test
+  public void testTimeBins() {
+
+    final YieldStatistics statistics = new YieldStatistics();
+    final int duration = YieldStatistics.TIME_BIN_DURATION;
+
+    assertEquals(-1, statistics.getLastTimeBin(TEMPLATE));
+
+    statistics.addRead(TEMPLATE, 1, 0, 10);
+    statistics.addRead(TEMPLATE, 1, duration - 0.5, 20);
+    statistics.addRead(TEMPLATE, 1, duration, 30);
+    statistics.addRead(TEMPLATE, 1, -1, 40);
+
+    assertEquals(2, statistics.getReadsPerTimeBin(TEMPLATE, 0));
+    assertEquals(30, statistics.getBasesPerTimeBin(TEMPLATE, 0));
+    assertEquals(1, statistics.getReadsPerTimeBin(TEMPLATE, 1));
+    assertEquals(30, statistics.getBasesPerTimeBin(TEMPLATE, 1));
+    assertEquals(1, statistics.getReadsWithoutStartTime(TEMPLATE));
+    assertEquals(1, statistics.getLastTimeBin(TEMPLATE));
+
+    // the reads after the last bin are in the last bin
+    statistics.addRead(TEMPLATE, 1,
+        10.0 * duration * YieldStatistics.TIME_BIN_NUMBER, 5);
+
+    assertEquals(YieldStatistics.TIME_BIN_NUMBER - 1,
+        statistics.getLastTimeBin(TEMPLATE));
+    assertEquals(5, statistics.getBasesPerTimeBin(TEMPLATE,
+        YieldStatistics.TIME_BIN_NUMBER - 1));
+
+    // the reads without start time are counted in their channel
+    assertEquals(5, statistics.getReads(TEMPLATE));
+  }
+
+  @Test
+  public void testMerge() {
+
+    final YieldStatistics statistics1 = new YieldStatistics();
+    final YieldStatistics statistics2 = new YieldStatistics();
+
+    statistics1.addRead(TEMPLATE, 5, 10, 100);
+    statistics1.addRead(TEMPLATE, 6, -1, 10);
+    statistics2.addRead(TEMPLATE, 5, 2000, 50);
+    statistics2.addRead(COMPLEMENT, 5, 10, 1);
+
+    statistics1.merge(statistics2);
+
+    assertEquals(2, statistics1.getReadsPerChannel(TEMPLATE, 5));
+    assertEquals(150, statistics1.getBasesPerChannel(TEMPLATE, 5));
+    assertEquals(1, statistics1.getReadsPerTimeBin(TEMPLATE, 0));
+    assertEquals(1, statistics1.getReadsPerTimeBin(TEMPLATE, 2));
+    assertEquals(1, statistics1.getReadsWithoutStartTime(TEMPLATE));
+    assertEquals(1, statistics1.getReads(COMPLEMENT));
+
+    // the merged object is not modified
+    assertEquals(1, statistics2.getReads(TEMPLATE));
+  }
+
+}